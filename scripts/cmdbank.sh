@@ -0,0 +1,30 @@
+#!/bin/sh
+# Run CMD-Bank commands without the menus (see CommandMode), from the project directory after compiling src, for example:
+#   CMDBANK_PASSWORD=... scripts/cmdbank.sh deposit --user 33333333 --account 100001 --amount 50
+#
+# The compiled classes are packed into out/cmdbank/cmdbank.jar (AppCDS only archives classes loaded from jar files),
+# and the first run saves the classes it loaded into an AppCDS archive, out/cmdbank/cmdbank.jsa. Later runs map the
+# archive instead of reading, parsing and verifying those classes again. Both are made again when the classes change.
+set -e
+
+classes="${CMDBANK_CLASSES:-out/production/project-01-bankingwithjava}"
+cache="out/cmdbank"
+jar="$cache/cmdbank.jar"
+archive="$cache/cmdbank.jsa"
+
+if [ ! -d "$classes" ]; then
+  echo "No compiled classes in $classes, set CMDBANK_CLASSES to the compiler output directory." >&2
+  exit 2
+fi
+
+if [ ! -f "$jar" ] || [ -n "$(find "$classes" -name '*.class' -newer "$jar" | head -n 1)" ]; then
+  mkdir -p "$cache"
+  rm -f "$archive"
+  jar --create --file "$jar" -C "$classes" .
+fi
+
+if [ -f "$archive" ]; then
+  exec java -XX:SharedArchiveFile="$archive" -cp "$jar" com.ga.cmdbank.Main "$@"
+fi
+
+exec java -XX:ArchiveClassesAtExit="$archive" -Xlog:cds=off -Xlog:cds+dynamic=off -cp "$jar" com.ga.cmdbank.Main "$@"
@@ -0,0 +1,67 @@
+package com.ga.cmdbank;
+
+/**
+ * Constant-size running state of one bank account, as seen by the fraud detection pipeline.
+ *
+ * Only the latest few withdrawal times and transfer recipients are remembered (in small ring buffers), and the
+ * transaction amount is tracked as an exponentially weighted moving average, so the state never grows with the history.
+ */
+public class AccountActivity {
+    static final int withdrawalTimesKept = 3;
+    static final int recipientsKept = 8;
+    static final double averageWeight = 0.2; // Weight of the newest amount in the moving average
+
+    final long[] recentWithdrawalSeconds = new long[withdrawalTimesKept];
+    int withdrawalCount = 0;
+    final int[] recentRecipients = new int[recipientsKept];
+    int recipientCount = 0;
+    double averageAmount = 0.0;
+    long transactionCount = 0;
+
+    /**
+     * Add a transaction to the account's state. Called after the rules have seen it.
+     * @param transaction TransactionHistory Recorded transaction
+     * @param epochSecond long Time of the transaction
+     */
+    void update(TransactionHistory transaction, long epochSecond) {
+        if (transaction.transactionType.equals("withdraw")) {
+            recentWithdrawalSeconds[withdrawalCount % withdrawalTimesKept] = epochSecond;
+            withdrawalCount++;
+        }
+
+        if (transaction.transactionType.equals("transfer") && !hasSentTo(transaction.transferToAccountId)) {
+            recentRecipients[recipientCount % recipientsKept] = transaction.transferToAccountId;
+            recipientCount++;
+        }
+
+        averageAmount = transactionCount == 0 ? transaction.transactionAmount
+                : averageWeight * transaction.transactionAmount + (1 - averageWeight) * averageAmount;
+        transactionCount++;
+    }
+
+    /**
+     * Get the time of an earlier withdrawal.
+     * @param withdrawalsBack int 1 for the latest withdrawal, up to withdrawalTimesKept.
+     * @return long Epoch second, or Long.MIN_VALUE if the account has fewer withdrawals.
+     */
+    long getWithdrawalSeconds(int withdrawalsBack) {
+        if (withdrawalsBack > withdrawalCount || withdrawalsBack > withdrawalTimesKept) return Long.MIN_VALUE;
+
+        return recentWithdrawalSeconds[(withdrawalCount - withdrawalsBack) % withdrawalTimesKept];
+    }
+
+    /**
+     * Check whether the account transferred to a recipient recently (among the last recipientsKept distinct recipients).
+     * @param accountId int Recipient bank account ID
+     * @return boolean
+     */
+    boolean hasSentTo(int accountId) {
+        int kept = Math.min(recipientCount, recipientsKept);
+
+        for (int i = 0; i < kept; i++) {
+            if (recentRecipients[i] == accountId) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,209 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Month-end statement generation for every bank account in one pass (banker only).
+ *
+ * The transaction history is read once, each record of the chosen month is grouped under its account
+ * and the account's totals are summed in the same pass. Every account's statement is then rendered
+ * to its own file in parallel using the same table layout as the interactive account statement.
+ */
+public class AccountStatementBatch {
+    /**
+     * Root folder of generated statement files, one sub folder per statement month.
+     */
+    final Path outputDirectory = Storage.getDataDirectory().resolve("statements");
+
+    /**
+     * One account's records and running totals for the statement month.
+     */
+    static class AccountStatement {
+        final BankAccount account;
+        final List<String[]> records = new ArrayList<>();
+        double totalWithdrawals = 0.0;
+        double totalDeposits = 0.0;
+
+        AccountStatement(BankAccount account) {
+            this.account = account;
+        }
+    }
+
+    /**
+     * Display the month-end statements prompt.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void display(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to generate statements for all accounts.");
+
+            System.out.println("GENERATE MONTHLY STATEMENTS FOR ALL ACCOUNTS:");
+            System.out.print("Statement Month (YYYY-MM): ");
+            YearMonth month = YearMonth.parse(inputScanner.nextLine().strip());
+            System.out.println(" ");
+
+            System.out.println("Generating statements...");
+            int generated = generateStatements(month);
+
+            System.out.println(generated + " statements saved to " + outputDirectory.resolve(month.toString()));
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (DateTimeParseException e) {
+            System.err.println("Please type the month in the format YYYY-MM, for example 2025-12.");
+            display(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            display(inputScanner, user);
+        }
+    }
+
+    /**
+     * Generate the statement files of all bank accounts for the given month.
+     * @param month YearMonth Statement month.
+     * @return int Number of statement files written.
+     * @throws IOException Data file reading or statement writing error.
+     */
+    int generateStatements(YearMonth month) throws IOException {
+        Map<Integer, AccountStatement> statements = groupTransactionsByAccount(month);
+        Map<Integer, String[]> customers = getCustomersByCpr();
+        Path monthDirectory = outputDirectory.resolve(month.toString());
+        Files.createDirectories(monthDirectory);
+
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+
+        statements.values().parallelStream().forEach(statement -> {
+            try {
+                Path statementFile = monthDirectory.resolve("statement_" + statement.account.bankAccountID + ".txt");
+                Files.write(statementFile, renderStatement(statement, customers.get(statement.account.userCPR), month));
+
+            } catch (Exception e) {
+                errors.add("Account " + statement.account.bankAccountID + ": " + e.getMessage());
+            }
+        });
+
+        if (!errors.isEmpty()) throw new IOException("Some statements could not be generated. " + String.join(" | ", errors));
+
+        return statements.size();
+    }
+
+    /**
+     * Read the transaction history once and group the records of the given month by account, summing each account's totals.
+     * Every account on file gets an entry, including accounts without transactions in the month.
+     * @param month YearMonth Statement month.
+     * @return Map Account ID to its statement, in accounts.txt order.
+     * @throws IOException Data file reading error.
+     */
+    Map<Integer, AccountStatement> groupTransactionsByAccount(YearMonth month) throws IOException {
+        LinkedHashMap<Integer, AccountStatement> statements = new LinkedHashMap<>();
+
+        for (String account : new BankAccount().getAccountsData()) {
+            String[] accountData = account.split(";");
+            BankAccount bankAccount = new BankAccount(Integer.parseInt(accountData[0]), Integer.parseInt(accountData[1]), accountData[2],
+                    Integer.parseInt(accountData[3]), accountData[4], Double.parseDouble(accountData[5]), Integer.parseInt(accountData[6]));
+
+            statements.put(bankAccount.bankAccountID, new AccountStatement(bankAccount));
+        }
+
+        long monthStart = Timestamps.startOfDay(month.atDay(1));
+        long monthEnd = Timestamps.startOfDay(month.plusMonths(1).atDay(1));
+
+        for (String transaction : new TransactionHistory().getTransactionHistory()) {
+            String[] transactionData = transaction.split(";");
+            long epochMilli = Timestamps.parse(transactionData[2]);
+
+            if (epochMilli < monthStart || epochMilli >= monthEnd) continue;
+
+            AccountStatement statement = statements.get(Integer.parseInt(transactionData[1]));
+
+            if (statement == null) continue; // Record of an account no longer on file
+
+            double amount = Double.parseDouble(transactionData[4]);
+
+            switch (transactionData[3]) {
+                case "withdraw":
+                case "transfer":
+                case "fee":
+                    statement.totalWithdrawals += amount;
+                    break;
+                case "deposit":
+                case "interest":
+                    statement.totalDeposits += amount;
+                    break;
+            }
+
+            statement.records.add(transactionData);
+        }
+
+        return statements;
+    }
+
+    /**
+     * Read all users from the user store, keyed by CPR, for the statements' customer names.
+     * @return Map CPR to user data array.
+     * @throws IOException Data file reading error.
+     */
+    Map<Integer, String[]> getCustomersByCpr() throws IOException {
+        HashMap<Integer, String[]> customers = new HashMap<>();
+
+        for (String user : Storage.get().users().readAll()) {
+            String[] userData = user.split(";");
+
+            customers.put(Integer.parseInt(userData[0].strip()), userData);
+        }
+
+        return customers;
+    }
+
+    /**
+     * Render one account's monthly statement with the account statement table layout.
+     * @param statement AccountStatement Account, records and totals.
+     * @param customerInfo String[] Account owner's user data, may be null if the user is no longer on file.
+     * @param month YearMonth Statement month.
+     * @return List Statement file lines.
+     */
+    List<String> renderStatement(AccountStatement statement, String[] customerInfo, YearMonth month) {
+        final UtilityComponent utilityComponent = new UtilityComponent();
+        BankAccount account = statement.account;
+        List<String> lines = new ArrayList<>();
+        String customerName = customerInfo == null ? "N/A" : customerInfo[1].toUpperCase() + " " + customerInfo[2].toUpperCase();
+
+        lines.add(account.statementTableDivider);
+        lines.add(" ");
+        lines.add(utilityComponent.padString(account.accountType.toUpperCase() + " ACCOUNT NO." + account.bankAccountID + " " + month + " MONTHLY STATEMENT", account.statementTableWidth));
+        lines.add(" ");
+        lines.add("ISSUE DATE: " + utilityComponent.getTodayDate());
+        lines.add("CUSTOMER NAME: " + customerName);
+        lines.add("ATTACHED DEBIT CARD: " + account.cardType);
+        lines.add(" ");
+        lines.add(account.statementTableHeader);
+        lines.add(account.statementTableDivider);
+
+        for (String[] record : statement.records) {
+            lines.add(account.formatStatementRow(record, utilityComponent));
+        }
+
+        lines.add(" ");
+        lines.add("TOTAL WITHDRAWALS: $" + statement.totalWithdrawals);
+        lines.add("TOTAL DEPOSITS: $" + statement.totalDeposits);
+        lines.add(" ");
+        lines.add(account.statementTableDivider);
+
+        return lines;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Storage of bank accounts, as data rows in the accounts.txt format:
+ * accountId;userCPR;accountType;cardId;cardType;balance;overdraftCount
+ * Savings accounts that accrued interest have two more columns, see InterestAccrualBatch: ;interestAccruedThrough;interestRemainder
+ */
+public interface AccountStore {
+    /**
+     * Check whether a bank account exists.
+     * @param accountId int Bank account ID
+     * @return boolean
+     * @throws IOException Storage reading error.
+     */
+    boolean exists(int accountId) throws IOException;
+
+    /**
+     * Read every account's data row, in account creation order.
+     * @return List Data rows
+     * @throws IOException Storage reading error.
+     */
+    List<String> readAll() throws IOException;
+
+    /**
+     * @return int ID of the last created account, or 0 if there are none.
+     * @throws IOException Storage reading error.
+     */
+    int getLastAccountId() throws IOException;
+
+    /**
+     * Add a new account. Call inside lockForUpdate, after checking the ID is still free.
+     * @param accountId int Bank account ID
+     * @param row String Data row
+     * @throws IOException Storage writing error.
+     */
+    void add(int accountId, String row) throws IOException;
+
+    /**
+     * Change an account's data row, atomically also across processes.
+     * @param accountId int Bank account ID
+     * @param change UnaryOperator Receives the stored data row, returns the new one.
+     * @return boolean True if updated, false if no such account.
+     * @throws IOException Storage writing error.
+     */
+    boolean update(int accountId, UnaryOperator<String> change) throws IOException;
+
+    /**
+     * Change many accounts' data rows in one write, atomically also across processes.
+     * @param changes Map Bank account ID to the change of its row, which receives the stored data row and returns the new one.
+     * @return int Number of accounts updated, IDs not on file are skipped.
+     * @throws IOException Storage writing error.
+     */
+    int updateAll(Map<Integer, UnaryOperator<String>> changes) throws IOException;
+
+    /**
+     * Lock the accounts for a sequence of reads and writes that must not interleave with other writers (account creation, transfers).
+     * @return StoreLock Lock to close when done.
+     * @throws IOException Locking error.
+     */
+    StoreLock lockForUpdate() throws IOException;
+
+    /**
+     * Version of the stored accounts, which changes whenever any account changes, also by other processes.
+     * @return long Version, only comparable for equality.
+     * @throws IOException Storage reading error.
+     */
+    long getVersion() throws IOException;
+}
\ No newline at end of file
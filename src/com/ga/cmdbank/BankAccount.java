@@ -1,11 +1,8 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
@@ -29,10 +26,6 @@ public class BankAccount {
      * Types of bank accounts available.
      */
     String[] accountTypes = {"checking", "savings"};
-    /**
-     * Types of debit cards available.
-     */
-    String[] cardTypes = {"DebitMastercard", "DebitMastercardTitanium", "DebitMastercardPlatinum"};
     /**
      * Account's associated card's type: mastercard, mastercard titanium, or mastercard platinum.
      */
@@ -49,11 +42,14 @@ public class BankAccount {
      * Number of times this account has been overdrafted without payment of overdraft fees.
      */
     int overdraftCount = 0;
+    final int accountIdPrefix = 100000;
     /**
-     * Data save file path for bank accounts.
+     * Account statement table layout, shared by the interactive statements and the batch statement files.
      */
-    final Path filepath = Paths.get("data/accounts.txt");
-    final int accountIdPrefix = 100000;
+    final String statementTableHeader = "      DATE     |      TIME     |           DESCRIPTION           |    AMOUNT   |   BALANCE   ";
+    final String statementTableDivider = "---------------------------------------------------------------------------------------------";
+    final int statementTableWidth = 93;
+    static final int statementPageSize = 20; // Transactions per statement page
 
     public BankAccount() {}
 
@@ -74,6 +70,7 @@ public class BankAccount {
      * @param cardType String The type of debit card the customer wants.
      * @return boolean True if account successfully created, false otherwise.
      */
+    @SuppressWarnings("try")
     boolean createBankAccount(int userCPR, String accountType, String cardType) throws IOException {
         // Make sure user CPR exists before proceeding
         UserRead user = new UserRead();
@@ -87,67 +84,53 @@ public class BankAccount {
 
         // Check user is inputting a valid card type
         this.cardType = cardType.strip();
-        // TODO: replace with List helper for cleaner code
-        if(!this.cardType.equals(cardTypes[0]) && !this.cardType.equals(cardTypes[1]) && !this.cardType.equals(cardTypes[2]))
-            throw new RuntimeException("Account type must be either " + cardTypes[0] + " or " + cardTypes[1] + " or " + cardTypes[2]);
-
-        // Check user doesn't already have an account of the same type
-        for (String account : getAccountsData()) {
-            String[] accountData = account.split(";");
-
-            if (Integer.parseInt(accountData[1]) == this.userCPR) { // Check an account of this type doesn't already exist for this customer
-                if (String.valueOf(accountData[2]).equals(this.accountType)) {
-                    throw new RuntimeException("This customer already has an account of type "
-                            + this.accountType + ". Please create a different type account or cancel.");
-                }
-            }
-        }
+        CardProductRegistry cardProducts = CardProductRegistry.get();
+        int cardTypeCode = cardProducts.getCode(this.cardType);
 
-        // Create debit card based on card type
-        switch (cardType) {
-            case "DebitMastercard":
-                DebitMastercard card = new DebitMastercard();
-                card.cardId = card.generateCardId();
-                debitCardId = card.cardId;
-                break;
-
-            case "DebitMastercardTitanium":
-                DebitMastercardTitanium cardTitanium = new DebitMastercardTitanium();
-                cardTitanium.cardId = cardTitanium.generateCardId();
-                debitCardId = cardTitanium.cardId;
-                break;
-
-            case "DebitMastercardPlatinum":
-                DebitMastercardPlatinum cardPlatinum = new DebitMastercardPlatinum();
-                cardPlatinum.cardId = cardPlatinum.generateCardId();
-                debitCardId = cardPlatinum.cardId;
-                break;
+        if (cardTypeCode < 0)
+            throw new RuntimeException("Card type must be one of " + String.join(", ", cardProducts.cardTypes));
 
-            default:
-                throw new RuntimeException("Debit card must be either a regular mastercard, a titanium mastercard, or a platinum mastercard.");
-        }
+        AccountStore accounts = Storage.get().accounts();
 
-        this.bankAccountID = generateBankAccountId();
-        this.userCPR = userCPR;
-        this.accountType = accountType;
-        this.cardType = cardType;
-        BankAccount bankAccount = new BankAccount(this.bankAccountID, this.userCPR, this.accountType, debitCardId, this.cardType, this.balance, this.overdraftCount);
-        String valueBreak = ";";
-        String accountString = bankAccount.bankAccountID +
-                valueBreak + bankAccount.userCPR +
-                valueBreak + bankAccount.accountType +
-                valueBreak + bankAccount.debitCardId +
-                valueBreak + bankAccount.cardType +
-                valueBreak + bankAccount.balance +
-                valueBreak + bankAccount.overdraftCount;
+        try (StoreLock accountsLock = accounts.lockForUpdate()) { // Another terminal can't take the same account ID in between
+            // Check user doesn't already have an account of the same type
+            for (String account : getAccountsData()) {
+                String[] accountData = account.split(";");
 
-        try {
-            Files.writeString(filepath, accountString + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            return true;
+                if (Integer.parseInt(accountData[1]) == this.userCPR) { // Check an account of this type doesn't already exist for this customer
+                    if (String.valueOf(accountData[2]).equals(this.accountType)) {
+                        throw new RuntimeException("This customer already has an account of type "
+                                + this.accountType + ". Please create a different type account or cancel.");
+                    }
+                }
+            }
 
-        } catch (IOException e) {
-            System.err.println("Error writing to file: " + e.getMessage());
-            return false;
+            // Create debit card based on card type
+            DebitCard card = new DebitCard(cardProducts, cardTypeCode);
+            debitCardId = card.generateCardId();
+
+            this.bankAccountID = generateBankAccountId();
+            this.userCPR = userCPR;
+            this.accountType = accountType;
+            this.cardType = cardType;
+            BankAccount bankAccount = new BankAccount(this.bankAccountID, this.userCPR, this.accountType, debitCardId, this.cardType, this.balance, this.overdraftCount);
+            String valueBreak = ";";
+            String accountString = bankAccount.bankAccountID +
+                    valueBreak + bankAccount.userCPR +
+                    valueBreak + bankAccount.accountType +
+                    valueBreak + bankAccount.debitCardId +
+                    valueBreak + bankAccount.cardType +
+                    valueBreak + bankAccount.balance +
+                    valueBreak + bankAccount.overdraftCount;
+
+            try {
+                accounts.add(bankAccount.bankAccountID, accountString);
+                return true;
+
+            } catch (IOException e) {
+                System.err.println("Error writing to file: " + e.getMessage());
+                return false;
+            }
         }
     }
 
@@ -174,24 +157,17 @@ public class BankAccount {
      * @return int Card ID, or 0 if none found.
      */
     int getLastGeneratedCardId() throws IOException {
-        List<String> data = getAccountsData();
-
-        if (data.isEmpty()) return 0;
-
-        String lastRow = data.get(data.size() - 1);
-        String[] lastRowData = lastRow.split(";");
-
-        return Integer.parseInt(lastRowData[0]);
+        return Storage.get().accounts().getLastAccountId();
     }
 
     /**
-     * Get the data of all the bank accounts saved in accounts.txt.
+     * Get the data of all the bank accounts in the account store.
      * @return List Accounts data, each row a different account. Data file data row structure: accountId;userCPR;accountType;cardId;cardType
      * @throws IOException IOException handling.
      */
     List<String> getAccountsData() throws IOException {
 
-        return Files.readAllLines(filepath);
+        return Storage.get().accounts().readAll();
     }
 
     /**
@@ -202,36 +178,45 @@ public class BankAccount {
      */
     BankAccount getAccount(int accountId) throws IOException {
         BankAccount bankAccount = new BankAccount();
+        BankOperationEvent event = new BankOperationEvent("getAccount", accountId);
+        event.begin();
 
-        for (String account : getAccountsData()) {
-            String[] accountData = account.split(";");
-
-            if (Integer.parseInt(accountData[0]) == accountId) {
-                bankAccount.bankAccountID = accountId;
-                bankAccount.userCPR = Integer.parseInt(accountData[1]);
-                bankAccount.accountType = accountData[2];
-                bankAccount.debitCardId = Integer.parseInt(accountData[3]);
-                bankAccount.cardType = accountData[4];
-                bankAccount.balance = Double.parseDouble(accountData[5]);
-                bankAccount.overdraftCount =Integer.parseInt(accountData[6]);
+        try {
+            List<String> accountsData = getAccountsData();
+            event.touched(accountsData);
 
-                return bankAccount;
+            for (String account : accountsData) {
+                String[] accountData = account.split(";");
+                event.rowsScanned++;
+
+                if (Integer.parseInt(accountData[0]) == accountId) {
+                    bankAccount.bankAccountID = accountId;
+                    bankAccount.userCPR = Integer.parseInt(accountData[1]);
+                    bankAccount.accountType = accountData[2];
+                    bankAccount.debitCardId = Integer.parseInt(accountData[3]);
+                    bankAccount.cardType = accountData[4];
+                    bankAccount.balance = Double.parseDouble(accountData[5]);
+                    bankAccount.overdraftCount =Integer.parseInt(accountData[6]);
+
+                    return bankAccount;
+                }
             }
-        }
 
-        throw new IOException("No account with ID " + accountId + " found.");
+            throw new IOException("No account with ID " + accountId + " found.");
+        } finally {
+            event.commit();
+        }
     }
 
     /**
      * Check if a user exists based on CPR number. Returns true if it exists, otherwise false.
+     * With the text files, IDs ruled out by the existence filter return without reading the data file.
      * @param bankAccountID int bank account number
      * @return boolean True if the bank account was found, otherwise false.
      * @throws IOException IOException
      */
     boolean exists(int bankAccountID) throws IOException {
-        BankAccount bankAccount = getAccount(bankAccountID);
-
-        return bankAccount != null;
+        return Storage.get().accounts().exists(bankAccountID);
     }
 
     /**
@@ -265,21 +250,14 @@ public class BankAccount {
             }
             System.out.println(" ");
 
-            System.out.print("Card Type ([M] Debit Mastercard [T] Debit Mastercard Titanium [P] Debit Mastercard Platinum): ");
+            CardProductRegistry cardProducts = CardProductRegistry.get();
+            System.out.print("Card Type (" + cardProducts.getMenuOptions() + "): ");
             choice = inputScanner.next().strip().toUpperCase().charAt(0);
-            switch (choice) {
-                case 'M':
-                    cardType = cardTypes[0];
-                    break;
-                case 'T':
-                    cardType = cardTypes[1];
-                    break;
-                case 'P':
-                    cardType = cardTypes[2];
-                    break;
-                default:
-                    throw new RuntimeException("Please type in M / T / P for choice of card type");
-            }
+            int cardTypeCode = cardProducts.getCodeByMenuKey(choice);
+
+            if (cardTypeCode < 0) throw new RuntimeException("Please type in one of the letters shown for choice of card type");
+
+            cardType = cardProducts.cardTypes[cardTypeCode];
             System.out.println(" ");
 
             System.out.println("Creating new bank account...");
@@ -354,7 +332,8 @@ public class BankAccount {
     }
 
     /**
-     * View bank account's complete history account statement.
+     * View bank account's complete history account statement, one page at a time: next and previous pages, or jump to a date.
+     * Only the page shown is read from the transaction history.
      * @param scanner Scanner System.in input scanner
      * @param user Object   UserRead object, must possess all the details (cpr, firstName, lastName
      */
@@ -365,22 +344,14 @@ public class BankAccount {
         int inputAccountId = Integer.parseInt(scanner.nextLine().strip());
 
         try {
+            long startTime = System.nanoTime();
             BankAccount account = getAccount(inputAccountId);
 
             if (!Objects.equals(user.userRole, "banker") && account.userCPR != user.cpr) throw new IOException("You are not authorized to view this account");
 
-            System.out.println(" ");
-            System.out.println(account.accountType.toUpperCase() + " ACCOUNT NO." + account.bankAccountID + " STATEMENT:");
-            HashMap<Integer, String[]> accountTransactions = new HashMap<>();
-
-            List<String> accountCompleteHistory = new TransactionHistory().getAccountTransactionHistory(inputAccountId, "all");
-
-            for (int _i = 0; _i < accountCompleteHistory.size(); _i++) { // Find and store user's accounts
-                String record = accountCompleteHistory.get(_i);
-                String[] recordData = record.split(";");
-
-                accountTransactions.put(_i, recordData);
-            }
+            TransactionCursor cursor = new TransactionHistory().openAccountStatement(inputAccountId, statementPageSize);
+            List<String> page = cursor.next();
+            BankMetrics.statement.recordSince(startTime);
 
             System.out.println(" ");
             System.out.println("---------------------------------------------------------------------------------------------");
@@ -393,47 +364,69 @@ public class BankAccount {
             System.out.println("ISSUE DATE: " + utilityComponent.getTodayDate());
             System.out.println("CUSTOMER NAME: " + customerName);
             System.out.println("ATTACHED DEBIT CARD: " + account.cardType);
-            System.out.println(" ");
-            System.out.println("      DATE     |      TIME     |           DESCRIPTION           |    AMOUNT   |   BALANCE   ");
-            System.out.println("---------------------------------------------------------------------------------------------");
 
-            double[] totalWithdrawals = {0.0};
-            double[] totalDeposits = {0.0};
+            if (page.isEmpty()) System.out.println("No transactions yet.");
 
-            accountTransactions.forEach((key, value) -> {
-                LocalDate date = utilityComponent.getDateFromDatetime(value[2]);
-                String time = utilityComponent.getFormattedTimeFromDatetime(value[2], "HH:mm:ss a");
-                String transactionType = value[3];
-                String description = "";
-                String transferToAccount = value[5];
-                String amount = value[4];
-                String balance = value[7];
+            boolean pageChanged = !page.isEmpty();
 
-                switch (transactionType) {
-                    case "withdraw":
-                        totalWithdrawals[0] += Double.parseDouble(amount);
-                        description = "ATM Withdrawal";
+            while (!page.isEmpty()) {
+                if (pageChanged) printStatementPage(page, utilityComponent);
+
+                System.out.print("(N) Next page, (P) Previous page, (J) Jump to date, (Q) Back to main menu: ");
+                String choice = scanner.nextLine().strip().toLowerCase();
+                List<String> moved;
+                startTime = System.nanoTime();
+
+                switch (choice) {
+                    case "n":
+                        moved = cursor.next();
+
+                        if (moved.isEmpty()) System.out.println("This is the last page.");
                         break;
-                    case "deposit":
-                        totalDeposits[0] += Double.parseDouble(amount);
-                        description = "ATM Deposit";
+
+                    case "p":
+                        moved = cursor.previous();
+
+                        if (moved.isEmpty()) System.out.println("This is the first page.");
                         break;
-                    case "transfer":
-                        totalWithdrawals[0] += Double.parseDouble(amount);
-                        description = "Transfer to account No." + transferToAccount;
+
+                    case "j":
+                        System.out.print("Date (YYYY-MM-DD): ");
+                        LocalDate date;
+
+                        try {
+                            date = LocalDate.parse(scanner.nextLine().strip());
+                        } catch (DateTimeParseException e) {
+                            System.err.println("Please type the date in the format YYYY-MM-DD, for example 2025-12-01.");
+                            moved = List.of();
+                            break;
+                        }
+
+                        moved = cursor.seek(date.atStartOfDay());
+
+                        if (moved.isEmpty()) System.out.println("No transactions on or after " + date + ".");
+                        break;
+
+                    case "q":
+                        moved = List.of();
+                        break;
+
+                    default:
+                        System.err.println("Please type in the letter corresponding to 1 of the choices only.");
+                        moved = List.of();
                         break;
                 }
 
-                System.out.println(utilityComponent.padString(date.toString(), 15)
-                        + "|" + utilityComponent.padString(time, 15)
-                        + "|" + utilityComponent.padString(description, 33)
-                        + "|" + utilityComponent.padString("$"+amount, 13)
-                        + "|" + utilityComponent.padString("$"+balance, 13));
-            });
+                if (choice.equals("q")) break;
+
+                pageChanged = !moved.isEmpty();
+
+                if (pageChanged) {
+                    page = moved;
+                    BankMetrics.statement.recordSince(startTime);
+                }
+            }
 
-            System.out.println(" ");
-            System.out.println("TOTAL WITHDRAWALS: $" + totalWithdrawals[0]);
-            System.out.println("TOTAL DEPOSITS: $" + totalDeposits[0]);
             System.out.println(" ");
             System.out.println("---------------------------------------------------------------------------------------------");
 
@@ -446,6 +439,44 @@ public class BankAccount {
         }
     }
 
+    /**
+     * Print a page of an account statement, with the page's totals.
+     * @param page List Data rows of the page, in time order.
+     * @param utilityComponent UtilityComponent
+     */
+    private void printStatementPage(List<String> page, UtilityComponent utilityComponent) {
+        double totalWithdrawals = 0.0;
+        double totalDeposits = 0.0;
+
+        System.out.println(" ");
+        System.out.println(statementTableHeader);
+        System.out.println(statementTableDivider);
+
+        for (String transaction : page) {
+            String[] transactionData = transaction.split(";");
+            double amount = Double.parseDouble(transactionData[4]);
+
+            switch (transactionData[3]) {
+                case "withdraw":
+                case "transfer":
+                case "fee":
+                    totalWithdrawals += amount;
+                    break;
+                case "deposit":
+                case "interest":
+                    totalDeposits += amount;
+                    break;
+            }
+
+            System.out.println(formatStatementRow(transactionData, utilityComponent));
+        }
+
+        System.out.println(" ");
+        System.out.println("PAGE WITHDRAWALS: $" + totalWithdrawals);
+        System.out.println("PAGE DEPOSITS: $" + totalDeposits);
+        System.out.println(" ");
+    }
+
     /**
      * View bank account's statement based on date range.
      * @param scanner Scanner System.in input scanner
@@ -535,6 +566,7 @@ public class BankAccount {
             System.out.println(" ");
             System.out.println(utilityComponent.padString(title, 93));
             HashMap<Integer, String[]> accountTransactions = new HashMap<>();
+            long startTime = System.nanoTime();
 
             List<String> accountHistory = new TransactionHistory().getAccountTransactionHistoryByDateRange(inputAccountId, "all", startDate, endDate);
 
@@ -552,41 +584,29 @@ public class BankAccount {
             System.out.println("CUSTOMER NAME: " + customerName);
             System.out.println("ATTACHED DEBIT CARD: " + account.cardType);
             System.out.println(" ");
-            System.out.println("      DATE     |      TIME     |           DESCRIPTION           |    AMOUNT   |   BALANCE   ");
-            System.out.println("---------------------------------------------------------------------------------------------");
+            System.out.println(statementTableHeader);
+            System.out.println(statementTableDivider);
 
             double[] totalWithdrawals = {0.0};
             double[] totalDeposits = {0.0};
 
             accountTransactions.forEach((key, value) -> {
-                LocalDate date = utilityComponent.getDateFromDatetime(value[2]);
-                String time = utilityComponent.getFormattedTimeFromDatetime(value[2], "HH:mm:ss a");
                 String transactionType = value[3];
-                String description = "";
-                String transferToAccount = value[5];
-                String amount = value[4];
-                String balance = value[7];
+                double amount = Double.parseDouble(value[4]);
 
                 switch (transactionType) {
                     case "withdraw":
-                        totalWithdrawals[0] += Double.parseDouble(amount);
-                        description = "ATM Withdrawal";
+                    case "transfer":
+                    case "fee":
+                        totalWithdrawals[0] += amount;
                         break;
                     case "deposit":
-                        totalDeposits[0] += Double.parseDouble(amount);
-                        description = "ATM Deposit";
-                        break;
-                    case "transfer":
-                        totalWithdrawals[0] += Double.parseDouble(amount);
-                        description = "Transfer to account No." + transferToAccount;
+                    case "interest":
+                        totalDeposits[0] += amount;
                         break;
                 }
 
-                System.out.println(utilityComponent.padString(date.toString(), 15)
-                        + "|" + utilityComponent.padString(time, 15)
-                        + "|" + utilityComponent.padString(description, 33)
-                        + "|" + utilityComponent.padString("$"+amount, 13)
-                        + "|" + utilityComponent.padString("$"+balance, 13));
+                System.out.println(formatStatementRow(value, utilityComponent));
             });
 
             System.out.println(" ");
@@ -594,6 +614,7 @@ public class BankAccount {
             System.out.println("TOTAL DEPOSITS: $" + totalDeposits[0]);
             System.out.println(" ");
             System.out.println("---------------------------------------------------------------------------------------------");
+            BankMetrics.statementSearch.recordSince(startTime);
 
             user.backToMainMenu(scanner, user);
 
@@ -603,4 +624,93 @@ public class BankAccount {
 
         }
     }
+
+    /**
+     * View a bank account's last transactions, newest first. Reads the history from its end, so it stays fast however long the history is.
+     * @param scanner Scanner System.in input scanner
+     * @param user Object   UserRead object, must possess all the details (cpr, firstName, lastName
+     */
+    void displayRecentActivity(Scanner scanner, UserRead user) {
+        final UtilityComponent utilityComponent = new UtilityComponent();
+        System.out.println("RECENT ACTIVITY:");
+        System.out.print("Account ID: ");
+        int inputAccountId = Integer.parseInt(scanner.nextLine().strip());
+
+        try {
+            BankAccount account = getAccount(inputAccountId);
+
+            if (!Objects.equals(user.userRole, "banker") && account.userCPR != user.cpr) throw new IOException("You are not authorized to view this account");
+
+            System.out.print("Number of transactions (Enter for 10): ");
+            String countInput = scanner.nextLine().strip();
+            int count = countInput.isEmpty() ? 10 : Integer.parseInt(countInput);
+            long startTime = System.nanoTime();
+
+            List<String> recentTransactions = new TransactionHistory().getRecentAccountTransactions(inputAccountId, count);
+
+            System.out.println(" ");
+            System.out.println("---------------------------------------------------------------------------------------------");
+            System.out.println(" ");
+            System.out.println(utilityComponent.padString(account.accountType.toUpperCase() + " ACCOUNT NO." + account.bankAccountID + " LAST " + count + " TRANSACTIONS", 93));
+            System.out.println(" ");
+            System.out.println(statementTableHeader);
+            System.out.println(statementTableDivider);
+
+            for (String transaction : recentTransactions) System.out.println(formatStatementRow(transaction.split(";"), utilityComponent));
+
+            if (recentTransactions.isEmpty()) System.out.println("No transactions yet.");
+
+            System.out.println(" ");
+            System.out.println("---------------------------------------------------------------------------------------------");
+            BankMetrics.recentActivity.recordSince(startTime);
+
+            user.backToMainMenu(scanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            displayRecentActivity(scanner, user);
+
+        }
+    }
+
+    /**
+     * Get the account statement description of a transaction history record.
+     * @param transactionType String Stored transaction type: deposit, withdraw, transfer, interest, fee
+     * @param transferToAccount String Account ID the amount was transferred to, 0 if not a transfer.
+     * @return String Statement description
+     */
+    String getStatementDescription(String transactionType, String transferToAccount) {
+        switch (transactionType) {
+            case "withdraw":
+                return "ATM Withdrawal";
+            case "deposit":
+                return "ATM Deposit";
+            case "transfer":
+                return "Transfer to account No." + transferToAccount;
+            case "interest":
+                return "Savings Interest";
+            case "fee":
+                return "Overdraft Fee";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Format a transaction history record as a single account statement table row.
+     * @param recordData String[] Transaction record elements: userId;bankAccountId;datetime;transactionType;transactionAmount;transferToAccountId;isOwnAccountTransfer;postTransactionBalance
+     * @param utilityComponent UtilityComponent
+     * @return String Statement table row
+     */
+    String formatStatementRow(String[] recordData, UtilityComponent utilityComponent) {
+        LocalDate date = utilityComponent.getDateFromDatetime(recordData[2]);
+        String time = utilityComponent.getFormattedTimeFromDatetime(recordData[2], "HH:mm:ss a");
+        String description = getStatementDescription(recordData[3], recordData[5]);
+
+        return utilityComponent.padString(date.toString(), 15)
+                + "|" + utilityComponent.padString(time, 15)
+                + "|" + utilityComponent.padString(description, 33)
+                + "|" + utilityComponent.padString("$" + recordData[4], 13)
+                + "|" + utilityComponent.padString("$" + recordData[7], 13);
+    }
 }
\ No newline at end of file
@@ -1,9 +1,7 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -26,6 +24,10 @@ public class BankAccountTransaction extends BankAccount {
      * Max number of overdraft withdrawals
      */
     final int overdraftCountCap = 2;
+    /**
+     * Daily limits of every card product
+     */
+    final CardLimitEngine cardLimitEngine = new CardLimitEngine();
 
     /**
      * Deposit money amount into specified bank account. Returns true if successful, otherwise false.
@@ -35,34 +37,29 @@ public class BankAccountTransaction extends BankAccount {
      * @throws IOException Exception handling
      */
     boolean deposit(BankAccount bankAccount, double amount) throws IOException {
-        List<String> accountsData = Files.readAllLines(filepath);
-
-        bankAccount.balance += amount;
-
-        if (bankAccount.overdraftCount > 0 && bankAccount.balance >= 0.0) bankAccount.overdraftCount = 0; // Remove overdraft ticks when balance brought back to positive.
+        long startTime = System.nanoTime();
+        BankOperationEvent event = new BankOperationEvent("deposit", bankAccount.bankAccountID);
+        event.amount = amount;
+        event.begin();
 
-        for (int _i = 0; _i < accountsData.size(); _i++) {
-            String row = accountsData.get(_i);
-
-            if (row.startsWith(String.valueOf(bankAccount.bankAccountID))) { // Update account record balance
-                String[] rowData = row.split(";");
-                double sum = Double.parseDouble(rowData[5]) + amount;
-                String newRowData = rowData[0] + ";"
-                        + rowData[1] + ";"
-                        + rowData[2] + ";"
-                        + rowData[3] + ";"
-                        + rowData[4] + ";"
-                        + sum        + ";"
-                        + bankAccount.overdraftCount;
-
-                accountsData.set(_i, newRowData);
-                Files.write(filepath, accountsData);
-
-                return true;
-            }
+        try {
+            return Storage.get().accounts().update(bankAccount.bankAccountID, row -> { // Update account record balance, other terminals wait until it's written
+                String[] rowData = row.split(";"); // Stored balance and overdraft count, another terminal may have changed them since the account was read
+                bankAccount.balance = Double.parseDouble(rowData[5]) + amount;
+                bankAccount.overdraftCount = Integer.parseInt(rowData[6]);
+
+                if (bankAccount.overdraftCount > 0 && bankAccount.balance >= 0.0) bankAccount.overdraftCount = 0; // Remove overdraft ticks when balance brought back to positive.
+
+                String newRowData = getUpdatedAccountRow(row, bankAccount.balance, bankAccount.overdraftCount);
+                event.rowsScanned = 1;
+                event.touched(newRowData);
+
+                return newRowData;
+            });
+        } finally {
+            event.commit();
+            BankMetrics.deposit.recordSince(startTime);
         }
-
-        return false;
     }
 
     /**
@@ -91,30 +88,7 @@ public class BankAccountTransaction extends BankAccount {
             System.out.print("Deposit Amount (USD): ");
             double amount = Double.parseDouble(inputScanner.nextLine().strip());
 
-            TransactionHistory transactionHistory = new TransactionHistory();
-            double transactionAmountToday = transactionHistory.sumOfTransactionAmountOnDateByType(accountId, "deposit", LocalDateTime.now().toLocalDate());
-            double theoreticalTransactionAmount = transactionAmountToday + amount;
-
-            // Check deposit amount does not exceed their card's limit
-            switch (account.cardType) {
-                case "DebitMastercard":
-                    DebitMastercard debitMastercard = new DebitMastercard(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercard.depositLimitDaily)
-                        throw new IOException("You cannot deposit more than your card's daily limit of $" + debitMastercard.depositLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-
-                case "DebitMastercardTitanium":
-                    DebitMastercardTitanium debitMastercardTitanium = new DebitMastercardTitanium(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercardTitanium.depositLimitDaily)
-                        throw new IOException("You cannot deposit more than your card's daily limit of $" + debitMastercardTitanium.depositLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-
-                case "DebitMastercardPlatinum":
-                    DebitMastercardPlatinum debitMastercardPlatinum = new DebitMastercardPlatinum(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercardPlatinum.depositLimitDaily)
-                        throw new IOException("You cannot deposit more than your card's daily limit of $" + debitMastercardPlatinum.depositLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-            }
+            checkDepositLimit(account, amount);
 
             if (deposit(account, amount)) {
                 // Add transaction in a transaction history file
@@ -141,49 +115,57 @@ public class BankAccountTransaction extends BankAccount {
      * @throws IOException Exception handling
      */
     boolean withdraw(BankAccount bankAccount, double amount) throws IOException {
-        List<String> accountsData = Files.readAllLines(filepath);
+        long startTime = System.nanoTime();
+        BankOperationEvent event = new BankOperationEvent("withdraw", bankAccount.bankAccountID);
+        event.amount = amount;
+        event.begin();
 
-        // If amount exceeds balance, overdraft the account
-        if (bankAccount.balance < amount) { // overdraft account
-            if (bankAccount.overdraftCount >= overdraftCountCap)
-                throw new IOException("Your account has already been overdrafted twice. Please resolve the fees and return the account to a positive balance before you can use it again.");
+        try {
+            boolean[] refused = new boolean[1];
+            boolean updated = Storage.get().accounts().update(bankAccount.bankAccountID, row -> { // Update account record balance, other terminals wait until it's written
+                String[] rowData = row.split(";"); // Stored balance and overdraft count, another terminal may have changed them since the account was read
+                double balance = Double.parseDouble(rowData[5]);
+                int overdraftCount = Integer.parseInt(rowData[6]);
 
-            if (bankAccount.balance < 0.0) { // Balance already negative
-                bankAccount.balance = bankAccount.balance - overDraftedWithdrawCap - overdraftFee;
-                bankAccount.overdraftCount++;
+                // If amount exceeds balance, overdraft the account
+                if (balance < amount) { // overdraft account
+                    if (overdraftCount >= overdraftCountCap) {
+                        refused[0] = true;
 
-            } else { // not yet overdrafted
-                bankAccount.balance = bankAccount.balance - amount - overdraftFee;
-                bankAccount.overdraftCount++;
+                        return row;
+                    }
 
-            }
-        } else {
-            bankAccount.balance -= amount;
+                    if (balance < 0.0) { // Balance already negative
+                        balance = balance - overDraftedWithdrawCap - overdraftFee;
 
-        }
+                    } else { // not yet overdrafted
+                        balance = balance - amount - overdraftFee;
 
-        for (int _i = 0; _i < accountsData.size(); _i++) {
-            String row = accountsData.get(_i);
+                    }
 
-            if (row.startsWith(String.valueOf(bankAccount.bankAccountID))) { // Update account record balance
-                String[] rowData = row.split(";");
-                double subtract = Double.parseDouble(rowData[5]) - amount;
-                String newRowData = rowData[0] + ";"
-                        + rowData[1] + ";"
-                        + rowData[2] + ";"
-                        + rowData[3] + ";"
-                        + rowData[4] + ";"
-                        + bankAccount.balance   + ";"
-                        + bankAccount.overdraftCount;
-
-                accountsData.set(_i, newRowData);
-                Files.write(filepath, accountsData);
-
-                return true;
-            }
-        }
+                    overdraftCount++;
 
-        return false;
+                } else {
+                    balance -= amount;
+
+                }
+
+                bankAccount.balance = balance;
+                bankAccount.overdraftCount = overdraftCount;
+                String newRowData = getUpdatedAccountRow(row, balance, overdraftCount);
+                event.rowsScanned = 1;
+                event.touched(newRowData);
+
+                return newRowData;
+            });
+
+            if (refused[0]) throw new IOException("Your account has already been overdrafted twice. Please resolve the fees and return the account to a positive balance before you can use it again.");
+
+            return updated;
+        } finally {
+            event.commit();
+            BankMetrics.withdraw.recordSince(startTime);
+        }
     }
 
     /**
@@ -217,30 +199,7 @@ public class BankAccountTransaction extends BankAccount {
             System.out.print("Withdraw Amount (USD): ");
             double amount = Double.parseDouble(inputScanner.nextLine().strip());
 
-            TransactionHistory transactionHistory = new TransactionHistory();
-            double transactionAmountToday = transactionHistory.sumOfTransactionAmountOnDateByType(accountId, "withdraw", LocalDateTime.now().toLocalDate());
-            double theoreticalTransactionAmount = transactionAmountToday + amount;
-
-            // Check withdraw amount does not exceed their card's limit
-            switch (account.cardType) {
-                case "DebitMastercard":
-                    DebitMastercard debitMastercard = new DebitMastercard(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercard.withdrawLimitDaily)
-                        throw new IOException("You cannot withdraw more than your card's daily limit of $" + debitMastercard.withdrawLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-
-                case "DebitMastercardTitanium":
-                    DebitMastercardTitanium debitMastercardTitanium = new DebitMastercardTitanium(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercardTitanium.withdrawLimitDaily)
-                        throw new IOException("You cannot withdraw more than your card's daily limit of $" + debitMastercardTitanium.withdrawLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-
-                case "DebitMastercardPlatinum":
-                    DebitMastercardPlatinum debitMastercardPlatinum = new DebitMastercardPlatinum(account.debitCardId);
-                    if (theoreticalTransactionAmount > debitMastercardPlatinum.withdrawLimitDaily)
-                        throw new IOException("You cannot withdraw more than your card's daily limit of $" + debitMastercardPlatinum.withdrawLimitDaily + ". Current total withdrawals for today is $"+ transactionAmountToday);
-                    break;
-            }
+            checkWithdrawLimits(account, amount);
 
             boolean withdrawCapped = false;
 
@@ -283,56 +242,144 @@ public class BankAccountTransaction extends BankAccount {
      * @throws IOException Exception handling
      */
     boolean transfer(BankAccount withdrawBankAccount, BankAccount depositBankAccount, double amount) throws IOException {
-        List<String> accountsData = Files.readAllLines(filepath);
+        long startTime = System.nanoTime();
+        BankOperationEvent event = new BankOperationEvent("transfer", withdrawBankAccount.bankAccountID);
+        event.counterpartyAccountId = depositBankAccount.bankAccountID;
+        event.amount = amount;
+        event.begin();
+        AccountStore accounts = Storage.get().accounts();
+        StoreLock accountsLock = accounts.lockForUpdate(); // Other terminals wait until both balances are written
 
-        // Check amount does not exceed balance
-        if (withdrawBankAccount.balance < amount) throw new IOException("Transfer amount cannot exceed balance.");
+        try {
+            boolean[] refused = new boolean[1];
+            boolean withdrawn = accounts.update(withdrawBankAccount.bankAccountID, row -> { // Update account record balances, from the stored ones
+                String[] rowData = row.split(";");
+                double balance = Double.parseDouble(rowData[5]);
 
-        withdrawBankAccount.balance -= amount;
-        depositBankAccount.balance += amount;
+                // Check amount does not exceed balance
+                if (balance < amount) {
+                    refused[0] = true;
 
-        if (depositBankAccount.overdraftCount > 0 && depositBankAccount.balance >= 0.0) depositBankAccount.overdraftCount = 0; // Remove overdraft ticks when balance brought back to positive.
+                    return row;
+                }
 
+                withdrawBankAccount.balance = balance - amount;
+                withdrawBankAccount.overdraftCount = Integer.parseInt(rowData[6]);
+                String newRowData = getUpdatedAccountRow(row, withdrawBankAccount.balance, withdrawBankAccount.overdraftCount);
+                event.touched(newRowData);
 
-        Boolean[] accountsUpdated = {false, false};
+                return newRowData;
+            });
 
-        for (int _i = 0; _i < accountsData.size(); _i++) {
-            String row = accountsData.get(_i);
+            if (refused[0]) throw new IOException("Transfer amount cannot exceed balance.");
 
-            if (row.startsWith(String.valueOf(withdrawBankAccount.bankAccountID))) { // Update account record balance
+            boolean deposited = withdrawn && accounts.update(depositBankAccount.bankAccountID, row -> {
                 String[] rowData = row.split(";");
-                double subtract = Double.parseDouble(rowData[5]) - amount;
-                String newRowData = rowData[0] + ";"
-                        + rowData[1] + ";"
-                        + rowData[2] + ";"
-                        + rowData[3] + ";"
-                        + rowData[4] + ";"
-                        + subtract   + ";"
-                        + withdrawBankAccount.overdraftCount;
-
-                accountsData.set(_i, newRowData);
-                Files.write(filepath, accountsData);
-
-                accountsUpdated[0] = true;
-            } else if (row.startsWith(String.valueOf(depositBankAccount.bankAccountID))) {
-                String[] rowData = row.split(";");
-                double sum = Double.parseDouble(rowData[5]) + amount;
-                String newRowData = rowData[0] + ";"
-                        + rowData[1] + ";"
-                        + rowData[2] + ";"
-                        + rowData[3] + ";"
-                        + rowData[4] + ";"
-                        + sum        + ";"
-                        + depositBankAccount.overdraftCount;
-
-                accountsData.set(_i, newRowData);
-                Files.write(filepath, accountsData);
-
-                accountsUpdated[1] = true;
-            }
+                depositBankAccount.balance = Double.parseDouble(rowData[5]) + amount;
+                depositBankAccount.overdraftCount = Integer.parseInt(rowData[6]);
+
+                if (depositBankAccount.overdraftCount > 0 && depositBankAccount.balance >= 0.0) depositBankAccount.overdraftCount = 0; // Remove overdraft ticks when balance brought back to positive.
+
+                String newRowData = getUpdatedAccountRow(row, depositBankAccount.balance, depositBankAccount.overdraftCount);
+                event.touched(newRowData);
+
+                return newRowData;
+            });
+            event.rowsScanned = 2;
+
+            return withdrawn && deposited;
+        } finally {
+            accountsLock.close();
+            event.commit();
+            BankMetrics.transfer.recordSince(startTime);
         }
+    }
+
+    /**
+     * Check a deposit against the card's daily deposit limit.
+     * @param account BankAccount Account to deposit into.
+     * @param amount double Deposit amount in USD
+     * @throws IOException The deposit would exceed the limit, or transaction history reading error.
+     */
+    void checkDepositLimit(BankAccount account, double amount) throws IOException {
+        double transactionAmountToday = new TransactionHistory().sumOfTransactionAmountOnDateByType(account.bankAccountID, "deposit", LocalDateTime.now().toLocalDate());
+
+        // Check deposit amount does not exceed their card's limit
+        if (cardLimitEngine.exceedsDailyLimit(account.cardType, CardProductRegistry.depositLimitDaily, transactionAmountToday, amount))
+            throw new IOException("You cannot deposit more than your card's daily limit of $" + cardLimitEngine.getLimit(account.cardType, CardProductRegistry.depositLimitDaily) + ". Current total deposits for today is $"+ transactionAmountToday);
+    }
+
+    /**
+     * Check a withdrawal against the card's daily withdraw limit and its hourly, 7-day and 30-day limits.
+     * @param account BankAccount Account to withdraw from.
+     * @param amount double Withdraw amount in USD
+     * @throws IOException The withdrawal would exceed a limit, or transaction history reading error.
+     */
+    void checkWithdrawLimits(BankAccount account, double amount) throws IOException {
+        double transactionAmountToday = new TransactionHistory().sumOfTransactionAmountOnDateByType(account.bankAccountID, "withdraw", LocalDateTime.now().toLocalDate());
+
+        // Check withdraw amount does not exceed their card's limit
+        if (cardLimitEngine.exceedsDailyLimit(account.cardType, CardProductRegistry.withdrawLimitDaily, transactionAmountToday, amount))
+            throw new IOException("You cannot withdraw more than your card's daily limit of $" + cardLimitEngine.getLimit(account.cardType, CardProductRegistry.withdrawLimitDaily) + ". Current total withdrawals for today is $"+ transactionAmountToday);
+
+        checkVelocityLimits(account, amount);
+    }
+
+    /**
+     * Check a transfer against the card's daily transfer limit (own or other account's) and its hourly, 7-day and 30-day limits.
+     * @param account BankAccount Account to transfer from.
+     * @param transferAccount BankAccount Account to transfer to.
+     * @param amount double Transfer amount in USD
+     * @throws IOException Same account, the transfer would exceed a limit, or transaction history reading error.
+     */
+    void checkTransferLimits(BankAccount account, BankAccount transferAccount, double amount) throws IOException {
+        // Check user didn't input same account
+        if (account.bankAccountID == transferAccount.bankAccountID) throw new IOException("The account to transfer from must be different than the account to transfer to.");
+
+        // Check if transfer account belongs to the user or someone else
+        boolean isOwnAccount = account.userCPR == transferAccount.userCPR;
+        double transactionAmountToday = new TransactionHistory().sumOfTransactionAmountOnDateByType(account.bankAccountID, "transfer", LocalDateTime.now().toLocalDate(), isOwnAccount);
+
+        // Check transfer amount does not exceed their card's limit
+        int transferLimitType = isOwnAccount ? CardProductRegistry.transferLimitOwnAccountDaily : CardProductRegistry.transferLimitOtherAccountDaily;
+
+        if (cardLimitEngine.exceedsDailyLimit(account.cardType, transferLimitType, transactionAmountToday, amount))
+            throw new IOException("You cannot transfer more than your card's daily limit of $" + cardLimitEngine.getLimit(account.cardType, transferLimitType) + ". Your current total transfers for today is $" + transactionAmountToday);
+
+        checkVelocityLimits(account, amount);
+    }
+
+    /**
+     * Check an outgoing amount does not exceed the card's hourly, 7-day and 30-day limits.
+     */
+    private void checkVelocityLimits(BankAccount account, double amount) throws IOException {
+        VelocityLimits velocityLimits = VelocityLimits.get();
+        int exceededWindow = velocityLimits.getExceededWindow(account, amount);
+
+        if (exceededWindow >= 0) throw new IOException(velocityLimits.getExceededMessage(account, exceededWindow));
+    }
 
-        return accountsUpdated[0] && accountsUpdated[1];
+    /**
+     * Build an account's data row with a new balance and overdraft count. Columns after the overdraft count are kept.
+     * @param row String Stored data row: accountId;userCPR;accountType;cardId;cardType;balance;overdraftCount
+     * @param balance double New balance
+     * @param overdraftCount int New overdraft count
+     * @return String New data row
+     */
+    String getUpdatedAccountRow(String row, double balance, int overdraftCount) {
+        String[] rowData = row.split(";");
+        StringBuilder newRow = new StringBuilder()
+                .append(rowData[0]).append(';')
+                .append(rowData[1]).append(';')
+                .append(rowData[2]).append(';')
+                .append(rowData[3]).append(';')
+                .append(rowData[4]).append(';')
+                .append(balance).append(';')
+                .append(overdraftCount);
+
+        for (int i = 7; i < rowData.length; i++) newRow.append(';').append(rowData[i]); // Interest accrual state of savings accounts
+
+        return newRow.toString();
     }
 
     /**
@@ -372,58 +419,10 @@ public class BankAccountTransaction extends BankAccount {
             int transferAccountId = Integer.parseInt(inputScanner.nextLine().strip());
             BankAccount transferAccount = getAccount(transferAccountId);
 
-            // Check user didn't input same account
-            if (account.bankAccountID == transferAccount.bankAccountID) throw new IOException("The account to transfer from must be different than the account to transfer to.");
+            checkTransferLimits(account, transferAccount, amount);
 
             // Check if transfer account belongs to the user or someone else
             boolean isOwnAccount = account.userCPR == transferAccount.userCPR;
-            TransactionHistory transactionHistory = new TransactionHistory();
-            double transactionAmountToday = transactionHistory.sumOfTransactionAmountOnDateByType(accountId, "transfer", LocalDateTime.now().toLocalDate(), isOwnAccount);
-            double theoreticalTransactionAmount = transactionAmountToday + amount;
-
-            if (isOwnAccount) {
-                // Check transfer amount does not exceed their card's limit
-                switch (account.cardType) {
-                    case "DebitMastercard":
-                        DebitMastercard debitMastercard = new DebitMastercard(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercard.transferLimitOwnAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercard.transferLimitOwnAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-
-                    case "DebitMastercardTitanium":
-                        DebitMastercardTitanium debitMastercardTitanium = new DebitMastercardTitanium(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercardTitanium.transferLimitOwnAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercardTitanium.transferLimitOwnAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-
-                    case "DebitMastercardPlatinum":
-                        DebitMastercardPlatinum debitMastercardPlatinum = new DebitMastercardPlatinum(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercardPlatinum.transferLimitOwnAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercardPlatinum.transferLimitOwnAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-                }
-            } else {
-                // Check transfer amount does not exceed their card's limit
-                switch (account.cardType) {
-                    case "DebitMastercard":
-                        DebitMastercard debitMastercard = new DebitMastercard(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercard.transferLimitOtherAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercard.transferLimitOtherAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-
-                    case "DebitMastercardTitanium":
-                        DebitMastercardTitanium debitMastercardTitanium = new DebitMastercardTitanium(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercardTitanium.transferLimitOtherAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercardTitanium.transferLimitOtherAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-
-                    case "DebitMastercardPlatinum":
-                        DebitMastercardPlatinum debitMastercardPlatinum = new DebitMastercardPlatinum(account.debitCardId);
-                        if (theoreticalTransactionAmount > debitMastercardPlatinum.transferLimitOtherAccountDaily)
-                            throw new IOException("You cannot transfer more than your card's daily limit of $" + debitMastercardPlatinum.transferLimitOtherAccountDaily + ". Your current total transfers for today is $" + transactionAmountToday);
-                        break;
-                }
-            }
 
             if (transfer(account, transferAccount, amount)) {
                 // Add transaction in a transaction history file
@@ -0,0 +1,81 @@
+package com.ga.cmdbank;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of operation and data file metrics, each published once to the platform MBean server
+ * under the com.ga.cmdbank JMX domain (viewable with JConsole / VisualVM).
+ * Started with -Dcmdbank.jmx=false, metrics are collected but not published, which saves starting the MBean server.
+ */
+public final class BankMetrics {
+    static final boolean publishJmx = Boolean.parseBoolean(System.getProperty("cmdbank.jmx", "true"));
+
+    private static final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Path, DataFileMetrics> dataFiles = new ConcurrentHashMap<>();
+
+    static final OperationMetrics deposit = operation("deposit");
+    static final OperationMetrics withdraw = operation("withdraw");
+    static final OperationMetrics transfer = operation("transfer");
+    static final OperationMetrics login = operation("login");
+    static final OperationMetrics statement = operation("statement");
+    static final OperationMetrics statementSearch = operation("statementSearch");
+    static final OperationMetrics recentActivity = operation("recentActivity");
+    static final OperationMetrics recordTransaction = operation("recordTransaction");
+
+    private BankMetrics() {}
+
+    /**
+     * Get (or create and register) the metrics of a named operation.
+     * @param operationName String Operation name
+     * @return OperationMetrics
+     */
+    static OperationMetrics operation(String operationName) {
+        return operations.computeIfAbsent(operationName, name -> {
+            OperationMetrics metrics = new OperationMetrics(name);
+            register("com.ga.cmdbank:type=Operation,name=" + name, metrics);
+
+            return metrics;
+        });
+    }
+
+    /**
+     * Get (or create and register) the metrics of a data file.
+     * @param filePath Path Data file path
+     * @return DataFileMetrics
+     */
+    static DataFileMetrics dataFile(Path filePath) {
+        DataFileMetrics metrics = dataFiles.get(filePath); // Plain get first so the hot path skips computeIfAbsent's locking
+
+        if (metrics != null) return metrics;
+
+        return dataFiles.computeIfAbsent(filePath, path -> {
+            DataFileMetrics newMetrics = new DataFileMetrics(path.toString());
+            register("com.ga.cmdbank:type=DataFile,name=" + ObjectName.quote(path.toString()), newMetrics);
+
+            return newMetrics;
+        });
+    }
+
+    /**
+     * Register an MBean, metrics keep being collected even if JMX registration fails.
+     * @param objectName String JMX object name
+     * @param mbean Object Standard MBean
+     */
+    static void register(String objectName, Object mbean) {
+        if (!publishJmx) return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+
+            if (!server.isRegistered(name)) server.registerMBean(mbean, name);
+
+        } catch (Exception e) {
+            System.err.println("Could not register metrics " + objectName + ": " + e.getMessage());
+        }
+    }
+}
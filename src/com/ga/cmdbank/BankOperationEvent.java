@@ -0,0 +1,73 @@
+package com.ga.cmdbank;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+/**
+ * Java Flight Recorder event of a banking operation or data lookup, shown under "CMD-Bank" in JDK Mission Control.
+ *
+ * Usage: create, begin(), do the work, commit(). When the event is not enabled in the running recording
+ * commit() is a no-op, and byte counting in touched() is skipped.
+ */
+@Name("com.ga.cmdbank.BankOperation")
+@Label("Bank Operation")
+@Category("CMD-Bank")
+@Description("Banking operation or data file lookup with the rows and bytes it touched")
+@StackTrace(false)
+public class BankOperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Account ID")
+    @Description("Bank account ID, or user CPR for user lookups, 0 if not applicable")
+    int accountId;
+
+    @Label("Counterparty Account ID")
+    int counterpartyAccountId;
+
+    @Label("Amount (USD)")
+    double amount;
+
+    @Label("Rows Scanned")
+    int rowsScanned;
+
+    @Label("Bytes Touched")
+    @DataAmount
+    long bytesTouched;
+
+    BankOperationEvent(String operation, int accountId) {
+        this.operation = operation;
+        this.accountId = accountId;
+    }
+
+    /**
+     * Add the size of data file rows read or written to the event's bytes touched. Only counted while the event is enabled.
+     * @param rows List Data file rows
+     */
+    void touched(List<String> rows) {
+        if (!isEnabled()) return;
+
+        long separatorLength = System.lineSeparator().length();
+
+        for (String row : rows) {
+            bytesTouched += row.length() + separatorLength;
+        }
+    }
+
+    /**
+     * Add a single row's size to the event's bytes touched. Only counted while the event is enabled.
+     * @param row String Data file row
+     */
+    void touched(String row) {
+        if (!isEnabled()) return;
+
+        bytesTouched += row.length() + System.lineSeparator().length();
+    }
+}
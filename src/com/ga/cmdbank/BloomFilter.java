@@ -0,0 +1,116 @@
+package com.ga.cmdbank;
+
+/**
+ * Bloom filter of int keys (CPRs, bank account IDs): answers "definitely not present" or "might be present".
+ *
+ * Bit positions come from double hashing: two 32-bit halves of one 64-bit mix of the key, combined as h1 + i * h2.
+ */
+public class BloomFilter {
+    final int bitCount;
+    final int hashCount;
+    final long[] words;
+
+    /**
+     * Create an empty filter sized for an expected number of keys and false positive rate.
+     * @param expectedKeys int Number of keys the filter is sized for.
+     * @param falsePositiveRate double Wanted false positive rate at expectedKeys, for example 0.01.
+     */
+    BloomFilter(int expectedKeys, double falsePositiveRate) {
+        this(getWordCount(expectedKeys, falsePositiveRate), getHashCount(expectedKeys, falsePositiveRate));
+    }
+
+    /**
+     * Create an empty filter with the given size.
+     * @param wordCount int Number of 64-bit words.
+     * @param hashCount int Number of bits set per key.
+     */
+    BloomFilter(int wordCount, int hashCount) {
+        this.words = new long[wordCount];
+        this.bitCount = wordCount * 64;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Add a key.
+     * @param key int Key
+     * @return boolean False if the key's bits were all set already.
+     */
+    boolean add(int key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean changed = false;
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+
+            if ((words[bit >>> 6] & mask) == 0) {
+                words[bit >>> 6] |= mask;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Check whether a key might have been added.
+     * @param key int Key
+     * @return boolean False if the key was definitely never added.
+     */
+    boolean mightContain(int key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+
+            if ((words[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the words a key's bits are in, so callers persisting the filter can write only those.
+     * @param key int Key
+     * @return int[] Word indexes, one per hash.
+     */
+    int[] getWordIndexes(int key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int[] wordIndexes = new int[hashCount];
+
+        for (int i = 0; i < hashCount; i++) {
+            wordIndexes[i] = Math.floorMod(h1 + i * h2, bitCount) >>> 6;
+        }
+
+        return wordIndexes;
+    }
+
+    private static long mix(int key) { // 64-bit finalizer of MurmurHash3
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    private static int getWordCount(int expectedKeys, double falsePositiveRate) {
+        double bits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+
+        return (int) Math.max(1, Math.ceil(bits / 64));
+    }
+
+    private static int getHashCount(int expectedKeys, double falsePositiveRate) {
+        double bitsPerKey = getWordCount(expectedKeys, falsePositiveRate) * 64.0 / expectedKeys;
+
+        return (int) Math.max(1, Math.round(bitsPerKey * Math.log(2)));
+    }
+}
@@ -0,0 +1,227 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Scanner;
+
+/**
+ * Card-present authorization (ATM / point of sale) keyed by debit card ID.
+ *
+ * Debit card IDs are indexed in memory to their bank account, together with the card tier's daily withdraw
+ * limit and the amount already withdrawn today. An authorization is then a hash lookup plus the card limit and
+ * overdraft checks, without reading any data file. The index is rebuilt when the accounts or the transaction
+ * history were changed by another channel (teller menus), which is detected by comparing the stores' versions.
+ */
+public class CardAuthorization {
+    /**
+     * Shared card-present channel, so the card index is built once per session.
+     */
+    static final CardAuthorization cardPresentChannel = new CardAuthorization();
+
+    /**
+     * Authorization outcome, returned without allocating.
+     */
+    enum Decision {
+        APPROVED,
+        APPROVED_WITH_OVERDRAFT_FEE,
+        DECLINED_INVALID_AMOUNT,
+        DECLINED_UNKNOWN_CARD,
+        DECLINED_ACCOUNT_DEACTIVATED,
+        DECLINED_ACCOUNT_OVERDRAFTED,
+        DECLINED_DAILY_LIMIT,
+        DECLINED_VELOCITY_LIMIT;
+
+        boolean isApproved() {
+            return this == APPROVED || this == APPROVED_WITH_OVERDRAFT_FEE;
+        }
+    }
+
+    /**
+     * Indexed card: its bank account, its tier's daily withdraw limit and today's withdrawals so far.
+     */
+    static class CardAccount {
+        final BankAccount account;
+        final double withdrawLimitDaily;
+        double withdrawnToday = 0.0;
+
+        CardAccount(BankAccount account, double withdrawLimitDaily) {
+            this.account = account;
+            this.withdrawLimitDaily = withdrawLimitDaily;
+        }
+    }
+
+    private final HashMap<Integer, CardAccount> cards = new HashMap<>();
+    private final BankAccountTransaction transaction = new BankAccountTransaction();
+    private long indexedAccountsVersion = -1;
+    private long indexedHistoryVersion = -1;
+    private LocalDate indexedDate = null;
+
+    /**
+     * Approve or decline a card-present withdrawal / purchase, without posting it.
+     * @param cardId int Debit card ID
+     * @param amount double Amount in USD
+     * @return Decision
+     * @throws IOException Data file reading error while rebuilding a stale index.
+     */
+    synchronized Decision authorize(int cardId, double amount) throws IOException {
+        if (isIndexStale()) buildIndex();
+
+        return decide(cards.get(cardId), amount);
+    }
+
+    /**
+     * Authorize a card-present withdrawal / purchase and, if approved, post it to the account and its transaction history.
+     * @param cardId int Debit card ID
+     * @param amount double Amount in USD
+     * @return Decision
+     * @throws IOException Data file reading or writing error.
+     */
+    synchronized Decision authorizeAndPost(int cardId, double amount) throws IOException {
+        if (isIndexStale()) buildIndex();
+
+        CardAccount card = cards.get(cardId);
+        Decision decision = decide(card, amount);
+
+        if (!decision.isApproved()) return decision;
+
+        // withdraw() updates the indexed account's balance and overdraft count along with accounts.txt
+        if (!transaction.withdraw(card.account, amount)) throw new IOException("Account " + card.account.bankAccountID + " could not be updated.");
+
+        new TransactionHistory(card.account.userCPR, card.account.bankAccountID, "withdraw", amount, card.account.balance).recordTransaction();
+        card.withdrawnToday += amount;
+        rememberDataFileVersions(); // Our own writes are already reflected in the index
+
+        return decision;
+    }
+
+    /**
+     * Card limit and overdraft rules, same as the teller withdraw: daily and rolling window limits of the card tier, no withdrawals
+     * once the account reached the overdraft cap, and an overdraft fee when the amount exceeds a positive balance.
+     * The card channel does not extend more overdraft to an account that is already negative, since a card amount can't be capped.
+     * @param card CardAccount Indexed card, null if unknown.
+     * @param amount double Amount in USD
+     * @return Decision
+     * @throws IOException Transaction history reading error on first use of the rolling window limits.
+     */
+    Decision decide(CardAccount card, double amount) throws IOException {
+        if (!(amount > 0.0)) return Decision.DECLINED_INVALID_AMOUNT;
+        if (card == null) return Decision.DECLINED_UNKNOWN_CARD;
+
+        BankAccount account = card.account;
+
+        if (account.overdraftCount >= transaction.overdraftCountCap) return Decision.DECLINED_ACCOUNT_DEACTIVATED;
+        if (card.withdrawnToday + amount > card.withdrawLimitDaily) return Decision.DECLINED_DAILY_LIMIT;
+        if (VelocityLimits.get().getExceededWindow(account, amount) >= 0) return Decision.DECLINED_VELOCITY_LIMIT;
+        if (account.balance < 0.0) return Decision.DECLINED_ACCOUNT_OVERDRAFTED;
+        if (account.balance < amount) return Decision.APPROVED_WITH_OVERDRAFT_FEE;
+
+        return Decision.APPROVED;
+    }
+
+    /**
+     * Check whether the index was built from older versions of the stored accounts and history, or on another day.
+     * @return boolean True if the index must be rebuilt.
+     * @throws IOException Store version reading error.
+     */
+    boolean isIndexStale() throws IOException {
+        StorageEngine storage = Storage.get();
+
+        return indexedDate == null
+                || !indexedDate.equals(LocalDate.now())
+                || storage.accounts().getVersion() != indexedAccountsVersion
+                || storage.transactions().getVersion() != indexedHistoryVersion;
+    }
+
+    /**
+     * Rebuild the card index from accounts.txt, and today's withdrawals per account from a single pass over the transaction history.
+     * @throws IOException Data file reading error.
+     */
+    void buildIndex() throws IOException {
+        LocalDate today = LocalDate.now();
+        rememberDataFileVersions();
+        cards.clear();
+
+        HashMap<Integer, CardAccount> cardsByAccountId = new HashMap<>();
+
+        for (String account : transaction.getAccountsData()) {
+            String[] accountData = account.split(";");
+            BankAccount bankAccount = new BankAccount(Integer.parseInt(accountData[0]), Integer.parseInt(accountData[1]), accountData[2],
+                    Integer.parseInt(accountData[3]), accountData[4], Double.parseDouble(accountData[5]), Integer.parseInt(accountData[6]));
+            CardAccount card = new CardAccount(bankAccount, transaction.cardLimitEngine.getLimit(bankAccount.cardType, CardProductRegistry.withdrawLimitDaily));
+
+            cards.put(bankAccount.debitCardId, card);
+            cardsByAccountId.put(bankAccount.bankAccountID, card);
+        }
+
+        long todayStart = Timestamps.startOfDay(today);
+        long tomorrowStart = Timestamps.startOfDay(today.plusDays(1));
+
+        for (String transactionRow : new TransactionHistory().getTransactionHistory()) {
+            String[] transactionData = transactionRow.split(";");
+
+            if (!transactionData[3].equals("withdraw")) continue;
+
+            long epochMilli = Timestamps.parse(transactionData[2]);
+
+            if (epochMilli < todayStart || epochMilli >= tomorrowStart) continue;
+
+            CardAccount card = cardsByAccountId.get(Integer.parseInt(transactionData[1]));
+
+            if (card != null) card.withdrawnToday += Double.parseDouble(transactionData[4]);
+        }
+
+        indexedDate = today;
+    }
+
+    /**
+     * Remember the store versions the index reflects.
+     * @throws IOException Store version reading error.
+     */
+    private void rememberDataFileVersions() throws IOException {
+        StorageEngine storage = Storage.get();
+        indexedAccountsVersion = storage.accounts().getVersion();
+        indexedHistoryVersion = storage.transactions().getVersion();
+    }
+
+    /**
+     * Display the simulated card-present terminal (banker only): card number and amount in, approval or decline out.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void displayCardTerminal(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to use the card terminal.");
+
+            System.out.println("CARD TERMINAL (CARD PRESENT):");
+            System.out.print("Card Number: ");
+            int cardId = Integer.parseInt(inputScanner.nextLine().strip());
+            System.out.print("Amount (USD): ");
+            double amount = Double.parseDouble(inputScanner.nextLine().strip());
+            System.out.println(" ");
+
+            long startTime = System.nanoTime();
+            Decision decision = authorizeAndPost(cardId, amount);
+            long elapsedMicros = (System.nanoTime() - startTime) / 1_000;
+
+            if (decision.isApproved()) {
+                System.out.println("APPROVED: $" + amount);
+
+                if (decision == Decision.APPROVED_WITH_OVERDRAFT_FEE) System.out.println("An overdraft fee of $" + transaction.overdraftFee + " has been applied.");
+
+            } else {
+                System.err.println("DECLINED: " + decision);
+            }
+
+            System.out.println("Processed in " + elapsedMicros + " microseconds.");
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            displayCardTerminal(inputScanner, user);
+        }
+    }
+}
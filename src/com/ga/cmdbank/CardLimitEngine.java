@@ -0,0 +1,43 @@
+package com.ga.cmdbank;
+
+/**
+ * Card limit checks (daily, and the rolling window caps) for every card product, driven by the CardProductRegistry table.
+ * A check is a map lookup and an array read, with no allocation unless the card type is unknown.
+ */
+public class CardLimitEngine {
+    final CardProductRegistry registry;
+
+    public CardLimitEngine() {
+        this(CardProductRegistry.get());
+    }
+
+    CardLimitEngine(CardProductRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Get a card type's limit of one limit type: a daily limit or an hourly, 7-day or 30-day outgoing cap.
+     * @param cardType String Card type, as stored in accounts.txt
+     * @param limitType int One of the CardProductRegistry limit types.
+     * @return double Limit in USD
+     */
+    double getLimit(String cardType, int limitType) {
+        int code = registry.getCode(cardType);
+
+        if (code < 0) throw new RuntimeException("Unknown card type " + cardType + ". Please contact a banker for assistance.");
+
+        return registry.getLimit(code, limitType);
+    }
+
+    /**
+     * Check a new transaction amount would exceed the card's daily limit.
+     * @param cardType String Card type, as stored in accounts.txt
+     * @param limitType int One of the CardProductRegistry limit types.
+     * @param amountToday double Total of the same type of transactions already made today.
+     * @param amount double New transaction amount
+     * @return boolean True if today's total with the new amount exceeds the limit.
+     */
+    boolean exceedsDailyLimit(String cardType, int limitType, double amountToday, double amount) {
+        return amountToday + amount > getLimit(cardType, limitType);
+    }
+}
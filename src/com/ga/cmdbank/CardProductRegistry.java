@@ -0,0 +1,150 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Debit card products (tiers) and their daily limits, loaded from card_products.txt.
+ *
+ * Data file data row structure:
+ * cardType;displayName;menuKey;cardIdPrefix;systemDataRowPrefix;depositLimitDaily;withdrawLimitDaily;transferLimitOwnAccountDaily;transferLimitOtherAccountDaily;outgoingLimitHourly;outgoingLimitWeekly;outgoingLimitMonthly
+ * The outgoing (withdraw + transfer) rolling window limits are optional, a missing limit is unlimited.
+ *
+ * Each product gets a card type code (its row index). Limits are kept in one primitive array indexed by
+ * code * limitCount + limit type, so reading a limit is an array access. Adding a tier is adding a row.
+ */
+public class CardProductRegistry {
+    static final int depositLimitDaily = 0;
+    static final int withdrawLimitDaily = 1;
+    static final int transferLimitOwnAccountDaily = 2;
+    static final int transferLimitOtherAccountDaily = 3;
+    static final int outgoingLimitHourly = 4;
+    static final int outgoingLimitWeekly = 5;
+    static final int outgoingLimitMonthly = 6;
+    static final int limitCount = 7;
+
+    private static volatile CardProductRegistry registry;
+
+    final Path filePath = Storage.getDataDirectory().resolve("card_products.txt");
+    final String[] cardTypes;
+    final String[] displayNames;
+    final char[] menuKeys;
+    final int[] cardIdPrefixes;
+    final String[] systemDataRowPrefixes;
+    final double[] limits;
+    private final HashMap<String, Integer> cardTypeCodes = new HashMap<>();
+
+    /**
+     * Load the card products from their data file.
+     * @throws IOException Data file reading error.
+     */
+    CardProductRegistry() throws IOException {
+        List<String> products = DataFiles.readAllLines(filePath);
+        int productCount = products.size();
+
+        cardTypes = new String[productCount];
+        displayNames = new String[productCount];
+        menuKeys = new char[productCount];
+        cardIdPrefixes = new int[productCount];
+        systemDataRowPrefixes = new String[productCount];
+        limits = new double[productCount * limitCount];
+
+        for (int code = 0; code < productCount; code++) {
+            String[] productData = products.get(code).split(";");
+
+            cardTypes[code] = productData[0];
+            displayNames[code] = productData[1];
+            menuKeys[code] = Character.toUpperCase(productData[2].charAt(0));
+            cardIdPrefixes[code] = Integer.parseInt(productData[3]);
+            systemDataRowPrefixes[code] = productData[4];
+
+            for (int limitType = 0; limitType < limitCount; limitType++) {
+                int column = 5 + limitType;
+                limits[code * limitCount + limitType] = column < productData.length ? Double.parseDouble(productData[column]) : Double.POSITIVE_INFINITY;
+            }
+
+            cardTypeCodes.put(cardTypes[code], code);
+        }
+    }
+
+    /**
+     * Get the shared registry, loading it on first use.
+     * @return CardProductRegistry
+     */
+    static CardProductRegistry get() {
+        CardProductRegistry loaded = registry;
+
+        if (loaded != null) return loaded;
+
+        synchronized (CardProductRegistry.class) {
+            if (registry == null) {
+                try {
+                    registry = new CardProductRegistry();
+
+                } catch (IOException e) {
+                    throw new RuntimeException("Card products could not be loaded: " + e.getMessage());
+                }
+            }
+
+            return registry;
+        }
+    }
+
+    /**
+     * Get the card type code of a card type.
+     * @param cardType String Card type, as stored in accounts.txt
+     * @return int Card type code, or -1 if no such product.
+     */
+    int getCode(String cardType) {
+        Integer code = cardTypeCodes.get(cardType);
+
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Get the card type code of a card creation menu key.
+     * @param menuKey char Menu key, case insensitive.
+     * @return int Card type code, or -1 if no such product.
+     */
+    int getCodeByMenuKey(char menuKey) {
+        char key = Character.toUpperCase(menuKey);
+
+        for (int code = 0; code < menuKeys.length; code++) {
+            if (menuKeys[code] == key) return code;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get a product's limit.
+     * @param code int Card type code
+     * @param limitType int One of the limit type constants (depositLimitDaily, withdrawLimitDaily...).
+     * @return double Limit in USD
+     */
+    double getLimit(int code, int limitType) {
+        return limits[code * limitCount + limitType];
+    }
+
+    int getProductCount() {
+        return cardTypes.length;
+    }
+
+    /**
+     * Card creation menu text, for example "[M] Debit Mastercard [T] Debit Mastercard Titanium".
+     * @return String Menu options
+     */
+    String getMenuOptions() {
+        StringBuilder options = new StringBuilder();
+
+        for (int code = 0; code < cardTypes.length; code++) {
+            if (code > 0) options.append(" ");
+
+            options.append("[").append(menuKeys[code]).append("] ").append(displayNames[code]);
+        }
+
+        return options.toString();
+    }
+}
@@ -0,0 +1,349 @@
+package com.ga.cmdbank;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Non-interactive command mode for scripts, started when Main is given arguments, for example:
+ * CMDBANK_PASSWORD=... java com.ga.cmdbank.Main deposit --user 33333333 --account 100001 --amount 50
+ *
+ * Runs one operation without the menus, with the same authorization and limit checks, and exits with 0 if it succeeded,
+ * 1 if it was refused or failed, 2 on a usage error. The password comes from the CMDBANK_PASSWORD environment variable
+ * rather than an argument, which other users of the machine could read in the process list.
+ * The batch command runs one command per line of standard input after a single login: verifying the password
+ * (100,000 PBKDF2 iterations) takes longer than anything else a short command does.
+ *
+ * Startup is kept short: only the data files the operation needs are opened, JMX metrics are not published unless
+ * -Dcmdbank.jmx=true (nobody connects to a process this short), and scripts/cmdbank.sh runs it with an AppCDS archive.
+ */
+public class CommandMode {
+    static final String passwordVariable = "CMDBANK_PASSWORD";
+    static final int exitSucceeded = 0;
+    static final int exitFailed = 1;
+    static final int exitUsage = 2;
+    static final long fraudCheckWaitMillis = 2_000; // Alerts of the operation are written before exit
+    static final Map<String, List<String>> requiredOptions = Map.ofEntries(
+            Map.entry("balance", List.of("user", "account")),
+            Map.entry("deposit", List.of("user", "account", "amount")),
+            Map.entry("withdraw", List.of("user", "account", "amount")),
+            Map.entry("transfer", List.of("user", "account", "to", "amount")),
+            Map.entry("recent", List.of("user", "account")),
+            Map.entry("statements", List.of("user", "month")),
+            Map.entry("archive", List.of("user", "month")),
+            Map.entry("interest", List.of("user")),
+            Map.entry("orders", List.of("user")),
+            Map.entry("overdrafts", List.of("user")),
+            Map.entry("audit", List.of("user")),
+            Map.entry("snapshot", List.of("user")),
+            Map.entry("restore", List.of("user", "snapshot")),
+            Map.entry("batch", List.of("user")));
+    static final List<String> knownOptions = List.of("user", "account", "to", "amount", "count", "month", "date", "block", "root", "snapshot");
+    static final String usage = String.join(System.lineSeparator(),
+            "Usage: java com.ga.cmdbank.Main <command> --user <CPR> [options], with the password in the " + passwordVariable + " environment variable.",
+            "  balance    --account <ID>",
+            "  deposit    --account <ID> --amount <USD>",
+            "  withdraw   --account <ID> --amount <USD>",
+            "  transfer   --account <ID> --to <ID> --amount <USD>",
+            "  recent     --account <ID> [--count <1-" + TransactionHistory.maxRecentTransactions + ">]",
+            "  statements --month <YYYY-MM>   (banker only)",
+            "  archive    --month <YYYY-MM>   (banker only)",
+            "  interest   [--date <YYYY-MM-DD>]   Accrue savings interest through the date, yesterday by default (banker only)",
+            "  overdrafts [--date <YYYY-MM-DD>]   Sweep all accounts for overdrafts and charge the day's fees, today by default (banker only)",
+            "  audit      [--block <number>|all] [--root <rows:rootHex>]   Verify the transaction history against its hash chain, the blocks since the last audit by default (banker only)",
+            "  snapshot   Copy the data files to data/snapshots/ at a consistent point, while terminals carry on (banker only)",
+            "  restore    --snapshot <name>   Restore a snapshot and replay the transaction history since it, with the application stopped (banker only)",
+            "  orders     Run the standing orders due by now, for when no terminal is open to run them (banker only)",
+            "  batch      One command per line of standard input, without --user, for example: deposit --account 100001 --amount 50",
+            "Without arguments the interactive menus start.");
+
+    /**
+     * Run a command.
+     * @param args String[] Command name, then --option value pairs.
+     * @return int Exit status: exitSucceeded, exitFailed or exitUsage.
+     */
+    int run(String[] args) {
+        if (System.getProperty("cmdbank.jmx") == null) System.setProperty("cmdbank.jmx", "false"); // Before BankMetrics is loaded
+
+        if (args[0].equals("help") || args[0].equals("--help")) {
+            System.out.println(usage);
+            return exitSucceeded;
+        }
+
+        Map<String, String> options;
+        String password = System.getenv(passwordVariable);
+
+        try {
+            options = parseOptions(args);
+
+            if (password == null) throw new IllegalArgumentException("Please set the " + passwordVariable + " environment variable to the user's password.");
+
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+            return exitUsage;
+        }
+
+        try {
+            UserRead user = new UserRead().login(Integer.parseInt(options.get("user")), password);
+
+            if (args[0].equals("batch")) return runBatch(new BufferedReader(new InputStreamReader(System.in)), options.get("user"), user);
+
+            execute(args[0], options, user);
+
+            return exitSucceeded;
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            return exitFailed;
+        }
+    }
+
+    /**
+     * Run the commands of a batch, one per line, as the logged-in user. Blank lines and lines starting with # are skipped.
+     * A failed command is reported with its line number and the batch goes on.
+     * @param commands BufferedReader Batch lines
+     * @param userOption String The batch's --user value.
+     * @param user UserRead Logged-in user
+     * @return int exitSucceeded if all commands succeeded, otherwise the highest exit status of a failed command.
+     * @throws IOException Reading the batch failed.
+     */
+    int runBatch(BufferedReader commands, String userOption, UserRead user) throws IOException {
+        int status = exitSucceeded;
+        int lineNumber = 0;
+        String line;
+
+        while ((line = commands.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            List<String> args = new ArrayList<>(List.of(line.split("\\s+")));
+            args.addAll(List.of("--user", userOption));
+
+            try {
+                if (args.get(0).equals("batch")) throw new IllegalArgumentException("A batch cannot run another batch.");
+
+                Map<String, String> options = parseOptions(args.toArray(new String[0]));
+                execute(args.get(0), options, user);
+
+            } catch (IllegalArgumentException e) {
+                System.err.println("Line " + lineNumber + ": " + e.getMessage());
+                status = exitUsage;
+
+            } catch (Exception e) {
+                System.err.println("Line " + lineNumber + ": " + e.getMessage());
+                status = Math.max(status, exitFailed);
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * Parse and check a command's options.
+     * @param args String[] Command name, then --option value pairs.
+     * @return Map Option name (without --) to value.
+     * @throws IllegalArgumentException Unknown command or option, missing option or value, or a value of the wrong format.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        List<String> required = requiredOptions.get(args[0]);
+
+        if (required == null) throw new IllegalArgumentException("Unknown command " + args[0] + ".");
+
+        Map<String, String> options = new LinkedHashMap<>();
+
+        for (int i = 1; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+
+            if (!knownOptions.contains(name)) throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + args[i] + ".");
+
+            options.put(name, args[i + 1]);
+        }
+
+        for (String name : required) {
+            if (!options.containsKey(name)) throw new IllegalArgumentException("Missing option --" + name + " for " + args[0] + ".");
+        }
+
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            try {
+                switch (option.getKey()) {
+                    case "user", "account", "to", "count" -> Integer.parseInt(option.getValue());
+                    case "amount" -> {
+                        if (!(Double.parseDouble(option.getValue()) > 0)) throw new IllegalArgumentException("--amount must be more than 0.");
+                    }
+                    case "month" -> YearMonth.parse(option.getValue());
+                    case "date" -> LocalDate.parse(option.getValue());
+                    case "block" -> {
+                        if (!option.getValue().equals("all") && Integer.parseInt(option.getValue()) < 0) throw new IllegalArgumentException("--block must be 0 or more.");
+                    }
+                    case "root" -> TransactionChain.checkRoot(option.getValue());
+                }
+            } catch (NumberFormatException | DateTimeParseException e) {
+                throw new IllegalArgumentException("--" + option.getKey() + " must be " + switch (option.getKey()) {
+                    case "month" -> "a month as YYYY-MM.";
+                    case "date" -> "a date as YYYY-MM-DD.";
+                    case "block" -> "a block number or all.";
+                    default -> "a number.";
+                });
+            }
+        }
+
+        return options;
+    }
+
+    private void execute(String command, Map<String, String> options, UserRead user) throws IOException, InterruptedException {
+        BankAccountTransaction transaction = new BankAccountTransaction();
+
+        switch (command) {
+            case "balance" -> {
+                BankAccount account = getAuthorizedAccount(options, user, "view");
+                System.out.println(account.accountType.toUpperCase() + " ACCOUNT NO." + account.bankAccountID + " BALANCE: $" + account.balance);
+            }
+            case "deposit" -> {
+                BankAccount account = getAuthorizedAccount(options, user, "deposit into");
+                double amount = Double.parseDouble(options.get("amount"));
+                transaction.checkDepositLimit(account, amount);
+
+                if (!transaction.deposit(account, amount)) throw new IOException("Account " + account.bankAccountID + " could not be updated.");
+
+                record(new TransactionHistory(user.cpr, account.bankAccountID, "deposit", amount, account.balance));
+                System.out.println("Amount of $" + amount + " successfully deposited. New Account Balance: $" + account.balance);
+            }
+            case "withdraw" -> {
+                BankAccount account = getAuthorizedAccount(options, user, "withdraw from");
+                double amount = Double.parseDouble(options.get("amount"));
+
+                if (account.overdraftCount >= transaction.overdraftCountCap)
+                    throw new IOException("Your account has already reached maximum overdraft counts. Please deposit to return the balance to a positive amount before you can withdraw again.");
+
+                transaction.checkWithdrawLimits(account, amount);
+
+                if (account.balance < amount) {
+                    System.err.println("Your account balance is below $" + amount + ". An overdraft fee of " + transaction.overdraftFee + " has been applied"
+                            + (account.overdraftCount == 0 ? "." : ", and withdrawal capped at " + transaction.overDraftedWithdrawCap + "."));
+                }
+
+                boolean withdrawCapped = account.balance < amount && account.overdraftCount > 0;
+
+                if (!transaction.withdraw(account, amount)) throw new IOException("Account " + account.bankAccountID + " could not be updated.");
+
+                record(new TransactionHistory(user.cpr, account.bankAccountID, "withdraw", amount, account.balance));
+                System.out.println("Amount of $" + (withdrawCapped ? transaction.overDraftedWithdrawCap : amount) + " successfully withdrawn. New Account Balance: $" + account.balance);
+            }
+            case "transfer" -> {
+                BankAccount account = getAuthorizedAccount(options, user, "transfer from");
+                BankAccount transferAccount = transaction.getAccount(Integer.parseInt(options.get("to")));
+                double amount = Double.parseDouble(options.get("amount"));
+
+                if (account.balance < amount) throw new IOException("Your account balance is not enough to transfer $" + amount);
+
+                transaction.checkTransferLimits(account, transferAccount, amount);
+                boolean isOwnAccount = account.userCPR == transferAccount.userCPR;
+
+                if (!transaction.transfer(account, transferAccount, amount)) throw new IOException("Accounts " + account.bankAccountID + " and " + transferAccount.bankAccountID + " could not be updated.");
+
+                record(new TransactionHistory(user.cpr, account.bankAccountID, "transfer", amount, transferAccount.bankAccountID, isOwnAccount, account.balance));
+                System.out.println("Amount of $" + amount + " successfully transferred. New Account Balance: $" + account.balance);
+            }
+            case "recent" -> {
+                BankAccount account = getAuthorizedAccount(options, user, "view");
+                int count = Integer.parseInt(options.getOrDefault("count", "10"));
+                UtilityComponent utilityComponent = new UtilityComponent();
+                System.out.println(account.statementTableHeader);
+                System.out.println(account.statementTableDivider);
+
+                for (String row : new TransactionHistory().getRecentAccountTransactions(account.bankAccountID, count)) {
+                    System.out.println(account.formatStatementRow(row.split(";"), utilityComponent));
+                }
+            }
+            case "statements" -> {
+                checkBanker(user, "generate statements for all accounts");
+                YearMonth month = YearMonth.parse(options.get("month"));
+                AccountStatementBatch batch = new AccountStatementBatch();
+                int generated = batch.generateStatements(month);
+                System.out.println(generated + " statements saved to " + batch.outputDirectory.resolve(month.toString()));
+            }
+            case "archive" -> {
+                checkBanker(user, "archive the transaction history");
+                YearMonth month = YearMonth.parse(options.get("month"));
+                System.out.println(new TransactionHistory().archiveMonth(month) + " transactions of " + month + " archived.");
+            }
+            case "interest" -> {
+                checkBanker(user, "accrue interest on all savings accounts");
+                LocalDate through = options.containsKey("date") ? LocalDate.parse(options.get("date")) : LocalDate.now().minusDays(1);
+                InterestAccrualBatch.Result result = new InterestAccrualBatch().accrue(through);
+                System.out.println("$" + result.interestCents / 100.0 + " interest credited to " + result.accountsCredited + " savings accounts through " + through + ".");
+            }
+            case "overdrafts" -> {
+                checkBanker(user, "sweep all accounts for overdrafts");
+                LocalDate date = options.containsKey("date") ? LocalDate.parse(options.get("date")) : LocalDate.now();
+                OverdraftSweepBatch.printResult(new OverdraftSweepBatch().sweep(date));
+            }
+            case "audit" -> {
+                checkBanker(user, "audit the transaction history");
+                String block = options.get("block");
+                TransactionChain.Audit audit = Storage.get().transactions().audit(block == null ? TransactionChain.newBlocks
+                        : block.equals("all") ? TransactionChain.allBlocks : Integer.parseInt(block), options.get("root"));
+                TransactionChain.printAudit(audit);
+
+                if (!audit.passed()) throw new IOException("The transaction history failed its integrity check.");
+            }
+            case "snapshot" -> {
+                checkBanker(user, "snapshot the data files");
+                DataSnapshot.printSnapshot(new DataSnapshot().take());
+            }
+            case "restore" -> {
+                checkBanker(user, "restore a snapshot");
+                DataSnapshot.printRestore(new DataSnapshot().restore(options.get("snapshot")));
+            }
+            case "orders" -> {
+                checkBanker(user, "run the standing orders");
+                StandingOrderScheduler.Result result = StandingOrderScheduler.get().runDue(System.currentTimeMillis());
+                new TransactionHistory().awaitPendingRecords();
+                FraudDetectionPipeline.get().awaitChecked(fraudCheckWaitMillis);
+                System.out.println(result.transferred + " standing order runs transferred, " + result.refused + " refused.");
+            }
+        }
+    }
+
+    /**
+     * Get the --account option's account, which a customer may only use if it is theirs.
+     */
+    private static BankAccount getAuthorizedAccount(Map<String, String> options, UserRead user, String action) throws IOException {
+        BankAccount account = new BankAccount().getAccount(Integer.parseInt(options.get("account")));
+
+        if (!Objects.equals(user.userRole, "banker") && account.userCPR != user.cpr) throw new IOException("You are not authorized to " + action + " another person's account.");
+
+        return account;
+    }
+
+    private static void checkBanker(UserRead user, String action) throws IOException {
+        if (!Objects.equals(user.userRole, "banker")) throw new IOException("You are not authorized to " + action + ".");
+    }
+
+    /**
+     * Record the transaction, and wait until it is written and checked for fraud, since the process exits right after.
+     */
+    private static void record(TransactionHistory transaction) throws IOException, InterruptedException {
+        try {
+            transaction.recordTransaction().get();
+
+        } catch (ExecutionException e) {
+            throw new IOException("The transaction was not recorded: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        FraudDetectionPipeline.get().awaitChecked(fraudCheckWaitMillis);
+    }
+}
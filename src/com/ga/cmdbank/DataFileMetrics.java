@@ -0,0 +1,56 @@
+package com.ga.cmdbank;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read and write counters of a single data file (users.txt, accounts.txt...).
+ */
+public class DataFileMetrics implements DataFileMetricsMBean {
+    final String fileName;
+    private final LongAdder readCount = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    DataFileMetrics(String fileName) {
+        this.fileName = fileName;
+    }
+
+    void recordRead(long bytes) {
+        readCount.increment();
+        bytesRead.add(bytes);
+    }
+
+    void recordWrite(long bytes) {
+        writeCount.increment();
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public long getReadCount() {
+        return readCount.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public void reset() {
+        readCount.reset();
+        bytesRead.reset();
+        writeCount.reset();
+        bytesWritten.reset();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ga.cmdbank;
+
+/**
+ * JMX view of a data file's read and write traffic, published as com.ga.cmdbank:type=DataFile,name=[file name].
+ */
+public interface DataFileMetricsMBean {
+    long getReadCount();
+
+    long getBytesRead();
+
+    long getWriteCount();
+
+    long getBytesWritten();
+
+    void reset();
+}
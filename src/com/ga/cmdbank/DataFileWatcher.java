@@ -0,0 +1,229 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Follows rows appended to data files, including by other processes sharing the data directory, so in-memory indexes
+ * (user registry, rolling limits) are updated incrementally instead of being reloaded.
+ *
+ * Each subscription remembers the byte offset it has read up to. A WatchService thread tells the subscription's owner when
+ * its file changes, and the owner polls the subscription (under its own lock) to receive the complete rows after that offset.
+ * Rows this process appended through DataFiles are flagged, so owners that already applied them can skip them.
+ */
+public class DataFileWatcher {
+    /**
+     * Receives appended rows.
+     */
+    interface RowListener {
+        /**
+         * @param row String Appended row, without line separator.
+         * @param offset long Byte offset of the row in the file.
+         * @param ownProcess boolean True if this process appended the row.
+         */
+        void rowAppended(String row, long offset, boolean ownProcess);
+    }
+
+    /**
+     * A listener's position in a data file.
+     */
+    static class Subscription {
+        final Path filePath;
+        final RowListener listener;
+        final Runnable onChange;
+        private volatile long offset;
+
+        private Subscription(Path filePath, long offset, RowListener listener, Runnable onChange) {
+            this.filePath = filePath;
+            this.offset = offset;
+            this.listener = listener;
+            this.onChange = onChange;
+        }
+
+        /**
+         * Pass the complete rows appended after the subscription's offset to the listener, in file order.
+         * Not thread safe, callers poll under the lock of the index the listener updates.
+         * @return boolean False if the file is now shorter than the offset (it was rewritten), the owner must reload it.
+         * @throws IOException File reading error.
+         */
+        boolean poll() throws IOException {
+            long start = offset;
+            byte[] appended = DataFiles.readFrom(filePath, start);
+
+            if (appended.length == 0) return Files.size(filePath) >= start;
+
+            int rowStart = 0;
+
+            for (int i = 0; i < appended.length; i++) {
+                if (appended[i] != '\n') continue;
+
+                int rowEnd = i > rowStart && appended[i - 1] == '\r' ? i - 1 : i;
+                long rowOffset = start + rowStart;
+                listener.rowAppended(new String(appended, rowStart, rowEnd - rowStart, StandardCharsets.UTF_8), rowOffset, isOwnAppend(filePath, rowOffset));
+                rowStart = i + 1;
+            }
+
+            offset = start + rowStart; // A partial last row is read again on the next poll
+            pruneOwnAppends(filePath);
+
+            return true;
+        }
+
+        /**
+         * Move the subscription after its owner reloaded the whole file.
+         * @param offset long Size of the file as it was read.
+         */
+        void reset(long offset) {
+            this.offset = offset;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+
+    private static final DataFileWatcher watcher = new DataFileWatcher();
+    private static final Map<Path, ConcurrentSkipListMap<Long, Long>> ownAppends = new ConcurrentHashMap<>(); // Start to end offsets, watched files only
+
+    private final Map<Path, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final HashSet<Path> watchedDirectories = new HashSet<>();
+    private WatchService watchService;
+
+    /**
+     * Get the shared watcher.
+     * @return DataFileWatcher
+     */
+    static DataFileWatcher get() {
+        return watcher;
+    }
+
+    /**
+     * Follow a data file from an offset. The watch thread runs onChange when the file changes, which should poll the subscription.
+     * @param filePath Path Data file
+     * @param offset long Byte offset already read by the owner.
+     * @param listener RowListener Receives the appended rows on poll.
+     * @param onChange Runnable Called from the watch thread when the file changed.
+     * @return Subscription
+     */
+    synchronized Subscription subscribe(Path filePath, long offset, RowListener listener, Runnable onChange) {
+        Path key = DataFiles.getKey(filePath);
+        Subscription subscription = new Subscription(key, offset, listener, onChange);
+        ownAppends.computeIfAbsent(key, path -> new ConcurrentSkipListMap<>());
+        subscriptions.computeIfAbsent(key, path -> new CopyOnWriteArrayList<>()).add(subscription);
+
+        try {
+            watchDirectory(key.getParent());
+
+        } catch (IOException e) {
+            System.err.println("Changes to " + key.getFileName() + " by other terminals won't be followed: " + e.getMessage());
+        }
+
+        return subscription;
+    }
+
+    /**
+     * Remember rows this process appended to a watched file. Called by DataFiles while it still holds the file's lock.
+     * @param filePath Path Data file
+     * @param offset long Byte offset of the appended rows.
+     * @param length long Number of bytes appended.
+     */
+    static void recordOwnAppend(Path filePath, long offset, long length) {
+        ConcurrentSkipListMap<Long, Long> appends = ownAppends.get(DataFiles.getKey(filePath));
+
+        if (appends != null) appends.put(offset, offset + length);
+    }
+
+    private static boolean isOwnAppend(Path key, long rowOffset) {
+        ConcurrentSkipListMap<Long, Long> appends = ownAppends.get(key);
+        Map.Entry<Long, Long> append = appends == null ? null : appends.floorEntry(rowOffset);
+
+        return append != null && rowOffset < append.getValue();
+    }
+
+    /**
+     * Forget own appends every subscription of the file has read past.
+     */
+    private static void pruneOwnAppends(Path key) {
+        long minimumOffset = Long.MAX_VALUE;
+
+        for (Subscription subscription : watcher.subscriptions.getOrDefault(key, List.of())) {
+            minimumOffset = Math.min(minimumOffset, subscription.getOffset());
+        }
+
+        ConcurrentSkipListMap<Long, Long> appends = ownAppends.get(key);
+
+        while (appends != null && !appends.isEmpty() && appends.firstEntry().getValue() <= minimumOffset) {
+            appends.pollFirstEntry();
+        }
+    }
+
+    private void watchDirectory(Path directory) throws IOException {
+        if (watchedDirectories.contains(directory)) return;
+
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::run, "cmdbank-data-file-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.add(directory);
+    }
+
+    /**
+     * Watch thread loop: tell the subscriptions of changed files.
+     */
+    private void run() {
+        while (true) {
+            WatchKey key;
+
+            try {
+                key = watchService.take();
+
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) { // Events were lost, tell everyone
+                    subscriptions.values().forEach(fileSubscriptions -> fileSubscriptions.forEach(DataFileWatcher::notifyChange));
+                    continue;
+                }
+
+                Path changedFile = directory.resolve((Path) event.context());
+
+                for (Subscription subscription : subscriptions.getOrDefault(changedFile, List.of())) {
+                    notifyChange(subscription);
+                }
+            }
+
+            key.reset();
+        }
+    }
+
+    private static void notifyChange(Subscription subscription) {
+        try {
+            subscription.onChange.run();
+
+        } catch (RuntimeException e) {
+            System.err.println("Error following changes to " + subscription.filePath.getFileName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Data file reads and writes, counted per file in BankMetrics.
+ *
+ * Every access holds a FileChannel lock, so several processes can share the data directory (two teller terminals):
+ * reads take a shared lock on the bytes they read, appends an exclusive lock on the region past the current end of the
+ * file (readers of the existing rows are not blocked), and rewrites an exclusive lock on the whole file.
+ * Read-modify-write sequences (balance updates, ID generation) hold lockForUpdate around the whole sequence.
+ * Locks are taken before any in-memory index's own lock, never the other way around, so the two can't deadlock.
+ *
+ * Within one process, accesses to a file are serialized with a ReentrantLock first: the JVM doesn't allow overlapping
+ * FileChannel locks, and closing any channel of a file may release the process's locks on it, so all data file I/O goes through here.
+ */
+public final class DataFiles {
+    private static final ConcurrentHashMap<Path, ReentrantLock> processLocks = new ConcurrentHashMap<>();
+    private static final ThreadLocal<HashMap<Path, FileChannel>> heldChannels = ThreadLocal.withInitial(HashMap::new);
+
+    private DataFiles() {}
+
+    /**
+     * File access run while holding the file's lock.
+     */
+    interface ChannelAction<T> {
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Lock on a whole data file held by one thread, exclusive for a read-modify-write sequence or shared for consistent reads.
+     * DataFiles calls on the same file from that thread use the locked channel.
+     */
+    static final class HeldLock implements StoreLock {
+        private final Path key;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+        private final ReentrantLock processLock;
+
+        private HeldLock(Path key, FileChannel channel, FileLock fileLock, ReentrantLock processLock) {
+            this.key = key;
+            this.channel = channel;
+            this.fileLock = fileLock;
+            this.processLock = processLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel == null) return; // Nested in an outer lock of the same file
+
+            try {
+                heldChannels.get().remove(key);
+                fileLock.release();
+                channel.close();
+
+            } finally {
+                processLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Lock a data file for a read-modify-write sequence, for example: try (DataFiles.HeldLock lock = DataFiles.lockForUpdate(filepath)) {...}
+     * Waits for other threads and processes using the file.
+     * @param filePath Path Data file, created if missing.
+     * @return HeldLock Lock to close when done.
+     * @throws IOException File opening or locking error.
+     */
+    static HeldLock lockForUpdate(Path filePath) throws IOException {
+        return hold(filePath, false);
+    }
+
+    /**
+     * Hold a shared lock on a whole data file across several reads, so it doesn't change in between. No writes are allowed while holding it.
+     * @param filePath Path Data file
+     * @return HeldLock Lock to close when done.
+     * @throws IOException File opening or locking error.
+     */
+    static HeldLock lockForReading(Path filePath) throws IOException {
+        return hold(filePath, true);
+    }
+
+    private static HeldLock hold(Path filePath, boolean shared) throws IOException {
+        Path key = getKey(filePath);
+
+        if (heldChannels.get().containsKey(key)) return new HeldLock(key, null, null, null);
+
+        ReentrantLock processLock = processLocks.computeIfAbsent(key, path -> new ReentrantLock());
+        processLock.lock();
+
+        try {
+            FileChannel channel = shared ? FileChannel.open(filePath, StandardOpenOption.READ)
+                    : FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            try {
+                FileLock fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                heldChannels.get().put(key, channel);
+
+                return new HeldLock(key, channel, fileLock, processLock);
+
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+
+        } catch (IOException | RuntimeException e) {
+            processLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Read all rows of a data file. Same result as Files.readAllLines, as a modifiable list.
+     * @param filePath Path Data file
+     * @return List File rows
+     * @throws IOException File reading error
+     */
+    static List<String> readAllLines(Path filePath) throws IOException {
+        return new String(readAllBytes(filePath), StandardCharsets.UTF_8).lines().collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Read a whole data file.
+     * @param filePath Path Data file
+     * @return byte[] File content
+     * @throws IOException File reading error
+     */
+    static byte[] readAllBytes(Path filePath) throws IOException {
+        return readFrom(filePath, 0);
+    }
+
+    /**
+     * Read a data file from a byte offset to its end, for example the rows appended since the file was last read.
+     * @param filePath Path Data file
+     * @param offset long Byte offset
+     * @return byte[] Content after the offset, empty if the file isn't longer than the offset.
+     * @throws IOException File reading error
+     */
+    static byte[] readFrom(Path filePath, long offset) throws IOException {
+        return withLock(filePath, false, channel -> {
+            long size = channel.size();
+
+            if (size <= offset) return new byte[0];
+            if (size - offset > Integer.MAX_VALUE) throw new IOException(filePath + " is too large to read at once.");
+
+            ByteBuffer content = ByteBuffer.allocate((int) (size - offset));
+
+            while (content.hasRemaining() && channel.read(content, offset + content.position()) >= 0) {
+                // Read until full or end of file
+            }
+
+            BankMetrics.dataFile(filePath).recordRead(content.position());
+
+            return content.position() == content.capacity() ? content.array() : Arrays.copyOf(content.array(), content.position());
+        }, (channel, size) -> channel.lock(Math.min(offset, size), Math.max(1, size - offset), true)); // Only the bytes being read
+    }
+
+    /**
+     * Run positional reads on a data file while holding a shared lock on it.
+     * @param filePath Path Data file
+     * @param action ChannelAction Reads
+     * @return T The action's result
+     * @throws IOException File reading error
+     */
+    static <T> T read(Path filePath, ChannelAction<T> action) throws IOException {
+        return withLock(filePath, false, action, (channel, size) -> channel.lock(0, Math.max(1, size), true));
+    }
+
+    /**
+     * Run positional reads and writes on a file while holding an exclusive lock on the whole file, creating it if missing.
+     * For binary files the app maintains itself, such as indexes.
+     * @param filePath Path File
+     * @param action ChannelAction Reads and writes
+     * @return T The action's result
+     * @throws IOException File reading or writing error
+     */
+    static <T> T update(Path filePath, ChannelAction<T> action) throws IOException {
+        return withLock(filePath, true, action, (channel, size) -> channel.lock(0, Long.MAX_VALUE, false));
+    }
+
+    /**
+     * Read the row starting at a byte offset, up to the line break, with a channel from read() or update().
+     * @param channel FileChannel Data file channel
+     * @param offset long Byte offset of the row.
+     * @return String Row, without line separator.
+     * @throws IOException File reading error
+     */
+    static String readRow(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        while (true) {
+            channel.read(buffer, offset + buffer.position());
+
+            for (int i = 0; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') return decodeRow(buffer, i);
+            }
+
+            if (offset + buffer.position() >= channel.size()) return decodeRow(buffer, buffer.position()); // Last row without line break
+
+            if (!buffer.hasRemaining()) buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+    }
+
+    private static String decodeRow(ByteBuffer buffer, int end) {
+        if (end > 0 && buffer.get(end - 1) == '\r') end--;
+
+        return new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Overwrite a data file with the given rows, each followed by a line separator. Same result as Files.write.
+     * @param filePath Path Data file
+     * @param rows List File rows
+     * @throws IOException File writing error
+     */
+    static void write(Path filePath, List<String> rows) throws IOException {
+        StringBuilder content = new StringBuilder();
+
+        for (String row : rows) {
+            content.append(row).append(System.lineSeparator());
+        }
+
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+        withLock(filePath, true, channel -> {
+            channel.truncate(0);
+            writeFully(channel, ByteBuffer.wrap(bytes), 0);
+
+            return null;
+        }, (channel, size) -> channel.lock(0, Long.MAX_VALUE, false));
+
+        BankMetrics.dataFile(filePath).recordWrite(bytes.length);
+    }
+
+    /**
+     * Append a single row and a line separator to the end of a data file, creating the file if missing.
+     * @param filePath Path Data file
+     * @param row String Row to append
+     * @return long Byte offset the row was written at.
+     * @throws IOException File writing error
+     */
+    static long append(Path filePath, String row) throws IOException {
+        return append(filePath, (row + System.lineSeparator()).getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Append rows (already followed by line separators) to the end of a data file, creating the file if missing.
+     * @param filePath Path Data file
+     * @param bytes byte[] Rows
+     * @param force boolean Force the rows to the storage device before returning.
+     * @return long Byte offset the rows were written at.
+     * @throws IOException File writing error
+     */
+    static long append(Path filePath, byte[] bytes, boolean force) throws IOException {
+        long offset = withLock(filePath, true, channel -> {
+            long end = channel.size();
+            writeFully(channel, ByteBuffer.wrap(bytes), end);
+
+            if (force) channel.force(false);
+
+            DataFileWatcher.recordOwnAppend(filePath, end, bytes.length); // Still locked, so a watcher can't read the rows first
+
+            return end;
+        }, (channel, size) -> channel.lock(size, Long.MAX_VALUE - size, false));
+
+        BankMetrics.dataFile(filePath).recordWrite(bytes.length);
+
+        return offset;
+    }
+
+    /**
+     * Lock the data file (in this process, then across processes) and run an action on it. Inside a held lock of
+     * the same file, the action runs on the held lock's channel instead.
+     */
+    private static <T> T withLock(Path filePath, boolean write, ChannelAction<T> action, RegionLocker lockRegion) throws IOException {
+        Path key = getKey(filePath);
+        FileChannel heldChannel = heldChannels.get().get(key);
+
+        if (heldChannel != null) return action.apply(heldChannel);
+
+        ReentrantLock processLock = processLocks.computeIfAbsent(key, path -> new ReentrantLock());
+        processLock.lock();
+
+        try (FileChannel channel = write ? FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(filePath, StandardOpenOption.READ)) {
+            FileLock fileLock = lockRegion.lock(channel, channel.size());
+
+            try {
+                return action.apply(channel);
+
+            } finally {
+                fileLock.release();
+            }
+
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the file lock covering the region an access needs.
+     */
+    private interface RegionLocker {
+        FileLock lock(FileChannel channel, long size) throws IOException;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static Path getKey(Path filePath) {
+        return filePath.toAbsolutePath().normalize();
+    }
+}
\ No newline at end of file
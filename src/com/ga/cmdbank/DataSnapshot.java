@@ -0,0 +1,704 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Online snapshots of the data directory, taken without stopping the terminals (banker only, or the snapshot and
+ * restore commands of CommandMode).
+ *
+ * A snapshot freezes a consistent point: it takes the update locks of the data files in the application's lock order
+ * (batch and order files, users, accounts, system, then the transaction history), chains the history's new rows, and
+ * copies the small state files under those locks. The locks are then released, and the history up to the frozen
+ * offset, the append-only logs up to their frozen lengths and the archive segments are copied with
+ * FileChannel.transferTo while the writers carry on appending. An archive rewriting the history during the copy is
+ * found from the chain value of the frozen rows, and the snapshot is taken again.
+ *
+ * Snapshots are saved to data/snapshots/yyyyMMdd-HHmmss-SSS/, written in a .partial directory that is renamed when
+ * complete. The manifest snapshot.txt, written last, has one row per file: kind;fileName;bytes (-1 if the file didn't
+ * exist), after the history row history;endOffset;rowCount;chainHex
+ *
+ * Restore (with the application stopped) puts the state files back and replays the live history from the snapshot's
+ * offset: balances from the rows' balances, overdraft counts, interest accrual days and overdraft fees, and the
+ * standing order runs logged since. The live history is kept if it still starts with the snapshot's rows, and is only
+ * restored from the snapshot when it was lost. Users and accounts created after the snapshot, and the fraction of a
+ * cent of savings interest carried over, are not replayed. A row written after its account's balance was is only
+ * told apart by the balance: the first replayed row of an account isn't applied again if the snapshot already has
+ * its balance.
+ */
+public class DataSnapshot {
+    static final int maxAttempts = 3;
+    static final String historyFileName = "transaction_history.txt";
+    static final String manifestFileName = "snapshot.txt";
+    static final List<String> lockOrder = List.of("interest_runs.txt", "overdrafts.txt", "standing_orders.txt", "users.txt", "accounts.txt", "system.txt");
+    static final List<String> stateFiles = List.of("overdrafts.txt", "standing_orders.txt", "users.txt", "accounts.txt", "system.txt");
+    static final List<String> chainFiles = List.of("transaction_history.chain", "transaction_history.chainhead", "transaction_history.anchors");
+    static final List<String> logFiles = List.of("interest_runs.txt", "standing_order_runs.txt", "fraud_alerts.txt");
+    static final List<String> copiedFiles = List.of("card_products.txt");
+    static final DateTimeFormatter nameFormat = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    final StorageEngine storage;
+    final Path dataDirectory;
+    final Path snapshotDirectory;
+    final TransactionChain chain;
+    final BankAccountTransaction transaction = new BankAccountTransaction();
+
+    /**
+     * A snapshot taken.
+     */
+    static class Snapshot {
+        String name;
+        Path directory;
+        long historyRows;
+        long copiedBytes;
+        long lockedMillis; // Writers waited for the state files
+        long copyMillis; // Writers carried on
+        int attempts;
+    }
+
+    /**
+     * Totals of a restore.
+     */
+    static class Restore {
+        String name;
+        boolean historyRestored;
+        long replayedRows;
+        long appliedRows; // Already in the snapshot's balances
+        long unknownRows; // Of accounts created after the snapshot
+        int accountsChanged;
+        int feesChanged;
+        int ordersChanged;
+        List<String> logsRestored = new ArrayList<>();
+    }
+
+    /**
+     * A snapshot's manifest.
+     */
+    private static class Manifest {
+        long endOffset;
+        long rowCount;
+        String chainValue;
+        Map<String, Long> state = new LinkedHashMap<>();
+        Map<String, Long> chain = new LinkedHashMap<>();
+        Map<String, Long> log = new LinkedHashMap<>();
+        Map<String, Long> archive = new LinkedHashMap<>();
+    }
+
+    /**
+     * An account's state as the history is replayed.
+     */
+    private static class ReplayedAccount {
+        long balanceCents;
+        int overdraftCount;
+        LocalDate accruedThrough;
+        boolean checked; // Whether its first row was checked against the snapshot's balance
+        boolean changed;
+    }
+
+    public DataSnapshot() {
+        this(Storage.get(), Storage.getDataDirectory());
+    }
+
+    /**
+     * @param storage StorageEngine Stores of the data files, for the rows written behind and the replay.
+     * @param dataDirectory Path Directory of the data files and the snapshots.
+     */
+    DataSnapshot(StorageEngine storage, Path dataDirectory) {
+        this.storage = storage;
+        this.dataDirectory = dataDirectory;
+        this.snapshotDirectory = dataDirectory.resolve("snapshots");
+        this.chain = new TransactionChain(dataDirectory.resolve(historyFileName));
+    }
+
+    /**
+     * Display the snapshot prompt.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void display(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to snapshot the data files.");
+
+            System.out.println("SNAPSHOT DATA FILES (TERMINALS CARRY ON WHILE THE FILES ARE COPIED):");
+            System.out.print("Take a snapshot now? (Y/N): ");
+            String answer = inputScanner.nextLine().strip().toLowerCase();
+            System.out.println(" ");
+
+            if (answer.equals("y")) {
+                System.out.println("Taking snapshot...");
+                printSnapshot(take());
+                System.out.println("Restore it with the application stopped: restore --snapshot <name> in command mode.");
+                System.out.println(" ");
+
+            } else if (!answer.equals("n")) {
+                throw new RuntimeException("Please type Y or N.");
+            }
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            display(inputScanner, user);
+        }
+    }
+
+    /**
+     * Print a snapshot's totals.
+     * @param snapshot Snapshot Snapshot taken
+     */
+    static void printSnapshot(Snapshot snapshot) {
+        System.out.println("Snapshot " + snapshot.name + " saved to " + snapshot.directory + ": " + snapshot.historyRows + " history rows, " + snapshot.copiedBytes + " bytes.");
+        System.out.println("Data files locked for " + snapshot.lockedMillis + " ms, then copied in " + snapshot.copyMillis + " ms while terminals carried on"
+                + (snapshot.attempts > 1 ? " (taken again after an archive, " + snapshot.attempts + " attempts)." : "."));
+    }
+
+    /**
+     * Print a restore's totals.
+     * @param restore Restore Restore totals
+     */
+    static void printRestore(Restore restore) {
+        System.out.println("Snapshot " + restore.name + " restored" + (restore.historyRestored ? ", with its transaction history." : "."));
+        System.out.println(restore.replayedRows + " history rows replayed since the snapshot (" + restore.appliedRows + " already in it, " + restore.unknownRows + " of accounts created after it skipped).");
+        System.out.println(restore.accountsChanged + " accounts, " + restore.feesChanged + " overdraft fees and " + restore.ordersChanged + " standing orders updated"
+                + (restore.logsRestored.isEmpty() ? "." : ", " + String.join(", ", restore.logsRestored) + " restored."));
+    }
+
+    /**
+     * Take a snapshot of the data directory.
+     * @return Snapshot Name, directory and timings of the snapshot.
+     * @throws IOException File reading or writing error, or the history was archived during every attempt.
+     */
+    Snapshot take() throws IOException {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            Snapshot snapshot = tryTake();
+
+            if (snapshot != null) {
+                snapshot.attempts = attempt;
+
+                return snapshot;
+            }
+        }
+
+        throw new IOException("The transaction history was archived during each of " + maxAttempts + " snapshot attempts. Please try again later.");
+    }
+
+    /**
+     * Take a snapshot, unless the history is rewritten while it is copied.
+     * @return Snapshot The snapshot, null if the history changed during the copy.
+     */
+    private Snapshot tryTake() throws IOException {
+        LocalDateTime takenAt = LocalDateTime.now();
+        Snapshot snapshot = new Snapshot();
+        snapshot.name = takenAt.format(nameFormat);
+        snapshot.directory = snapshotDirectory.resolve(snapshot.name);
+        Path partialDirectory = snapshotDirectory.resolve(snapshot.name + ".partial");
+        Files.createDirectories(partialDirectory);
+
+        List<String> manifest = new ArrayList<>();
+        Map<String, Long> logLengths = new LinkedHashMap<>();
+        Map<Path, Long> archiveLengths = new LinkedHashMap<>();
+        Path historyPath = dataDirectory.resolve(historyFileName);
+        long[] head;
+        String chainValue;
+        long lockStart = System.nanoTime();
+        List<DataFiles.HeldLock> locks = new ArrayList<>();
+
+        try {
+            lock(locks);
+            storage.transactions().awaitPending(); // This terminal's rows written behind are in the history
+            locks.add(DataFiles.lockForUpdate(historyPath));
+            head = chain.catchUp();
+            chainValue = chain.getChainValue(head[1]);
+            manifest.add("takenAt;" + takenAt);
+            manifest.add("history;" + head[0] + ";" + head[1] + ";" + chainValue);
+
+            for (String fileName : stateFiles) manifest.add("state;" + fileName + ";" + copyLocked(fileName, partialDirectory, snapshot));
+
+            for (String fileName : chainFiles) manifest.add("chain;" + fileName + ";" + copyLocked(fileName, partialDirectory, snapshot));
+
+            for (String fileName : logFiles) {
+                Path logPath = dataDirectory.resolve(fileName);
+                logLengths.put(fileName, Files.exists(logPath) ? Files.size(logPath) : -1);
+            }
+
+            for (Path segment : listArchive(dataDirectory)) archiveLengths.put(segment, Files.size(segment)); // Archives hold the history's lock
+
+        } finally {
+            unlock(locks);
+        }
+
+        snapshot.lockedMillis = (System.nanoTime() - lockStart) / 1_000_000;
+        long copyStart = System.nanoTime();
+
+        if (copyPrefix(historyPath, partialDirectory.resolve(historyFileName), head[0]) < head[0]) return discard(partialDirectory);
+
+        snapshot.copiedBytes += head[0];
+        snapshot.historyRows = head[1];
+
+        for (Map.Entry<String, Long> log : logLengths.entrySet()) {
+            if (log.getValue() >= 0) {
+                if (copyPrefix(dataDirectory.resolve(log.getKey()), partialDirectory.resolve(log.getKey()), log.getValue()) < log.getValue())
+                    throw new IOException(log.getKey() + " got shorter while the snapshot was copied, it should only be appended to.");
+
+                snapshot.copiedBytes += log.getValue();
+            }
+
+            manifest.add("log;" + log.getKey() + ";" + log.getValue());
+        }
+
+        for (Map.Entry<Path, Long> segment : archiveLengths.entrySet()) {
+            String fileName = segment.getKey().getFileName().toString();
+            Files.createDirectories(partialDirectory.resolve("archive"));
+
+            if (copyPrefix(segment.getKey(), partialDirectory.resolve("archive").resolve(fileName), segment.getValue()) < segment.getValue()) return discard(partialDirectory);
+
+            snapshot.copiedBytes += segment.getValue();
+            manifest.add("archive;" + fileName + ";" + segment.getValue());
+        }
+
+        for (String fileName : copiedFiles) {
+            Path filePath = dataDirectory.resolve(fileName);
+            long bytes = Files.exists(filePath) ? copyPrefix(filePath, partialDirectory.resolve(fileName), Files.size(filePath)) : -1;
+            snapshot.copiedBytes += Math.max(0, bytes);
+            manifest.add("copy;" + fileName + ";" + bytes);
+        }
+
+        if (!chainValue.equals(chain.getChainValue(head[1]))) return discard(partialDirectory); // Archived during the copy
+
+        try (FileChannel manifestChannel = FileChannel.open(partialDirectory.resolve(manifestFileName), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.wrap((String.join(System.lineSeparator(), manifest) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+            while (content.hasRemaining()) manifestChannel.write(content);
+
+            manifestChannel.force(true);
+        }
+
+        Files.move(partialDirectory, snapshot.directory, StandardCopyOption.ATOMIC_MOVE);
+        snapshot.copyMillis = (System.nanoTime() - copyStart) / 1_000_000;
+
+        return snapshot;
+    }
+
+    /**
+     * Restore a snapshot and replay the transaction history since it. Run it with the application stopped: open
+     * terminals keep what they have read.
+     * @param name String Snapshot name, as printed when it was taken.
+     * @return Restore Rows replayed and files restored.
+     * @throws IOException No such snapshot, the history no longer starts with the snapshot's rows, or file reading or writing error.
+     */
+    Restore restore(String name) throws IOException {
+        Path directory = snapshotDirectory.resolve(name);
+
+        if (!name.matches("[0-9-]+") || !Files.exists(directory.resolve(manifestFileName))) throw new IOException("There is no snapshot " + name + " in " + snapshotDirectory + ".");
+
+        Manifest manifest = readManifest(directory);
+        Restore restore = new Restore();
+        restore.name = name;
+        Path historyPath = dataDirectory.resolve(historyFileName);
+        List<DataFiles.HeldLock> locks = new ArrayList<>();
+
+        try {
+            lock(locks);
+            storage.transactions().awaitPending();
+            locks.add(DataFiles.lockForUpdate(historyPath));
+            long liveRows = chain.catchUp()[1];
+
+            if (liveRows >= manifest.rowCount && manifest.chainValue.equals(chain.getChainValue(manifest.rowCount))) {
+                // The live history is kept and replayed from the snapshot's offset
+
+            } else if (liveRows == 0) { // Lost, the snapshot's history is all there is
+                restoreFile(directory.resolve(historyFileName), historyPath);
+
+                for (Map.Entry<String, Long> file : manifest.chain.entrySet()) {
+                    if (file.getValue() >= 0) restoreFile(directory.resolve(file.getKey()), dataDirectory.resolve(file.getKey()));
+                    else Files.deleteIfExists(dataDirectory.resolve(file.getKey()));
+                }
+
+                for (String fileName : manifest.archive.keySet()) {
+                    Files.createDirectories(dataDirectory.resolve("archive"));
+                    Files.copy(directory.resolve("archive").resolve(fileName), dataDirectory.resolve("archive").resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                Files.deleteIfExists(dataDirectory.resolve("transaction_history.idx")); // Rebuilt on the next search
+                restore.historyRestored = true;
+
+            } else {
+                throw new IOException("The transaction history no longer starts with the snapshot's " + manifest.rowCount + " rows, it was archived or changed since. "
+                        + "Restore a snapshot taken after the last archive.");
+            }
+
+            for (Map.Entry<String, Long> file : manifest.state.entrySet()) {
+                if (file.getValue() >= 0) restoreFile(directory.resolve(file.getKey()), dataDirectory.resolve(file.getKey()));
+                else if (Files.exists(dataDirectory.resolve(file.getKey()))) DataFiles.write(dataDirectory.resolve(file.getKey()), List.of());
+            }
+
+            Map<String, Long> replayedLogs = new HashMap<>(); // Log name to the offset of the runs since the snapshot
+
+            for (Map.Entry<String, Long> log : manifest.log.entrySet()) {
+                if (log.getValue() < 0) continue;
+
+                Path logPath = dataDirectory.resolve(log.getKey());
+
+                if (startsWith(logPath, directory.resolve(log.getKey()), log.getValue())) {
+                    replayedLogs.put(log.getKey(), log.getValue());
+
+                } else {
+                    restoreFile(directory.resolve(log.getKey()), logPath);
+                    restore.logsRestored.add(log.getKey());
+                }
+            }
+
+            if (!restore.historyRestored) replayHistory(historyPath, manifest.endOffset, restore);
+
+            if (replayedLogs.containsKey("standing_order_runs.txt")) replayOrders(dataDirectory.resolve("standing_order_runs.txt"), replayedLogs.get("standing_order_runs.txt"), restore);
+
+            return restore;
+
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Replay the history rows written since the snapshot into the restored accounts and overdrafts.
+     */
+    private void replayHistory(Path historyPath, long offset, Restore restore) throws IOException {
+        Map<Integer, String> accountRows = new HashMap<>();
+
+        for (String row : storage.accounts().readAll()) accountRows.put(Integer.parseInt(row.substring(0, row.indexOf(';'))), row);
+
+        Map<Integer, ReplayedAccount> accounts = new HashMap<>();
+        Map<Integer, long[]> fees = new LinkedHashMap<>(); // Account ID to {last fee day, fee cents}
+
+        for (String row : new String(DataFiles.readFrom(historyPath, offset), StandardCharsets.UTF_8).lines().toList()) {
+            String[] rowData = row.split(";");
+            ReplayedAccount account = getReplayedAccount(accounts, accountRows, Integer.parseInt(rowData[1]));
+
+            if (account == null) {
+                restore.unknownRows++;
+                continue;
+            }
+
+            long amountCents = Math.round(Double.parseDouble(rowData[4]) * 100);
+            long balanceCents = Math.round(Double.parseDouble(rowData[7]) * 100);
+
+            if (!account.checked) {
+                account.checked = true;
+
+                if (account.balanceCents == balanceCents) { // Its balance was written before the snapshot, the row after
+                    restore.appliedRows++;
+                    continue;
+                }
+            }
+
+            long balanceBefore = account.balanceCents;
+            account.balanceCents = balanceCents;
+            account.changed = true;
+            restore.replayedRows++;
+
+            switch (rowData[3]) {
+                case "deposit" -> resetOverdrafts(account);
+                case "withdraw" -> {
+                    if (balanceBefore < amountCents) account.overdraftCount++;
+                }
+                case "transfer" -> {
+                    ReplayedAccount toAccount = getReplayedAccount(accounts, accountRows, Integer.parseInt(rowData[5]));
+
+                    if (toAccount != null) {
+                        toAccount.balanceCents += amountCents;
+                        toAccount.checked = true;
+                        toAccount.changed = true;
+                        resetOverdrafts(toAccount);
+                    }
+                }
+                case "interest" -> account.accruedThrough = Timestamps.toDateTime(Timestamps.parse(rowData[2])).toLocalDate();
+                case "fee" -> fees.merge(Integer.parseInt(rowData[1]), new long[]{Timestamps.toDateTime(Timestamps.parse(rowData[2])).toLocalDate().toEpochDay(), amountCents},
+                        (fee, next) -> new long[]{next[0], fee[1] + next[1]});
+            }
+        }
+
+        Map<Integer, UnaryOperator<String>> changes = new HashMap<>();
+
+        for (Map.Entry<Integer, ReplayedAccount> entry : accounts.entrySet()) {
+            ReplayedAccount account = entry.getValue();
+
+            if (!account.changed) continue;
+
+            changes.put(entry.getKey(), row -> {
+                String newRow = transaction.getUpdatedAccountRow(row, account.balanceCents / 100.0, account.overdraftCount);
+
+                if (account.accruedThrough == null) return newRow;
+
+                String[] rowData = newRow.split(";");
+                String remainder = rowData.length > InterestAccrualBatch.remainderColumn ? rowData[InterestAccrualBatch.remainderColumn] : "0";
+
+                return String.join(";", List.of(rowData).subList(0, InterestAccrualBatch.accruedThroughColumn)) + ";" + account.accruedThrough + ";" + remainder;
+            });
+        }
+
+        if (!changes.isEmpty()) restore.accountsChanged = storage.accounts().updateAll(changes);
+
+        if (!fees.isEmpty()) replayFees(fees, restore);
+    }
+
+    private static ReplayedAccount getReplayedAccount(Map<Integer, ReplayedAccount> accounts, Map<Integer, String> accountRows, int accountId) {
+        ReplayedAccount account = accounts.get(accountId);
+
+        if (account != null || !accountRows.containsKey(accountId)) return account;
+
+        String[] rowData = accountRows.get(accountId).split(";");
+        account = new ReplayedAccount();
+        account.balanceCents = Math.round(Double.parseDouble(rowData[5]) * 100);
+        account.overdraftCount = Integer.parseInt(rowData[6]);
+        accounts.put(accountId, account);
+
+        return account;
+    }
+
+    private static void resetOverdrafts(ReplayedAccount account) {
+        if (account.overdraftCount > 0 && account.balanceCents >= 0) account.overdraftCount = 0; // As deposits and transfers do
+    }
+
+    /**
+     * Add the overdraft fees charged since the snapshot to overdrafts.txt, so the sweep doesn't charge them again.
+     */
+    private void replayFees(Map<Integer, long[]> fees, Restore restore) throws IOException {
+        Path overdraftsFilePath = dataDirectory.resolve("overdrafts.txt");
+        List<String> rows = Files.exists(overdraftsFilePath) ? DataFiles.readAllLines(overdraftsFilePath) : new ArrayList<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            String[] rowData = rows.get(i).split(";");
+            long[] fee = fees.remove(Integer.parseInt(rowData[0]));
+
+            if (fee != null) {
+                rows.set(i, rowData[0] + ";" + rowData[1] + ";" + LocalDate.ofEpochDay(fee[0]) + ";" + (Long.parseLong(rowData[3]) + fee[1]));
+                restore.feesChanged++;
+            }
+        }
+
+        for (Map.Entry<Integer, long[]> fee : fees.entrySet()) { // Negative since before the snapshot's sweep found it, the fee day is the closest known
+            rows.add(fee.getKey() + ";" + LocalDate.ofEpochDay(fee.getValue()[0]) + ";" + LocalDate.ofEpochDay(fee.getValue()[0]) + ";" + fee.getValue()[1]);
+            restore.feesChanged++;
+        }
+
+        DataFiles.write(overdraftsFilePath, rows);
+    }
+
+    /**
+     * Bring the standing orders' run counts up to the runs logged since the snapshot, so they don't run again.
+     */
+    private void replayOrders(Path runsFilePath, long offset, Restore restore) throws IOException {
+        Map<Integer, LocalDateTime> lastRuns = new HashMap<>();
+
+        for (String run : new String(DataFiles.readFrom(runsFilePath, offset), StandardCharsets.UTF_8).lines().toList()) {
+            String[] runData = run.split(";");
+            lastRuns.merge(Integer.parseInt(runData[1]), LocalDateTime.parse(runData[0]), (last, next) -> next.isAfter(last) ? next : last);
+        }
+
+        if (lastRuns.isEmpty()) return;
+
+        Map<Integer, UnaryOperator<String>> changes = new HashMap<>();
+
+        for (Map.Entry<Integer, LocalDateTime> lastRun : lastRuns.entrySet()) {
+            changes.put(lastRun.getKey(), row -> {
+                StandingOrder order = StandingOrder.fromRow(row);
+                int runCount = order.runCount;
+
+                while (!order.getRunTime(order.runCount).isAfter(lastRun.getValue())) order.runCount++;
+
+                if (order.runCount == runCount) return row;
+
+                restore.ordersChanged++;
+
+                return order.toRow();
+            });
+        }
+
+        storage.standingOrders().updateAll(changes);
+    }
+
+    /**
+     * Take the update locks of the existing data files in the application's lock order, the transaction history excepted.
+     */
+    private void lock(List<DataFiles.HeldLock> locks) throws IOException {
+        for (String fileName : lockOrder) {
+            Path filePath = dataDirectory.resolve(fileName);
+
+            if (Files.exists(filePath)) locks.add(DataFiles.lockForUpdate(filePath));
+        }
+    }
+
+    private static void unlock(List<DataFiles.HeldLock> locks) throws IOException {
+        IOException error = null;
+
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            try {
+                locks.get(i).close();
+
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        }
+
+        if (error != null) throw error;
+    }
+
+    /**
+     * Copy a whole data file into the snapshot, under its lock.
+     * @return long Bytes copied, -1 if the file doesn't exist.
+     */
+    private long copyLocked(String fileName, Path targetDirectory, Snapshot snapshot) throws IOException {
+        Path filePath = dataDirectory.resolve(fileName);
+
+        if (!Files.exists(filePath)) return -1;
+
+        long bytes = DataFiles.read(filePath, channel -> copy(channel, targetDirectory.resolve(fileName), channel.size()));
+        snapshot.copiedBytes += bytes;
+
+        return bytes;
+    }
+
+    /**
+     * Copy the start of a file without locking it, for files only appended to while they are copied.
+     * @return long Bytes copied, fewer than asked if the file is shorter.
+     */
+    private static long copyPrefix(Path filePath, Path target, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return copy(channel, target, bytes);
+        }
+    }
+
+    /**
+     * Copy the first bytes of a channel to a new file with transferTo, and force them to the storage device.
+     * @return long Bytes copied, fewer than asked if the channel ends first.
+     */
+    private static long copy(FileChannel channel, Path target, long bytes) throws IOException {
+        try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+
+            while (position < bytes) {
+                long transferred = channel.transferTo(position, bytes - position, targetChannel);
+
+                if (transferred <= 0) break; // End of file
+
+                position += transferred;
+            }
+
+            targetChannel.force(false);
+
+            return position;
+        }
+    }
+
+    /**
+     * Overwrite a data file with a snapshot's copy, under the file's lock.
+     */
+    private static void restoreFile(Path source, Path filePath) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            DataFiles.update(filePath, channel -> {
+                long size = sourceChannel.size();
+                channel.truncate(0);
+
+                for (long position = 0; position < size; ) position += channel.transferFrom(sourceChannel, position, size - position);
+
+                channel.force(false);
+
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return boolean Whether a file starts with the first bytes of a snapshot's copy.
+     */
+    private static boolean startsWith(Path filePath, Path copy, long bytes) throws IOException {
+        if (!Files.exists(filePath) || Files.size(filePath) < bytes) return false;
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+             FileChannel copyChannel = FileChannel.open(copy, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            ByteBuffer copyBuffer = ByteBuffer.allocate(buffer.capacity());
+
+            for (long position = 0; position < bytes; position += buffer.capacity()) {
+                int length = (int) Math.min(buffer.capacity(), bytes - position);
+                buffer.clear().limit(length);
+                copyBuffer.clear().limit(length);
+
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // Read the chunk
+                }
+
+                while (copyBuffer.hasRemaining() && copyChannel.read(copyBuffer, position + copyBuffer.position()) > 0) {
+                    // Read the chunk
+                }
+
+                if (!buffer.flip().equals(copyBuffer.flip())) return false;
+            }
+
+            return true;
+        }
+    }
+
+    private Manifest readManifest(Path directory) throws IOException {
+        Manifest manifest = new Manifest();
+
+        for (String row : Files.readAllLines(directory.resolve(manifestFileName))) {
+            String[] rowData = row.split(";");
+
+            switch (rowData[0]) {
+                case "history" -> {
+                    manifest.endOffset = Long.parseLong(rowData[1]);
+                    manifest.rowCount = Long.parseLong(rowData[2]);
+                    manifest.chainValue = rowData[3];
+                }
+                case "state" -> manifest.state.put(rowData[1], Long.parseLong(rowData[2]));
+                case "chain" -> manifest.chain.put(rowData[1], Long.parseLong(rowData[2]));
+                case "log" -> manifest.log.put(rowData[1], Long.parseLong(rowData[2]));
+                case "archive" -> manifest.archive.put(rowData[1], Long.parseLong(rowData[2]));
+            }
+        }
+
+        return manifest;
+    }
+
+    private static List<Path> listArchive(Path dataDirectory) throws IOException {
+        Path archiveDirectory = dataDirectory.resolve("archive");
+
+        if (!Files.isDirectory(archiveDirectory)) return List.of();
+
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".col")).sorted(Comparator.naturalOrder()).toList();
+        }
+    }
+
+    /**
+     * Delete a snapshot that couldn't be completed.
+     * @return Snapshot null, for the caller to take it again.
+     */
+    private static Snapshot discard(Path partialDirectory) throws IOException {
+        try (Stream<Path> files = Files.walk(partialDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+
+/**
+ * Debit card of any card product in the CardProductRegistry (Debit Mastercard, Titanium, Platinum...).
+ * Card IDs are taken from the card product's sequence in the sequence store (system.txt with the text files).
+ */
+public class DebitCard implements IDebitcard {
+    int cardId = 0;
+    final String cardType;
+    final int cardIdPrefix;
+    final String systemDataRowPrefix;
+
+    /**
+     * New card of a card product.
+     * @param registry CardProductRegistry Card products
+     * @param code int Card type code
+     */
+    public DebitCard(CardProductRegistry registry, int code) {
+        this.cardType = registry.cardTypes[code];
+        this.cardIdPrefix = registry.cardIdPrefixes[code];
+        this.systemDataRowPrefix = registry.systemDataRowPrefixes[code];
+    }
+
+    /**
+     * Generate a new card ID with a set length and prefix number code based on the card.
+     * Increment from last saved card ID.
+     * Updates the card product's last generated card ID.
+     *
+     * @return int Generated card ID
+     */
+    @Override
+    public int generateCardId() throws IOException {
+        cardId = Storage.get().sequences().next(systemDataRowPrefix, cardIdPrefix + 1); // No other terminal can take the same ID
+
+        return cardId;
+    }
+
+    /**
+     * Get the last generated card id from the sequence store.
+     *
+     * @return int Card ID, or 0 if none found.
+     */
+    @Override
+    public int getLastGeneratedCardId() throws IOException {
+        return Storage.get().sequences().getLast(systemDataRowPrefix);
+    }
+}
@@ -0,0 +1,213 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Persisted Bloom filter over the IDs in the first column of a data file (account IDs of accounts.txt), so existence
+ * checks of IDs that don't exist return without reading the data file. Users have an exact CPR bitmap instead, see UserRegistry.
+ *
+ * The filter is saved next to its data file along with the data file's size and modified time. It is loaded once, and rebuilt
+ * from the data file when those no longer match (the data file was changed outside the app) or when it gets too full.
+ * Loading takes the data file's lock before the filter's own, the order of updates that hold the data file lock while calling dataFileRewritten.
+ * Writers hold the data file's update lock around their write and call dataFileWriting() before it, which drops a filter that
+ * another process's write left behind, then add() after appending their row, which sets the key's bits and writes only the
+ * changed words and the header, or dataFileRewritten() after a rewrite with the same IDs.
+ *
+ * Filter file structure: magic, dataFileSize, dataFileModified (long), capacity, keyCount, hashCount, wordCount (int), then the words (long).
+ */
+public class ExistenceFilter {
+    static final double falsePositiveRate = 0.01;
+    static final int minimumCapacity = 1_024;
+    static final long magic = 0x434D44424C4F4F4DL; // "CMDBLOOM"
+    static final int headerBytes = 3 * Long.BYTES + 4 * Integer.BYTES;
+
+    final Path dataFilePath;
+    final Path filterFilePath;
+    private BloomFilter filter;
+    private int capacity;
+    private int keyCount;
+    private long dataFileSize;
+    private long dataFileModified;
+
+    /**
+     * @param dataFilePath Path Data file whose first column holds the IDs.
+     * @param filterFilePath Path File the filter is saved in.
+     */
+    ExistenceFilter(Path dataFilePath, Path filterFilePath) {
+        this.dataFilePath = dataFilePath;
+        this.filterFilePath = filterFilePath;
+    }
+
+    /**
+     * Check whether an ID might exist in the data file.
+     * @param key int CPR or bank account ID
+     * @return boolean False if the ID definitely doesn't exist, true if the data file has to be checked.
+     * @throws IOException Data file or filter file reading error.
+     */
+    @SuppressWarnings("try")
+    boolean mightContain(int key) throws IOException {
+        synchronized (this) {
+            if (filter != null && !isDataFileChanged()) return filter.mightContain(key);
+        }
+
+        try (DataFiles.HeldLock dataFileLock = DataFiles.lockForReading(dataFilePath)) { // Data file lock first, updates hold it while telling the filter of a rewrite
+            synchronized (this) {
+                if (filter == null || isDataFileChanged()) load();
+
+                return filter.mightContain(key);
+            }
+        }
+    }
+
+    /**
+     * Called under the data file's update lock before this process writes it. If the data file changed since the filter
+     * was synced (another terminal appended an ID), the filter is dropped and reloaded on next use, as the version stamped
+     * after this write would hide that change.
+     */
+    synchronized void dataFileWriting() {
+        try {
+            if (filter != null && isDataFileChanged()) filter = null;
+
+        } catch (IOException e) {
+            filter = null;
+        }
+    }
+
+    /**
+     * Add an ID that was just appended to the data file, after dataFileWriting() under the same lock. If the filter can't be saved, it is reloaded on next use.
+     * @param key int CPR or bank account ID
+     */
+    synchronized void add(int key) {
+        if (filter == null) return; // Loading on next use reads the data file, which already has the new ID
+
+        try {
+            keyCount++;
+
+            if (keyCount > capacity) { // Past its false positive rate, rebuilt with room to grow on next use, under the data file lock
+                filter = null;
+                return;
+            }
+
+            filter.add(key);
+            rememberDataFileVersion();
+
+            try (FileChannel channel = FileChannel.open(filterFilePath, StandardOpenOption.WRITE)) {
+                channel.write(getHeader(), 0);
+
+                for (int wordIndex : filter.getWordIndexes(key)) {
+                    ByteBuffer word = ByteBuffer.allocate(Long.BYTES).putLong(0, filter.words[wordIndex]);
+                    channel.write(word, headerBytes + (long) wordIndex * Long.BYTES);
+                }
+            }
+
+        } catch (IOException e) {
+            filter = null;
+        }
+    }
+
+    /**
+     * Tell the filter its data file was rewritten with the same IDs (balance updates), after dataFileWriting() under the same lock, so it is not rebuilt.
+     * If the new version can't be saved, the filter is reloaded on next use.
+     */
+    synchronized void dataFileRewritten() {
+        if (filter == null) return;
+
+        try {
+            rememberDataFileVersion();
+
+            try (FileChannel channel = FileChannel.open(filterFilePath, StandardOpenOption.WRITE)) {
+                channel.write(getHeader(), 0);
+            }
+
+        } catch (IOException e) {
+            filter = null;
+        }
+    }
+
+    /**
+     * Load the saved filter if it matches the data file, otherwise rebuild it.
+     * @throws IOException Data file or filter file reading error.
+     */
+    private void load() throws IOException {
+        if (Files.exists(filterFilePath)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(filterFilePath));
+
+            if (saved.remaining() >= headerBytes && saved.getLong() == magic
+                    && saved.getLong() == Files.size(dataFilePath)
+                    && saved.getLong() == Files.getLastModifiedTime(dataFilePath).toMillis()) {
+                int savedCapacity = saved.getInt();
+                int savedKeyCount = saved.getInt();
+                int hashCount = saved.getInt();
+                int wordCount = saved.getInt();
+
+                if (saved.remaining() == wordCount * Long.BYTES) {
+                    filter = new BloomFilter(wordCount, hashCount);
+                    saved.asLongBuffer().get(filter.words);
+                    capacity = savedCapacity;
+                    keyCount = savedKeyCount;
+                    rememberDataFileVersion();
+
+                    return;
+                }
+            }
+        }
+
+        rebuild();
+    }
+
+    /**
+     * Rebuild the filter from the data file in one pass and save it.
+     * @throws IOException Data file reading or filter file writing error.
+     */
+    private void rebuild() throws IOException {
+        List<String> rows = DataFiles.readAllLines(dataFilePath);
+        capacity = Math.max(minimumCapacity, rows.size() * 2);
+        keyCount = rows.size();
+        filter = new BloomFilter(capacity, falsePositiveRate);
+
+        for (String row : rows) {
+            if (row.isEmpty()) continue;
+
+            int idEnd = row.indexOf(';');
+            filter.add(Integer.parseInt(idEnd < 0 ? row : row.substring(0, idEnd)));
+        }
+
+        rememberDataFileVersion();
+
+        ByteBuffer content = ByteBuffer.allocate(headerBytes + filter.words.length * Long.BYTES);
+        content.put(getHeader());
+        content.asLongBuffer().put(filter.words);
+        Files.write(filterFilePath, content.array());
+    }
+
+    private ByteBuffer getHeader() {
+        return ByteBuffer.allocate(headerBytes)
+                .putLong(magic)
+                .putLong(dataFileSize)
+                .putLong(dataFileModified)
+                .putInt(capacity)
+                .putInt(keyCount)
+                .putInt(filter.hashCount)
+                .putInt(filter.words.length)
+                .flip();
+    }
+
+    private boolean isDataFileChanged() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataFilePath, BasicFileAttributes.class); // One stat call, no file read
+
+        return attributes.size() != dataFileSize || attributes.lastModifiedTime().toMillis() != dataFileModified;
+    }
+
+    private void rememberDataFileVersion() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataFilePath, BasicFileAttributes.class);
+        dataFileSize = attributes.size();
+        dataFileModified = attributes.lastModifiedTime().toMillis();
+    }
+}
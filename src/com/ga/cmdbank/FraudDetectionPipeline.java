@@ -0,0 +1,178 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous fraud / anomaly detection on the stream of recorded transactions.
+ *
+ * TransactionHistory.recordTransaction hands every transaction over with a non-blocking offer into a bounded queue,
+ * so the customer-facing operation never waits for detection: if the queue is full the transaction is skipped and counted as dropped.
+ * A single worker thread runs the rules against each account's constant-size AccountActivity and passes alerts to the alert sink,
+ * which by default appends them to fraud_alerts.txt.
+ *
+ * Alerts data file row structure: datetime;accountId;userId;rule;details
+ */
+public class FraudDetectionPipeline implements FraudDetectionPipelineMBean {
+    static final String alertsFileName = "fraud_alerts.txt"; // In the configured data directory
+    static final int queueCapacity = 10_000;
+
+    private static volatile FraudDetectionPipeline pipeline;
+
+    private final List<FraudRule> rules;
+    private final Consumer<String> alertSink;
+    private final ArrayBlockingQueue<TransactionHistory> queue;
+    private final HashMap<Integer, AccountActivity> accountActivities = new HashMap<>(); // Worker thread only
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong checked = new AtomicLong(); // Processed or failed
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong alerts = new AtomicLong();
+    private Thread worker;
+
+    /**
+     * @param rules List Rules to check every transaction against.
+     * @param alertSink Consumer Receives each alert as a data row.
+     * @param queueCapacity int Maximum number of transactions waiting for detection.
+     */
+    FraudDetectionPipeline(List<FraudRule> rules, Consumer<String> alertSink, int queueCapacity) {
+        this.rules = rules;
+        this.alertSink = alertSink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Get the shared pipeline with the default rules, writing alerts to fraud_alerts.txt. Its worker starts on first use.
+     * @return FraudDetectionPipeline
+     */
+    static FraudDetectionPipeline get() {
+        FraudDetectionPipeline loaded = pipeline;
+
+        if (loaded != null) return loaded;
+
+        synchronized (FraudDetectionPipeline.class) {
+            if (pipeline == null) {
+                pipeline = new FraudDetectionPipeline(FraudRules.getDefaults(), FraudDetectionPipeline::saveAlert, queueCapacity);
+                pipeline.start();
+                BankMetrics.register("com.ga.cmdbank:type=FraudDetection,name=pipeline", pipeline);
+            }
+
+            return pipeline;
+        }
+    }
+
+    /**
+     * Start the worker thread. It is a daemon thread, so it doesn't keep the application running on exit.
+     */
+    synchronized void start() {
+        if (worker != null) return;
+
+        worker = new Thread(this::run, "cmdbank-fraud-detection");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Hand a recorded transaction over for detection, without waiting. A full queue drops the transaction.
+     * @param transaction TransactionHistory Recorded transaction, must not be changed afterwards.
+     * @return boolean False if the queue is full and the transaction was dropped.
+     */
+    boolean submit(TransactionHistory transaction) {
+        if (queue.offer(transaction)) {
+            submitted.incrementAndGet();
+
+            return true;
+        }
+
+        dropped.incrementAndGet();
+
+        return false;
+    }
+
+    /**
+     * Wait until the transactions submitted so far are checked, for a short-lived process about to exit (command mode).
+     * @param timeoutMillis long Maximum time to wait.
+     * @throws InterruptedException Interrupted while waiting.
+     */
+    void awaitChecked(long timeoutMillis) throws InterruptedException {
+        long target = submitted.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        while (checked.get() < target && System.currentTimeMillis() < deadline) Thread.sleep(1);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TransactionHistory transaction = queue.take();
+
+                try {
+                    process(transaction);
+
+                } finally {
+                    checked.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                return;
+
+            } catch (RuntimeException e) {
+                System.err.println("Fraud detection error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run the rules on one transaction, then add it to its account's activity. Only one thread may call this.
+     * @param transaction TransactionHistory Recorded transaction
+     */
+    void process(TransactionHistory transaction) {
+        long epochSecond = transaction.dateTime.toEpochSecond(ZoneOffset.UTC); // Stored datetimes are local, only their distance matters here
+        AccountActivity activity = accountActivities.computeIfAbsent(transaction.accountId, accountId -> new AccountActivity());
+
+        for (FraudRule rule : rules) {
+            String details = rule.check(transaction, epochSecond, activity);
+
+            if (details == null) continue;
+
+            alerts.incrementAndGet();
+            alertSink.accept(transaction.dateTime + ";" + transaction.accountId + ";" + transaction.userId + ";" + rule.getName() + ";" + details);
+        }
+
+        activity.update(transaction, epochSecond);
+        processed.incrementAndGet();
+    }
+
+    private static void saveAlert(String alert) {
+        try {
+            DataFiles.append(Storage.getDataDirectory().resolve(alertsFileName), alert);
+
+        } catch (IOException e) {
+            System.err.println("Error writing fraud alert: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getAlerts() {
+        return alerts.get();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,14 @@
+package com.ga.cmdbank;
+
+/**
+ * JMX view of the fraud detection pipeline, published as com.ga.cmdbank:type=FraudDetection,name=pipeline.
+ */
+public interface FraudDetectionPipelineMBean {
+    long getProcessed();
+
+    long getDropped();
+
+    long getAlerts();
+
+    int getQueueSize();
+}
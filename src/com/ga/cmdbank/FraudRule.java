@@ -0,0 +1,20 @@
+package com.ga.cmdbank;
+
+/**
+ * A fraud / anomaly detection rule of the FraudDetectionPipeline.
+ */
+public interface FraudRule {
+    /**
+     * @return String Rule name, as written in the fraud alerts.
+     */
+    String getName();
+
+    /**
+     * Check a recorded transaction against the account's state before it.
+     * @param transaction TransactionHistory Recorded transaction
+     * @param epochSecond long Time of the transaction
+     * @param activity AccountActivity Account's state, not yet updated with this transaction.
+     * @return String Alert details, or null if the transaction looks normal.
+     */
+    String check(TransactionHistory transaction, long epochSecond, AccountActivity activity);
+}
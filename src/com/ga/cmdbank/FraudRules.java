@@ -0,0 +1,75 @@
+package com.ga.cmdbank;
+
+import java.util.List;
+
+/**
+ * Built-in fraud detection rules.
+ */
+public class FraudRules {
+
+    /**
+     * @return List The default rules of the fraud detection pipeline.
+     */
+    static List<FraudRule> getDefaults() {
+        return List.of(new RapidRepeatWithdrawals(), new NewRecipientTransfer(), new AmountSpike());
+    }
+
+    /**
+     * Several withdrawals from the same account within a short time.
+     */
+    static class RapidRepeatWithdrawals implements FraudRule {
+        final int withdrawalsBack = AccountActivity.withdrawalTimesKept; // This one makes withdrawalsBack + 1 withdrawals
+        final long windowSeconds = 120;
+
+        public String getName() {
+            return "rapidRepeatWithdrawals";
+        }
+
+        public String check(TransactionHistory transaction, long epochSecond, AccountActivity activity) {
+            if (!transaction.transactionType.equals("withdraw")) return null;
+
+            long earliest = activity.getWithdrawalSeconds(withdrawalsBack);
+
+            if (earliest == Long.MIN_VALUE || epochSecond - earliest > windowSeconds) return null;
+
+            return (withdrawalsBack + 1) + " withdrawals within " + (epochSecond - earliest) + " seconds";
+        }
+    }
+
+    /**
+     * A large transfer to an account this account did not transfer to before.
+     */
+    static class NewRecipientTransfer implements FraudRule {
+        final double minimumAmount = 1_000.0;
+
+        public String getName() {
+            return "newRecipientTransfer";
+        }
+
+        public String check(TransactionHistory transaction, long epochSecond, AccountActivity activity) {
+            if (!transaction.transactionType.equals("transfer") || transaction.isOwnAccountTransfer) return null;
+            if (transaction.transactionAmount < minimumAmount || activity.hasSentTo(transaction.transferToAccountId)) return null;
+
+            return "$" + transaction.transactionAmount + " to new recipient account " + transaction.transferToAccountId;
+        }
+    }
+
+    /**
+     * An amount far above the account's moving average amount.
+     */
+    static class AmountSpike implements FraudRule {
+        final double spikeFactor = 5.0;
+        final long minimumTransactions = 5; // Average is meaningless before that
+
+        public String getName() {
+            return "amountSpike";
+        }
+
+        public String check(TransactionHistory transaction, long epochSecond, AccountActivity activity) {
+            if (activity.transactionCount < minimumTransactions) return null;
+            if (transaction.transactionAmount <= spikeFactor * activity.averageAmount) return null;
+
+            return "$" + transaction.transactionAmount + " against moving average $" + Math.round(activity.averageAmount * 100) / 100.0;
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * Currency support: US Dollars.
@@ -14,7 +12,6 @@ public interface IDebitcard {
     double transferLimitOwnAccountDaily = 0.0;
     double transferLimitOtherAccountDaily = 0.0;
     int cardIdPrefix = 0;
-    Path filePath = Paths.get("data/system.txt");
 
     /**
      * Generate a new card ID with a set length and prefix number code based on the card. Increment from last saved card ID.
@@ -23,17 +20,8 @@ public interface IDebitcard {
     int generateCardId() throws IOException;
 
     /**
-     * Save the last generated card ID to its associated data file.
-     * @param cardId int Card ID
-     * @param filePath Path File path
-     * @return int Last generated saved card ID
-     */
-    int saveLastGeneratedCardId(int cardId, Path filePath) throws IOException;
-
-    /**
-     * Get the last generated card id from stored data file.
-     * @param filepath Data file.
+     * Get the last generated card id from the sequence store.
      * @return int Card ID
      */
-    int getLastGeneratedCardId(Path filepath) throws IOException;
+    int getLastGeneratedCardId() throws IOException;
 }
@@ -60,11 +60,19 @@ public interface IPassword {
      * @throws InvalidKeySpecException Exception    Invalid specification key exception.
      */
     static String hashPassword(String plainPassword, byte[] salt) throws NoSuchAlgorithmException, InvalidKeySpecException {
-        PBEKeySpec spec = new PBEKeySpec(plainPassword.toCharArray(), salt, 100_000, 256); // Hardcoding the iterations and key length to not cause problems in a test app. Not good practice for real life though.
-        SecretKeyFactory hashingAlgorithm = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-        byte[] hash = hashingAlgorithm.generateSecret(spec).getEncoded();
+        BankOperationEvent event = new BankOperationEvent("hashPassword", 0);
+        event.begin();
 
-        return Base64.getEncoder().encodeToString(hash);
+        try {
+            PBEKeySpec spec = new PBEKeySpec(plainPassword.toCharArray(), salt, 100_000, 256); // Hardcoding the iterations and key length to not cause problems in a test app. Not good practice for real life though.
+            SecretKeyFactory hashingAlgorithm = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            byte[] hash = hashingAlgorithm.generateSecret(spec).getEncoded();
+            event.bytesTouched = salt.length + hash.length;
+
+            return Base64.getEncoder().encodeToString(hash);
+        } finally {
+            event.commit();
+        }
     }
 
     /**
@@ -0,0 +1,348 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Nightly interest accrual of all savings accounts (banker only, or the interest command of CommandMode).
+ *
+ * Interest accrues daily at annualRateBasisPoints / 365 of the balance, computed in integer cents: the fraction of
+ * a cent left over is kept in the account row and carried into the next day, so no interest is lost to rounding.
+ * Days the job didn't run are accrued on the next run, one day at a time. Each day's interest is a history row
+ * of type interest, timed at the end of the day.
+ *
+ * Accounts are accrued in batches, each under the accounts' update lock: the batch is split across a fork-join pool
+ * to compute the interest, the interest rows are appended to the history in one write, then the balances are
+ * written in one rewrite of the accounts.
+ *
+ * Restarting after a crash never credits twice: the day an account's interest is accrued through is written in the
+ * same row as its balance, and accounts already accrued are skipped. Runs are logged in interest_runs.txt, and after
+ * an interrupted run, interest rows already appended for accounts whose balance wasn't written are credited instead
+ * of appended again.
+ */
+public class InterestAccrualBatch {
+    static final int annualRateBasisPoints = Integer.getInteger("cmdbank.savingsRateBasisPoints", 200); // 2.00% a year
+    static final long remainderUnitsPerCent = 10_000L * 365; // Interest cents = balance cents * basis points * days / (10,000 * 365)
+    static final int batchSize = 25_000;
+    static final int splitThreshold = 1_024; // Accounts computed by one fork-join task
+    static final int accruedThroughColumn = 7;
+    static final int remainderColumn = 8;
+
+    final StorageEngine storage;
+    final Path runsFilePath;
+
+    /**
+     * Total of an accrual run.
+     */
+    static class Result {
+        int accountsCredited;
+        long interestCents;
+    }
+
+    /**
+     * One account's accrual: its new data row, the interest rows to append and the interest credited.
+     */
+    static class Accrual {
+        String row;
+        final List<TransactionHistory> interestRows = new ArrayList<>();
+        long interestCents;
+    }
+
+    public InterestAccrualBatch() {
+        this(Storage.get(), Storage.getDataDirectory());
+    }
+
+    /**
+     * @param storage StorageEngine Accounts and transactions to accrue.
+     * @param dataDirectory Path Directory of the run log.
+     */
+    InterestAccrualBatch(StorageEngine storage, Path dataDirectory) {
+        this.storage = storage;
+        this.runsFilePath = dataDirectory.resolve("interest_runs.txt");
+    }
+
+    /**
+     * Display the interest accrual prompt.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void display(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to accrue interest on all savings accounts.");
+
+            System.out.println("ACCRUE SAVINGS INTEREST (" + annualRateBasisPoints / 100.0 + "% A YEAR):");
+            System.out.print("Accrue Through Date (YYYY-MM-DD, empty for yesterday): ");
+            String dateInput = inputScanner.nextLine().strip();
+            LocalDate through = dateInput.isEmpty() ? LocalDate.now().minusDays(1) : LocalDate.parse(dateInput);
+            System.out.println(" ");
+
+            System.out.println("Accruing interest...");
+            Result result = accrue(through);
+
+            System.out.println("$" + result.interestCents / 100.0 + " interest credited to " + result.accountsCredited + " savings accounts through " + through + ".");
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (DateTimeParseException e) {
+            System.err.println("Please type the date in the format YYYY-MM-DD, for example 2025-12-31.");
+            display(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            display(inputScanner, user);
+        }
+    }
+
+    /**
+     * Accrue the interest of every savings account through a day. Accounts already accrued through it are skipped.
+     * @param through LocalDate Last day to accrue, must have ended.
+     * @return Result Accounts credited and interest total.
+     * @throws IOException The day hasn't ended, or data reading or writing error.
+     */
+    @SuppressWarnings("try")
+    Result accrue(LocalDate through) throws IOException {
+        if (!through.isBefore(LocalDate.now())) throw new IOException("Interest can only be accrued through a day that has ended, " + LocalDate.now().minusDays(1) + " at the latest.");
+
+        Result result = new Result();
+        ForkJoinPool pool = new ForkJoinPool();
+
+        try (DataFiles.HeldLock runLock = DataFiles.lockForUpdate(runsFilePath)) { // One run at a time, also across terminals
+            LocalDate interruptedThrough = getInterruptedRun();
+            LocalDate recoverThrough = interruptedThrough != null && interruptedThrough.isAfter(through) ? interruptedThrough : through;
+            logRun(recoverThrough + ";started"); // Interest rows through this day may be in the history if the run is interrupted
+            List<Integer> pending = new ArrayList<>();
+
+            for (String row : storage.accounts().readAll()) {
+                String[] rowData = row.split(";");
+
+                if (rowData[2].equals("savings") && getAccruedThrough(rowData, through).isBefore(through)) pending.add(Integer.parseInt(rowData[0]));
+            }
+
+            for (int start = 0; start < pending.size(); start += batchSize) {
+                accrueBatch(pending.subList(start, Math.min(start + batchSize, pending.size())), through, interruptedThrough, pool, result);
+            }
+
+            if (!recoverThrough.isAfter(through)) logRun(through + ";completed"); // Otherwise the interrupted run's later days still need recovering
+
+        } finally {
+            pool.shutdown();
+        }
+
+        return result;
+    }
+
+    /**
+     * Accrue a batch of accounts under the accounts' update lock, so their balances can't change in between.
+     * @param interruptedThrough LocalDate Recovery horizon of an interrupted run, null if the last run completed.
+     */
+    @SuppressWarnings("try")
+    private void accrueBatch(List<Integer> accountIds, LocalDate through, LocalDate interruptedThrough, ForkJoinPool pool, Result result) throws IOException {
+        AccountStore accounts = storage.accounts();
+        TransactionStore transactions = storage.transactions();
+
+        try (StoreLock accountsLock = accounts.lockForUpdate()) {
+            Map<Integer, String> rows = new HashMap<>(accountIds.size() * 2);
+
+            for (Integer accountId : accountIds) rows.put(accountId, null);
+
+            for (String row : accounts.readAll()) {
+                int accountId = Integer.parseInt(row, 0, row.indexOf(';'), 10);
+
+                if (rows.containsKey(accountId)) rows.put(accountId, row);
+            }
+
+            Map<Integer, Map<LocalDate, Double>> recordedInterest = new HashMap<>();
+
+            if (interruptedThrough != null) {
+                for (Integer accountId : accountIds) recordedInterest.put(accountId, findRecordedInterest(accountId, rows.get(accountId), through, interruptedThrough));
+            }
+
+            Accrual[] accruals = new Accrual[accountIds.size()];
+            pool.invoke(new AccrualTask(accountIds, rows, recordedInterest, through, accruals, 0, accruals.length));
+
+            List<TransactionHistory> interestRows = new ArrayList<>();
+            Map<Integer, UnaryOperator<String>> changes = new HashMap<>(accountIds.size() * 2);
+
+            for (int i = 0; i < accruals.length; i++) {
+                if (accruals[i] == null) continue; // Deleted since the batch was listed
+
+                Accrual accrual = accruals[i];
+                interestRows.addAll(accrual.interestRows);
+                changes.put(accountIds.get(i), row -> accrual.row);
+
+                if (accrual.interestCents > 0) {
+                    result.accountsCredited++;
+                    result.interestCents += accrual.interestCents;
+                }
+            }
+
+            transactions.appendAll(interestRows); // History first, a crash before the balances are written leaves rows the next run credits
+            transactions.awaitPending();
+            accounts.updateAll(changes);
+        }
+    }
+
+    /**
+     * Compute the accrual of a part of a batch, split in halves until small enough.
+     */
+    @SuppressWarnings("serial") // Never serialized, only forked
+    static class AccrualTask extends RecursiveAction {
+        final List<Integer> accountIds;
+        final Map<Integer, String> rows;
+        final Map<Integer, Map<LocalDate, Double>> recordedInterest;
+        final LocalDate through;
+        final Accrual[] accruals;
+        final int from;
+        final int to;
+
+        AccrualTask(List<Integer> accountIds, Map<Integer, String> rows, Map<Integer, Map<LocalDate, Double>> recordedInterest, LocalDate through, Accrual[] accruals, int from, int to) {
+            this.accountIds = accountIds;
+            this.rows = rows;
+            this.recordedInterest = recordedInterest;
+            this.through = through;
+            this.accruals = accruals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > splitThreshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AccrualTask(accountIds, rows, recordedInterest, through, accruals, from, middle),
+                        new AccrualTask(accountIds, rows, recordedInterest, through, accruals, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                Integer accountId = accountIds.get(i);
+                String row = rows.get(accountId);
+
+                if (row != null) accruals[i] = accrueAccount(row, through, recordedInterest.getOrDefault(accountId, Map.of()));
+            }
+        }
+    }
+
+    /**
+     * Accrue one account's daily interest from the day after it was last accrued through a day.
+     * @param row String Stored account data row.
+     * @param through LocalDate Last day to accrue.
+     * @param recordedInterest Map Interest already in the history (interrupted run) by day, credited without a new row.
+     * @return Accrual New row, interest rows and total.
+     */
+    static Accrual accrueAccount(String row, LocalDate through, Map<LocalDate, Double> recordedInterest) {
+        String[] rowData = row.split(";");
+        Accrual accrual = new Accrual();
+        long balanceCents = Math.round(Double.parseDouble(rowData[5]) * 100);
+        long remainder = rowData.length > remainderColumn ? Long.parseLong(rowData[remainderColumn]) : 0;
+
+        for (LocalDate day = getAccruedThrough(rowData, through).plusDays(1); !day.isAfter(through); day = day.plusDays(1)) {
+            long cents = 0;
+            Double recorded = recordedInterest.get(day);
+
+            if (balanceCents > 0) { // No interest while overdrawn
+                long units = balanceCents * annualRateBasisPoints + remainder;
+                cents = units / remainderUnitsPerCent;
+                remainder = units % remainderUnitsPerCent;
+            }
+
+            if (recorded != null) cents = Math.round(recorded * 100); // The history already has the row
+
+            if (cents == 0) continue;
+
+            balanceCents += cents;
+            accrual.interestCents += cents;
+
+            if (recorded == null) {
+                TransactionHistory interest = new TransactionHistory(Integer.parseInt(rowData[1]), Integer.parseInt(rowData[0]), "interest", cents / 100.0, balanceCents / 100.0);
+                interest.dateTime = getInterestTime(day);
+                accrual.interestRows.add(interest);
+            }
+        }
+
+        StringBuilder newRow = new StringBuilder();
+
+        for (int i = 0; i < accruedThroughColumn; i++) newRow.append(i == 5 ? String.valueOf(balanceCents / 100.0) : rowData[i]).append(';');
+
+        accrual.row = newRow.append(through).append(';').append(remainder).toString();
+
+        return accrual;
+    }
+
+    /**
+     * @param rowData String[] Account data row
+     * @param through LocalDate Day being accrued through.
+     * @return LocalDate Last day the account's interest was accrued through. Accounts never accrued start accruing on the day.
+     */
+    static LocalDate getAccruedThrough(String[] rowData, LocalDate through) {
+        return rowData.length > accruedThroughColumn ? LocalDate.parse(rowData[accruedThroughColumn]) : through.minusDays(1);
+    }
+
+    /**
+     * @param day LocalDate Accrued day
+     * @return LocalDateTime Time of the day's interest row: the last millisecond of the day.
+     */
+    static LocalDateTime getInterestTime(LocalDate day) {
+        return day.plusDays(1).atStartOfDay().minusNanos(1_000_000);
+    }
+
+    /**
+     * Find an account's interest rows that an interrupted run appended without writing the balance.
+     */
+    private Map<LocalDate, Double> findRecordedInterest(int accountId, String row, LocalDate through, LocalDate interruptedThrough) throws IOException {
+        Map<LocalDate, Double> recorded = new HashMap<>();
+
+        if (row == null) return recorded;
+
+        LocalDate from = getAccruedThrough(row.split(";"), through).plusDays(1);
+        LocalDate to = through.isBefore(interruptedThrough) ? through : interruptedThrough;
+
+        if (from.isAfter(to)) return recorded;
+
+        for (String transaction : storage.transactions().readAccountRange(accountId, from.atStartOfDay(), to.plusDays(1).atStartOfDay())) {
+            String[] transactionData = transaction.split(";");
+            LocalDateTime dateTime = Timestamps.parseDateTime(transactionData[2]);
+
+            if (transactionData[3].equals("interest") && dateTime.equals(getInterestTime(dateTime.toLocalDate()))) {
+                recorded.put(dateTime.toLocalDate(), Double.parseDouble(transactionData[4]));
+            }
+        }
+
+        return recorded;
+    }
+
+    /**
+     * @return LocalDate Recovery horizon of the last run if it didn't complete, otherwise null.
+     */
+    private LocalDate getInterruptedRun() throws IOException {
+        List<String> runs = DataFiles.readAllLines(runsFilePath);
+
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            String[] runData = runs.get(i).split(";");
+
+            if (runData.length < 2) continue; // Partly written line
+
+            return runData[1].equals("started") ? LocalDate.parse(runData[0]) : null;
+        }
+
+        return null;
+    }
+
+    private void logRun(String row) throws IOException {
+        DataFiles.append(runsFilePath, (row + System.lineSeparator()).getBytes(StandardCharsets.UTF_8), true);
+    }
+}
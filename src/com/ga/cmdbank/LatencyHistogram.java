@@ -0,0 +1,119 @@
+package com.ga.cmdbank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in nanoseconds.
+ *
+ * Values under 16ns get a bucket each, larger values are bucketed per power of 2 with 8 linear sub buckets,
+ * so any recorded value is within 12.5% of its bucket's bounds. Recording is a couple of bit operations and
+ * an atomic increment, with no allocation.
+ */
+public class LatencyHistogram {
+    static final int subBucketBits = 3;
+    static final int subBucketCount = 1 << subBucketBits;
+    static final int linearBucketCount = 2 * subBucketCount;
+    static final int bucketCount = linearBucketCount + (64 - (subBucketBits + 1)) * subBucketCount;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private volatile long maxNanos = 0;
+
+    /**
+     * Record a single latency value.
+     * @param nanos long Elapsed nanoseconds, negative values are counted as 0.
+     */
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+
+        if (nanos > maxNanos) maxNanos = nanos; // Racy by design, max is only a reporting hint
+    }
+
+    /**
+     * Get the bucket index of a value.
+     * @param value long Non-negative value.
+     * @return int Bucket index
+     */
+    static int bucketIndex(long value) {
+        if (value < linearBucketCount) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - subBucketBits)) & (subBucketCount - 1);
+
+        return linearBucketCount + (exponent - (subBucketBits + 1)) * subBucketCount + subBucket;
+    }
+
+    /**
+     * Get the highest value that falls into a bucket.
+     * @param index int Bucket index
+     * @return long Bucket upper bound
+     */
+    static long bucketUpperBound(int index) {
+        if (index < linearBucketCount) return index;
+
+        int exponent = (index - linearBucketCount) / subBucketCount + (subBucketBits + 1);
+        int subBucket = (index - linearBucketCount) % subBucketCount;
+        long lowerBound = (long) (subBucketCount + subBucket) << (exponent - subBucketBits);
+
+        return lowerBound + (1L << (exponent - subBucketBits)) - 1;
+    }
+
+    /**
+     * Get the latency at a percentile.
+     * @param percentile double Percentile between 0 and 100.
+     * @return long Nanoseconds, the upper bound of the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[bucketCount];
+
+        for (int _i = 0; _i < bucketCount; _i++) {
+            snapshot[_i] = buckets.get(_i);
+            total += snapshot[_i];
+        }
+
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+
+        for (int _i = 0; _i < bucketCount; _i++) {
+            seen += snapshot[_i];
+
+            if (seen >= rank) return Math.min(bucketUpperBound(_i), maxNanos);
+        }
+
+        return maxNanos;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    void reset() {
+        for (int _i = 0; _i < bucketCount; _i++) {
+            buckets.set(_i, 0);
+        }
+
+        count.reset();
+        totalNanos.reset();
+        maxNanos = 0;
+    }
+}
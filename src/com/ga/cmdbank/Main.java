@@ -4,8 +4,11 @@ import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0) System.exit(new CommandMode().run(args)); // Scripted command, see CommandMode
+
         Scanner inputScanner = new Scanner(System.in); // Universal input scanner
         UserRead userRead = new UserRead();
+        StandingOrderScheduler.get().start(); // Every open terminal runs the due standing orders
 
         userRead.displayLogin(inputScanner);
     }
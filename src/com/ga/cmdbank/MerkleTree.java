@@ -0,0 +1,125 @@
+package com.ga.cmdbank;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SHA-256 Merkle tree over a list of leaf hashes: its root, and the proof that a leaf is in the tree, checked with
+ * one hash per level (log2 of the leaf count).
+ *
+ * Leaves and inner nodes are hashed with different prefix bytes, so a node can't be passed off as a leaf. Each level
+ * pairs its nodes from the left, and an odd last node moves up a level unchanged.
+ */
+public class MerkleTree {
+    static final int hashBytes = 32;
+
+    private static final byte leafPrefix = 0;
+    private static final byte nodePrefix = 1;
+
+    /**
+     * @param data byte[] Leaf content
+     * @return byte[] Leaf hash
+     */
+    static byte[] hashLeaf(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(leafPrefix);
+
+        return digest.digest(data);
+    }
+
+    /**
+     * @param left byte[] Left child hash
+     * @param right byte[] Right child hash
+     * @return byte[] Parent hash
+     */
+    static byte[] hashNode(byte[] left, byte[] right) {
+        MessageDigest digest = newDigest();
+        digest.update(nodePrefix);
+        digest.update(left);
+
+        return digest.digest(right);
+    }
+
+    /**
+     * @param leaves List Leaf hashes
+     * @return byte[] Root hash, the hash of nothing if there are no leaves.
+     */
+    static byte[] getRoot(List<byte[]> leaves) {
+        if (leaves.isEmpty()) return newDigest().digest();
+
+        List<byte[]> level = leaves;
+
+        while (level.size() > 1) level = getParents(level);
+
+        return level.get(0);
+    }
+
+    /**
+     * Get the sibling hashes on the path from a leaf up to the root, bottom first.
+     * @param leaves List Leaf hashes
+     * @param index int Leaf index
+     * @return List Sibling hashes, none for the levels where the path's node has no sibling.
+     */
+    static List<byte[]> getProof(List<byte[]> leaves, int index) {
+        List<byte[]> proof = new ArrayList<>();
+        List<byte[]> level = leaves;
+
+        while (level.size() > 1) {
+            int sibling = index ^ 1;
+
+            if (sibling < level.size()) proof.add(level.get(sibling));
+
+            level = getParents(level);
+            index /= 2;
+        }
+
+        return proof;
+    }
+
+    /**
+     * Check that a leaf is in a tree, from the leaf's proof.
+     * @param leaf byte[] Leaf hash
+     * @param index int Leaf index
+     * @param leafCount int Number of leaves in the tree.
+     * @param proof List Sibling hashes from getProof.
+     * @param root byte[] Trusted root hash of the tree.
+     * @return boolean Whether the proof leads from the leaf to the root.
+     */
+    static boolean verifyProof(byte[] leaf, int index, int leafCount, List<byte[]> proof, byte[] root) {
+        if (index < 0 || index >= leafCount) return false;
+
+        byte[] hash = leaf;
+        int used = 0;
+
+        for (int levelSize = leafCount; levelSize > 1; levelSize = (levelSize + 1) / 2, index /= 2) {
+            if ((index ^ 1) >= levelSize) continue; // Odd last node, moves up unchanged
+
+            if (used == proof.size()) return false;
+
+            byte[] sibling = proof.get(used++);
+            hash = (index & 1) == 0 ? hashNode(hash, sibling) : hashNode(sibling, hash);
+        }
+
+        return used == proof.size() && Arrays.equals(hash, root);
+    }
+
+    private static List<byte[]> getParents(List<byte[]> level) {
+        List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+
+        for (int i = 0; i < level.size(); i += 2) parents.add(i + 1 < level.size() ? hashNode(level.get(i), level.get(i + 1)) : level.get(i));
+
+        return parents;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e); // Every Java platform has it
+        }
+    }
+}
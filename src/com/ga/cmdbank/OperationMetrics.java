@@ -0,0 +1,58 @@
+package com.ga.cmdbank;
+
+/**
+ * Count and latency histogram of a single banking operation (deposit, withdraw, login...).
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    final String operationName;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    OperationMetrics(String operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * Record one run of the operation.
+     * @param startNanos long System.nanoTime() taken when the operation started.
+     */
+    void recordSince(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = latency.getCount();
+
+        return count == 0 ? 0.0 : latency.getTotalNanos() / (count * 1_000.0);
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getValueAtPercentile(50.0) / 1_000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getValueAtPercentile(99.0) / 1_000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.getValueAtPercentile(99.9) / 1_000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMaxNanos() / 1_000.0;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+    }
+}
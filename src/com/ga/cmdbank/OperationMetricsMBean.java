@@ -0,0 +1,20 @@
+package com.ga.cmdbank;
+
+/**
+ * JMX view of a banking operation's count and latency, published as com.ga.cmdbank:type=Operation,name=[operation].
+ */
+public interface OperationMetricsMBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
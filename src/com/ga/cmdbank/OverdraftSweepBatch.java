@@ -0,0 +1,312 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Nightly overdraft sweep over all bank accounts (banker only, or the overdrafts command of CommandMode).
+ *
+ * Withdrawals only charge the overdraft fee when they overdraw. The sweep reviews every account: accounts with a
+ * negative balance, including those deactivated at the overdraft count cap, are charged a recurring daily fee once
+ * they have been negative for graceDays, up to feeCapCents per overdraft; accounts back to a non-negative balance
+ * with overdrafts still counted are reactivated. Each fee is a history row of type fee, and the sweep writes a
+ * report of every reviewed account to data/overdraft_reports/YYYY-MM-DD.txt.
+ *
+ * Daytime traffic isn't held up: the accounts are read once without a lock and reviewed in a parallel stream, then the
+ * fees are applied in batches of batchSize, each holding the accounts' update lock only for the one rewrite of its
+ * rows. Every change is checked against the stored row, so an account a customer brought back to a positive balance
+ * since it was read is not charged.
+ *
+ * Overdrafts being charged are tracked in overdrafts.txt: accountId;negativeSince;lastFeeDate (empty before the first fee);feeCents
+ * A negative account's overdraft starts on the first sweep that finds it negative. The day's fees are written there
+ * before they are applied, so a rerun or a restart after a crash never charges an account twice on the same day.
+ */
+public class OverdraftSweepBatch {
+    static final int dailyFeeCents = Integer.getInteger("cmdbank.overdraftDailyFeeCents", 500); // $5.00 a day
+    static final int graceDays = Integer.getInteger("cmdbank.overdraftGraceDays", 5);
+    static final int feeCapCents = Integer.getInteger("cmdbank.overdraftFeeCapCents", 10_000); // $100.00 per overdraft
+    static final int batchSize = 1_000;
+
+    final StorageEngine storage;
+    final Path overdraftsFilePath;
+    final Path reportDirectory;
+    final BankAccountTransaction transaction = new BankAccountTransaction();
+
+    /**
+     * Total of a sweep.
+     */
+    static class Result {
+        int negative;
+        int deactivated;
+        int reactivated;
+        int feesCharged;
+        long feeCents;
+        Path report;
+    }
+
+    /**
+     * One reviewed account: negative, deactivated or to reactivate.
+     */
+    static class Review {
+        int accountId;
+        int userCPR;
+        long balanceCents;
+        int overdraftCount;
+        String status;
+        LocalDate negativeSince;
+        LocalDate lastFeeDate;
+        long feeCents; // Charged during this overdraft, today's fee included
+        long feeDueCents;
+    }
+
+    public OverdraftSweepBatch() {
+        this(Storage.get(), Storage.getDataDirectory());
+    }
+
+    /**
+     * @param storage StorageEngine Accounts and transactions to sweep.
+     * @param dataDirectory Path Directory of overdrafts.txt and the reports.
+     */
+    OverdraftSweepBatch(StorageEngine storage, Path dataDirectory) {
+        this.storage = storage;
+        this.overdraftsFilePath = dataDirectory.resolve("overdrafts.txt");
+        this.reportDirectory = dataDirectory.resolve("overdraft_reports");
+    }
+
+    /**
+     * Display the overdraft sweep prompt.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void display(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to sweep all accounts for overdrafts.");
+
+            System.out.println("OVERDRAFT SWEEP ($" + dailyFeeCents / 100.0 + " A DAY AFTER " + graceDays + " DAYS, AT MOST $" + feeCapCents / 100.0 + " PER OVERDRAFT):");
+            System.out.print("Sweep Date (YYYY-MM-DD, empty for today): ");
+            String dateInput = inputScanner.nextLine().strip();
+            LocalDate date = dateInput.isEmpty() ? LocalDate.now() : LocalDate.parse(dateInput);
+            System.out.println(" ");
+
+            System.out.println("Sweeping accounts...");
+            printResult(sweep(date));
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (DateTimeParseException e) {
+            System.err.println("Please type the date in the format YYYY-MM-DD, for example 2025-12-31.");
+            display(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            display(inputScanner, user);
+        }
+    }
+
+    /**
+     * Print a sweep's totals.
+     * @param result Result Sweep totals
+     */
+    static void printResult(Result result) {
+        System.out.println(result.negative + " accounts negative (" + result.deactivated + " deactivated), " + result.reactivated + " reactivated.");
+        System.out.println("$" + result.feeCents / 100.0 + " fees charged to " + result.feesCharged + " accounts. Report saved to " + result.report);
+    }
+
+    /**
+     * Review every account and charge the day's overdraft fees. Fees already charged on the day are not charged again.
+     * @param date LocalDate Day of the sweep, today at the latest.
+     * @return Result Accounts found, fees charged and the report file.
+     * @throws IOException The day is in the future, or data reading or writing error.
+     */
+    @SuppressWarnings("try")
+    Result sweep(LocalDate date) throws IOException {
+        if (date.isAfter(LocalDate.now())) throw new IOException("Overdraft fees can only be charged up to today, " + LocalDate.now() + ".");
+
+        try (DataFiles.HeldLock overdraftsLock = DataFiles.lockForUpdate(overdraftsFilePath)) { // One sweep at a time, also across terminals
+            Map<Integer, String[]> overdrafts = new HashMap<>();
+
+            for (String row : DataFiles.readAllLines(overdraftsFilePath)) {
+                String[] rowData = row.split(";");
+                overdrafts.put(Integer.parseInt(rowData[0]), rowData);
+            }
+
+            List<Review> reviews = storage.accounts().readAll().parallelStream() // No lock: rows are checked again when changed
+                    .map(row -> review(row, overdrafts, date))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            List<String> overdraftRows = new ArrayList<>();
+
+            for (Review review : reviews) {
+                if (review.balanceCents < 0) overdraftRows.add(review.accountId + ";" + review.negativeSince + ";" + (review.lastFeeDate == null ? "" : review.lastFeeDate) + ";" + review.feeCents);
+            }
+
+            DataFiles.write(overdraftsFilePath, overdraftRows); // Before charging, a crash skips fees rather than charging them twice
+
+            Result result = new Result();
+
+            for (int start = 0; start < reviews.size(); start += batchSize) {
+                applyBatch(reviews.subList(start, Math.min(start + batchSize, reviews.size())), result);
+            }
+
+            for (Review review : reviews) {
+                if (review.status.equals("negative")) result.negative++;
+
+                if (review.status.equals("deactivated")) {
+                    result.negative++;
+                    result.deactivated++;
+                }
+            }
+
+            result.report = saveReport(reviews, date);
+
+            return result;
+        }
+    }
+
+    /**
+     * Review one account.
+     * @param row String Account data row
+     * @param overdrafts Map Tracked overdrafts by account ID, as overdrafts.txt rows split.
+     * @param date LocalDate Day of the sweep.
+     * @return Review The account's review, or null if it has nothing to review.
+     */
+    Review review(String row, Map<Integer, String[]> overdrafts, LocalDate date) {
+        String[] rowData = row.split(";");
+        Review review = new Review();
+        review.accountId = Integer.parseInt(rowData[0]);
+        review.userCPR = Integer.parseInt(rowData[1]);
+        review.balanceCents = Math.round(Double.parseDouble(rowData[5]) * 100);
+        review.overdraftCount = Integer.parseInt(rowData[6]);
+
+        if (review.balanceCents >= 0) {
+            if (review.overdraftCount == 0) return null;
+
+            review.status = "reactivated";
+
+            return review;
+        }
+
+        review.status = review.overdraftCount >= transaction.overdraftCountCap ? "deactivated" : "negative";
+        String[] overdraft = overdrafts.get(review.accountId);
+        review.negativeSince = overdraft == null ? date : LocalDate.parse(overdraft[1]);
+        review.lastFeeDate = overdraft == null || overdraft[2].isEmpty() ? null : LocalDate.parse(overdraft[2]);
+        review.feeCents = overdraft == null ? 0 : Long.parseLong(overdraft[3]);
+
+        boolean feeDue = ChronoUnit.DAYS.between(review.negativeSince, date) >= graceDays && (review.lastFeeDate == null || review.lastFeeDate.isBefore(date));
+
+        if (feeDue) {
+            review.feeDueCents = Math.max(0, Math.min(dailyFeeCents, feeCapCents - review.feeCents));
+            review.feeCents += review.feeDueCents;
+            review.lastFeeDate = date;
+        }
+
+        return review;
+    }
+
+    /**
+     * Charge the fees and reactivate the accounts of a batch in one rewrite of the accounts, then record the fees.
+     */
+    private void applyBatch(List<Review> reviews, Result result) throws IOException {
+        Map<Integer, UnaryOperator<String>> changes = new HashMap<>(reviews.size() * 2);
+        Map<Integer, Review> charged = new HashMap<>();
+        Map<Integer, Long> chargedBalanceCents = new HashMap<>(); // Written by the changes, under the accounts' lock
+
+        for (Review review : reviews) {
+            if (review.status.equals("reactivated")) {
+                changes.put(review.accountId, row -> {
+                    String[] rowData = row.split(";");
+
+                    if (Double.parseDouble(rowData[5]) < 0 || Integer.parseInt(rowData[6]) == 0) return row; // Changed since it was reviewed
+
+                    result.reactivated++;
+
+                    return transaction.getUpdatedAccountRow(row, Double.parseDouble(rowData[5]), 0);
+                });
+
+            } else if (review.feeDueCents > 0) {
+                changes.put(review.accountId, row -> {
+                    String[] rowData = row.split(";");
+                    long balanceCents = Math.round(Double.parseDouble(rowData[5]) * 100);
+
+                    if (balanceCents >= 0) return row; // Brought back to positive since it was reviewed
+
+                    balanceCents -= review.feeDueCents;
+                    charged.put(review.accountId, review);
+                    chargedBalanceCents.put(review.accountId, balanceCents);
+
+                    return transaction.getUpdatedAccountRow(row, balanceCents / 100.0, Integer.parseInt(rowData[6]));
+                });
+            }
+        }
+
+        if (changes.isEmpty()) return;
+
+        storage.accounts().updateAll(changes);
+
+        List<TransactionHistory> feeRows = new ArrayList<>();
+
+        for (Review review : reviews) {
+            if (review.feeDueCents > 0 && !charged.containsKey(review.accountId)) { // Not charged, left out of the report's fees
+                review.feeCents -= review.feeDueCents;
+                review.feeDueCents = 0;
+            }
+        }
+
+        for (Map.Entry<Integer, Review> entry : charged.entrySet()) {
+            Review review = entry.getValue();
+            feeRows.add(new TransactionHistory(review.userCPR, review.accountId, "fee", review.feeDueCents / 100.0, chargedBalanceCents.get(entry.getKey()) / 100.0));
+            result.feesCharged++;
+            result.feeCents += review.feeDueCents;
+        }
+
+        storage.transactions().appendAll(feeRows);
+        storage.transactions().awaitPending();
+    }
+
+    /**
+     * Write the sweep's report of every reviewed account.
+     */
+    private Path saveReport(List<Review> reviews, LocalDate date) throws IOException {
+        Files.createDirectories(reportDirectory);
+        Path reportFile = reportDirectory.resolve(date + ".txt");
+        List<String> lines = new ArrayList<>();
+        long balanceCents = 0;
+        long feeCents = 0;
+
+        lines.add("OVERDRAFT SWEEP " + date);
+        lines.add("Fee $" + dailyFeeCents / 100.0 + " a day after " + graceDays + " days negative, at most $" + feeCapCents / 100.0 + " per overdraft.");
+        lines.add(" ");
+        lines.add(String.format("%-10s | %-9s | %-12s | %-10s | %-11s | %-14s | %-9s | %s", "Account ID", "CPR", "Balance", "Overdrafts", "Status", "Negative Since", "Fee Today", "Overdraft Fees"));
+        lines.add("-----------+-----------+--------------+------------+-------------+----------------+-----------+---------------");
+
+        for (Review review : reviews) {
+            lines.add(String.format("%-10d | %-9d | %12.2f | %-10d | %-11s | %-14s | %9.2f | %14.2f", review.accountId, review.userCPR, review.balanceCents / 100.0, review.overdraftCount,
+                    review.status, review.negativeSince == null ? "" : review.negativeSince, review.feeDueCents / 100.0, review.feeCents / 100.0));
+
+            if (review.balanceCents < 0) balanceCents += review.balanceCents;
+
+            feeCents += review.feeDueCents;
+        }
+
+        lines.add(" ");
+        lines.add("TOTAL NEGATIVE BALANCES: $" + balanceCents / 100.0);
+        lines.add("TOTAL FEES TODAY: $" + feeCents / 100.0);
+        Files.write(reportFile, lines);
+
+        return reportFile;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+
+/**
+ * Storage of named ID sequences, such as the last generated card ID of each card product.
+ */
+public interface SequenceStore {
+    /**
+     * @param name String Sequence name
+     * @return int Last value taken from the sequence, or 0 if none.
+     * @throws IOException Storage reading error.
+     */
+    int getLast(String name) throws IOException;
+
+    /**
+     * Take the next value of a sequence, atomically also across processes.
+     * @param name String Sequence name
+     * @param first int Value to start with if the sequence is new.
+     * @return int Last value + 1, or first.
+     * @throws IOException Storage writing error.
+     */
+    int next(String name, int first) throws IOException;
+}
\ No newline at end of file
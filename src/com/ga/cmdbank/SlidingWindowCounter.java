@@ -0,0 +1,76 @@
+package com.ga.cmdbank;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window sum of amounts (in cents) over a fixed number of time buckets, kept in a ring buffer.
+ *
+ * Adding and reading are constant time: the running total is kept up to date, and buckets that slid out of
+ * the window are cleared lazily when time moves forward (at most bucketCount slots per call).
+ * The window covers the current bucket and the bucketCount - 1 buckets before it.
+ */
+public class SlidingWindowCounter {
+    final int bucketCount;
+    final long bucketSeconds;
+    private final long[] bucketAmounts;
+    private long total = 0;
+    private long headBucket = Long.MIN_VALUE; // Newest bucket number the ring has been advanced to
+
+    /**
+     * @param bucketCount int Number of buckets in the window.
+     * @param bucketSeconds long Length of one bucket in seconds.
+     */
+    SlidingWindowCounter(int bucketCount, long bucketSeconds) {
+        this.bucketCount = bucketCount;
+        this.bucketSeconds = bucketSeconds;
+        this.bucketAmounts = new long[bucketCount];
+    }
+
+    /**
+     * Add an amount at a point in time. Amounts older than the window are ignored.
+     * @param epochSecond long Time of the amount
+     * @param cents long Amount in cents
+     */
+    void add(long epochSecond, long cents) {
+        long bucket = Math.floorDiv(epochSecond, bucketSeconds);
+
+        if (bucket > headBucket) advanceTo(bucket);
+        if (bucket <= headBucket - bucketCount) return; // Already outside the window
+
+        bucketAmounts[(int) Math.floorMod(bucket, (long) bucketCount)] += cents;
+        total += cents;
+    }
+
+    /**
+     * Get the window's total at a point in time.
+     * @param epochSecond long Current time
+     * @return long Sum of the amounts inside the window, in cents.
+     */
+    long getTotal(long epochSecond) {
+        long bucket = Math.floorDiv(epochSecond, bucketSeconds);
+
+        if (bucket > headBucket) advanceTo(bucket);
+
+        return total;
+    }
+
+    /**
+     * Move the window's head forward, clearing the buckets that slide out.
+     * @param bucket long New head bucket number
+     */
+    private void advanceTo(long bucket) {
+        if (headBucket == Long.MIN_VALUE || bucket - headBucket >= bucketCount) { // Whole window expired
+            Arrays.fill(bucketAmounts, 0);
+            total = 0;
+
+        } else {
+            for (long expired = headBucket + 1; expired <= bucket; expired++) {
+                int slot = (int) Math.floorMod(expired, (long) bucketCount);
+                total -= bucketAmounts[slot];
+                bucketAmounts[slot] = 0;
+            }
+        }
+
+        headBucket = bucket;
+    }
+}
@@ -0,0 +1,214 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Scanner;
+
+/**
+ * A standing order: a transfer repeated daily, weekly or monthly from a customer's account, run by StandingOrderScheduler.
+ *
+ * The n-th run is the first run plus n days, weeks or months, so monthly orders started on the 31st run on the last
+ * day of shorter months and return to the 31st afterwards.
+ *
+ * Standing orders data file row structure: orderId;userCPR;fromAccountId;toAccountId;amount;frequency;firstRun;runCount
+ */
+public class StandingOrder {
+    static final List<String> frequencies = List.of("daily", "weekly", "monthly");
+    static final DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    static final String orderIdSequence = "standingOrder_lastGenerated";
+
+    int orderId;
+    int userCPR;
+    int fromAccountId;
+    int toAccountId;
+    double amount;
+    String frequency;
+    LocalDateTime firstRun;
+    int runCount;
+
+    /**
+     * Create a standing order from its standing_orders.txt data row.
+     * @param row String Data row
+     * @return StandingOrder
+     */
+    static StandingOrder fromRow(String row) {
+        String[] rowData = row.split(";");
+        StandingOrder order = new StandingOrder();
+        order.orderId = Integer.parseInt(rowData[0]);
+        order.userCPR = Integer.parseInt(rowData[1]);
+        order.fromAccountId = Integer.parseInt(rowData[2]);
+        order.toAccountId = Integer.parseInt(rowData[3]);
+        order.amount = Double.parseDouble(rowData[4]);
+        order.frequency = rowData[5];
+        order.firstRun = LocalDateTime.parse(rowData[6]);
+        order.runCount = Integer.parseInt(rowData[7]);
+
+        return order;
+    }
+
+    /**
+     * @return String Data row in the standing_orders.txt format.
+     */
+    String toRow() {
+        return orderId + ";" + userCPR + ";" + fromAccountId + ";" + toAccountId + ";" + amount + ";" + frequency + ";" + firstRun + ";" + runCount;
+    }
+
+    /**
+     * @param run int Number of the run, 0 for the first.
+     * @return LocalDateTime Time of the run.
+     */
+    LocalDateTime getRunTime(int run) {
+        return switch (frequency) {
+            case "daily" -> firstRun.plusDays(run);
+            case "weekly" -> firstRun.plusWeeks(run);
+            default -> firstRun.plusMonths(run);
+        };
+    }
+
+    /**
+     * @return LocalDateTime Time of the next run.
+     */
+    LocalDateTime getNextRun() {
+        return getRunTime(runCount);
+    }
+
+    /**
+     * Display the standing orders menu: a customer's orders, new order and cancel order.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user. A banker chooses the customer first.
+     */
+    void display(Scanner inputScanner, UserRead user) {
+        try {
+            int customerCPR = user.cpr;
+
+            if (Objects.equals(user.userRole, "banker")) {
+                System.out.print("Customer CPR: ");
+                customerCPR = Integer.parseInt(inputScanner.nextLine().strip());
+                System.out.println(" ");
+            }
+
+            System.out.println("STANDING ORDERS:");
+            System.out.println("Order ID  | From Account | To Account | Amount (USD) | Frequency | Next Run");
+            System.out.println("----------+--------------+------------+--------------+-----------+-----------------");
+
+            for (StandingOrder order : getCustomerOrders(customerCPR)) {
+                System.out.printf("%-9d | %-12d | %-10d | %12.2f | %-9s | %s%n", order.orderId, order.fromAccountId, order.toAccountId, order.amount, order.frequency, order.getNextRun().format(inputFormatter));
+            }
+
+            System.out.println(" ");
+            System.out.println("(N) New standing order");
+            System.out.println("(C) Cancel a standing order");
+            System.out.println("(B) Back to main menu");
+            System.out.print("Choice: ");
+            String choice = inputScanner.nextLine().strip().toLowerCase();
+            System.out.println(" ");
+
+            switch (choice) {
+                case "n" -> displayCreate(inputScanner, user, customerCPR);
+                case "c" -> displayCancel(inputScanner, user, customerCPR);
+                case "b" -> user.backToMainMenu(inputScanner, user);
+                default -> throw new IOException("Please type in the letter corresponding to 1 of the choices only.");
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            display(inputScanner, user);
+        }
+    }
+
+    private void displayCreate(Scanner inputScanner, UserRead user, int customerCPR) throws IOException {
+        BankAccount bankAccount = new BankAccount();
+
+        System.out.println("NEW STANDING ORDER:");
+        System.out.print("From Account ID: ");
+        BankAccount account = bankAccount.getAccount(Integer.parseInt(inputScanner.nextLine().strip()));
+
+        if (account.userCPR != customerCPR) throw new IOException("You are not authorized to transfer from another person's account.");
+
+        System.out.print("To Account ID: ");
+        BankAccount transferAccount = bankAccount.getAccount(Integer.parseInt(inputScanner.nextLine().strip()));
+
+        if (account.bankAccountID == transferAccount.bankAccountID) throw new IOException("The account to transfer from must be different than the account to transfer to.");
+
+        System.out.print("Transfer Amount (USD): ");
+        double amount = Double.parseDouble(inputScanner.nextLine().strip());
+
+        if (!(amount > 0)) throw new IOException("The transfer amount must be more than $0.");
+
+        System.out.print("Frequency (daily, weekly or monthly): ");
+        String frequency = inputScanner.nextLine().strip().toLowerCase();
+
+        if (!frequencies.contains(frequency)) throw new IOException("Please type daily, weekly or monthly as the frequency.");
+
+        System.out.print("First Run (YYYY-MM-DD HH:MM, empty for now): ");
+        String firstRunInput = inputScanner.nextLine().strip();
+        LocalDateTime firstRun;
+
+        try {
+            firstRun = firstRunInput.isEmpty() ? LocalDateTime.now().withSecond(0).withNano(0) : LocalDateTime.parse(firstRunInput, inputFormatter);
+
+        } catch (DateTimeParseException e) {
+            throw new IOException("Please type the first run in the format YYYY-MM-DD HH:MM, for example 2025-12-31 09:00.");
+        }
+
+        if (firstRun.isBefore(LocalDateTime.now().minusMinutes(1))) throw new IOException("The first run cannot be in the past.");
+
+        System.out.println(" ");
+
+        StandingOrder order = new StandingOrder();
+        order.orderId = Storage.get().sequences().next(orderIdSequence, 1);
+        order.userCPR = customerCPR;
+        order.fromAccountId = account.bankAccountID;
+        order.toAccountId = transferAccount.bankAccountID;
+        order.amount = amount;
+        order.frequency = frequency;
+        order.firstRun = firstRun;
+        StandingOrderScheduler.get().add(order);
+
+        System.out.println("Standing order " + order.orderId + " created. It first runs " + firstRun.format(inputFormatter) + ".");
+        System.out.println(" ");
+
+        user.backToMainMenu(inputScanner, user);
+    }
+
+    private void displayCancel(Scanner inputScanner, UserRead user, int customerCPR) throws IOException {
+        System.out.print("Order ID to cancel: ");
+        int orderId = Integer.parseInt(inputScanner.nextLine().strip());
+        boolean isCustomerOrder = false;
+
+        for (StandingOrder order : getCustomerOrders(customerCPR)) {
+            if (order.orderId == orderId) isCustomerOrder = true;
+        }
+
+        if (!isCustomerOrder) throw new IOException("No standing order with ID " + orderId + " found.");
+
+        StandingOrderScheduler.get().cancel(orderId);
+        System.out.println(" ");
+
+        System.out.println("Standing order " + orderId + " cancelled.");
+        System.out.println(" ");
+
+        user.backToMainMenu(inputScanner, user);
+    }
+
+    /**
+     * @param customerCPR int Customer's CPR
+     * @return List The customer's standing orders, in creation order.
+     * @throws IOException Data reading error.
+     */
+    List<StandingOrder> getCustomerOrders(int customerCPR) throws IOException {
+        List<StandingOrder> orders = new ArrayList<>();
+
+        for (String row : Storage.get().standingOrders().readAll()) {
+            StandingOrder order = fromRow(row);
+
+            if (order.userCPR == customerCPR) orders.add(order);
+        }
+
+        return orders;
+    }
+}
@@ -0,0 +1,304 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs the standing orders when they are due.
+ *
+ * Every order waits in a TimingWheel at its next run, so a minute without due orders costs one step of the wheel
+ * and a check of the orders' version, however many orders there are. The wheel is loaded from the store on start, and
+ * reloaded when another terminal changes the orders; orders added or cancelled in this terminal go straight to the wheel.
+ *
+ * Due orders run in batches of batchSize, each under the standing orders' update lock: a batch re-reads its orders,
+ * writes their new run counts in one write, then runs each due run, missed ones included, through the checks and transfer
+ * of the transfer menu. Orders another terminal ran meanwhile are skipped, so every terminal can run the scheduler, and
+ * runs missed while no terminal was running are caught up on the next start. A refused run (balance or limit) is not
+ * retried, and as the run counts are written first, a crash during a batch skips its remaining runs rather than
+ * transferring them twice.
+ * Every run is logged in standing_order_runs.txt: runTime;orderId;fromAccountId;toAccountId;amount;result
+ */
+public class StandingOrderScheduler {
+    static final long tickMillis = 60_000;
+    static final int wheelLevels = 4; // 64^4 minutes, 31 years ahead
+    static final int batchSize = 1_000;
+
+    private static volatile StandingOrderScheduler scheduler;
+
+    final Path runsFilePath;
+    private TimingWheel<ScheduledRun> wheel; // Guarded by this
+    private long loadedVersion; // Store version the wheel holds, guarded by this
+    private Thread worker;
+
+    /**
+     * Totals of the runs of due orders.
+     */
+    static class Result {
+        int transferred;
+        int refused;
+    }
+
+    /**
+     * An order's next run, as held in the wheel. Outdated when the stored order's next run is another one.
+     */
+    private static class ScheduledRun {
+        final int orderId;
+        final long runMillis;
+
+        ScheduledRun(int orderId, long runMillis) {
+            this.orderId = orderId;
+            this.runMillis = runMillis;
+        }
+    }
+
+    /**
+     * @param dataDirectory Path Directory of the run log.
+     */
+    StandingOrderScheduler(Path dataDirectory) {
+        this.runsFilePath = dataDirectory.resolve("standing_order_runs.txt");
+    }
+
+    /**
+     * Get the shared scheduler of the configured data directory. Due orders only run on their own once it is started.
+     * @return StandingOrderScheduler
+     */
+    static StandingOrderScheduler get() {
+        StandingOrderScheduler loaded = scheduler;
+
+        if (loaded != null) return loaded;
+
+        synchronized (StandingOrderScheduler.class) {
+            if (scheduler == null) scheduler = new StandingOrderScheduler(Storage.getDataDirectory());
+
+            return scheduler;
+        }
+    }
+
+    /**
+     * Start the worker thread, which runs the due orders every minute. It is a daemon thread, so it doesn't keep the application running on exit.
+     */
+    synchronized void start() {
+        if (worker != null) return;
+
+        worker = new Thread(this::run, "cmdbank-standing-orders");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Save a new standing order and schedule its first run.
+     * @param order StandingOrder Order with its ID taken from the sequence.
+     * @throws IOException Data writing error.
+     */
+    @SuppressWarnings("try")
+    void add(StandingOrder order) throws IOException {
+        StandingOrderStore orders = Storage.get().standingOrders();
+
+        try (StoreLock ordersLock = orders.lockForUpdate()) {
+            long versionBefore = orders.getVersion();
+            orders.add(order.toRow());
+
+            synchronized (this) {
+                if (wheel != null && loadedVersion == versionBefore) { // Otherwise the next reload brings it
+                    long runMillis = Timestamps.toEpochMilli(order.getNextRun());
+                    wheel.add(runMillis, new ScheduledRun(order.orderId, runMillis));
+                    loadedVersion = orders.getVersion();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a standing order. A run already going on in another terminal still completes.
+     * @param orderId int Order ID
+     * @throws IOException No such order, or data writing error.
+     */
+    @SuppressWarnings("try")
+    void cancel(int orderId) throws IOException {
+        StandingOrderStore orders = Storage.get().standingOrders();
+
+        try (StoreLock ordersLock = orders.lockForUpdate()) {
+            long versionBefore = orders.getVersion();
+
+            if (orders.updateAll(Map.of(orderId, row -> null)) == 0) throw new IOException("No standing order with ID " + orderId + " found.");
+
+            synchronized (this) {
+                if (loadedVersion == versionBefore) loadedVersion = orders.getVersion(); // Its run in the wheel finds no order and is dropped
+            }
+        }
+    }
+
+    /**
+     * Run every standing order due by a time, catching up all of its missed runs.
+     * @param nowMillis long Current time in epoch milliseconds.
+     * @return Result Runs transferred and refused.
+     * @throws IOException Data reading or writing error.
+     */
+    Result runDue(long nowMillis) throws IOException {
+        StandingOrderStore orders = Storage.get().standingOrders();
+        long version = orders.getVersion();
+        boolean reload;
+        List<ScheduledRun> due;
+
+        synchronized (this) {
+            reload = wheel == null || version != loadedVersion;
+        }
+
+        List<String> rows = reload ? orders.readAll() : null; // Outside the monitor: adding an order takes the orders' lock first
+
+        synchronized (this) {
+            if (reload) load(rows, version, nowMillis);
+
+            due = wheel.advance(nowMillis);
+        }
+
+        Result result = new Result();
+
+        for (int i = 0; i < due.size(); i += batchSize) runBatch(due.subList(i, Math.min(i + batchSize, due.size())), nowMillis, result);
+
+        return result;
+    }
+
+    /**
+     * @return int Number of runs waiting in the wheel, outdated ones included.
+     */
+    synchronized int getScheduledCount() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                runDue(System.currentTimeMillis());
+
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Standing order error: " + e.getMessage());
+            }
+
+            try {
+                Thread.sleep(tickMillis - System.currentTimeMillis() % tickMillis); // Until the next minute starts
+
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replace the wheel with the stored orders' next runs.
+     */
+    private void load(List<String> rows, long version, long nowMillis) {
+        wheel = new TimingWheel<>(tickMillis, wheelLevels, nowMillis);
+
+        for (String row : rows) {
+            StandingOrder order = StandingOrder.fromRow(row);
+            long runMillis = Timestamps.toEpochMilli(order.getNextRun());
+            wheel.add(runMillis, new ScheduledRun(order.orderId, runMillis));
+        }
+
+        loadedVersion = version;
+    }
+
+    /**
+     * Run a batch of due orders under the standing orders' lock, saving their run counts first, then schedule their next runs.
+     */
+    @SuppressWarnings("try")
+    private void runBatch(List<ScheduledRun> due, long nowMillis, Result result) throws IOException {
+        StandingOrderStore orders = Storage.get().standingOrders();
+        Map<Integer, StandingOrder> dueOrders = new HashMap<>();
+        Map<Integer, UnaryOperator<String>> changes = new HashMap<>();
+        List<StandingOrder> ranOrders = new ArrayList<>();
+        List<ScheduledRun> nextRuns = new ArrayList<>();
+        StringBuilder runs = new StringBuilder();
+
+        for (ScheduledRun scheduledRun : due) dueOrders.put(scheduledRun.orderId, null);
+
+        try (StoreLock ordersLock = orders.lockForUpdate()) { // Other terminals' schedulers wait, and then skip the orders run here
+            long versionBefore = orders.getVersion();
+
+            for (String row : orders.readAll()) {
+                int orderId = Integer.parseInt(row, 0, row.indexOf(';'), 10);
+
+                if (dueOrders.containsKey(orderId)) dueOrders.put(orderId, StandingOrder.fromRow(row));
+            }
+
+            for (ScheduledRun scheduledRun : due) {
+                StandingOrder order = dueOrders.get(scheduledRun.orderId);
+
+                // Cancelled, or run by another terminal: the reload on its version change has the order's next run
+                if (order == null || Timestamps.toEpochMilli(order.getNextRun()) != scheduledRun.runMillis) continue;
+
+                int runCount = order.runCount;
+
+                while (Timestamps.toEpochMilli(order.getRunTime(runCount)) <= nowMillis) runCount++; // Missed runs included
+
+                int newRunCount = runCount;
+                changes.put(order.orderId, row -> {
+                    StandingOrder stored = StandingOrder.fromRow(row);
+                    stored.runCount = newRunCount;
+
+                    return stored.toRow();
+                });
+                ranOrders.add(order);
+                nextRuns.add(new ScheduledRun(order.orderId, Timestamps.toEpochMilli(order.getRunTime(newRunCount))));
+            }
+
+            if (!changes.isEmpty()) orders.updateAll(changes); // A crash during the transfers skips the rest rather than transferring twice
+
+            for (StandingOrder order : ranOrders) {
+                for (LocalDateTime runTime = order.getNextRun(); Timestamps.toEpochMilli(runTime) <= nowMillis; runTime = order.getRunTime(++order.runCount)) {
+                    String runResult = "transferred";
+
+                    try {
+                        transfer(order);
+                        result.transferred++;
+
+                    } catch (IOException | RuntimeException e) {
+                        runResult = "refused: " + e.getMessage();
+                        result.refused++;
+                    }
+
+                    runs.append(runTime).append(';').append(order.orderId).append(';').append(order.fromAccountId).append(';').append(order.toAccountId)
+                            .append(';').append(order.amount).append(';').append(runResult).append(System.lineSeparator());
+                }
+            }
+
+            if (runs.length() > 0) DataFiles.append(runsFilePath, runs.toString().getBytes(StandardCharsets.UTF_8), false);
+
+            synchronized (this) {
+                for (ScheduledRun nextRun : nextRuns) wheel.add(nextRun.runMillis, nextRun);
+
+                if (loadedVersion == versionBefore) loadedVersion = orders.getVersion();
+            }
+        }
+    }
+
+    /**
+     * Transfer one run of an order, with the balance check and limits of the transfer menu.
+     */
+    @SuppressWarnings("try")
+    private static void transfer(StandingOrder order) throws IOException {
+        BankAccountTransaction transaction = new BankAccountTransaction();
+
+        try (StoreLock accountsLock = Storage.get().accounts().lockForUpdate()) { // The balance can't change between the check and the transfer
+            BankAccount account = transaction.getAccount(order.fromAccountId);
+            BankAccount transferAccount = transaction.getAccount(order.toAccountId);
+
+            if (account.balance < order.amount) throw new IOException("Account balance is not enough to transfer $" + order.amount);
+
+            transaction.checkTransferLimits(account, transferAccount, order.amount);
+            boolean isOwnAccount = account.userCPR == transferAccount.userCPR;
+
+            if (!transaction.transfer(account, transferAccount, order.amount)) throw new IOException("Accounts " + account.bankAccountID + " and " + transferAccount.bankAccountID + " could not be updated.");
+
+            new TransactionHistory(order.userCPR, account.bankAccountID, "transfer", order.amount, transferAccount.bankAccountID, isOwnAccount, account.balance).recordTransaction();
+        }
+    }
+}
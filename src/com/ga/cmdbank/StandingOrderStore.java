@@ -0,0 +1,48 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Storage of standing orders, as data rows in the standing_orders.txt format, see StandingOrder:
+ * orderId;userCPR;fromAccountId;toAccountId;amount;frequency;firstRun;runCount
+ */
+public interface StandingOrderStore {
+    /**
+     * Read every standing order's data row, in creation order.
+     * @return List Data rows, empty if there are none.
+     * @throws IOException Storage reading error.
+     */
+    List<String> readAll() throws IOException;
+
+    /**
+     * Add a new standing order.
+     * @param row String Data row
+     * @throws IOException Storage writing error.
+     */
+    void add(String row) throws IOException;
+
+    /**
+     * Change or remove many standing orders' data rows in one write, atomically also across processes.
+     * @param changes Map Order ID to the change of its row, which receives the stored data row and returns the new one, or null to remove it.
+     * @return int Number of orders changed or removed, IDs not on file are skipped.
+     * @throws IOException Storage writing error.
+     */
+    int updateAll(Map<Integer, UnaryOperator<String>> changes) throws IOException;
+
+    /**
+     * Lock the standing orders for a sequence of reads and writes that must not interleave with other writers.
+     * @return StoreLock Lock to close when done.
+     * @throws IOException Locking error.
+     */
+    StoreLock lockForUpdate() throws IOException;
+
+    /**
+     * Version of the stored standing orders, which changes whenever any order is added, changed or removed, also by other processes.
+     * @return long Version, only comparable for equality.
+     * @throws IOException Storage reading error.
+     */
+    long getVersion() throws IOException;
+}
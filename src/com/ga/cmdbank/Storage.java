@@ -0,0 +1,70 @@
+package com.ga.cmdbank;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Selects the storage engine every domain class reads and writes through.
+ *
+ * Configured with system properties: -Dcmdbank.storage=text (the default, the data/*.txt files) or the class name of
+ * another StorageEngine, and -Dcmdbank.dataDirectory=data for the directory the engine keeps its data in.
+ */
+public final class Storage {
+    static final String defaultEngine = "text";
+    static final String defaultDataDirectory = "data";
+
+    private static volatile StorageEngine engine;
+
+    private Storage() {}
+
+    /**
+     * Get the configured storage engine, opening it on first use.
+     * @return StorageEngine
+     */
+    static StorageEngine get() {
+        StorageEngine opened = engine;
+
+        if (opened != null) return opened;
+
+        synchronized (Storage.class) {
+            if (engine == null) {
+                engine = open(System.getProperty("cmdbank.storage", defaultEngine), getDataDirectory());
+            }
+
+            return engine;
+        }
+    }
+
+    /**
+     * @return Path Configured data directory, for files kept next to the engine's data.
+     */
+    static Path getDataDirectory() {
+        return Paths.get(System.getProperty("cmdbank.dataDirectory", defaultDataDirectory));
+    }
+
+    /**
+     * Open a storage engine on a data directory, for example to run the same benchmark against several engines.
+     * @param engineName String "text" or a StorageEngine class name.
+     * @param dataDirectory Path Directory of the engine's data.
+     * @return StorageEngine
+     */
+    static StorageEngine open(String engineName, Path dataDirectory) {
+        if (engineName.equals(defaultEngine)) return new TextFileStorage(dataDirectory);
+
+        try {
+            Class<? extends StorageEngine> engineClass = Class.forName(engineName).asSubclass(StorageEngine.class);
+
+            return engineClass.getConstructor(Path.class).newInstance(dataDirectory);
+
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new RuntimeException("Unknown storage engine " + engineName + ".");
+
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException("Storage engine " + engineName + " needs a public constructor taking the data directory.");
+
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Storage engine " + engineName + " could not be opened: " + e.getCause().getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.ga.cmdbank;
+
+/**
+ * A storage engine: the stores of users, bank accounts, transactions, ID sequences and standing orders.
+ * Implementations need a public constructor taking the data directory as a java.nio.file.Path, see Storage.
+ */
+public interface StorageEngine {
+    UserStore users();
+
+    AccountStore accounts();
+
+    TransactionStore transactions();
+
+    SequenceStore sequences();
+
+    StandingOrderStore standingOrders();
+}
\ No newline at end of file
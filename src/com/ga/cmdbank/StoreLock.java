@@ -0,0 +1,11 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+
+/**
+ * Lock held on a store for a sequence of reads and writes, for example: try (StoreLock lock = accounts.lockForUpdate()) {...}
+ */
+public interface StoreLock extends AutoCloseable {
+    @Override
+    void close() throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bank accounts in accounts.txt. Existence checks first ask the account IDs' existence filter.
+ * Rows are variable-length, so updating an account rewrites the file under its update lock.
+ */
+public class TextAccountStore implements AccountStore {
+    final Path filePath;
+    final ExistenceFilter existenceFilter;
+
+    /**
+     * @param dataDirectory Path Directory of accounts.txt and its existence filter.
+     */
+    TextAccountStore(Path dataDirectory) {
+        filePath = dataDirectory.resolve("accounts.txt");
+        existenceFilter = new ExistenceFilter(filePath, dataDirectory.resolve("accounts.bloom"));
+    }
+
+    @Override
+    public boolean exists(int accountId) throws IOException {
+        if (!existenceFilter.mightContain(accountId)) return false; // Answered without reading the data file
+
+        for (String account : readAll()) {
+            if (getAccountId(account) == accountId) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public List<String> readAll() throws IOException {
+        return DataFiles.readAllLines(filePath);
+    }
+
+    @Override
+    public int getLastAccountId() throws IOException {
+        List<String> accounts = readAll();
+
+        return accounts.isEmpty() ? 0 : getAccountId(accounts.get(accounts.size() - 1));
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void add(int accountId, String row) throws IOException {
+        try (DataFiles.HeldLock accountsLock = DataFiles.lockForUpdate(filePath)) { // No other terminal's row between the filter's check and its update
+            existenceFilter.dataFileWriting();
+            DataFiles.append(filePath, row);
+            existenceFilter.add(accountId);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean update(int accountId, UnaryOperator<String> change) throws IOException {
+        try (DataFiles.HeldLock accountsLock = DataFiles.lockForUpdate(filePath)) { // Other terminals wait until the row is written
+            List<String> accounts = readAll();
+
+            for (int _i = 0; _i < accounts.size(); _i++) {
+                String account = accounts.get(_i);
+
+                if (getAccountId(account) == accountId) {
+                    accounts.set(_i, change.apply(account));
+                    existenceFilter.dataFileWriting();
+                    DataFiles.write(filePath, accounts);
+                    existenceFilter.dataFileRewritten();
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int updateAll(Map<Integer, UnaryOperator<String>> changes) throws IOException {
+        try (DataFiles.HeldLock accountsLock = DataFiles.lockForUpdate(filePath)) {
+            List<String> accounts = readAll();
+            int updated = 0;
+
+            for (int i = 0; i < accounts.size(); i++) {
+                UnaryOperator<String> change = changes.get(getAccountId(accounts.get(i)));
+
+                if (change == null) continue;
+
+                accounts.set(i, change.apply(accounts.get(i)));
+                updated++;
+            }
+
+            if (updated > 0) {
+                existenceFilter.dataFileWriting();
+                DataFiles.write(filePath, accounts);
+                existenceFilter.dataFileRewritten();
+            }
+
+            return updated;
+        }
+    }
+
+    @Override
+    public StoreLock lockForUpdate() throws IOException {
+        return DataFiles.lockForUpdate(filePath);
+    }
+
+    @Override
+    public long getVersion() throws IOException {
+        return Files.getLastModifiedTime(filePath).to(TimeUnit.NANOSECONDS);
+    }
+
+    private static int getAccountId(String account) {
+        return Integer.parseInt(account, 0, account.indexOf(';'), 10);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.ga.cmdbank;
+
+import java.nio.file.Path;
+
+/**
+ * The original storage engine: semicolon separated text files in the data directory (users.txt, accounts.txt,
+ * transaction_history.txt, system.txt, standing_orders.txt), which several processes can share through the DataFiles locks.
+ */
+public class TextFileStorage implements StorageEngine {
+    final TextUserStore users;
+    final TextAccountStore accounts;
+    final TextTransactionStore transactions;
+    final TextSequenceStore sequences;
+    final TextStandingOrderStore standingOrders;
+
+    /**
+     * @param dataDirectory Path Directory of the data files.
+     */
+    public TextFileStorage(Path dataDirectory) {
+        users = new TextUserStore(dataDirectory);
+        accounts = new TextAccountStore(dataDirectory);
+        transactions = new TextTransactionStore(dataDirectory);
+        sequences = new TextSequenceStore(dataDirectory);
+        standingOrders = new TextStandingOrderStore(dataDirectory);
+    }
+
+    @Override
+    public UserStore users() {
+        return users;
+    }
+
+    @Override
+    public AccountStore accounts() {
+        return accounts;
+    }
+
+    @Override
+    public TransactionStore transactions() {
+        return transactions;
+    }
+
+    @Override
+    public SequenceStore sequences() {
+        return sequences;
+    }
+
+    @Override
+    public StandingOrderStore standingOrders() {
+        return standingOrders;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * ID sequences in system.txt, one name:lastValue row per sequence.
+ */
+public class TextSequenceStore implements SequenceStore {
+    final Path filePath;
+
+    /**
+     * @param dataDirectory Path Directory of system.txt
+     */
+    TextSequenceStore(Path dataDirectory) {
+        filePath = dataDirectory.resolve("system.txt");
+    }
+
+    @Override
+    public int getLast(String name) throws IOException {
+        for (String row : DataFiles.readAllLines(filePath)) {
+            if (row.startsWith(name + ":")) {
+                int separatorIndex = row.indexOf(":");
+
+                return Integer.parseInt(row.substring(separatorIndex + 1));
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int next(String name, int first) throws IOException {
+        try (DataFiles.HeldLock systemLock = DataFiles.lockForUpdate(filePath)) { // No other terminal can take the same value
+            int last = getLast(name);
+            int value = last == 0 ? first : last + 1;
+            save(name, value);
+
+            return value;
+        }
+    }
+
+    /**
+     * Save a sequence's last value, adding its row if it's new.
+     */
+    private void save(String name, int value) throws IOException {
+        List<String> systemData = DataFiles.readAllLines(filePath);
+        String newRowData = name + ":" + value;
+
+        for (int _i = 0; _i < systemData.size(); _i++) {
+            if (systemData.get(_i).startsWith(name + ":")) {
+                systemData.set(_i, newRowData);
+                DataFiles.write(filePath, systemData);
+
+                return;
+            }
+        }
+
+        DataFiles.append(filePath, newRowData);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Standing orders in standing_orders.txt, created on the first order. Changing orders rewrites the file under its update lock.
+ */
+public class TextStandingOrderStore implements StandingOrderStore {
+    final Path filePath;
+
+    /**
+     * @param dataDirectory Path Directory of standing_orders.txt
+     */
+    TextStandingOrderStore(Path dataDirectory) {
+        filePath = dataDirectory.resolve("standing_orders.txt");
+    }
+
+    @Override
+    public List<String> readAll() throws IOException {
+        if (!Files.exists(filePath)) return new ArrayList<>();
+
+        return DataFiles.readAllLines(filePath);
+    }
+
+    @Override
+    public void add(String row) throws IOException {
+        DataFiles.append(filePath, row);
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int updateAll(Map<Integer, UnaryOperator<String>> changes) throws IOException {
+        try (DataFiles.HeldLock ordersLock = DataFiles.lockForUpdate(filePath)) {
+            List<String> orders = readAll();
+            List<String> changedOrders = new ArrayList<>(orders.size());
+            int updated = 0;
+
+            for (String order : orders) {
+                UnaryOperator<String> change = changes.get(getOrderId(order));
+
+                if (change == null) {
+                    changedOrders.add(order);
+                    continue;
+                }
+
+                String changedOrder = change.apply(order);
+
+                if (changedOrder != null) changedOrders.add(changedOrder);
+
+                updated++;
+            }
+
+            if (updated > 0) DataFiles.write(filePath, changedOrders);
+
+            return updated;
+        }
+    }
+
+    @Override
+    public StoreLock lockForUpdate() throws IOException {
+        return DataFiles.lockForUpdate(filePath);
+    }
+
+    @Override
+    public long getVersion() throws IOException {
+        if (!Files.exists(filePath)) return 0;
+
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) * 31 + attributes.size(); // Two writes within the clock's resolution rarely leave the same size
+    }
+
+    private static int getOrderId(String order) {
+        return Integer.parseInt(order, 0, order.indexOf(';'), 10);
+    }
+}
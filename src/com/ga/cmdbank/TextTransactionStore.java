@@ -0,0 +1,480 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transaction history in transaction_history.txt, one appended row per transaction.
+ * Account and time range reads go through the history's B+tree index in transaction_history.idx.
+ * Archived months are moved to columnar TransactionArchive segments in archive/, one per month.
+ * Recent activity is read backwards from the end of the history file, so it costs the same however long the history is.
+ * Statements are paged with an AccountCursor, which seeks to each page through the index instead of reading the account's whole history.
+ * Started with -Dcmdbank.writeBehind=true, rows are appended in batches by a TransactionLogWriter instead.
+ * Appended rows are hashed into the history's TransactionChain, which audits check the history against.
+ */
+public class TextTransactionStore implements TransactionStore {
+    static final boolean writeBehind = Boolean.getBoolean("cmdbank.writeBehind"); // Record through the TransactionLogWriter
+    static final int recentBlockBytes = 64 * 1024; // Read from the end of the history per block when looking for recent transactions
+
+    final Path filePath;
+    final TransactionIndex index;
+    final TransactionChain chain;
+    final Path archiveDirectory;
+    private volatile TransactionLogWriter transactionLog;
+
+    /**
+     * @param dataDirectory Path Directory of transaction_history.txt and the archive folder.
+     */
+    TextTransactionStore(Path dataDirectory) {
+        filePath = dataDirectory.resolve("transaction_history.txt");
+        index = new TransactionIndex(filePath, dataDirectory.resolve("transaction_history.idx"), TransactionIndex.defaultSortChunkEntries);
+        chain = new TransactionChain(filePath);
+        archiveDirectory = dataDirectory.resolve("archive");
+    }
+
+    @Override
+    public long append(TransactionHistory transaction) throws IOException {
+        if (writeBehind) return getTransactionLog().publish(transaction);
+
+        chain.append(TransactionHistory.appendRecord(new StringBuilder(96), transaction.userId, transaction.accountId, transaction.dateTime,
+                transaction.transactionType, transaction.transactionAmount, transaction.transferToAccountId, transaction.isOwnAccountTransfer,
+                transaction.postTransactionBalance).append(System.lineSeparator()).toString().getBytes(StandardCharsets.UTF_8), false);
+
+        return -1;
+    }
+
+    @Override
+    public long appendAll(List<TransactionHistory> transactions) throws IOException {
+        if (writeBehind) {
+            long sequence = -1;
+
+            for (TransactionHistory transaction : transactions) sequence = getTransactionLog().publish(transaction);
+
+            return sequence;
+        }
+
+        if (transactions.isEmpty()) return -1;
+
+        StringBuilder rows = new StringBuilder(96 * transactions.size());
+
+        for (TransactionHistory transaction : transactions) {
+            TransactionHistory.appendRecord(rows, transaction.userId, transaction.accountId, transaction.dateTime, transaction.transactionType, transaction.transactionAmount,
+                    transaction.transferToAccountId, transaction.isOwnAccountTransfer, transaction.postTransactionBalance).append(System.lineSeparator());
+        }
+
+        chain.append(rows.toString().getBytes(StandardCharsets.UTF_8), false);
+
+        return -1;
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        if (sequence < 0) return CompletableFuture.completedFuture(null);
+
+        return getTransactionLog().whenDurable(sequence);
+    }
+
+    @Override
+    public void awaitPending() throws IOException {
+        TransactionLogWriter log = transactionLog;
+
+        if (log != null) log.awaitDurable(log.getLastPublished());
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public List<String> readAll() throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(filePath)) { // Not archived meanwhile
+            List<String> transactions = new ArrayList<>();
+
+            for (TransactionArchive archive : getArchives()) transactions.addAll(archive.readAll());
+
+            transactions.addAll(DataFiles.readAllLines(filePath));
+
+            return transactions;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public List<String> readAccountRange(int accountId, LocalDateTime from, LocalDateTime to) throws IOException {
+        awaitPending(); // Read our own writes
+
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(filePath)) {
+            List<String> transactions = new ArrayList<>();
+            long fromEpochMilli = Timestamps.toEpochMilli(from);
+            long toEpochMilli = Timestamps.toEpochMilli(to);
+
+            for (TransactionArchive archive : getArchives()) {
+                if (!archive.month.atDay(1).atStartOfDay().isBefore(to) || !archive.month.plusMonths(1).atDay(1).atStartOfDay().isAfter(from)) continue;
+
+                for (String transaction : archive.readAccount(accountId)) {
+                    long epochMilli = Timestamps.parse(transaction.split(";")[2]);
+
+                    if (epochMilli >= fromEpochMilli && epochMilli < toEpochMilli) transactions.add(transaction);
+                }
+            }
+
+            long[] offsets = index.find(accountId, TransactionIndex.toEpochSecond(from), TransactionIndex.toEpochSecond(to));
+
+            return DataFiles.read(filePath, channel -> {
+                for (long offset : offsets) transactions.add(DataFiles.readRow(channel, offset));
+
+                return transactions;
+            });
+        }
+    }
+
+    @Override
+    public List<String> readRecent(int accountId, int count) throws IOException {
+        return readRecent(accountId, count, recentBlockBytes);
+    }
+
+    /**
+     * @param blockBytes int Bytes read from the history per block.
+     */
+    @SuppressWarnings("try")
+    List<String> readRecent(int accountId, int count, int blockBytes) throws IOException {
+        awaitPending(); // Read our own writes
+
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(filePath)) {
+            List<String> transactions = new ArrayList<>();
+
+            if (count <= 0) return transactions;
+
+            if (Files.exists(filePath)) DataFiles.read(filePath, channel -> readBackwards(channel, accountId, count, blockBytes, transactions));
+
+            List<TransactionArchive> archives = getArchives();
+
+            for (int i = archives.size() - 1; i >= 0 && transactions.size() < count; i--) { // Older than the live history
+                List<String> archived = archives.get(i).readAccount(accountId);
+
+                for (int j = archived.size() - 1; j >= 0 && transactions.size() < count; j--) transactions.add(archived.get(j));
+            }
+
+            return transactions;
+        }
+    }
+
+    @Override
+    public TransactionCursor openAccountCursor(int accountId, int pageSize) {
+        return new AccountCursor(accountId, pageSize);
+    }
+
+    /**
+     * Scan the history file from its end in blocks, collecting the account's rows until count are found.
+     * A row split over two blocks is kept in front of the next block read. A last row without line break is skipped, like the index does.
+     */
+    private Void readBackwards(FileChannel channel, int accountId, int count, int blockBytes, List<String> transactions) throws IOException {
+        byte[] accountField = (";" + accountId + ";").getBytes(StandardCharsets.US_ASCII);
+        long blockStart = channel.size();
+        byte[] buffer = new byte[blockBytes];
+        int rowEnd = -1; // End of the newest row not yet scanned, within buffer
+        int bufferStart = 0; // First byte of buffer holding data
+        long bytesRead = 0;
+
+        while (blockStart > 0 && transactions.size() < count) {
+            int carried = rowEnd < 0 ? 0 : rowEnd - bufferStart; // Start of a row from the previous block
+            int readLength = (int) Math.min(blockBytes, blockStart);
+
+            if (carried + readLength > buffer.length) buffer = growFront(buffer, bufferStart, carried, carried + readLength);
+            else if (carried > 0) System.arraycopy(buffer, bufferStart, buffer, buffer.length - carried, carried);
+
+            blockStart -= readLength;
+            bufferStart = buffer.length - carried - readLength;
+            ByteBuffer block = ByteBuffer.wrap(buffer, bufferStart, readLength);
+
+            while (block.hasRemaining() && channel.read(block, blockStart + block.position() - bufferStart) >= 0) {
+                // Read until the block is full
+            }
+
+            bytesRead += readLength;
+            int end = rowEnd < 0 ? -1 : buffer.length;
+
+            for (int i = buffer.length - carried - 1; i >= bufferStart && transactions.size() < count; i--) {
+                if (buffer[i] != '\n') continue;
+
+                if (end >= 0) collectRow(buffer, i + 1, end, accountField, transactions);
+
+                end = i; // Rows before the file's last line break are complete
+            }
+
+            rowEnd = end;
+        }
+
+        if (blockStart == 0 && rowEnd > bufferStart && transactions.size() < count) collectRow(buffer, bufferStart, rowEnd, accountField, transactions); // First row of the file
+
+        BankMetrics.dataFile(filePath).recordRead(bytesRead);
+
+        return null;
+    }
+
+    private static byte[] growFront(byte[] buffer, int bufferStart, int carried, int minLength) {
+        byte[] grown = new byte[Math.max(minLength, buffer.length * 2)];
+        System.arraycopy(buffer, bufferStart, grown, grown.length - carried, carried);
+
+        return grown;
+    }
+
+    /**
+     * Add the row between start and end if its account ID field is the account's.
+     */
+    private static void collectRow(byte[] buffer, int start, int end, byte[] accountField, List<String> transactions) {
+        int field = start;
+
+        while (field < end && buffer[field] != ';') field++;
+
+        if (end - field < accountField.length || !Arrays.equals(buffer, field, field + accountField.length, accountField, 0, accountField.length)) return;
+
+        if (buffer[end - 1] == '\r') end--;
+
+        transactions.add(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int archive(YearMonth month) throws IOException {
+        awaitPending();
+
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForUpdate(filePath)) {
+            List<String> liveTransactions = new ArrayList<>();
+            List<String> monthTransactions = new ArrayList<>();
+            long monthStart = Timestamps.startOfDay(month.atDay(1));
+            long monthEnd = Timestamps.startOfDay(month.plusMonths(1).atDay(1));
+
+            for (String transaction : DataFiles.readAllLines(filePath)) {
+                long epochMilli = Timestamps.parse(transaction.split(";")[2]);
+
+                if (epochMilli >= monthStart && epochMilli < monthEnd) {
+                    monthTransactions.add(transaction);
+                } else {
+                    liveTransactions.add(transaction);
+                }
+            }
+
+            if (monthTransactions.isEmpty()) return 0;
+
+            Path archivePath = getArchivePath(month);
+            List<String> archived = Files.exists(archivePath) ? new ArrayList<>(new TransactionArchive(archivePath).readAll()) : new ArrayList<>();
+            HashSet<String> alreadyArchived = new HashSet<>(archived); // Left in the history by an archiving run that stopped in between
+
+            for (String transaction : monthTransactions) {
+                if (!alreadyArchived.contains(transaction)) archived.add(transaction);
+            }
+
+            TransactionChain.Audit audit = chain.audit(TransactionChain.allBlocks, null); // The rewrite starts a new chain, tampering must show before
+
+            if (!audit.passed()) throw new IOException("The transaction history was tampered with, so it is not archived: " + audit.failures.get(0));
+
+            TransactionArchive.write(archivePath, month, archived); // Durable before the rows leave the history
+            DataFiles.write(filePath, liveTransactions);
+            index.rebuild(); // Offsets moved: appends could grow the history past its indexed size before the index sees the rewrite
+            chain.rebuild("archived " + month);
+
+            return monthTransactions.size();
+        }
+    }
+
+    @Override
+    public TransactionChain.Audit audit(int block, String trustedRoot) throws IOException {
+        awaitPending(); // Our own rows are chained
+
+        return chain.audit(block, trustedRoot);
+    }
+
+    @Override
+    public long getVersion() throws IOException {
+        return Files.size(filePath);
+    }
+
+    @Override
+    public DataFileWatcher.Subscription subscribe(DataFileWatcher.RowListener listener, Runnable onChange) {
+        return DataFileWatcher.get().subscribe(filePath, 0, listener, onChange);
+    }
+
+    /**
+     * Cursor over an account's archived rows, month by month, then its live rows through the index.
+     * A position is {part, key, offset}: for an archived month the part is the month's number and the key the row's
+     * number among the account's rows of the month, for the live history the part is livePart and the key and offset the index entry's.
+     */
+    private class AccountCursor implements TransactionCursor {
+        static final long livePart = Integer.MAX_VALUE; // After every archived month
+        static final long[] start = {Long.MIN_VALUE, 0, 0};
+
+        final int accountId;
+        final int pageSize;
+        private long[] first; // Position of the current page's first row, null before the first page
+        private long[] last;
+
+        AccountCursor(int accountId, int pageSize) {
+            this.accountId = accountId;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public List<String> next() throws IOException {
+            return read(last == null ? start : last, true);
+        }
+
+        @Override
+        public List<String> previous() throws IOException {
+            if (first == null) return new ArrayList<>();
+
+            return read(first, false);
+        }
+
+        @Override
+        @SuppressWarnings("try")
+        public List<String> seek(LocalDateTime dateTime) throws IOException {
+            long epochMilli = Timestamps.toEpochMilli(dateTime);
+            awaitPending();
+
+            try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(filePath)) {
+                for (TransactionArchive archive : getArchives()) {
+                    if (Timestamps.startOfDay(archive.month.plusMonths(1).atDay(1)) <= epochMilli) continue;
+
+                    List<String> archived = archive.readAccount(accountId);
+
+                    for (int i = 0; i < archived.size(); i++) {
+                        if (Timestamps.parse(archived.get(i).split(";")[2]) >= epochMilli) return read(new long[]{getPart(archive), i - 1, 0}, true);
+                    }
+                }
+
+                return read(new long[]{livePart, TransactionIndex.toKey(accountId, Math.floorDiv(epochMilli, 1_000)), -1}, true);
+            }
+        }
+
+        /**
+         * Read the page after or before a position, and make it the current page unless it's empty.
+         */
+        @SuppressWarnings("try")
+        private List<String> read(long[] position, boolean forward) throws IOException {
+            awaitPending(); // Read our own writes
+
+            try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(filePath)) { // Not archived meanwhile
+                List<long[]> positions = new ArrayList<>();
+                List<String> rows = new ArrayList<>();
+
+                if (forward) readAfter(position, positions, rows);
+                else readBefore(position, positions, rows);
+
+                if (!rows.isEmpty()) {
+                    first = positions.get(0);
+                    last = positions.get(positions.size() - 1);
+                }
+
+                return rows;
+            }
+        }
+
+        private void readAfter(long[] after, List<long[]> positions, List<String> rows) throws IOException {
+            for (TransactionArchive archive : getArchives()) {
+                long part = getPart(archive);
+
+                if (part < after[0]) continue;
+
+                List<String> archived = archive.readAccount(accountId);
+
+                for (int i = part == after[0] ? (int) after[1] + 1 : 0; i < archived.size() && rows.size() < pageSize; i++) {
+                    positions.add(new long[]{part, i, 0});
+                    rows.add(archived.get(i));
+                }
+
+                if (rows.size() == pageSize) return;
+            }
+
+            if (after[0] == livePart) addLiveRows(index.findAfter(accountId, after[1], after[2], pageSize - rows.size()), positions, rows);
+            else addLiveRows(index.findAfter(accountId, TransactionIndex.toKey(accountId, 0), -1, pageSize - rows.size()), positions, rows);
+        }
+
+        private void readBefore(long[] before, List<long[]> positions, List<String> rows) throws IOException {
+            if (before[0] == livePart) addLiveRows(index.findBefore(accountId, before[1], before[2], pageSize), positions, rows);
+
+            List<TransactionArchive> archives = getArchives();
+
+            for (int a = archives.size() - 1; a >= 0 && rows.size() < pageSize; a--) { // Older months, prepended
+                long part = getPart(archives.get(a));
+
+                if (part > before[0]) continue;
+
+                List<String> archived = archives.get(a).readAccount(accountId);
+                int rowsEnd = part == before[0] ? (int) before[1] : archived.size();
+                int rowsStart = Math.max(0, rowsEnd - (pageSize - rows.size()));
+
+                for (int i = rowsEnd - 1; i >= rowsStart; i--) {
+                    positions.add(0, new long[]{part, i, 0});
+                    rows.add(0, archived.get(i));
+                }
+            }
+        }
+
+        private void addLiveRows(long[] entries, List<long[]> positions, List<String> rows) throws IOException {
+            DataFiles.read(filePath, channel -> {
+                for (int i = 0; i < entries.length; i += 2) {
+                    positions.add(new long[]{livePart, entries[i], entries[i + 1]});
+                    rows.add(DataFiles.readRow(channel, entries[i + 1]));
+                }
+
+                return null;
+            });
+        }
+
+        private static long getPart(TransactionArchive archive) {
+            return archive.month.getYear() * 12L + archive.month.getMonthValue() - 1;
+        }
+    }
+
+    /**
+     * Open the archive segments, in month order.
+     * @return List Archive segments, empty if no month is archived.
+     */
+    List<TransactionArchive> getArchives() throws IOException {
+        List<TransactionArchive> archives = new ArrayList<>();
+
+        if (!Files.isDirectory(archiveDirectory)) return archives;
+
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().matches("transactions-\\d{4}-\\d{2}\\.col")).sorted().toList()) {
+                archives.add(new TransactionArchive(file));
+            }
+        }
+
+        return archives;
+    }
+
+    Path getArchivePath(YearMonth month) {
+        return archiveDirectory.resolve("transactions-" + month + ".col");
+    }
+
+    /**
+     * Get the write-behind log of the history file, starting it on first use. The log is drained when the application exits.
+     * @return TransactionLogWriter
+     */
+    TransactionLogWriter getTransactionLog() {
+        TransactionLogWriter loaded = transactionLog;
+
+        if (loaded != null) return loaded;
+
+        synchronized (this) {
+            if (transactionLog == null) {
+                TransactionLogWriter log = new TransactionLogWriter(filePath, TransactionLogWriter.defaultCapacity);
+                Runtime.getRuntime().addShutdownHook(new Thread(log::close, "cmdbank-transaction-log-drain"));
+                transactionLog = log;
+            }
+
+            return transactionLog;
+        }
+    }
+}
\ No newline at end of file
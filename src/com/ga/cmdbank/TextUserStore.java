@@ -0,0 +1,83 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users in users.txt, found through the UserRegistry's CPR bitmap and row offsets.
+ */
+public class TextUserStore implements UserStore {
+    final Path filePath;
+    final UserRegistry registry;
+
+    /**
+     * @param dataDirectory Path Directory of users.txt and its registry files.
+     */
+    TextUserStore(Path dataDirectory) {
+        filePath = dataDirectory.resolve("users.txt");
+        registry = new UserRegistry(filePath, dataDirectory.resolve("users.cprmap"), dataDirectory.resolve("users.offsets"));
+    }
+
+    @Override
+    public boolean exists(int cpr) throws IOException {
+        return registry.contains(cpr);
+    }
+
+    @Override
+    public String read(int cpr) throws IOException {
+        return registry.read(cpr); // One positional read of users.txt
+    }
+
+    @Override
+    public List<String> readAll() throws IOException {
+        return registry.readAll();
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean add(int cpr, String row) throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForUpdate(filePath)) { // Another terminal can't add the same CPR in between
+            if (registry.contains(cpr)) return false;
+
+            DataFiles.append(filePath, row);
+            registry.refresh();
+
+            return true;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public boolean update(int cpr, String row) throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForUpdate(filePath)) {
+            List<String> users = DataFiles.readAllLines(filePath);
+
+            for (int _i = 0; _i < users.size(); _i++) {
+                String user = users.get(_i);
+
+                if (Integer.parseInt(user, 0, user.indexOf(';'), 10) == cpr) {
+                    users.set(_i, row);
+                    DataFiles.write(filePath, users);
+                    registry.dataFileRewritten();
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public long getVersion() throws IOException {
+        if (!Files.exists(filePath)) return 0;
+
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) * 31 + attributes.size(); // Two writes within the clock's resolution rarely leave the same size
+    }
+}
\ No newline at end of file
@@ -0,0 +1,257 @@
+package com.ga.cmdbank;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Transaction timestamps: transaction_history.txt stores them as epoch milliseconds, rows recorded before that
+ * as ISO local datetimes (2024-12-20T15:59:28.397183900). Both parse to epoch milliseconds, so date filters compare
+ * numbers instead of parsing each row into a LocalDateTime. ISO rows are read by a hand-written parser of their
+ * fixed layout, and local times are converted with the system time zone, like LocalDateTime.now() records them.
+ */
+public class Timestamps {
+    static final ZoneId zone = ZoneId.systemDefault();
+    private static final ZoneRules zoneRules = zone.getRules();
+    private static final int fixedOffsetSeconds = zoneRules.isFixedOffset() ? zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() : Integer.MIN_VALUE;
+    private static final long maxMilliSeconds = Long.MAX_VALUE / 1_000 - 1;
+    private static final long[] spanStarts; // Local seconds, for zones with transitions
+    private static final long[] spanEnds;
+    private static final int[] spanOffsets;
+
+    static {
+        List<long[]> spans = new ArrayList<>();
+
+        if (fixedOffsetSeconds == Integer.MIN_VALUE) buildOffsetSpans(spans);
+
+        spanStarts = new long[spans.size()];
+        spanEnds = new long[spans.size()];
+        spanOffsets = new int[spans.size()];
+
+        for (int i = 0; i < spans.size(); i++) {
+            spanStarts[i] = spans.get(i)[0];
+            spanEnds[i] = spans.get(i)[1];
+            spanOffsets[i] = (int) spans.get(i)[2];
+        }
+    }
+
+    /**
+     * Storage format of a timestamp.
+     * @param dateTime LocalDateTime Local time of the transaction.
+     * @return long Epoch milliseconds
+     */
+    static long toEpochMilli(LocalDateTime dateTime) {
+        long epochSecond = toEpochSecond(dateTime);
+
+        if (epochSecond > maxMilliSeconds) return Long.MAX_VALUE; // LocalDateTime.MAX as a search bound
+        if (epochSecond < -maxMilliSeconds) return Long.MIN_VALUE;
+
+        return epochSecond * 1_000 + dateTime.getNano() / 1_000_000;
+    }
+
+    /**
+     * @param dateTime LocalDateTime Local time
+     * @return long Epoch seconds
+     */
+    static long toEpochSecond(LocalDateTime dateTime) {
+        return toEpochSecond(dateTime.toEpochSecond(ZoneOffset.UTC));
+    }
+
+    /**
+     * @param date LocalDate Local date
+     * @return long Epoch milliseconds at the start of the day.
+     */
+    static long startOfDay(LocalDate date) {
+        return toEpochMilli(date.atStartOfDay());
+    }
+
+    /**
+     * @param epochMilli long Epoch milliseconds
+     * @return LocalDateTime Local time, for display.
+     */
+    static LocalDateTime toDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), zone);
+    }
+
+    /**
+     * Parse a stored timestamp, epoch milliseconds or ISO local datetime.
+     * @param text CharSequence Timestamp field of a data row.
+     * @return long Epoch milliseconds
+     * @throws DateTimeParseException Neither format.
+     */
+    static long parse(CharSequence text) {
+        if (!isIso(text)) return parseNumber(text);
+
+        long localNanos = parseIsoNanos(text);
+        long epochSecond = toEpochSecond(Math.floorDiv(localNanos, 1_000_000_000L));
+
+        return epochSecond * 1_000 + Math.floorMod(localNanos, 1_000_000_000L) / 1_000_000;
+    }
+
+    /**
+     * Parse a stored timestamp into a local datetime, keeping the full precision of ISO timestamps.
+     * @param text CharSequence Timestamp field of a data row.
+     * @return LocalDateTime
+     * @throws DateTimeParseException Neither format.
+     */
+    static LocalDateTime parseDateTime(CharSequence text) {
+        if (!isIso(text)) return toDateTime(parseNumber(text));
+
+        long localNanos = parseIsoNanos(text);
+
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localNanos, 1_000_000_000L), (int) Math.floorMod(localNanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    /**
+     * @param text CharSequence Timestamp field of a data row.
+     * @return boolean True if it's an ISO local datetime, a row recorded before timestamps were numeric.
+     */
+    static boolean isIso(CharSequence text) {
+        return text.length() > 4 && text.charAt(4) == '-';
+    }
+
+    private static long parseNumber(CharSequence text) {
+        int length = text.length();
+
+        if (length == 0 || length > 18) throw new DateTimeParseException("Timestamp is not epoch milliseconds or an ISO local datetime.", text, 0);
+
+        long value = 0;
+
+        for (int i = 0; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9) throw new DateTimeParseException("Timestamp is not epoch milliseconds or an ISO local datetime.", text, i);
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Parse the ISO layout LocalDateTime.toString writes: uuuu-MM-ddTHH:mm, then optionally :ss and .fraction (1 to 9 digits).
+     * @return long Local datetime as nanoseconds since 1970-01-01T00:00, read as if it were UTC.
+     */
+    private static long parseIsoNanos(CharSequence text) {
+        int length = text.length();
+
+        if (length < 16 || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':') throw invalid(text, 0);
+
+        int year = parseDigits(text, 0, 4);
+        int month = parseDigits(text, 5, 7);
+        int day = parseDigits(text, 8, 10);
+        int hour = parseDigits(text, 11, 13);
+        int minute = parseDigits(text, 14, 16);
+        int second = 0;
+        int nanos = 0;
+
+        if (length > 16) {
+            if (length < 19 || text.charAt(16) != ':') throw invalid(text, 16);
+
+            second = parseDigits(text, 17, 19);
+
+            if (length > 19) {
+                if (length < 21 || length > 29 || text.charAt(19) != '.') throw invalid(text, 19);
+
+                nanos = parseDigits(text, 20, length);
+
+                for (int i = length; i < 29; i++) nanos *= 10; // .5 is 500000000 nanoseconds
+            }
+        }
+
+        if (year < 1678 || year > 2261) throw invalid(text, 0); // Outside the nanoseconds a long holds
+
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23 || minute > 59 || second > 59) throw invalid(text, 0);
+
+        long localSecond = toEpochDay(year, month, day) * 86_400 + hour * 3_600 + minute * 60 + second;
+
+        return localSecond * 1_000_000_000L + nanos;
+    }
+
+    private static int parseDigits(CharSequence text, int start, int end) {
+        int value = 0;
+
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9) throw invalid(text, i);
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    private static DateTimeParseException invalid(CharSequence text, int index) {
+        return new DateTimeParseException("Timestamp is not epoch milliseconds or an ISO local datetime.", text, index);
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date, counted in 400 year eras of 146097 days, starting in March.
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        long marchYear = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(marchYear, 400);
+        long yearOfEra = marchYear - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Convert local seconds to epoch seconds with the system time zone's offset at that time, found by binary search
+     * in the zone's offset spans from 1900 to 2100.
+     */
+    private static long toEpochSecond(long localSecond) {
+        if (fixedOffsetSeconds != Integer.MIN_VALUE) return localSecond - fixedOffsetSeconds;
+
+        int span = Arrays.binarySearch(spanStarts, localSecond);
+
+        if (span < 0) span = -span - 2; // Last span starting before
+
+        if (span >= 0 && localSecond < spanEnds[span]) return localSecond - spanOffsets[span];
+
+        return localSecond - zoneRules.getOffset(LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC)).getTotalSeconds(); // Gap, overlap or out of range
+    }
+
+    /**
+     * List the local time spans between the zone's transitions, after any gap or overlap, where only one offset is valid.
+     */
+    private static void buildOffsetSpans(List<long[]> spans) {
+        Instant instant = Instant.parse("1900-01-01T00:00:00Z");
+        Instant end = Instant.parse("2100-01-01T00:00:00Z");
+        ZoneOffset offset = zoneRules.getOffset(instant);
+        long spanStart = LocalDateTime.ofInstant(instant, offset).toEpochSecond(ZoneOffset.UTC);
+
+        while (true) {
+            ZoneOffsetTransition next = zoneRules.nextTransition(instant);
+
+            if (next == null || next.getInstant().isAfter(end)) {
+                spans.add(new long[]{spanStart, LocalDateTime.ofInstant(end, offset).toEpochSecond(ZoneOffset.UTC), offset.getTotalSeconds()});
+                return;
+            }
+
+            long before = next.getDateTimeBefore().toEpochSecond(ZoneOffset.UTC);
+            long after = next.getDateTimeAfter().toEpochSecond(ZoneOffset.UTC);
+            spans.add(new long[]{spanStart, Math.min(before, after), offset.getTotalSeconds()});
+            spanStart = Math.max(before, after);
+            offset = next.getOffsetAfter();
+            instant = next.getInstant();
+        }
+    }
+}
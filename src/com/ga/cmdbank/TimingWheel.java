@@ -0,0 +1,158 @@
+package com.ga.cmdbank;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: items scheduled at a time are handed back by advance() once that time has passed.
+ *
+ * Time is counted in ticks. Each level is a ring of 64 slots, a slot of level L covering 64^L ticks, so 4 levels of
+ * 1-minute ticks reach 31 years ahead; items further out wait in an overflow list. An item goes into the lowest level
+ * whose ring holds its tick, and is moved down a level (cascaded) when the current tick enters its slot, until it
+ * expires from level 0. Adding is O(1), and advancing by a tick touches one slot per level at most, so the wheel
+ * costs the same while idle whatever number of items it holds.
+ *
+ * Not thread-safe. Items can't be removed, holders skip cancelled items when they expire.
+ */
+public class TimingWheel<T> {
+    static final int slotBits = 6;
+    static final int slotCount = 1 << slotBits;
+    static final int slotMask = slotCount - 1;
+
+    final long tickMillis;
+    final int levels;
+    private final List<Entry<T>>[][] slots;
+    private List<Entry<T>> overflow = new ArrayList<>();
+    private final List<T> expired = new ArrayList<>(); // Already due when inserted
+    private long currentTick;
+    private int size;
+
+    private static class Entry<T> {
+        final long tick;
+        final T item;
+
+        Entry(long tick, T item) {
+            this.tick = tick;
+            this.item = item;
+        }
+    }
+
+    /**
+     * @param tickMillis long Length of a tick in milliseconds, the wheel's resolution.
+     * @param levels int Number of levels, reaching 64^levels ticks ahead before the overflow list.
+     * @param startMillis long Current time in epoch milliseconds.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.slots = new List[levels][slotCount];
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /**
+     * Schedule an item.
+     * @param dueMillis long Epoch milliseconds from which the item is due, rounded up to the next tick.
+     * @param item T Item
+     */
+    void add(long dueMillis, T item) {
+        insert(new Entry<>(Math.floorDiv(dueMillis + tickMillis - 1, tickMillis), item));
+        size++;
+    }
+
+    /**
+     * Move the wheel to a time and collect the items due by then.
+     * @param nowMillis long Current time in epoch milliseconds. Earlier than the wheel's time does nothing.
+     * @return List Due items in due order (items of the same tick in any order), empty if none.
+     */
+    List<T> advance(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        List<T> due = new ArrayList<>(expired);
+        expired.clear();
+
+        while (currentTick < targetTick) {
+            if (size == due.size()) { // Nothing scheduled, skip the empty ticks
+                currentTick = targetTick;
+                break;
+            }
+
+            currentTick++;
+
+            if ((currentTick & ((1L << (levels * slotBits)) - 1)) == 0) { // The top level wrapped, overflow items may fit now
+                List<Entry<T>> waiting = overflow;
+                overflow = new ArrayList<>();
+
+                for (Entry<T> entry : waiting) insert(entry);
+            }
+
+            for (int level = levels - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (level * slotBits)) - 1)) == 0) cascade(level, (int) (currentTick >>> (level * slotBits)) & slotMask);
+            }
+
+            List<Entry<T>> slot = slots[0][(int) currentTick & slotMask];
+
+            if (slot != null) {
+                for (Entry<T> entry : slot) due.add(entry.item);
+
+                slots[0][(int) currentTick & slotMask] = null;
+            }
+
+            due.addAll(expired); // Cascaded straight to the current tick
+            expired.clear();
+        }
+
+        size -= due.size();
+
+        return due;
+    }
+
+    /**
+     * @return int Number of scheduled items, including due items not yet handed back.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return long Epoch milliseconds of the wheel's current tick.
+     */
+    long getTimeMillis() {
+        return currentTick * tickMillis;
+    }
+
+    private void insert(Entry<T> entry) {
+        if (entry.tick <= currentTick) {
+            expired.add(entry.item);
+            return;
+        }
+
+        for (int level = 0; level < levels; level++) {
+            int shift = (level + 1) * slotBits;
+
+            if ((entry.tick >>> shift) == (currentTick >>> shift)) { // Within this level's ring
+                int slotIndex = (int) (entry.tick >>> (level * slotBits)) & slotMask;
+
+                if (slots[level][slotIndex] == null) slots[level][slotIndex] = new ArrayList<>();
+
+                slots[level][slotIndex].add(entry);
+
+                return;
+            }
+        }
+
+        overflow.add(entry);
+    }
+
+    /**
+     * Move a slot's items to lower levels, now that the current tick entered the slot.
+     */
+    private void cascade(int level, int slotIndex) {
+        List<Entry<T>> slot = slots[level][slotIndex];
+
+        if (slot == null) return;
+
+        slots[level][slotIndex] = null;
+
+        for (Entry<T> entry : slot) insert(entry);
+    }
+}
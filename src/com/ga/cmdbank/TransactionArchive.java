@@ -0,0 +1,514 @@
+package com.ga.cmdbank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Archive segment of one closed month of transaction history, stored column by column instead of as text rows.
+ *
+ * The month's transactions are grouped by bank account, and each account's block holds one column per field, each
+ * encoded for what it usually contains: times as deltas from the previous transaction, IDs and amounts in cents as
+ * variable-length integers, balances as their difference from the previous balance plus or minus the amount (usually
+ * 0), types as codes into the segment's type dictionary and own-account flags as bits. Each block is then deflated on
+ * its own, so reading one account's transactions inflates only that account's block, found through the directory at
+ * the start of the segment.
+ *
+ * Rows are read back in the transaction_history.txt row format, the whole month in recording order or one
+ * account's transactions in time order. Amounts that aren't whole cents are stored as doubles, so nothing is rounded,
+ * and timestamps keep their stored format: epoch milliseconds, or the ISO local datetimes of older rows.
+ *
+ * Segment file structure: magic, format, header length, then the header: month, row count, type dictionary and
+ * directory (accountId, rowCount, block offset, compressed and raw length per account). The deflated blocks follow.
+ * A block holds the columns sequence (position in recording order), epochSecond, fraction, userId, type, amount,
+ * transferToAccountId, balance and isOwn, each preceded by its length.
+ */
+public class TransactionArchive {
+    static final long magic = 0x434D444241524348L; // "CMDBARCH"
+    static final int formatVersion = 2; // 2: numeric (epoch milliseconds) and ISO timestamps, balances relative to the amount. 1: ISO only
+
+    final Path filePath;
+    final int version;
+    final YearMonth month;
+    final int rowCount;
+    final String[] types;
+    final Map<Integer, Block> blocks = new LinkedHashMap<>(); // By account ID, in account ID order
+    final long blocksStart;
+
+    /**
+     * Directory entry of one account's block.
+     */
+    static class Block {
+        final int accountId;
+        final int rowCount;
+        final long offset;
+        final int compressedLength;
+        final int rawLength;
+
+        Block(int accountId, int rowCount, long offset, int compressedLength, int rawLength) {
+            this.accountId = accountId;
+            this.rowCount = rowCount;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * Open an archive segment, reading its directory.
+     * @param filePath Path Segment file
+     * @throws IOException File reading error, or not a segment file.
+     */
+    TransactionArchive(Path filePath) throws IOException {
+        this.filePath = filePath;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(filePath)))) {
+            if (input.readLong() != magic) throw new IOException(filePath + " is not a transaction archive segment.");
+
+            version = input.readInt();
+
+            if (version < 1 || version > formatVersion) throw new IOException(filePath + " has an unknown transaction archive format " + version + ".");
+
+            blocksStart = 8 + 4 + 4 + input.readInt(); // After the header
+            month = YearMonth.parse(input.readUTF());
+            rowCount = input.readInt();
+            types = new String[input.readShort()];
+
+            for (int i = 0; i < types.length; i++) types[i] = input.readUTF();
+
+            int accountCount = input.readInt();
+
+            for (int i = 0; i < accountCount; i++) {
+                Block block = new Block(input.readInt(), input.readInt(), input.readLong(), input.readInt(), input.readInt());
+                blocks.put(block.accountId, block);
+            }
+        }
+
+        BankMetrics.dataFile(filePath).recordRead(blocksStart);
+    }
+
+    /**
+     * Write a month's transactions to a new segment file, replacing any previous segment atomically.
+     * @param filePath Path Segment file
+     * @param month YearMonth Month of the transactions.
+     * @param rows List transaction_history.txt data rows, in recording order.
+     * @throws IOException File writing error.
+     */
+    static void write(Path filePath, YearMonth month, List<String> rows) throws IOException {
+        Map<Integer, List<Integer>> accountRows = new TreeMap<>(); // Row sequences by account ID
+        List<TransactionHistory> transactions = new ArrayList<>(rows.size());
+        List<String> timestamps = new ArrayList<>(rows.size()); // As stored, epoch milliseconds or ISO
+        long[] epochMillis = new long[rows.size()];
+        List<String> types = new ArrayList<>();
+
+        for (int sequence = 0; sequence < rows.size(); sequence++) {
+            TransactionHistory transaction = TransactionHistory.fromRecord(rows.get(sequence));
+            transactions.add(transaction);
+            timestamps.add(rows.get(sequence).split(";")[2]);
+            epochMillis[sequence] = Timestamps.parse(timestamps.get(sequence));
+            accountRows.computeIfAbsent(transaction.accountId, id -> new ArrayList<>()).add(sequence);
+
+            if (!types.contains(transaction.transactionType)) types.add(transaction.transactionType);
+        }
+
+        List<Block> directory = new ArrayList<>();
+        ByteArrayOutputStream blockData = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try {
+            for (Map.Entry<Integer, List<Integer>> account : accountRows.entrySet()) {
+                List<Integer> sequences = account.getValue();
+                sequences.sort((a, b) -> {
+                    int compared = Long.compare(epochMillis[a], epochMillis[b]);
+
+                    return compared != 0 ? compared : Integer.compare(a, b);
+                });
+
+                byte[] raw = encodeBlock(month, sequences, transactions, timestamps, types);
+                byte[] compressed = deflate(deflater, raw);
+                directory.add(new Block(account.getKey(), sequences.size(), blockData.size(), compressed.length, raw.length));
+                blockData.write(compressed);
+            }
+
+        } finally {
+            deflater.end();
+        }
+
+        Path temporaryPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        Files.createDirectories(filePath.toAbsolutePath().getParent());
+
+        ByteArrayOutputStream headerData = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerData);
+        header.writeUTF(month.toString());
+        header.writeInt(rows.size());
+        header.writeShort(types.size());
+
+        for (String type : types) header.writeUTF(type);
+
+        header.writeInt(directory.size());
+
+        for (Block block : directory) {
+            header.writeInt(block.accountId);
+            header.writeInt(block.rowCount);
+            header.writeLong(block.offset);
+            header.writeInt(block.compressedLength);
+            header.writeInt(block.rawLength);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            output.writeLong(magic);
+            output.writeInt(formatVersion);
+            output.writeInt(headerData.size());
+            headerData.writeTo(output);
+            blockData.writeTo(output);
+        }
+
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+            channel.force(true); // On disk before it replaces the rows in the live history
+        }
+
+        Files.move(temporaryPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        BankMetrics.dataFile(filePath).recordWrite(Files.size(filePath));
+    }
+
+    /**
+     * Read the whole month, inflating every block.
+     * @return List Data rows, in recording order.
+     * @throws IOException File reading error, or damaged segment.
+     */
+    List<String> readAll() throws IOException {
+        String[] rows = new String[rowCount];
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            for (Block block : blocks.values()) {
+                decodeBlock(channel, block, rows);
+            }
+        }
+
+        return Arrays.asList(rows);
+    }
+
+    /**
+     * Read one account's transactions of the month, inflating only its block.
+     * @param accountId int Bank account ID
+     * @return List Data rows, in time order. Empty if the account has no transactions this month.
+     * @throws IOException File reading error, or damaged segment.
+     */
+    List<String> readAccount(int accountId) throws IOException {
+        Block block = blocks.get(accountId);
+
+        if (block == null) return new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return decodeBlock(channel, block, null);
+        }
+    }
+
+    /**
+     * Decode a block's rows, into their recording order positions if rows is given.
+     * @return List The block's rows, in time order.
+     */
+    private List<String> decodeBlock(FileChannel channel, Block block, String[] rows) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, blocksStart + block.offset + compressed.position()) < 0) throw new IOException(filePath + " is damaged, a block is cut short.");
+        }
+
+        BankMetrics.dataFile(filePath).recordRead(block.compressedLength);
+        byte[] raw = inflate(compressed.array(), block.rawLength);
+        Column[] columns = new Column[9];
+        Column lengths = new Column(raw, 0, raw.length);
+        int position = 0;
+
+        for (int i = 0; i < columns.length; i++) { // Each column is preceded by its length
+            lengths.position = position;
+            int length = (int) lengths.readVarLong();
+            columns[i] = new Column(raw, lengths.position, lengths.position + length);
+            position = lengths.position + length;
+        }
+
+        List<String> blockRows = new ArrayList<>(block.rowCount);
+        StringBuilder record = new StringBuilder(96);
+        long sequence = 0;
+        long epochSecond = month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long userId = 0;
+        long balanceCents = 0;
+
+        for (int i = 0; i < block.rowCount; i++) {
+            sequence += columns[0].readZigZag();
+            epochSecond += columns[1].readZigZag();
+            long fractionCode = columns[2].readVarLong();
+            userId += columns[3].readZigZag();
+            String type = types[(int) columns[4].readVarLong()];
+            double amount = columns[5].readAmount();
+            int transferToAccountId = (int) columns[6].readVarLong();
+            long balanceCode = columns[7].readVarLong();
+            double balance;
+
+            if ((balanceCode & 1) == 0) {
+                balanceCents += Column.decodeZigZag(balanceCode >>> 1) + (version == 1 ? 0 : getBalanceChangeCents(type, amount));
+                balance = balanceCents / 100.0;
+            } else {
+                balance = columns[7].readDouble();
+            }
+
+            boolean isOwnAccountTransfer = (raw[columns[8].start + i / 8] & (1 << (i % 8))) != 0;
+            String timestamp;
+
+            if (version == 1) { // ISO only, nanoseconds as 100 ns ticks (even) or nanoseconds (odd)
+                timestamp = LocalDateTime.ofEpochSecond(epochSecond, (int) ((fractionCode & 1) == 0 ? (fractionCode >>> 1) * 100 : fractionCode >>> 1), ZoneOffset.UTC).toString();
+            } else if ((fractionCode & 1) == 0) {
+                timestamp = String.valueOf(epochSecond * 1_000 + (fractionCode >>> 1));
+            } else {
+                timestamp = LocalDateTime.ofEpochSecond(epochSecond, (int) ((fractionCode & 2) == 0 ? (fractionCode >>> 2) * 100 : fractionCode >>> 2), ZoneOffset.UTC).toString();
+            }
+
+            record.setLength(0);
+            String row = TransactionHistory.appendRecord(record, (int) userId, block.accountId, timestamp, type, amount, transferToAccountId, isOwnAccountTransfer, balance).toString();
+            blockRows.add(row);
+
+            if (rows != null) rows[(int) sequence] = row;
+        }
+
+        return blockRows;
+    }
+
+    /**
+     * Encode one account's transactions, in time order, into its columns.
+     */
+    private static byte[] encodeBlock(YearMonth month, List<Integer> sequences, List<TransactionHistory> transactions, List<String> timestamps, List<String> types) {
+        Column[] columns = new Column[9];
+
+        for (int i = 0; i < columns.length; i++) columns[i] = new Column();
+
+        long previousSequence = 0;
+        long previousEpochSecond = month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long previousUserId = 0;
+        long previousBalanceCents = 0;
+        byte[] ownFlags = new byte[(sequences.size() + 7) / 8];
+
+        for (int i = 0; i < sequences.size(); i++) {
+            int sequence = sequences.get(i);
+            TransactionHistory transaction = transactions.get(sequence);
+            String timestamp = timestamps.get(sequence);
+            long epochSecond;
+            long fractionCode;
+
+            if (Timestamps.isIso(timestamp)) { // Local time read as UTC, to write back the same text
+                epochSecond = transaction.dateTime.toEpochSecond(ZoneOffset.UTC);
+                int nanos = transaction.dateTime.getNano();
+                fractionCode = (nanos % 100 == 0 ? (long) nanos / 100 << 2 : (long) nanos << 2 | 2) | 1; // Clock ticks are often 100 ns
+            } else {
+                long epochMilli = Timestamps.parse(timestamp);
+                epochSecond = Math.floorDiv(epochMilli, 1_000);
+                fractionCode = Math.floorMod(epochMilli, 1_000) << 1;
+            }
+
+            columns[0].writeZigZag(sequence - previousSequence);
+            columns[1].writeZigZag(epochSecond - previousEpochSecond);
+            columns[2].writeVarLong(fractionCode);
+            columns[3].writeZigZag(transaction.userId - previousUserId);
+            columns[4].writeVarLong(types.indexOf(transaction.transactionType));
+            columns[5].writeAmount(transaction.transactionAmount);
+            columns[6].writeVarLong(transaction.transferToAccountId & 0xFFFFFFFFL);
+
+            long balanceCents = Math.round(transaction.postTransactionBalance * 100);
+
+            if (balanceCents / 100.0 == transaction.postTransactionBalance) {
+                columns[7].writeVarLong(Column.encodeZigZag(balanceCents - previousBalanceCents - getBalanceChangeCents(transaction.transactionType, transaction.transactionAmount)) << 1);
+                previousBalanceCents = balanceCents;
+            } else {
+                columns[7].writeVarLong(1);
+                columns[7].writeDouble(transaction.postTransactionBalance);
+            }
+
+            if (transaction.isOwnAccountTransfer) ownFlags[i / 8] |= (byte) (1 << (i % 8));
+
+            previousSequence = sequence;
+            previousEpochSecond = epochSecond;
+            previousUserId = transaction.userId;
+        }
+
+        columns[8].write(ownFlags, 0, ownFlags.length);
+        Column block = new Column();
+
+        for (Column column : columns) {
+            block.writeVarLong(column.size());
+            block.write(column.toByteArray(), 0, column.size());
+        }
+
+        return block.toByteArray();
+    }
+
+    /**
+     * Expected balance change of a transaction, which the balance column stores the difference from.
+     */
+    private static long getBalanceChangeCents(String transactionType, double amount) {
+        long cents = Math.round(amount * 100);
+
+        return transactionType.equals("deposit") || transactionType.equals("interest") ? cents : -cents;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8_192];
+
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int inflated = 0;
+
+            while (inflated < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(raw, inflated, rawLength - inflated);
+
+                if (count == 0 && inflater.needsInput()) break;
+
+                inflated += count;
+            }
+
+            if (inflated != rawLength) throw new IOException(filePath + " is damaged, a block doesn't inflate to its length.");
+
+            return raw;
+
+        } catch (DataFormatException e) {
+            throw new IOException(filePath + " is damaged: " + e.getMessage());
+
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A column's bytes: written while encoding, read from an inflated block while decoding.
+     */
+    private static class Column extends ByteArrayOutputStream {
+        final byte[] data;
+        final int start;
+        final int end;
+        int position;
+
+        Column() {
+            data = null;
+            start = 0;
+            end = 0;
+        }
+
+        Column(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            position = start;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            write((int) value);
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong(encodeZigZag(value));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+
+            for (int i = 0; i < Long.BYTES; i++) write((int) (bits >>> (8 * i)));
+        }
+
+        /**
+         * Whole cents as an even code, anything else as 1 followed by the double.
+         */
+        void writeAmount(double amount) {
+            long cents = Math.round(amount * 100);
+
+            if (cents / 100.0 == amount) {
+                writeVarLong(encodeZigZag(cents) << 1);
+            } else {
+                writeVarLong(1);
+                writeDouble(amount);
+            }
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= end) throw new IOException("Transaction archive column is cut short.");
+
+                byte next = data[position++];
+                value |= (long) (next & 0x7F) << shift;
+
+                if (next >= 0) return value;
+            }
+
+            throw new IOException("Transaction archive column has an invalid number.");
+        }
+
+        long readZigZag() throws IOException {
+            return decodeZigZag(readVarLong());
+        }
+
+        double readDouble() throws IOException {
+            if (position + Long.BYTES > end) throw new IOException("Transaction archive column is cut short.");
+
+            long bits = 0;
+
+            for (int i = 0; i < Long.BYTES; i++) bits |= (data[position++] & 0xFFL) << (8 * i);
+
+            return Double.longBitsToDouble(bits);
+        }
+
+        double readAmount() throws IOException {
+            long code = readVarLong();
+
+            return (code & 1) == 0 ? decodeZigZag(code >>> 1) / 100.0 : readDouble();
+        }
+
+        static long encodeZigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        static long decodeZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
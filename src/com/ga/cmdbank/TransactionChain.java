@@ -0,0 +1,564 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Tamper evidence for the transaction history file: every appended row is hashed into a running chain, and a Merkle
+ * tree over blocks of blockRows rows lets an audit check one block, the blocks chained since the last audit, or the
+ * whole history in parallel.
+ *
+ * The chain value after a row is SHA-256(value after the previous row + the row with its line break), starting from
+ * 32 zero bytes, so changing, removing or reordering a row changes every value after it. Each complete block gets a
+ * row in transaction_history.chain: block;endOffset;chainHex, and transaction_history.chainhead holds the value after
+ * the last chained row: endOffset;rowCount;chainHex, with zero-padded numbers. A block is checked on its own by re-hashing its rows from the
+ * previous block's value. The blocks' values, and the value after the last rows when they don't fill a block, are the
+ * leaves of a MerkleTree, so its root covers every row chained and a block is proved part of it with log2(blocks) hashes.
+ *
+ * An audit that passes appends its root to transaction_history.anchors: dateTime;rows;rootHex;event. The next audit
+ * checks that the first rows still give that root, and only re-hashes the blocks chained since. Whoever can edit the
+ * data files can also rewrite the chain files and anchors to match, so keep the roots the audits print (rows:rootHex)
+ * somewhere else as well, and check against one with --root. Rows another program appends at the end
+ * of the history are chained like the app's own; what the chain shows is rows changed, removed or reordered afterwards.
+ *
+ * The chain files are only written under the history's update lock. Rows appended without updating the chain (a
+ * crash in between) are chained by the next append or audit.
+ */
+public class TransactionChain {
+    static final int blockRows = 1_024;
+    static final int newBlocks = -1; // audit(): the blocks chained since the last root kept
+    static final int allBlocks = -2; // audit(): every block
+    static final int readChunkBytes = 1 << 20;
+
+    private static final HexFormat hex = HexFormat.of();
+
+    final Path dataFilePath;
+    final Path blocksFilePath;
+    final Path headFilePath;
+    final Path anchorsFilePath;
+
+    /**
+     * Chain value after a number of rows, ending at a byte offset of the history.
+     */
+    private static class Link {
+        long endOffset;
+        long rowCount;
+        byte[] value;
+
+        Link(long endOffset, long rowCount, byte[] value) {
+            this.endOffset = endOffset;
+            this.rowCount = rowCount;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A kept root: the Merkle root of the chain's first rows.
+     */
+    private static class Anchor {
+        long rows;
+        byte[] root;
+        String source;
+    }
+
+    /**
+     * Outcome of an audit.
+     */
+    static class Audit {
+        long rowCount;
+        int blockCount;
+        int blocksVerified;
+        long bytesVerified;
+        int proofHashes = -1; // Only for a single block
+        String anchor; // Root the chain was checked against, null if none was kept yet
+        String root; // rows:rootHex of the chain
+        final List<String> failures = new ArrayList<>();
+
+        boolean passed() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * @param dataFilePath Path transaction_history.txt, the chain files are kept next to it.
+     */
+    TransactionChain(Path dataFilePath) {
+        String name = dataFilePath.getFileName().toString().replaceFirst("\\.txt$", "");
+        this.dataFilePath = dataFilePath;
+        this.blocksFilePath = dataFilePath.resolveSibling(name + ".chain");
+        this.headFilePath = dataFilePath.resolveSibling(name + ".chainhead");
+        this.anchorsFilePath = dataFilePath.resolveSibling(name + ".anchors");
+    }
+
+    /**
+     * Append rows to the history and chain them, under the history's update lock. If the rows are written but
+     * the chain files can't be, the append still succeeds and the next one chains them.
+     * @param rows byte[] Rows, each followed by a line separator.
+     * @param force boolean Force the rows to the storage device before returning.
+     * @return long Byte offset the rows were written at.
+     * @throws IOException File writing error, the rows weren't appended.
+     */
+    @SuppressWarnings("try")
+    long append(byte[] rows, boolean force) throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForUpdate(dataFilePath)) {
+            long offset = DataFiles.append(dataFilePath, rows, force);
+
+            try {
+                update();
+
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Transaction chain not updated, the next transaction catches up: " + e.getMessage());
+            }
+
+            return offset;
+        }
+    }
+
+    /**
+     * Chain the history again from its first row, after it was rewritten, and keep the new root.
+     * @param event String Why the history was rewritten, kept with the root.
+     * @throws IOException File reading or writing error.
+     */
+    @SuppressWarnings("try")
+    void rebuild(String event) throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForUpdate(dataFilePath)) {
+            Files.deleteIfExists(headFilePath);
+            Files.deleteIfExists(blocksFilePath);
+            update();
+
+            Link head = readHead();
+            appendAnchor(head.rowCount, getRoot(readBlocks(), head), event);
+        }
+    }
+
+    /**
+     * Chain the rows appended without their chain update and get the chain head, under the history's update lock.
+     * Holding that lock around the call freezes the history at the head.
+     * @return long[] {endOffset, rowCount} of the head: the history's length in complete rows, and their number.
+     * @throws IOException File reading or writing error.
+     */
+    @SuppressWarnings("try")
+    long[] catchUp() throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForUpdate(dataFilePath)) {
+            update();
+            Link head = readHead();
+
+            return new long[]{head.endOffset, head.rowCount};
+        }
+    }
+
+    /**
+     * Get the chain value after the history's first rows, which tells whether the history still starts with the same rows.
+     * @param rowCount long Number of rows from the start.
+     * @return String Chain value in hex, null if fewer rows are chained.
+     * @throws IOException File reading error.
+     */
+    @SuppressWarnings("try")
+    String getChainValue(long rowCount) throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(dataFilePath);
+             FileChannel channel = FileChannel.open(dataFilePath, StandardOpenOption.READ)) {
+            Link head = readHead();
+
+            if (head == null) return rowCount == 0 ? hex.formatHex(new byte[MerkleTree.hashBytes]) : null;
+
+            Link link = getLink(channel, readBlocks(), head, rowCount);
+
+            return link == null ? null : hex.formatHex(link.value);
+        }
+    }
+
+    /**
+     * Check the history against its chain. Blocks are re-hashed in parallel without locking the history, and an audit
+     * that fails is run again under the history's read lock, so a history archived meanwhile isn't reported as tampered.
+     * An audit of the chain that passes keeps its root in the anchors file.
+     * @param block int Block number to check and prove, newBlocks, or allBlocks.
+     * @param trustedRoot String Root of an earlier audit as rows:rootHex, null for the last one kept in the anchors file.
+     * @return Audit Blocks checked and failures found.
+     * @throws IOException No such block, or file reading error.
+     */
+    @SuppressWarnings("try")
+    Audit audit(int block, String trustedRoot) throws IOException {
+        Anchor given = trustedRoot == null ? null : parseRoot(trustedRoot);
+
+        if (!Files.exists(dataFilePath)) return new Audit();
+
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForUpdate(dataFilePath)) {
+            update(); // Rows appended without their chain update
+        }
+
+        Audit audit = verify(block, given);
+
+        if (!audit.passed()) {
+            try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(dataFilePath)) {
+                audit = verify(block, given);
+            }
+        }
+
+        Anchor kept = readAnchor();
+
+        if (audit.passed() && block < 0 && audit.rowCount > (kept == null ? 0 : kept.rows)) {
+            appendAnchor(audit.rowCount, hex.parseHex(audit.root.substring(audit.root.indexOf(':') + 1)), "audit");
+        }
+
+        return audit;
+    }
+
+    /**
+     * Print an audit's outcome.
+     * @param audit Audit Audit to print.
+     */
+    static void printAudit(Audit audit) {
+        System.out.println(audit.rowCount + " rows chained in " + audit.blockCount + " blocks of " + blockRows + " rows, "
+                + audit.blocksVerified + " blocks and " + audit.bytesVerified + " bytes re-hashed.");
+
+        if (audit.proofHashes >= 0) System.out.println("Block proved part of the chain with " + audit.proofHashes + " hashes.");
+
+        System.out.println(audit.anchor == null ? "No root was kept before, this audit keeps the first one." : "Checked against " + audit.anchor + ".");
+
+        if (audit.passed()) {
+            System.out.println("Transaction history intact. Root to keep outside this machine: " + audit.root);
+            return;
+        }
+
+        System.out.println("TRANSACTION HISTORY TAMPERED WITH:");
+
+        for (String failure : audit.failures) System.out.println("  " + failure);
+    }
+
+    /**
+     * Parse a root printed by an audit.
+     * @param root String rows:rootHex
+     * @throws IllegalArgumentException Not a root printed by an audit.
+     */
+    static void checkRoot(String root) {
+        parseRoot(root);
+    }
+
+    private static Anchor parseRoot(String root) {
+        try {
+            Anchor anchor = new Anchor();
+            anchor.rows = Long.parseLong(root.substring(0, root.indexOf(':')));
+            anchor.root = hex.parseHex(root.substring(root.indexOf(':') + 1));
+            anchor.source = "the given root";
+
+            if (anchor.rows < 0 || anchor.root.length != MerkleTree.hashBytes) throw new IllegalArgumentException();
+
+            return anchor;
+
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("--root must be a root printed by an audit, as rows:rootHex.");
+        }
+    }
+
+    /**
+     * Chain the rows appended after the chain head. The history's update lock must be held.
+     */
+    private void update() throws IOException {
+        Link head = readHead();
+        long size = DataFiles.read(dataFilePath, FileChannel::size);
+
+        if (head != null && head.endOffset > size) {
+            System.err.println("The transaction history is shorter than its chain, chaining it again from the first row.");
+            head = null;
+        }
+
+        if (head == null) {
+            Files.deleteIfExists(blocksFilePath);
+            head = new Link(0, 0, new byte[MerkleTree.hashBytes]);
+
+        } else if (head.endOffset == size) {
+            return;
+        }
+
+        Link chained = head;
+        StringBuilder blocks = new StringBuilder();
+        DataFiles.read(dataFilePath, channel -> chainRange(channel, chained, size, Long.MAX_VALUE, blocks));
+
+        if (blocks.length() > 0) DataFiles.append(blocksFilePath, blocks.toString().getBytes(StandardCharsets.UTF_8), false);
+
+        writeHead(chained);
+    }
+
+    /**
+     * Check a snapshot of the chain files against the history and the kept root.
+     */
+    private Audit verify(int block, Anchor given) throws IOException {
+        Audit audit = new Audit();
+        Link start = new Link(0, 0, new byte[MerkleTree.hashBytes]);
+        Link head = readHead();
+        List<Link> blocks = readBlocks();
+
+        if (head == null) head = start;
+        if (block >= blocks.size()) throw new IOException("No block " + block + ", the chain has " + blocks.size() + " complete blocks, numbered from 0.");
+
+        audit.rowCount = head.rowCount;
+        audit.blockCount = blocks.size();
+        audit.root = head.rowCount + ":" + hex.formatHex(getRoot(blocks, head));
+
+        if (head.rowCount / blockRows != blocks.size()) audit.failures.add("The chain head (" + head.rowCount + " rows) doesn't match the chain's " + blocks.size() + " blocks.");
+
+        Anchor anchor = given != null ? given : readAnchor();
+        Link anchorHead = null; // Chain value after the anchor's rows
+
+        try (FileChannel channel = FileChannel.open(dataFilePath, StandardOpenOption.READ)) { // Positional reads, shared by the threads
+            if (anchor != null) {
+                audit.anchor = anchor.source;
+                anchorHead = getLink(channel, blocks, head, anchor.rows);
+
+                if (anchorHead == null) {
+                    audit.failures.add("The chain has " + head.rowCount + " rows, fewer than the " + anchor.rows + " of " + anchor.source + ".");
+                } else if (!Arrays.equals(getRoot(blocks.subList(0, (int) (anchor.rows / blockRows)), anchorHead), anchor.root)) {
+                    audit.failures.add("The first " + anchor.rows + " rows don't give " + anchor.source + ": rows or chain files were changed.");
+                    anchorHead = null;
+                }
+            }
+
+            int anchoredBlocks = anchorHead == null ? 0 : (int) (anchor.rows / blockRows); // All blocks if the kept root didn't match
+            int from = block >= 0 ? block : block == allBlocks ? 0 : anchoredBlocks;
+            int to = block >= 0 ? block + 1 : blocks.size();
+            ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+            LongAdder bytesVerified = new LongAdder();
+
+            IntStream.range(from, to).parallel().forEach(i -> {
+                Link blockStart = i == 0 ? start : blocks.get(i - 1);
+                String failure = checkRange(channel, blockStart, blocks.get(i), "Block " + i);
+                bytesVerified.add(blocks.get(i).endOffset - blockStart.endOffset);
+
+                if (failure != null) failures.add(failure);
+            });
+
+            if (block < 0) { // Rows after the last complete block
+                Link tailStart = blocks.isEmpty() ? start : blocks.get(blocks.size() - 1);
+                String failure = checkRange(channel, tailStart, head, "The tail after the last block");
+                bytesVerified.add(Math.max(0, head.endOffset - tailStart.endOffset));
+
+                if (failure != null) failures.add(failure);
+            }
+
+            audit.failures.addAll(failures.stream().sorted().toList());
+            audit.blocksVerified = to - from;
+            audit.bytesVerified = bytesVerified.sum();
+            BankMetrics.dataFile(dataFilePath).recordRead(audit.bytesVerified);
+
+            if (block >= 0) {
+                boolean anchored = block < anchoredBlocks; // Proved against the kept root, else against the chain's own
+                List<byte[]> leaves = anchored ? getLeaves(blocks.subList(0, (int) (anchor.rows / blockRows)), anchorHead) : getLeaves(blocks, head);
+                List<byte[]> proof = MerkleTree.getProof(leaves, block);
+                audit.proofHashes = proof.size();
+
+                if (!MerkleTree.verifyProof(leaves.get(block), block, leaves.size(), proof, anchored ? anchor.root : MerkleTree.getRoot(leaves))) {
+                    audit.failures.add("Block " + block + " is not part of " + (anchored ? anchor.source : "the chain's root") + ".");
+                }
+            }
+        }
+
+        return audit;
+    }
+
+    /**
+     * Get the chain value after a number of rows, re-hashing the rows after the last complete block before them.
+     * @return Link Chain value, null if the chain has fewer rows.
+     */
+    private Link getLink(FileChannel channel, List<Link> blocks, Link head, long rowCount) throws IOException {
+        if (rowCount > head.rowCount) return null;
+        if (rowCount == head.rowCount) return head;
+        if (rowCount == 0) return new Link(0, 0, new byte[MerkleTree.hashBytes]);
+
+        int block = (int) (rowCount / blockRows);
+
+        if (rowCount % blockRows == 0) return blocks.get(block - 1);
+
+        Link link = block == 0 ? new Link(0, 0, new byte[MerkleTree.hashBytes]) : blocks.get(block - 1);
+        link = new Link(link.endOffset, link.rowCount, link.value);
+        chainRange(channel, link, block < blocks.size() ? blocks.get(block).endOffset : head.endOffset, rowCount, null);
+
+        return link.rowCount == rowCount ? link : null;
+    }
+
+    /**
+     * Re-hash the rows from one chain value to the next.
+     * @return String Failure, null if the rows give the expected value.
+     */
+    private String checkRange(FileChannel channel, Link start, Link expected, String name) {
+        Link link = new Link(start.endOffset, start.rowCount, start.value);
+
+        try {
+            chainRange(channel, link, expected.endOffset, Long.MAX_VALUE, null);
+
+        } catch (IOException e) {
+            return name + " could not be read: " + e.getMessage();
+        }
+
+        if (link.endOffset == expected.endOffset && link.rowCount == expected.rowCount && Arrays.equals(link.value, expected.value)) return null;
+
+        return name + ", rows " + (start.rowCount + 1) + " to " + expected.rowCount + " (bytes " + start.endOffset + " to " + expected.endOffset
+                + "), doesn't hash to its chain value: rows were changed, removed or reordered.";
+    }
+
+    /**
+     * Hash the complete rows from a link's end up to a byte offset into the link, reading the history in chunks.
+     * A last row without line break is left unchained.
+     * @param lastRow long Row count to stop at, Long.MAX_VALUE for all rows up to the offset.
+     * @param blocks StringBuilder Receives a chain file row for each block completed, null to not collect them.
+     */
+    private static Void chainRange(FileChannel channel, Link link, long end, long lastRow, StringBuilder blocks) throws IOException {
+        MessageDigest digest = MerkleTree.newDigest();
+        byte[] buffer = new byte[(int) Math.max(1, Math.min(readChunkBytes, end - link.endOffset))];
+        long position = link.endOffset;
+        int carried = 0; // Start of a row from the previous chunk
+
+        while (position < end && link.rowCount < lastRow) {
+            if (carried == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2); // Row longer than the buffer
+
+            int length = (int) Math.min(buffer.length - carried, end - position);
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, carried, length);
+
+            while (chunk.hasRemaining() && channel.read(chunk, position + chunk.position() - carried) >= 0) {
+                // Read until the chunk is full or the file ends
+            }
+
+            if (chunk.hasRemaining()) break; // The history is shorter than the chain says
+
+            position += length;
+            int consumed = chainRows(digest, link, buffer, carried + length, lastRow, blocks);
+            carried = carried + length - consumed;
+            System.arraycopy(buffer, consumed, buffer, 0, carried);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return int Bytes of complete rows hashed.
+     */
+    private static int chainRows(MessageDigest digest, Link link, byte[] bytes, int length, long lastRow, StringBuilder blocks) {
+        int rowStart = 0;
+
+        for (int i = 0; i < length && link.rowCount < lastRow; i++) {
+            if (bytes[i] != '\n') continue;
+
+            digest.update(link.value);
+            digest.update(bytes, rowStart, i + 1 - rowStart);
+            link.value = digest.digest();
+            link.endOffset += i + 1 - rowStart;
+            link.rowCount++;
+            rowStart = i + 1;
+
+            if (blocks != null && link.rowCount % blockRows == 0) {
+                blocks.append(link.rowCount / blockRows - 1).append(';').append(link.endOffset).append(';').append(hex.formatHex(link.value)).append(System.lineSeparator());
+            }
+        }
+
+        return rowStart;
+    }
+
+    /**
+     * @return Link Chain head, null if there is none yet or it can't be parsed.
+     */
+    private Link readHead() throws IOException {
+        if (!Files.exists(headFilePath)) return null;
+
+        try {
+            String[] rowData = DataFiles.readAllLines(headFilePath).get(0).split(";");
+
+            return new Link(Long.parseLong(rowData[0]), Long.parseLong(rowData[1]), hex.parseHex(rowData[2]));
+
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Overwrite the head in place: its row has a fixed length, which saves truncating the file on every append.
+     */
+    private void writeHead(Link head) throws IOException {
+        ByteBuffer row = ByteBuffer.wrap((String.format("%019d;%019d;%s", head.endOffset, head.rowCount, hex.formatHex(head.value)) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+        DataFiles.update(headFilePath, channel -> {
+            while (row.hasRemaining()) channel.write(row, row.position());
+
+            return null;
+        });
+    }
+
+    /**
+     * @return List Complete blocks' chain values in block order, up to the first missing one. A block written twice (crash before the head was) is read once.
+     */
+    private List<Link> readBlocks() throws IOException {
+        List<Link> blocks = new ArrayList<>();
+
+        if (!Files.exists(blocksFilePath)) return blocks;
+
+        for (String row : DataFiles.readAllLines(blocksFilePath)) {
+            String[] rowData = row.split(";");
+            int block = Integer.parseInt(rowData[0]);
+
+            if (block < blocks.size()) continue;
+            if (block > blocks.size()) break;
+
+            blocks.add(new Link(Long.parseLong(rowData[1]), (block + 1L) * blockRows, hex.parseHex(rowData[2])));
+        }
+
+        return blocks;
+    }
+
+    /**
+     * @param blocks List Complete blocks before the head.
+     * @param head Link Chain value after the last row.
+     * @return List Merkle leaves: the hash of each block's chain value and end offset, then the head's if it doesn't end a block.
+     */
+    private static List<byte[]> getLeaves(List<Link> blocks, Link head) {
+        List<byte[]> leaves = new ArrayList<>(blocks.size() + 1);
+
+        for (Link block : blocks) leaves.add(getLeaf(block));
+
+        if (head.rowCount % blockRows != 0) leaves.add(getLeaf(head));
+
+        return leaves;
+    }
+
+    private static byte[] getLeaf(Link link) {
+        return MerkleTree.hashLeaf(ByteBuffer.allocate(MerkleTree.hashBytes + Long.BYTES).put(link.value).putLong(link.endOffset).array());
+    }
+
+    private static byte[] getRoot(List<Link> blocks, Link head) {
+        return MerkleTree.getRoot(getLeaves(blocks, head));
+    }
+
+    /**
+     * @return Anchor Last root kept in the anchors file, null if none.
+     */
+    private Anchor readAnchor() throws IOException {
+        if (!Files.exists(anchorsFilePath)) return null;
+
+        List<String> rows = DataFiles.readAllLines(anchorsFilePath);
+
+        if (rows.isEmpty()) return null;
+
+        String[] rowData = rows.get(rows.size() - 1).split(";");
+        Anchor anchor = new Anchor();
+        anchor.rows = Long.parseLong(rowData[1]);
+        anchor.root = hex.parseHex(rowData[2]);
+        anchor.source = "the root kept on " + rowData[0] + " (" + rowData[3] + ")";
+
+        return anchor;
+    }
+
+    private void appendAnchor(long rows, byte[] root, String event) throws IOException {
+        DataFiles.append(anchorsFilePath, LocalDateTime.now().withNano(0) + ";" + rows + ";" + hex.formatHex(root) + ";" + event);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Pages through an account's transactions in time order, archived months included, for example:
+ * TransactionCursor cursor = transactions.openAccountCursor(accountId, 20); cursor.next(); cursor.next(); cursor.previous();
+ * Only the current page's position is kept, each page is read by seeking to it in the store.
+ */
+public interface TransactionCursor {
+    /**
+     * Move to the page after the current one, the first page if none was read yet.
+     * @return List Data rows of the page, in time order. Empty at the end of the history, the cursor stays on the current page.
+     * @throws IOException Storage reading error.
+     */
+    List<String> next() throws IOException;
+
+    /**
+     * Move to the page before the current one.
+     * @return List Data rows of the page, in time order. Empty at the start of the history, the cursor stays on the current page.
+     * @throws IOException Storage reading error.
+     */
+    List<String> previous() throws IOException;
+
+    /**
+     * Move to the page starting with the first transaction at or after a time.
+     * @param dateTime LocalDateTime Local time to jump to.
+     * @return List Data rows of the page, in time order. Empty if there are no transactions since, the cursor stays on the current page.
+     * @throws IOException Storage reading error.
+     */
+    List<String> seek(LocalDateTime dateTime) throws IOException;
+}
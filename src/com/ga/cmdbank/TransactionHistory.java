@@ -1,13 +1,12 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Record, read or search through transaction history.
@@ -21,7 +20,8 @@ public class TransactionHistory {
     int transferToAccountId; // Optional field: only for transfer from other account transactions
     boolean isOwnAccountTransfer; // Optional field: only for transfer transactions
     double postTransactionBalance;
-    final Path filePath = Paths.get("data/transaction_history.txt");
+    static final int liveHistoryDays = 31; // Rolling window limits read the last 30 days from the live history, months are archived after
+    static final int maxRecentTransactions = 100; // Recent activity view
 
     public TransactionHistory(int userId, int accountId, String transactionType, double transactionAmount, double postTransactionBalance) {
         this.userId = userId;
@@ -46,38 +46,195 @@ public class TransactionHistory {
     public TransactionHistory() {}
 
     /**
-     * Save a transaction into transaction_history.txt file.
+     * Create a transaction from its transaction_history.txt data row.
+     * @param record String Data row, element break with ; symbol.
+     * @return TransactionHistory
+     */
+    static TransactionHistory fromRecord(String record) {
+        String[] recordData = record.split(";");
+        TransactionHistory transaction = new TransactionHistory(Integer.parseInt(recordData[0]), Integer.parseInt(recordData[1]), recordData[3],
+                Double.parseDouble(recordData[4]), Integer.parseInt(recordData[5]), Boolean.parseBoolean(recordData[6]), Double.parseDouble(recordData[7]));
+        transaction.dateTime = Timestamps.parseDateTime(recordData[2]);
+
+        return transaction;
+    }
+
+    /**
+     * Save a transaction into the transaction store (transaction_history.txt with the text files).
      * Transaction row structure: userId;bankAccountId;datetime;transactionType;transactionAmount;receivedFromAccountId
      * receivedFromAccountId element is optional, it is 0 if not set.
+     * The store may write the row later, for example in write-behind mode: the returned future tells when it is written.
+     * @return CompletableFuture Completes once the row is written, already complete unless the store writes later.
+     *         Completes exceptionally only if the row will never be written, the caller may then record it again.
      */
-    void recordTransaction() {
-        String elementBreak = ";";
-        String record = userId + elementBreak
-                + accountId + elementBreak
-                + dateTime + elementBreak
-                + transactionType + elementBreak
-                + transactionAmount + elementBreak
-                + transferToAccountId + elementBreak
-                + isOwnAccountTransfer + elementBreak
-                + postTransactionBalance;
+    CompletableFuture<Void> recordTransaction() {
+        long startTime = System.nanoTime();
+        BankOperationEvent event = new BankOperationEvent("recordTransaction", accountId);
+        event.counterpartyAccountId = transferToAccountId;
+        event.amount = transactionAmount;
+        event.begin();
 
         try {
-            Files.writeString(filePath, record + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            TransactionStore transactions = Storage.get().transactions();
+            long sequence = transactions.append(this);
+            VelocityLimits.get().record(accountId, transactionType, transactionAmount, dateTime);
+            FraudDetectionPipeline.get().submit(this);
+            event.rowsScanned = 1;
+
+            return transactions.whenDurable(sequence);
 
         } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
 
+            return CompletableFuture.failedFuture(e);
+
+        } finally {
+            event.commit();
+            BankMetrics.recordTransaction.recordSince(startTime);
         }
     }
 
+    /**
+     * Append a transaction's data row to a string builder, without a line break. The time is stored as epoch milliseconds.
+     * @param record StringBuilder Builder to append to.
+     * @param userId int User CPR
+     * @param accountId int Bank account ID
+     * @param dateTime LocalDateTime Time of the transaction
+     * @param transactionType String deposit, withdraw or transfer
+     * @param transactionAmount double Amount in USD
+     * @param transferToAccountId int Transfer recipient account ID, 0 if not a transfer.
+     * @param isOwnAccountTransfer boolean Transfer between the user's own accounts.
+     * @param postTransactionBalance double Account balance after the transaction.
+     * @return StringBuilder The same builder.
+     */
+    static StringBuilder appendRecord(StringBuilder record, int userId, int accountId, LocalDateTime dateTime, String transactionType, double transactionAmount,
+                                      int transferToAccountId, boolean isOwnAccountTransfer, double postTransactionBalance) {
+        return appendRecord(record, userId, accountId, String.valueOf(Timestamps.toEpochMilli(dateTime)), transactionType, transactionAmount,
+                transferToAccountId, isOwnAccountTransfer, postTransactionBalance);
+    }
+
+    /**
+     * Append a transaction's data row to a string builder, without a line break, with an already formatted timestamp.
+     * @param record StringBuilder Builder to append to.
+     * @param userId int User CPR
+     * @param accountId int Bank account ID
+     * @param timestamp CharSequence Time of the transaction, epoch milliseconds or ISO local datetime (rows recorded before epoch timestamps).
+     * @param transactionType String deposit, withdraw or transfer
+     * @param transactionAmount double Amount in USD
+     * @param transferToAccountId int Transfer recipient account ID, 0 if not a transfer.
+     * @param isOwnAccountTransfer boolean Transfer between the user's own accounts.
+     * @param postTransactionBalance double Account balance after the transaction.
+     * @return StringBuilder The same builder.
+     */
+    static StringBuilder appendRecord(StringBuilder record, int userId, int accountId, CharSequence timestamp, String transactionType, double transactionAmount,
+                                      int transferToAccountId, boolean isOwnAccountTransfer, double postTransactionBalance) {
+        char elementBreak = ';';
+
+        return record.append(userId).append(elementBreak)
+                .append(accountId).append(elementBreak)
+                .append(timestamp).append(elementBreak)
+                .append(transactionType).append(elementBreak)
+                .append(transactionAmount).append(elementBreak)
+                .append(transferToAccountId).append(elementBreak)
+                .append(isOwnAccountTransfer).append(elementBreak)
+                .append(postTransactionBalance);
+    }
+
     /**
      * Get the entire transaction history on the system as a List of strings, each string a row.
      * @return List Data rows as strings, each a transaction, element break with ; symbol.
      * @throws IOException Files IO exception handling.
      */
     List<String> getTransactionHistory() throws IOException {
+        TransactionStore transactions = Storage.get().transactions();
+        transactions.awaitPending(); // Read our own writes
+
+        return transactions.readAll();
+    }
+
+    /**
+     * In write-behind mode, wait until every transaction recorded so far is written to the history file.
+     * @throws IOException Transaction log write error.
+     */
+    void awaitPendingRecords() throws IOException {
+        Storage.get().transactions().awaitPending();
+    }
+
+    /**
+     * Display the archive prompt (banker only): moves a closed month's transactions to the compressed archive.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void displayArchiveMonth(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to archive the transaction history.");
+
+            System.out.println("ARCHIVE TRANSACTION HISTORY:");
+            System.out.print("Month to archive (YYYY-MM): ");
+            YearMonth month = YearMonth.parse(inputScanner.nextLine().strip());
+            System.out.println(" ");
+
+            int archived = archiveMonth(month);
+
+            System.out.println(archived + " transactions of " + month + " archived.");
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (DateTimeParseException e) {
+            System.err.println("Please type the month in the format YYYY-MM, for example 2025-12.");
+            displayArchiveMonth(inputScanner, user);
 
-        return Files.readAllLines(filePath);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            displayArchiveMonth(inputScanner, user);
+        }
+    }
+
+    /**
+     * Display the transaction history audit prompt (banker only): checks the history against its tamper-evidence chain.
+     * @param inputScanner Scanner System.in scanner
+     * @param user UserRead Logged-in user, must be a banker.
+     */
+    void displayAudit(Scanner inputScanner, UserRead user) {
+        try {
+            if (!Objects.equals(user.userRole, "banker")) throw new RuntimeException("You are not authorized to audit the transaction history.");
+
+            System.out.println("VERIFY TRANSACTION LOG INTEGRITY (BLOCKS OF " + TransactionChain.blockRows + " TRANSACTIONS):");
+            System.out.print("Block number to prove, ALL for every block (empty for the blocks since the last audit): ");
+            String blockInput = inputScanner.nextLine().strip().toLowerCase();
+            int block = blockInput.isEmpty() ? TransactionChain.newBlocks : blockInput.equals("all") ? TransactionChain.allBlocks : Integer.parseInt(blockInput);
+            System.out.print("Root kept from an earlier audit (empty for the last one kept here): ");
+            String rootInput = inputScanner.nextLine().strip();
+            System.out.println(" ");
+
+            System.out.println("Verifying transaction history...");
+            TransactionChain.printAudit(Storage.get().transactions().audit(block, rootInput.isEmpty() ? null : rootInput));
+            System.out.println(" ");
+
+            user.backToMainMenu(inputScanner, user);
+
+        } catch (NumberFormatException e) {
+            System.err.println("Please type a block number, ALL, or nothing.");
+            displayAudit(inputScanner, user);
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            displayAudit(inputScanner, user);
+        }
+    }
+
+    /**
+     * Move a closed month's transactions to the transaction store's archive, where they stay searchable.
+     * @param month YearMonth Month that ended at least 31 days ago.
+     * @return int Number of transactions archived.
+     * @throws IOException Storage error, or the month isn't closed yet.
+     */
+    int archiveMonth(YearMonth month) throws IOException {
+        if (month.plusMonths(1).atDay(1).atStartOfDay().isAfter(LocalDateTime.now().minusDays(liveHistoryDays)))
+            throw new IOException("Only months that ended more than " + liveHistoryDays + " days ago can be archived.");
+
+        return Storage.get().transactions().archive(month);
     }
 
     /**
@@ -92,53 +249,47 @@ public class TransactionHistory {
 
         if (!accountExists) throw new IOException("No bank account with account ID " + accountId + " was found.");
 
-        List<String> transactionHistory = getTransactionHistory();
-        HashMap<Integer, String> accountTransactionHistory = new HashMap<>();
-        int index = 0;
+        List<String> accountTransactionHistory = new ArrayList<>();
 
-        for (String transaction : transactionHistory) {
+        for (String transaction : Storage.get().transactions().readAccountRange(accountId, LocalDateTime.MIN, LocalDateTime.MAX)) {
             String[] transactionData = transaction.split(";");
-            int transactionAccountId = Integer.parseInt(transactionData[1]);
-
-            if (transactionAccountId != accountId) continue; // Skip row if it doesn't belong to this account
-
-            String storedTransactionType = transactionData[3];
-
-            switch (transactionType.strip().toLowerCase()) {
-                case "deposit":
-                    // add deposit transactions belonging to this account
-                    if (!String.valueOf(storedTransactionType).equals("deposit")) continue;
-
-                    accountTransactionHistory.put(index, transaction);
-                    index++;
-
-                    break;
-                case "withdraw":
-                    // add withdraw transactions belonging to this account
-                    if (!String.valueOf(storedTransactionType).equals("withdraw")) continue;
-
-                    accountTransactionHistory.put(index, transaction);
-                    index++;
-                    break;
-                case "transfer":
-                    // add transfer transactions belonging to this account
-                    if (!String.valueOf(storedTransactionType).equals("transfer")) continue;
-
-                    accountTransactionHistory.put(index, transaction);
-                    index++;
-                    break;
-                case "all":
-                    // add all transactions belonging to this account
-                    accountTransactionHistory.put(index, transaction);
-                    index++;
-                    break;
-
-                default:
-                    throw new IOException("Please choose transaction type of deposit, withdraw, transfer, or all only.");
-            }
+
+            if (isOfType(transactionData[3], transactionType)) accountTransactionHistory.add(transaction);
         }
         
-        return new ArrayList<>(accountTransactionHistory.values());
+        return accountTransactionHistory;
+    }
+
+    /**
+     * Open a cursor paging through an account's complete history in time order, each page read from the store when moving to it.
+     * @param accountId int Bank account ID
+     * @param pageSize int Transactions per page.
+     * @return TransactionCursor Cursor before the first page.
+     * @throws IOException No such account, or storage reading error.
+     */
+    TransactionCursor openAccountStatement(int accountId, int pageSize) throws IOException {
+        boolean accountExists = new BankAccount().exists(accountId);
+
+        if (!accountExists) throw new IOException("No bank account with account ID " + accountId + " was found.");
+
+        return Storage.get().transactions().openAccountCursor(accountId, pageSize);
+    }
+
+    /**
+     * Get an account's most recent transactions, read backwards from the end of the history until enough are found.
+     * @param accountId int Bank account ID
+     * @param count int Number of transactions, 1 to maxRecentTransactions.
+     * @return List Data rows as strings, newest first, elements separated by ; symbol.
+     * @throws IOException No such account, count out of range, or storage reading error.
+     */
+    List<String> getRecentAccountTransactions(int accountId, int count) throws IOException {
+        if (count < 1 || count > maxRecentTransactions) throw new IOException("Please choose between 1 and " + maxRecentTransactions + " transactions.");
+
+        boolean accountExists = new BankAccount().exists(accountId);
+
+        if (!accountExists) throw new IOException("No bank account with account ID " + accountId + " was found.");
+
+        return Storage.get().transactions().readRecent(accountId, count);
     }
 
     /**
@@ -150,50 +301,48 @@ public class TransactionHistory {
      * @throws IOException IO Exception handling
      */
     List<String> getAccountTransactionHistoryByDate(int accountId, String transactionType, LocalDate date) throws IOException {
-        List<String> accountTransactionHistory = getAccountTransactionHistory(accountId, transactionType);
-        HashMap<Integer, String> transactions = new HashMap<>();
-        int index = 0;
-
-        for (String transaction : accountTransactionHistory) {
-            String[] transactionData = transaction.split(";");
-            String transactionDate = transactionData[2];
-            LocalDateTime localDateTime = new UtilityComponent().convertStringToDateTime(transactionDate);
-            LocalDate localDate = new UtilityComponent().getDateFromDatetime(localDateTime);
-
-            if (!Objects.equals(localDate, date)) continue;
-
-            transactions.put(index, transaction);
-            index++;
-        }
-
-        return new ArrayList<>(transactions.values());
+        return getAccountTransactionHistoryByDateRange(accountId, transactionType, date, date);
     }
 
     /**
      * Get account's transaction history based on date range from start date (inclusive) until end date (inclusive).
+     * Only the account's transactions in the range are read, found through the storage engine's account and time index.
      * @param accountId int Bank Account ID
      * @param transactionType String Transaction types: withdraw, deposit, transfer, all
      * @param startDate LocalDate
      * @param endDate LocalDate
-     * @return List of Transaction Strings from data file. Elements separated by ; symbol
+     * @return List of Transaction Strings from data file, in time order. Elements separated by ; symbol
      * @throws IOException Input Error Handling
      */
     List<String> getAccountTransactionHistoryByDateRange(int accountId, String transactionType, LocalDate startDate, LocalDate endDate) throws IOException {
-        UtilityComponent utilityComponent = new UtilityComponent();
-        List<LocalDate> dates = utilityComponent.getLocalDateRange(startDate, endDate);
-        LinkedHashMap<Integer, String> transactionsMap = new LinkedHashMap<>();
-        int index = 0;
-
-        for (LocalDate date : dates) { // Get all the transactions on the list of dates
-            List<String> transactionsOnDate = getAccountTransactionHistoryByDate(accountId, transactionType, date);
-
-            for (String transaction : transactionsOnDate) {
-                transactionsMap.put(index, transaction);
-                index++;
-            }
+        boolean accountExists = new BankAccount().exists(accountId);
+
+        if (!accountExists) throw new IOException("No bank account with account ID " + accountId + " was found.");
+
+        List<String> transactions = new ArrayList<>();
+
+        for (String transaction : Storage.get().transactions().readAccountRange(accountId, startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay())) {
+            String[] transactionData = transaction.split(";");
+
+            if (isOfType(transactionData[3], transactionType)) transactions.add(transaction);
         }
 
-        return transactionsMap.values().stream().toList();
+        return transactions;
+    }
+
+    /**
+     * Check a stored transaction's type against a searched type.
+     * @param storedTransactionType String Type in the data row.
+     * @param transactionType String Searched type: deposit, withdraw, transfer, interest, fee, all
+     * @return boolean True if the transaction matches.
+     * @throws IOException The searched type is not one of the four.
+     */
+    private static boolean isOfType(String storedTransactionType, String transactionType) throws IOException {
+        return switch (transactionType.strip().toLowerCase()) {
+            case "deposit", "withdraw", "transfer", "interest", "fee" -> storedTransactionType.equals(transactionType.strip().toLowerCase());
+            case "all" -> true;
+            default -> throw new IOException("Please choose transaction type of deposit, withdraw, transfer, interest, fee, or all only.");
+        };
     }
 
     /**
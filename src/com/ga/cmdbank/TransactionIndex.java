@@ -0,0 +1,946 @@
+package com.ga.cmdbank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Persistent B+tree index of the transaction history, keyed by (account ID, transaction time) and pointing to the
+ * rows' byte offsets in transaction_history.txt. An account's transactions in a time range are found with one
+ * root-to-leaf descent and a walk over the matching leaf entries, instead of a scan of the whole history.
+ *
+ * A key is accountId << 32 | epoch second, with the row offset as tie-breaker: 16 bytes per leaf entry in 4 KB pages,
+ * so a billion transactions fit in a tree of height 4.
+ *
+ * The index is bulk loaded bottom-up from the history, after an external merge sort (sorted runs of sortChunkEntries
+ * entries in temporary files), so building it needs bounded memory whatever the history's size. Rows appended since,
+ * by this or another terminal, are inserted on the next query with the usual page splits; a backlog larger than a
+ * quarter of the indexed history is bulk loaded again instead. Recently used pages stay in an LRU page cache, which is
+ * dropped when another process changed the index (its generation or indexed size in the header changed).
+ *
+ * All access holds a shared lock on the history, then the index file's exclusive DataFiles lock, which also guards
+ * the fields below. A process that crashes while changing the index leaves the dirty flag set, and the index is bulk
+ * loaded again on next use.
+ *
+ * Index file structure: header page (magic, format, pageSize, generation, indexedDataSize, rootPage, pageCount, entryCount, dirty),
+ * then leaf pages (type, count, next leaf page, (key, offset)...) and internal pages (type, count, first child, (key, offset, child)...).
+ */
+public class TransactionIndex {
+    static final long magic = 0x434D444254524545L; // "CMDBTREE"
+    static final int formatVersion = 2; // 2: keys hold epoch seconds as Timestamps parses them, 1 held local times read as UTC
+    static final int pageSize = 4_096;
+    static final int pageHeaderBytes = 8;
+    static final int leafEntryBytes = 2 * Long.BYTES;
+    static final int internalEntryBytes = 2 * Long.BYTES + Integer.BYTES;
+    static final int leafCapacity = (pageSize - pageHeaderBytes) / leafEntryBytes;
+    static final int internalCapacity = (pageSize - pageHeaderBytes) / internalEntryBytes;
+    static final double bulkLoadFill = 0.9; // Leaves room for inserts before pages split
+    static final int defaultSortChunkEntries = 2 * 1024 * 1024; // 32 MB of keys and offsets per sorted run
+    static final int cachedPages = 2_048; // 8 MB
+    static final long minimumRebuildBacklog = 1024 * 1024; // Bytes of appended rows always inserted rather than bulk loaded
+    static final byte leafPage = 0;
+    static final byte internalPage = 1;
+
+    final Path dataFilePath;
+    final Path indexFilePath;
+    final int sortChunkEntries;
+    private final LinkedHashMap<Integer, ByteBuffer> pageCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+            return size() > cachedPages;
+        }
+    };
+    private long generation = -1;
+    private long indexedDataSize = -1;
+    private int rootPage;
+    private int pageCount;
+    private long entryCount;
+
+    /**
+     * Separator and new right page of a split page, passed up to the parent.
+     */
+    private static class Split {
+        final long key;
+        final long offset;
+        final int page;
+
+        Split(long key, long offset, int page) {
+            this.key = key;
+            this.offset = offset;
+            this.page = page;
+        }
+    }
+
+    /**
+     * Receives the index entries of history rows.
+     */
+    private interface EntryConsumer {
+        void accept(long key, long offset) throws IOException;
+    }
+
+    /**
+     * @param dataFilePath Path transaction_history.txt
+     * @param indexFilePath Path Index file, created on first use.
+     * @param sortChunkEntries int Entries sorted in memory at a time while bulk loading.
+     */
+    TransactionIndex(Path dataFilePath, Path indexFilePath, int sortChunkEntries) {
+        this.dataFilePath = dataFilePath;
+        this.indexFilePath = indexFilePath;
+        this.sortChunkEntries = sortChunkEntries;
+    }
+
+    /**
+     * Find the byte offsets of an account's transactions in a time range, in time order.
+     * @param accountId int Bank account ID
+     * @param fromEpochSecond long Start of the range, inclusive.
+     * @param toEpochSecond long End of the range, exclusive.
+     * @return long[] Row offsets in transaction_history.txt
+     * @throws IOException Index or history file error.
+     */
+    long[] find(int accountId, long fromEpochSecond, long toEpochSecond) throws IOException {
+        long fromKey = toKey(accountId, fromEpochSecond);
+        long toKey = toKey(accountId, toEpochSecond);
+
+        return withLocks(channel -> {
+            refresh(channel);
+
+            long[] offsets = new long[16];
+            int found = 0;
+            int page = findLeaf(channel, fromKey, -1);
+
+            while (page != 0) {
+                ByteBuffer leaf = getPage(channel, page);
+                int count = getCount(leaf);
+
+                for (int i = 0; i < count; i++) {
+                    long key = leaf.getLong(pageHeaderBytes + i * leafEntryBytes);
+
+                    if (key >= toKey) return Arrays.copyOf(offsets, found);
+                    if (key < fromKey) continue;
+                    if (found == offsets.length) offsets = Arrays.copyOf(offsets, found * 2);
+
+                    offsets[found++] = leaf.getLong(pageHeaderBytes + i * leafEntryBytes + Long.BYTES);
+                }
+
+                page = leaf.getInt(4); // Next leaf
+            }
+
+            return Arrays.copyOf(offsets, found);
+        });
+    }
+
+    /**
+     * Seek to an entry and read the account's entries after it, for paging through an account's transactions.
+     * @param accountId int Bank account ID
+     * @param key long Key of the entry to start after, toKey(accountId, 0) with offset -1 for the account's start.
+     * @param offset long Row offset of the entry to start after.
+     * @param limit int Maximum number of entries.
+     * @return long[] Entries as key and row offset pairs, in time order.
+     * @throws IOException Index or history file error.
+     */
+    long[] findAfter(int accountId, long key, long offset, int limit) throws IOException {
+        return withLocks(channel -> {
+            refresh(channel);
+
+            long[] entries = new long[2 * Math.min(limit, 64)];
+            int found = 0;
+            int page = findLeaf(channel, key, offset);
+            ByteBuffer leaf = getPage(channel, page);
+            int position = findPosition(leaf, key, offset);
+
+            while (found < limit) {
+                if (position == getCount(leaf)) { // Continue in the next leaf
+                    page = leaf.getInt(4);
+
+                    if (page == 0) break;
+
+                    leaf = getPage(channel, page);
+                    position = 0;
+                    continue;
+                }
+
+                long entryKey = leaf.getLong(pageHeaderBytes + position * leafEntryBytes);
+                long entryOffset = leaf.getLong(pageHeaderBytes + position * leafEntryBytes + Long.BYTES);
+                position++;
+
+                if (entryKey >> 32 != accountId) break;
+                if (entryKey == key && entryOffset == offset) continue; // The entry itself
+                if (2 * found == entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+
+                entries[2 * found] = entryKey;
+                entries[2 * found++ + 1] = entryOffset;
+            }
+
+            return Arrays.copyOf(entries, 2 * found);
+        });
+    }
+
+    /**
+     * Seek to an entry and read the account's entries before it. Leaves only link to the next leaf, so the previous leaf is
+     * found by going back up the descent's path to the nearest page with a child further left.
+     * @param accountId int Bank account ID
+     * @param key long Key of the entry to end before, toKey(accountId, 1L << 32) with offset -1 for the account's end.
+     * @param offset long Row offset of the entry to end before.
+     * @param limit int Maximum number of entries.
+     * @return long[] Entries as key and row offset pairs, in time order: the last ones before the entry.
+     * @throws IOException Index or history file error.
+     */
+    long[] findBefore(int accountId, long key, long offset, int limit) throws IOException {
+        return withLocks(channel -> {
+            refresh(channel);
+
+            long[] entries = new long[2 * Math.min(limit, 64)]; // Newest first until reversed
+            int found = 0;
+            int[] pathPages = new int[16];
+            int[] pathChildren = new int[16];
+            int depth = 0;
+            int page = rootPage;
+            ByteBuffer node = getPage(channel, page);
+
+            while (node.get(0) == internalPage) {
+                pathPages[depth] = page;
+                pathChildren[depth] = findChild(node, key, offset);
+                page = node.getInt(getChildPosition(node, pathChildren[depth++]));
+                node = getPage(channel, page);
+            }
+
+            int position = findPosition(node, key, offset);
+
+            collect:
+            while (found < limit) {
+                for (int i = position - 1; i >= 0 && found < limit; i--) {
+                    long entryKey = node.getLong(pageHeaderBytes + i * leafEntryBytes);
+
+                    if (entryKey >> 32 != accountId) break collect;
+                    if (2 * found == entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+
+                    entries[2 * found] = entryKey;
+                    entries[2 * found++ + 1] = node.getLong(pageHeaderBytes + i * leafEntryBytes + Long.BYTES);
+                }
+
+                while (depth > 0 && pathChildren[depth - 1] == 0) depth--; // Up to a page with a child further left
+
+                if (depth == 0) break;
+
+                ByteBuffer parent = getPage(channel, pathPages[depth - 1]);
+                page = parent.getInt(getChildPosition(parent, --pathChildren[depth - 1]));
+                node = getPage(channel, page);
+
+                while (node.get(0) == internalPage) { // Down the rightmost children
+                    pathPages[depth] = page;
+                    pathChildren[depth] = getCount(node);
+                    page = node.getInt(getChildPosition(node, pathChildren[depth++]));
+                    node = getPage(channel, page);
+                }
+
+                position = getCount(node);
+            }
+
+            long[] ordered = new long[2 * found];
+
+            for (int i = 0; i < found; i++) {
+                ordered[2 * i] = entries[2 * (found - 1 - i)];
+                ordered[2 * i + 1] = entries[2 * (found - 1 - i) + 1];
+            }
+
+            return ordered;
+        });
+    }
+
+    /**
+     * @return long Number of indexed transactions, after indexing the rows appended since the last use.
+     * @throws IOException Index or history file error.
+     */
+    long size() throws IOException {
+        return withLocks(channel -> {
+            refresh(channel);
+
+            return entryCount;
+        });
+    }
+
+    /**
+     * Bulk load the index from the whole history again.
+     * @throws IOException Index or history file error.
+     */
+    void rebuild() throws IOException {
+        withLocks(channel -> {
+            bulkLoad(channel);
+
+            return null;
+        });
+    }
+
+    /**
+     * Run an action on the index file, with the history locked first so it can't change meanwhile.
+     * Always in this order: callers may already hold the history lock.
+     */
+    @SuppressWarnings("try")
+    private <T> T withLocks(DataFiles.ChannelAction<T> action) throws IOException {
+        try (DataFiles.HeldLock historyLock = DataFiles.lockForReading(dataFilePath)) {
+            return DataFiles.update(indexFilePath, action);
+        }
+    }
+
+    /**
+     * Index key of a transaction. Times before 1970 or after 2106 are clamped, an end of range of 2^32 seconds covers the whole account.
+     * @param accountId int Bank account ID, not negative.
+     * @param epochSecond long Transaction time
+     * @return long Key
+     */
+    static long toKey(int accountId, long epochSecond) {
+        return ((long) accountId << 32) + Math.max(0, Math.min(epochSecond, 1L << 32));
+    }
+
+    static long toEpochSecond(LocalDateTime dateTime) {
+        return Timestamps.toEpochSecond(dateTime);
+    }
+
+    /**
+     * Bring the cached header and pages up to date with the index file, and the index up to date with the history.
+     */
+    private void refresh(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(pageSize);
+
+        if (channel.size() < pageSize || readFully(channel, header, 0) < pageSize || header.getLong(0) != magic
+                || header.getInt(8) != formatVersion || header.getInt(12) != pageSize || header.get(52) != 0) {
+            bulkLoad(channel); // Missing, unreadable, other format or left dirty by a crash
+            return;
+        }
+
+        if (header.getLong(16) != generation || header.getLong(24) != indexedDataSize) { // Changed by another process
+            pageCache.clear();
+            generation = header.getLong(16);
+            indexedDataSize = header.getLong(24);
+            rootPage = header.getInt(32);
+            pageCount = header.getInt(36);
+            entryCount = header.getLong(40);
+        }
+
+        long dataFileSize = Files.size(dataFilePath);
+
+        if (dataFileSize < indexedDataSize || dataFileSize - indexedDataSize > Math.max(minimumRebuildBacklog, indexedDataSize / 4)) {
+            bulkLoad(channel); // History rewritten, or a backlog faster to bulk load than to insert
+        } else if (dataFileSize > indexedDataSize) {
+            catchUp(channel);
+        }
+    }
+
+    /**
+     * Insert the rows appended to the history since it was last indexed.
+     */
+    private void catchUp(FileChannel channel) throws IOException {
+        writeHeader(channel, true);
+        indexedDataSize = forEachRow(indexedDataSize, (key, offset) -> insert(channel, key, offset));
+        writeHeader(channel, false);
+    }
+
+    /**
+     * Build the index from the whole history: sort all entries, then fill the leaves left to right and the internal levels above them.
+     */
+    private void bulkLoad(FileChannel channel) throws IOException {
+        pageCache.clear();
+        generation = System.nanoTime();
+        indexedDataSize = 0;
+        rootPage = 1;
+        pageCount = 2;
+        entryCount = 0;
+        writeHeader(channel, true);
+        channel.truncate(pageSize);
+
+        List<Path> runs = new ArrayList<>();
+
+        try {
+            long[] keys = new long[sortChunkEntries];
+            long[] offsets = new long[sortChunkEntries];
+            int[] chunkEntries = {0};
+
+            indexedDataSize = forEachRow(0, (key, offset) -> {
+                if (chunkEntries[0] == sortChunkEntries) {
+                    runs.add(writeRun(keys, offsets, chunkEntries[0]));
+                    chunkEntries[0] = 0;
+                }
+
+                keys[chunkEntries[0]] = key;
+                offsets[chunkEntries[0]] = offset;
+                chunkEntries[0]++;
+            });
+
+            sort(keys, offsets, chunkEntries[0]);
+            BulkLoader loader = new BulkLoader(channel);
+
+            if (runs.isEmpty()) {
+                for (int i = 0; i < chunkEntries[0]; i++) loader.add(keys[i], offsets[i]);
+
+            } else {
+                runs.add(writeRun(keys, offsets, chunkEntries[0]));
+                mergeRuns(runs, loader);
+            }
+
+            loader.finish();
+
+        } finally {
+            for (Path run : runs) Files.deleteIfExists(run);
+        }
+
+        writeHeader(channel, false);
+    }
+
+    /**
+     * Parse the complete history rows from an offset to the end of the file into index entries. Rows that don't parse are not indexed.
+     * @return long Offset after the last complete row.
+     */
+    private long forEachRow(long from, EntryConsumer consumer) throws IOException {
+        return DataFiles.read(dataFilePath, channel -> {
+            long size = channel.size();
+            byte[] chunk = new byte[1024 * 1024];
+            long chunkOffset = from;
+            int filled = 0;
+
+            while (chunkOffset + filled < size) {
+                if (filled == chunk.length) chunk = Arrays.copyOf(chunk, chunk.length * 2); // Row longer than the chunk
+
+                int read = channel.read(ByteBuffer.wrap(chunk, filled, (int) Math.min(chunk.length - filled, size - chunkOffset - filled)), chunkOffset + filled);
+
+                if (read < 0) break;
+
+                filled += read;
+                int rowStart = 0;
+
+                for (int i = 0; i < filled; i++) {
+                    if (chunk[i] != '\n') continue;
+
+                    long key = parseKey(chunk, rowStart, i);
+
+                    if (key >= 0) consumer.accept(key, chunkOffset + rowStart);
+
+                    rowStart = i + 1;
+                }
+
+                System.arraycopy(chunk, rowStart, chunk, 0, filled - rowStart); // Keep the partial last row
+                chunkOffset += rowStart;
+                filled -= rowStart;
+            }
+
+            BankMetrics.dataFile(dataFilePath).recordRead(chunkOffset + filled - from);
+
+            return chunkOffset; // A partial last row is indexed once it's complete
+        });
+    }
+
+    /**
+     * Parse the index key of a history row: userId;accountId;datetime;...
+     * @return long Key, or -1 if the row doesn't parse.
+     */
+    private static long parseKey(byte[] data, int rowStart, int rowEnd) {
+        int accountStart = indexOf(data, ';', rowStart, rowEnd) + 1;
+        int dateTimeStart = indexOf(data, ';', accountStart, rowEnd) + 1;
+        int dateTimeEnd = indexOf(data, ';', dateTimeStart, rowEnd);
+
+        if (accountStart == 0 || dateTimeStart == 0 || dateTimeEnd < 0 || dateTimeStart - 1 - accountStart > 10) return -1;
+
+        long accountId = 0;
+
+        for (int i = accountStart; i < dateTimeStart - 1; i++) {
+            if (data[i] < '0' || data[i] > '9') return -1;
+
+            accountId = accountId * 10 + (data[i] - '0');
+        }
+
+        if (dateTimeStart - 1 == accountStart || accountId > Integer.MAX_VALUE) return -1;
+
+        try {
+            long epochMilli = Timestamps.parse(new String(data, dateTimeStart, dateTimeEnd - dateTimeStart, StandardCharsets.US_ASCII));
+
+            return toKey((int) accountId, Math.floorDiv(epochMilli, 1_000));
+
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOf(byte[] data, char character, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == character) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Descend from the root to the leaf where a key belongs.
+     */
+    private int findLeaf(FileChannel channel, long key, long offset) throws IOException {
+        int page = rootPage;
+        ByteBuffer node = getPage(channel, page);
+
+        while (node.get(0) == internalPage) {
+            page = node.getInt(getChildPosition(node, findChild(node, key, offset)));
+            node = getPage(channel, page);
+        }
+
+        return page;
+    }
+
+    private void insert(FileChannel channel, long key, long offset) throws IOException {
+        Split split = insert(channel, rootPage, key, offset);
+
+        if (split != null) { // Root split, the tree grows a level
+            ByteBuffer root = ByteBuffer.allocate(pageSize);
+            root.put(0, internalPage);
+            root.putShort(2, (short) 1);
+            root.putInt(4, rootPage);
+            putInternalEntry(root, 0, split.key, split.offset, split.page);
+            rootPage = pageCount++;
+            writePage(channel, rootPage, root);
+        }
+
+        entryCount++;
+    }
+
+    /**
+     * Insert an entry into a subtree.
+     * @return Split The separator and new page if the subtree's top page split, otherwise null.
+     */
+    private Split insert(FileChannel channel, int page, long key, long offset) throws IOException {
+        ByteBuffer node = getPage(channel, page);
+        int count = getCount(node);
+
+        if (node.get(0) == leafPage) {
+            int position = findPosition(node, key, offset);
+            long[] keys = new long[count + 1];
+            long[] offsets = new long[count + 1];
+
+            for (int i = 0; i < count; i++) {
+                int j = i < position ? i : i + 1; // Entries after the new one move right
+
+                keys[j] = node.getLong(pageHeaderBytes + i * leafEntryBytes);
+                offsets[j] = node.getLong(pageHeaderBytes + i * leafEntryBytes + Long.BYTES);
+            }
+
+            keys[position] = key;
+            offsets[position] = offset;
+
+            if (count < leafCapacity) {
+                writeLeaf(channel, page, node, keys, offsets, 0, count + 1, node.getInt(4));
+                return null;
+            }
+
+            int half = (count + 1) / 2;
+            int rightPage = pageCount++;
+            writeLeaf(channel, rightPage, ByteBuffer.allocate(pageSize), keys, offsets, half, count + 1, node.getInt(4));
+            writeLeaf(channel, page, node, keys, offsets, 0, half, rightPage);
+
+            return new Split(keys[half], offsets[half], rightPage);
+        }
+
+        int child = findChild(node, key, offset);
+        Split childSplit = insert(channel, node.getInt(getChildPosition(node, child)), key, offset);
+
+        if (childSplit == null) return null;
+
+        long[] keys = new long[count + 1];
+        long[] offsets = new long[count + 1];
+        int[] children = new int[count + 2];
+        children[0] = node.getInt(4);
+
+        for (int i = 0; i < count; i++) {
+            int j = i < child ? i : i + 1; // Separators after the split child move right
+            int position = pageHeaderBytes + i * internalEntryBytes;
+
+            keys[j] = node.getLong(position);
+            offsets[j] = node.getLong(position + Long.BYTES);
+            children[j + 1] = node.getInt(position + 2 * Long.BYTES);
+        }
+
+        keys[child] = childSplit.key; // The split child's new right page goes after it
+        offsets[child] = childSplit.offset;
+        children[child + 1] = childSplit.page;
+
+        if (count < internalCapacity) {
+            writeInternal(channel, page, node, keys, offsets, children, 0, count + 1);
+            return null;
+        }
+
+        int middle = (count + 1) / 2; // Moves up to the parent
+        int rightPage = pageCount++;
+        writeInternal(channel, rightPage, ByteBuffer.allocate(pageSize), keys, offsets, children, middle + 1, count + 1);
+        writeInternal(channel, page, node, keys, offsets, children, 0, middle);
+
+        return new Split(keys[middle], offsets[middle], rightPage);
+    }
+
+    private void writeLeaf(FileChannel channel, int page, ByteBuffer node, long[] keys, long[] offsets, int from, int to, int nextLeaf) throws IOException {
+        node.put(0, leafPage);
+        node.putShort(2, (short) (to - from));
+        node.putInt(4, nextLeaf);
+
+        for (int i = from; i < to; i++) {
+            node.putLong(pageHeaderBytes + (i - from) * leafEntryBytes, keys[i]);
+            node.putLong(pageHeaderBytes + (i - from) * leafEntryBytes + Long.BYTES, offsets[i]);
+        }
+
+        writePage(channel, page, node);
+    }
+
+    /**
+     * Write separators from..to-1 and the children around them: children[from] first, children[i + 1] after separator i.
+     */
+    private void writeInternal(FileChannel channel, int page, ByteBuffer node, long[] keys, long[] offsets, int[] children, int from, int to) throws IOException {
+        node.put(0, internalPage);
+        node.putShort(2, (short) (to - from));
+        node.putInt(4, children[from]);
+
+        for (int i = from; i < to; i++) {
+            putInternalEntry(node, i - from, keys[i], offsets[i], children[i + 1]);
+        }
+
+        writePage(channel, page, node);
+    }
+
+    private static void putInternalEntry(ByteBuffer node, int index, long key, long offset, int child) {
+        int position = pageHeaderBytes + index * internalEntryBytes;
+        node.putLong(position, key);
+        node.putLong(position + Long.BYTES, offset);
+        node.putInt(position + 2 * Long.BYTES, child);
+    }
+
+    /**
+     * Find the child of an internal page whose subtree holds a key: the number of separators not above it.
+     */
+    private static int findChild(ByteBuffer node, long key, long offset) {
+        int low = 0;
+        int high = getCount(node);
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int position = pageHeaderBytes + middle * internalEntryBytes;
+
+            if (compare(node.getLong(position), node.getLong(position + Long.BYTES), key, offset) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Find where an entry goes in a leaf page: the number of entries before it.
+     */
+    private static int findPosition(ByteBuffer node, long key, long offset) {
+        int low = 0;
+        int high = getCount(node);
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int position = pageHeaderBytes + middle * leafEntryBytes;
+
+            if (compare(node.getLong(position), node.getLong(position + Long.BYTES), key, offset) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Byte position of an internal page's child pointer: child 0 in the page header, child i after separator i - 1.
+     */
+    private static int getChildPosition(ByteBuffer node, int child) {
+        return child == 0 ? 4 : pageHeaderBytes + (child - 1) * internalEntryBytes + 2 * Long.BYTES;
+    }
+
+    private static int getCount(ByteBuffer node) {
+        return Short.toUnsignedInt(node.getShort(2));
+    }
+
+    private static int compare(long key, long offset, long otherKey, long otherOffset) {
+        int compared = Long.compare(key, otherKey);
+
+        return compared != 0 ? compared : Long.compare(offset, otherOffset);
+    }
+
+    private ByteBuffer getPage(FileChannel channel, int page) throws IOException {
+        ByteBuffer node = pageCache.get(page);
+
+        if (node != null) return node;
+
+        node = ByteBuffer.allocate(pageSize);
+
+        if (readFully(channel, node, (long) page * pageSize) < pageSize) throw new IOException(indexFilePath + " is damaged, page " + page + " is missing.");
+
+        BankMetrics.dataFile(indexFilePath).recordRead(pageSize);
+        pageCache.put(page, node);
+
+        return node;
+    }
+
+    private void writePage(FileChannel channel, int page, ByteBuffer node) throws IOException {
+        ByteBuffer content = node.duplicate().clear();
+
+        while (content.hasRemaining()) {
+            channel.write(content, (long) page * pageSize + content.position());
+        }
+
+        BankMetrics.dataFile(indexFilePath).recordWrite(pageSize);
+        pageCache.put(page, node);
+    }
+
+    private void writeHeader(FileChannel channel, boolean dirty) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(pageSize);
+        header.putLong(0, magic);
+        header.putInt(8, formatVersion);
+        header.putInt(12, pageSize);
+        header.putLong(16, generation);
+        header.putLong(24, indexedDataSize);
+        header.putInt(32, rootPage);
+        header.putInt(36, pageCount);
+        header.putLong(40, entryCount);
+        header.put(52, (byte) (dirty ? 1 : 0));
+
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+
+        return buffer.position();
+    }
+
+    /**
+     * Sort entries by key, then offset, with a bottom-up merge sort.
+     */
+    private static void sort(long[] keys, long[] offsets, int count) {
+        long[] sourceKeys = keys;
+        long[] sourceOffsets = offsets;
+        long[] targetKeys = new long[count];
+        long[] targetOffsets = new long[count];
+
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int left = start;
+                int right = middle;
+
+                for (int i = start; i < end; i++) {
+                    if (left < middle && (right >= end || compare(sourceKeys[left], sourceOffsets[left], sourceKeys[right], sourceOffsets[right]) <= 0)) {
+                        targetKeys[i] = sourceKeys[left];
+                        targetOffsets[i] = sourceOffsets[left++];
+                    } else {
+                        targetKeys[i] = sourceKeys[right];
+                        targetOffsets[i] = sourceOffsets[right++];
+                    }
+                }
+            }
+
+            long[] swapKeys = sourceKeys;
+            long[] swapOffsets = sourceOffsets;
+            sourceKeys = targetKeys;
+            sourceOffsets = targetOffsets;
+            targetKeys = swapKeys;
+            targetOffsets = swapOffsets;
+        }
+
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, count);
+            System.arraycopy(sourceOffsets, 0, offsets, 0, count);
+        }
+    }
+
+    /**
+     * Sort a chunk of entries and write it to a temporary run file.
+     */
+    private static Path writeRun(long[] keys, long[] offsets, int count) throws IOException {
+        sort(keys, offsets, count);
+        Path run = Files.createTempFile("cmdbank-index-run", ".bin");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < count; i++) {
+                output.writeLong(keys[i]);
+                output.writeLong(offsets[i]);
+            }
+        }
+
+        return run;
+    }
+
+    /**
+     * Merge the sorted runs into the bulk loader, reading each run sequentially.
+     */
+    private static void mergeRuns(List<Path> runs, BulkLoader loader) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<>((a, b) -> compare(a.key, a.offset, b.key, b.offset));
+        List<RunReader> readers = new ArrayList<>();
+
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+
+                if (reader.next()) heads.add(reader);
+            }
+
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                loader.add(reader.key, reader.offset);
+
+                if (reader.next()) heads.add(reader);
+            }
+
+        } finally {
+            for (RunReader reader : readers) reader.input.close();
+        }
+    }
+
+    /**
+     * Sequential reader of a sorted run file.
+     */
+    private static class RunReader {
+        final DataInputStream input;
+        long key;
+        long offset;
+
+        RunReader(Path run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean next() throws IOException {
+            try {
+                key = input.readLong();
+                offset = input.readLong();
+
+                return true;
+
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes sorted entries into full leaves left to right, and the internal levels above them as their pages fill up.
+     */
+    private class BulkLoader {
+        final FileChannel channel;
+        final int leafFill = (int) (leafCapacity * bulkLoadFill);
+        final int internalFill = (int) (internalCapacity * bulkLoadFill);
+        final ByteBuffer leaf = ByteBuffer.allocate(pageSize);
+        int leafPageNumber;
+        int leafCount = 0;
+        final List<ByteBuffer> levels = new ArrayList<>(); // Internal page being filled on each level, from the bottom
+        final List<long[]> levelFirstKeys = new ArrayList<>(); // Smallest key and offset under each of those pages
+        final List<Integer> levelPagesWritten = new ArrayList<>();
+
+        BulkLoader(FileChannel channel) {
+            this.channel = channel;
+            leafPageNumber = pageCount - 1;
+        }
+
+        void add(long key, long offset) throws IOException {
+            if (leafCount == leafFill) {
+                int nextLeaf = pageCount++;
+                writeBulkLeaf(nextLeaf);
+                leafPageNumber = nextLeaf;
+                leafCount = 0;
+            }
+
+            leaf.putLong(pageHeaderBytes + leafCount * leafEntryBytes, key);
+            leaf.putLong(pageHeaderBytes + leafCount * leafEntryBytes + Long.BYTES, offset);
+            leafCount++;
+            entryCount++;
+        }
+
+        void finish() throws IOException {
+            writeBulkLeaf(0);
+
+            for (int level = 0; level < levels.size(); level++) {
+                ByteBuffer node = levels.get(level);
+
+                if (level == levels.size() - 1 && levelPagesWritten.get(level) == 0 && getCount(node) == 0) {
+                    rootPage = node.getInt(4); // A level with a single child: that child is the root
+                    return;
+                }
+
+                writeLevelPage(level);
+            }
+
+            rootPage = leafPageNumber; // Single leaf
+        }
+
+        private void writeBulkLeaf(int nextLeaf) throws IOException {
+            leaf.put(0, leafPage);
+            leaf.putShort(2, (short) leafCount);
+            leaf.putInt(4, nextLeaf);
+            writePage(channel, leafPageNumber, leaf);
+            pageCache.remove(leafPageNumber); // The buffer is reused for the next leaf
+
+            if (leafCount > 0 || levels.isEmpty()) addChild(0, leaf.getLong(pageHeaderBytes), leaf.getLong(pageHeaderBytes + Long.BYTES), leafPageNumber);
+        }
+
+        /**
+         * Add a child page, with its smallest key, to a level's page being filled.
+         */
+        private void addChild(int level, long key, long offset, int child) throws IOException {
+            if (level == levels.size()) {
+                levels.add(null);
+                levelFirstKeys.add(new long[2]);
+                levelPagesWritten.add(0);
+            }
+
+            ByteBuffer node = levels.get(level);
+
+            if (node != null && getCount(node) == internalFill) {
+                writeLevelPage(level);
+                node = null;
+            }
+
+            if (node == null) {
+                node = ByteBuffer.allocate(pageSize);
+                node.put(0, internalPage);
+                node.putInt(4, child);
+                levels.set(level, node);
+                levelFirstKeys.get(level)[0] = key;
+                levelFirstKeys.get(level)[1] = offset;
+                return;
+            }
+
+            int count = getCount(node);
+            putInternalEntry(node, count, key, offset, child);
+            node.putShort(2, (short) (count + 1));
+        }
+
+        private void writeLevelPage(int level) throws IOException {
+            ByteBuffer node = levels.get(level);
+            long[] firstKey = levelFirstKeys.get(level);
+            int page = pageCount++;
+            writePage(channel, page, node);
+            levels.set(level, null);
+            levelPagesWritten.set(level, levelPagesWritten.get(level) + 1);
+            addChild(level + 1, firstKey[0], firstKey[1], page);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,333 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind transaction log: transactions are published into a pre-allocated ring buffer and a single writer
+ * thread appends them to the transaction history file in batches, one locked append and one force (fsync) per batch.
+ * The batch's rows are hashed into the history's TransactionChain under the same lock.
+ *
+ * Publishing is lock-free and doesn't allocate: a producer claims a sequence number with an atomic increment,
+ * copies the transaction's fields into that sequence's slot, then marks the slot published. Each published
+ * transaction gets its sequence number, which can be awaited (awaitDurable) or turned into a CompletableFuture
+ * (whenDurable) by callers that need to know it reached the disk. A failed batch write is retried until it succeeds,
+ * so the transaction is not lost, and its callers keep waiting meanwhile. A future completes exceptionally (and awaitDurable
+ * throws) only when the log is closed while the write still fails: that transaction will never be written.
+ *
+ * Used by the text storage engine's TextTransactionStore when started with -Dcmdbank.writeBehind=true.
+ */
+public class TransactionLogWriter {
+    static final int defaultCapacity = 4_096; // Power of 2
+    static final int maxBatchSize = 512;
+    static final long drainTimeoutMillis = 10_000; // Close waits this long for the writer before giving up on a failing write
+
+    /**
+     * Ring buffer slot, holds the fields of one transaction row.
+     */
+    private static class Slot {
+        int userId;
+        int accountId;
+        LocalDateTime dateTime;
+        String transactionType;
+        double transactionAmount;
+        int transferToAccountId;
+        boolean isOwnAccountTransfer;
+        double postTransactionBalance;
+    }
+
+    /**
+     * Caller waiting for a sequence to be durable.
+     */
+    private static class DurableWaiter {
+        final long sequence;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        DurableWaiter(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    final Path filePath;
+    final TransactionChain chain;
+    private final int capacity;
+    private final int indexMask;
+    private final Slot[] slots;
+    private final AtomicLongArray publishedSequences; // Sequence last published into each slot
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    private volatile long consumedSequence = 0; // Slots of sequences below this one were copied out by the writer and are free
+    private volatile long durableSequence = -1; // Last sequence written and forced to disk
+    private volatile boolean abandoning = false; // Closed and the writer no longer drained: stop retrying a failed write
+    private volatile IOException abandonedError = null; // Set once the writer gave up, sequences after durableSequence will never be written
+    private volatile boolean running = true;
+    private final AtomicInteger activePublishers = new AtomicInteger(0); // Producers between the running check and marking their slot published
+    private final ConcurrentLinkedQueue<DurableWaiter> durableWaiters = new ConcurrentLinkedQueue<>();
+    private final Object durableLock = new Object();
+    private final StringBuilder batch = new StringBuilder(maxBatchSize * 96);
+    private final Thread writer;
+
+    /**
+     * Open a write-behind log and start its writer thread.
+     * @param filePath Path Data file the transactions are appended to.
+     * @param capacity int Ring buffer size, a power of 2.
+     */
+    TransactionLogWriter(Path filePath, int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Ring buffer capacity must be a power of 2.");
+
+        this.filePath = filePath;
+        this.chain = new TransactionChain(filePath);
+        this.capacity = capacity;
+        this.indexMask = capacity - 1;
+        this.slots = new Slot[capacity];
+        this.publishedSequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            publishedSequences.set(i, -1);
+        }
+
+        writer = new Thread(this::run, "cmdbank-transaction-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Publish a transaction to be appended to the log. Waits only if the ring buffer is full.
+     * @param transaction TransactionHistory Transaction to record.
+     * @return long Sequence number of the transaction in the log.
+     * @throws IllegalStateException The log is closed.
+     */
+    long publish(TransactionHistory transaction) {
+        activePublishers.incrementAndGet(); // Before the running check: a writer that sees the log closed also sees this producer
+
+        try {
+            if (!running) throw new IllegalStateException("Transaction log is closed.");
+
+            return publishSlot(transaction);
+
+        } finally {
+            activePublishers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claim the next sequence and copy a transaction into its slot.
+     */
+    private long publishSlot(TransactionHistory transaction) {
+        long sequence = nextSequence.getAndIncrement();
+
+        while (sequence - capacity >= consumedSequence) { // Ring buffer full, wait for the writer to free the slot
+            if (abandonedError != null) throw new IllegalStateException("Transaction log is closed.");
+
+            LockSupport.parkNanos(1_000);
+        }
+
+        int index = (int) sequence & indexMask;
+        Slot slot = slots[index];
+        slot.userId = transaction.userId;
+        slot.accountId = transaction.accountId;
+        slot.dateTime = transaction.dateTime;
+        slot.transactionType = transaction.transactionType;
+        slot.transactionAmount = transaction.transactionAmount;
+        slot.transferToAccountId = transaction.transferToAccountId;
+        slot.isOwnAccountTransfer = transaction.isOwnAccountTransfer;
+        slot.postTransactionBalance = transaction.postTransactionBalance;
+        publishedSequences.set(index, sequence); // Volatile write, makes the slot fields visible to the writer
+
+        return sequence;
+    }
+
+    /**
+     * @return long Sequence number of the latest claimed transaction, -1 if none.
+     */
+    long getLastPublished() {
+        return nextSequence.get() - 1;
+    }
+
+    /**
+     * @return long Sequence number of the latest transaction written and forced to disk, -1 if none.
+     */
+    long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Block until a transaction (and every transaction before it) is durable. Keeps waiting while a failed write is retried.
+     * @param sequence long Sequence number returned by publish.
+     * @throws IOException The log was closed before the transaction could be written, it never will be.
+     */
+    void awaitDurable(long sequence) throws IOException {
+        synchronized (durableLock) {
+            while (durableSequence < sequence) {
+                if (abandonedError != null) throw new IOException(abandonedError.getMessage(), abandonedError);
+
+                try {
+                    durableLock.wait(100);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the transaction log.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a future that completes when a transaction is durable. It doesn't complete while a failed write is retried,
+     * and completes exceptionally only if the log was closed before the transaction could be written.
+     * @param sequence long Sequence number returned by publish.
+     * @return CompletableFuture
+     */
+    CompletableFuture<Void> whenDurable(long sequence) {
+        if (durableSequence >= sequence) return CompletableFuture.completedFuture(null);
+        if (abandonedError != null) return CompletableFuture.failedFuture(abandonedError);
+
+        DurableWaiter waiter = new DurableWaiter(sequence);
+        durableWaiters.add(waiter);
+
+        if (durableSequence >= sequence || abandonedError != null) completeWaiters(); // Written or given up while we were adding the waiter
+
+        return waiter.future;
+    }
+
+    /**
+     * Stop accepting transactions, write every transaction already claimed, and stop the writer thread.
+     */
+    void close() {
+        close(drainTimeoutMillis);
+    }
+
+    /**
+     * Stop accepting transactions and write every transaction already claimed. If the writer is still retrying a failed
+     * write after the timeout, it gives up: the transactions not yet written fail their futures and awaitDurable callers.
+     * @param timeoutMillis long Time to wait for the writer to drain.
+     */
+    void close(long timeoutMillis) {
+        running = false;
+
+        try {
+            writer.join(timeoutMillis);
+
+            if (writer.isAlive()) {
+                abandoning = true;
+                writer.join(timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer thread loop: copy published slots into a batch, write and force the batch, then wake up the waiters.
+     */
+    private void run() {
+        int idleSpins = 0;
+
+        // In this order: once closed and no producer is publishing, nextSequence is final
+        while (running || activePublishers.get() > 0 || consumedSequence < nextSequence.get()) {
+            long batchEnd = fillBatch();
+
+            if (batchEnd == consumedSequence) { // Nothing published
+                if (idleSpins++ < 100) Thread.onSpinWait();
+                else LockSupport.parkNanos(50_000);
+
+                continue;
+            }
+
+            idleSpins = 0;
+            consumedSequence = batchEnd; // Slots were copied into the batch, producers may reuse them
+
+            if (!writeBatch()) { // Given up on close, neither this batch nor the rest is written
+                completeWaiters();
+                return;
+            }
+
+            durableSequence = batchEnd - 1;
+            completeWaiters();
+        }
+    }
+
+    /**
+     * Format the published transactions that follow the consumed ones into the batch, in sequence order.
+     * @return long Sequence after the last one in the batch.
+     */
+    private long fillBatch() {
+        batch.setLength(0);
+        long sequence = consumedSequence;
+        long batchLimit = sequence + maxBatchSize;
+
+        while (sequence < batchLimit && publishedSequences.get((int) sequence & indexMask) == sequence) {
+            Slot slot = slots[(int) sequence & indexMask];
+            TransactionHistory.appendRecord(batch, slot.userId, slot.accountId, slot.dateTime, slot.transactionType, slot.transactionAmount,
+                    slot.transferToAccountId, slot.isOwnAccountTransfer, slot.postTransactionBalance);
+            batch.append(System.lineSeparator());
+            slot.dateTime = null;
+            slot.transactionType = null;
+            sequence++;
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Append and force the batch, under the history file's append lock, retrying until it succeeds. Waiters keep waiting
+     * meanwhile, as the rows may still be written: a waiter told of a failure could record the transaction again.
+     * @return boolean False if the log was closed while the write kept failing, the batch is not written.
+     */
+    private boolean writeBatch() {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+
+        while (true) {
+            try {
+                chain.append(bytes, true);
+
+                return true;
+
+            } catch (IOException e) {
+                if (abandoning) {
+                    System.err.println("Error writing to file: " + e.getMessage() + ", transaction log closed.");
+                    abandonedError = new IOException("Transaction log closed before its transactions could be written: " + e.getMessage(), e);
+
+                    return false;
+                }
+
+                System.err.println("Error writing to file: " + e.getMessage() + ", retrying.");
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+    }
+
+    /**
+     * Complete the futures of durable sequences and, once the writer gave up, fail the others. Then wake up blocked awaitDurable callers.
+     */
+    private void completeWaiters() {
+        IOException error = abandonedError;
+
+        for (Iterator<DurableWaiter> waiters = durableWaiters.iterator(); waiters.hasNext(); ) {
+            DurableWaiter waiter = waiters.next();
+
+            if (waiter.sequence <= durableSequence) {
+                waiters.remove();
+                waiter.future.complete(null);
+
+            } else if (error != null) {
+                waiters.remove();
+                waiter.future.completeExceptionally(error);
+            }
+        }
+
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+}
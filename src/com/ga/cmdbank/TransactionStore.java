@@ -0,0 +1,109 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Append-only storage of the transaction history, as data rows in the transaction_history.txt format:
+ * userId;bankAccountId;datetime;transactionType;transactionAmount;transferToAccountId;isOwnAccountTransfer;postTransactionBalance
+ */
+public interface TransactionStore {
+    /**
+     * Append a transaction. The engine may write it later, see whenDurable.
+     * @param transaction TransactionHistory Transaction to record.
+     * @return long Sequence to wait for with whenDurable, or -1 if the transaction is already written.
+     * @throws IOException Storage writing error.
+     */
+    long append(TransactionHistory transaction) throws IOException;
+
+    /**
+     * Append transactions in one write, in list order. The engine may write them later, see whenDurable.
+     * @param transactions List Transactions to record.
+     * @return long Sequence of the last one to wait for with whenDurable, or -1 if they are already written.
+     * @throws IOException Storage writing error.
+     */
+    long appendAll(List<TransactionHistory> transactions) throws IOException;
+
+    /**
+     * @param sequence long Sequence returned by append.
+     * @return CompletableFuture Completes once the transaction is written. Completes exceptionally only if the engine gave up
+     *         writing it, never while a failed write may still be retried.
+     */
+    CompletableFuture<Void> whenDurable(long sequence);
+
+    /**
+     * Wait until every transaction appended so far by this process is written.
+     * @throws IOException Storage writing error.
+     */
+    void awaitPending() throws IOException;
+
+    /**
+     * Read the whole transaction history, archived months included, in recording order.
+     * @return List Data rows
+     * @throws IOException Storage reading error.
+     */
+    List<String> readAll() throws IOException;
+
+    /**
+     * Read an account's transactions in a time range, archived months included, in time order.
+     * @param accountId int Bank account ID
+     * @param from LocalDateTime Start of the range, inclusive.
+     * @param to LocalDateTime End of the range, exclusive.
+     * @return List Data rows
+     * @throws IOException Storage reading error.
+     */
+    List<String> readAccountRange(int accountId, LocalDateTime from, LocalDateTime to) throws IOException;
+
+    /**
+     * Open a cursor paging through an account's transactions in time order, archived months included.
+     * @param accountId int Bank account ID
+     * @param pageSize int Transactions per page.
+     * @return TransactionCursor Cursor before the first page.
+     */
+    TransactionCursor openAccountCursor(int accountId, int pageSize);
+
+    /**
+     * Read an account's most recent transactions, archived months included, reading no further back than needed.
+     * @param accountId int Bank account ID
+     * @param count int Number of transactions to read.
+     * @return List Data rows, newest first. Fewer than count if the account has fewer transactions.
+     * @throws IOException Storage reading error.
+     */
+    List<String> readRecent(int accountId, int count) throws IOException;
+
+    /**
+     * Move a month's transactions out of the live history into the engine's archive format. Archived transactions stay readable.
+     * @param month YearMonth Month to archive, merged into its archive if part of it is archived already.
+     * @return int Number of transactions archived.
+     * @throws IOException Storage reading or writing error.
+     */
+    int archive(YearMonth month) throws IOException;
+
+    /**
+     * Check the live history against its tamper-evidence chain, see TransactionChain.
+     * @param block int Block number to check and prove, TransactionChain.newBlocks for the blocks chained since the last audit, or TransactionChain.allBlocks.
+     * @param trustedRoot String Root printed by an earlier audit as blocks:rootHex, null for the last root kept.
+     * @return TransactionChain.Audit Blocks checked and failures found.
+     * @throws IOException No such block, or storage reading error.
+     */
+    TransactionChain.Audit audit(int block, String trustedRoot) throws IOException;
+
+    /**
+     * Version of the stored history, which changes whenever a transaction is appended, also by other processes.
+     * @return long Version, only comparable for equality.
+     * @throws IOException Storage reading error.
+     */
+    long getVersion() throws IOException;
+
+    /**
+     * Follow the history from its start: polling the subscription passes the rows appended since the last poll to the listener,
+     * and onChange is called when another process appended rows.
+     * @param listener DataFileWatcher.RowListener Receives the rows on poll.
+     * @param onChange Runnable Called from a background thread when the history changed.
+     * @return DataFileWatcher.Subscription
+     */
+    DataFileWatcher.Subscription subscribe(DataFileWatcher.RowListener listener, Runnable onChange);
+}
\ No newline at end of file
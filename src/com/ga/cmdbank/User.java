@@ -1,10 +1,6 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
 
 public abstract class User {
 
@@ -71,7 +67,14 @@ public abstract class User {
     String userRole;
     String hashedPassword;
     byte[] passwordSalt;
-    Path filePath = Paths.get("data/users.txt");
+    /**
+     * Shared LRU cache of parsed users.txt records, keyed by CPR.
+     */
+    static final UserCache userCache = new UserCache(1_000);
+
+    static {
+        BankMetrics.register("com.ga.cmdbank:type=Cache,name=users", userCache);
+    }
 
     /**
      * Default constructor.
@@ -149,32 +152,46 @@ public abstract class User {
 
     /**
      * Check if a user exists based on CPR number. Returns true if it exists, otherwise false.
+     * Answered by the user store, with the text files by the user registry's CPR bitmap, without reading the data file.
      * @param CPR int User CPR number
      * @return boolean
      * @throws IOException IOException
      */
     boolean exists(int CPR) throws IOException {
-        String[] userData = read(CPR);
-
-        return userData != null;
+        return Storage.get().users().exists(CPR);
     }
 
     /**
      * Retrieve user's account data in users.txt file based on user CPR. Returns null if no matching user is found.
+     * Found users are served from the user cache until users.txt changes, others are read from the user store.
      * @param CPR User's cpr number and username.
      * @return String[] User's data array, in format: [cpr,firstname,lastname,accountRole,hashedPassword,passwordSalt]
      * @throws IOException Input reading error.
      */
     String[] read(int CPR) throws IOException {
-        List<String> usersData = Files.readAllLines(filePath);
+        UserStore users = Storage.get().users();
+        long dataVersion = users.getVersion(); // Another terminal's password reset empties the cache
+        userCache.validate(dataVersion);
+        String[] cachedUserData = userCache.get(CPR);
+
+        if (cachedUserData != null) return cachedUserData;
+
+        BankOperationEvent event = new BankOperationEvent("readUser", CPR);
+        event.begin();
+
+        try {
+            String user = users.read(CPR);
+
+            if (user == null) return null;
 
-        for (String user : usersData) {
             String[] userData = user.split(";");
-            int userCPR = convertCPRInput(userData[0]);
+            event.rowsScanned = 1;
+            event.touched(user);
+            userCache.put(CPR, userData, dataVersion);
 
-            if (userCPR == CPR) return userData;
+            return userData;
+        } finally {
+            event.commit();
         }
-
-        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.ga.cmdbank;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of parsed users.txt records, keyed by CPR.
+ *
+ * Only found users are cached, a miss always falls through to the data file. Records are tied to the users.txt version
+ * they were read at: once the file changes, also by another process, the next validate empties the cache. Writers of
+ * users.txt in this process (UserCreate.save, UserCreate.resetPassword) also invalidate the changed CPR.
+ */
+public class UserCache implements UserCacheMBean {
+    final int capacity;
+    private final LinkedHashMap<Integer, String[]> users;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long dataVersion = -1; // Version of users.txt the cached records were read at, guarded by users
+
+    UserCache(int capacity) {
+        this.capacity = capacity;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) { // Access ordered, so the eldest entry is the least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > UserCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get a cached user record.
+     * @param CPR int User CPR
+     * @return String[] Copy of the user's data array, or null if not cached.
+     */
+    String[] get(int CPR) {
+        String[] userData;
+
+        synchronized (users) {
+            userData = users.get(CPR);
+        }
+
+        if (userData == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+
+        return userData.clone();
+    }
+
+    /**
+     * Empty the cache if users.txt changed since the cached records were read.
+     * @param dataVersion long Current users.txt version
+     */
+    void validate(long dataVersion) {
+        synchronized (users) {
+            if (dataVersion == this.dataVersion) return;
+
+            users.clear();
+            this.dataVersion = dataVersion;
+        }
+    }
+
+    /**
+     * Cache or replace a user record.
+     * @param CPR int User CPR
+     * @param userData String[] User's data array, in format: [cpr,firstname,lastname,accountRole,hashedPassword,passwordSalt]
+     */
+    void put(int CPR, String[] userData) {
+        synchronized (users) {
+            users.put(CPR, userData.clone());
+        }
+    }
+
+    /**
+     * Cache or replace a user record read at a users.txt version, unless the cache has since moved to another version.
+     * @param CPR int User CPR
+     * @param userData String[] User's data array, in format: [cpr,firstname,lastname,accountRole,hashedPassword,passwordSalt]
+     * @param dataVersion long users.txt version validated before the record was read
+     */
+    void put(int CPR, String[] userData, long dataVersion) {
+        synchronized (users) {
+            if (dataVersion == this.dataVersion) users.put(CPR, userData.clone());
+        }
+    }
+
+    /**
+     * Remove a user record, the next read goes to the data file.
+     * @param CPR int User CPR
+     */
+    void invalidate(int CPR) {
+        synchronized (users) {
+            users.remove(CPR);
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (users) {
+            users.clear();
+        }
+
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,18 @@
+package com.ga.cmdbank;
+
+/**
+ * JMX view of the user record cache, published as com.ga.cmdbank:type=Cache,name=users.
+ */
+public interface UserCacheMBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    int getSize();
+
+    int getCapacity();
+
+    void clear();
+}
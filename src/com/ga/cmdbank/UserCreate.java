@@ -1,11 +1,8 @@
 package com.ga.cmdbank;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 
@@ -96,24 +93,21 @@ public class UserCreate extends User implements IPassword {
         String valueBreak = ";";
         String userString = user.cpr + valueBreak + user.firstName + valueBreak + user.lastName + valueBreak + user.userRole + valueBreak + user.hashedPassword + valueBreak + IPassword.base64Salt(user.passwordSalt);
 
-        try {
-            int cprNumber = convertCPRInput(cpr);
-            if (exists(cprNumber)) {
-                throw new IOException("User with CPR " + cpr + " already exists.");
-            }
-        } catch (NumberFormatException e) {
-            throw new IOException("Invalid CPR format: " + cpr);
-        }
+        boolean added;
 
         try {
-            Files.writeString(filePath, userString + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-
-            return true;
+            added = Storage.get().users().add(user.cpr, userString); // Checks the CPR is free and adds the user in one step, another terminal can't add it in between
         } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
 
             return false;
         }
+
+        if (!added) throw new IOException("User with CPR " + cpr + " already exists.");
+
+        userCache.invalidate(user.cpr);
+
+        return true;
     }
 
     /**
@@ -226,33 +220,30 @@ public class UserCreate extends User implements IPassword {
      * @throws InvalidKeySpecException Wrong key spec handling
      */
     boolean resetPassword(int userCPR, String newPassword) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
-        List<String> userAccounts = Files.readAllLines(filePath);
-
-        for (int _i = 0; _i < userAccounts.size(); _i++) {
-            String account = userAccounts.get(_i);
-            String[] accountData = account.split(";");
-            int accountUserId = Integer.parseInt(accountData[0]);
-
-            if (accountUserId == userCPR) {
-                // Generate new password salt
-                byte[] salt = IPassword.generateSalt();
-                String base64Salt = IPassword.base64Salt(salt);
-                // Generate new hashed password
-                String hashedPassword = IPassword.hashPassword(newPassword, salt);
-                // Update user record with new hashed password and salt
-                String valueBreak = ";";
-                String updatedUser = accountData[0] + valueBreak
-                        + accountData[1] + valueBreak
-                        + accountData[2] + valueBreak
-                        + accountData[3] + valueBreak
-                        + hashedPassword + valueBreak
-                        + base64Salt + valueBreak;
-
-                userAccounts.set(_i, updatedUser);
-                Files.write(filePath, userAccounts);
-
-                return true;
-            }
+        // Generate new password salt
+        byte[] salt = IPassword.generateSalt();
+        String base64Salt = IPassword.base64Salt(salt);
+        // Generate new hashed password
+        String hashedPassword = IPassword.hashPassword(newPassword, salt);
+        UserStore users = Storage.get().users();
+        String account = users.read(userCPR);
+
+        if (account == null) return false;
+
+        String[] accountData = account.split(";");
+        // Update user record with new hashed password and salt
+        String valueBreak = ";";
+        String updatedUser = accountData[0] + valueBreak
+                + accountData[1] + valueBreak
+                + accountData[2] + valueBreak
+                + accountData[3] + valueBreak
+                + hashedPassword + valueBreak
+                + base64Salt + valueBreak;
+
+        if (users.update(userCPR, updatedUser)) {
+            userCache.invalidate(userCPR);
+
+            return true;
         }
 
         return false;
@@ -34,15 +34,21 @@ public class UserRead extends User implements IPassword {
      * @return UserRead User's stored data in users.txt file as an object. Format: {cpr,firstName,lastName,accountRole,hashedPassword,passwordSalt}
      */
     UserRead login(int username, String password) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
-        if (!exists(username)) throw new IOException("A user with username " + username + " does not exist.");
+        long startTime = System.nanoTime();
 
-        String[] userData = read(username);
-        String userStoredHash = userData[4];
-        byte[] userStoredSalt = IPassword.decodeBase64Salt(userData[5]);
+        try {
+            if (!exists(username)) throw new IOException("A user with username " + username + " does not exist.");
+
+            String[] userData = read(username);
+            String userStoredHash = userData[4];
+            byte[] userStoredSalt = IPassword.decodeBase64Salt(userData[5]);
 
-        if (!IPassword.verifyPassword(password, userStoredHash, userStoredSalt)) throw new IOException("Password does not match.");
+            if (!IPassword.verifyPassword(password, userStoredHash, userStoredSalt)) throw new IOException("Password does not match.");
 
-        return new UserRead(userData[0], userData[1], userData[2], userData[3], userStoredHash, userStoredSalt);
+            return new UserRead(userData[0], userData[1], userData[2], userData[3], userStoredHash, userStoredSalt);
+        } finally {
+            BankMetrics.login.recordSince(startTime);
+        }
     }
 
     /**
@@ -101,9 +107,18 @@ public class UserRead extends User implements IPassword {
         System.out.println("(V) View customer's or own account data");
         System.out.println("(S) View Account Statement");
         System.out.println("(M) Search Account Statement");
+        System.out.println("(L) View Recent Activity (last transactions)");
+        System.out.println("(G) Generate Monthly Statements for All Accounts");
+        System.out.println("(H) Archive Old Transaction History");
+        System.out.println("(I) Accrue Savings Interest");
+        System.out.println("(F) Overdraft Sweep and Fees for All Accounts");
+        System.out.println("(K) Verify Transaction Log Integrity");
+        System.out.println("(Y) Snapshot Data Files (online backup)");
         System.out.println("(D) Deposit into bank account");
         System.out.println("(W) Withdraw from bank account");
         System.out.println("(T) Transfer from bank account");
+        System.out.println("(O) Standing Orders (scheduled transfers)");
+        System.out.println("(A) Card Terminal (card present withdrawal)");
         System.out.println("(R) Reset Password for User Account");
         System.out.println("(E) Exit System");
         System.out.print("Choice (Type the letter associated with the option): ");
@@ -135,6 +150,34 @@ public class UserRead extends User implements IPassword {
                 bankAccount.displayAccountStatementSearch(inputScanner, userRead);
                 break;
 
+            case "l":
+                bankAccount.displayRecentActivity(inputScanner, userRead);
+                break;
+
+            case "g":
+                new AccountStatementBatch().display(inputScanner, userRead);
+                break;
+
+            case "h":
+                new TransactionHistory().displayArchiveMonth(inputScanner, userRead);
+                break;
+
+            case "i":
+                new InterestAccrualBatch().display(inputScanner, userRead);
+                break;
+
+            case "f":
+                new OverdraftSweepBatch().display(inputScanner, userRead);
+                break;
+
+            case "k":
+                new TransactionHistory().displayAudit(inputScanner, userRead);
+                break;
+
+            case "y":
+                new DataSnapshot().display(inputScanner, userRead);
+                break;
+
             case "d":
                 transaction.displayDeposit(inputScanner, userRead);
                 break;
@@ -147,6 +190,14 @@ public class UserRead extends User implements IPassword {
                 transaction.displayTransfer(inputScanner, userRead);
                 break;
 
+            case "o":
+                new StandingOrder().display(inputScanner, userRead);
+                break;
+
+            case "a":
+                CardAuthorization.cardPresentChannel.displayCardTerminal(inputScanner, userRead);
+                break;
+
             case "r":
                 userCreate.displayResetPassword(inputScanner, userRead);
                 break;
@@ -175,9 +226,11 @@ public class UserRead extends User implements IPassword {
         System.out.println("(V) View Bank Account Details");
         System.out.println("(S) View Account Statement");
         System.out.println("(M) Search Account Statement");
+        System.out.println("(L) View Recent Activity (last transactions)");
         System.out.println("(W) Withdraw Money");
         System.out.println("(D) Deposit Money");
         System.out.println("(T) Transfer Money");
+        System.out.println("(O) Standing Orders (scheduled transfers)");
         System.out.println("(R) Reset Password (Recommended after first login)");
         System.out.println("(E) Exit System");
         System.out.print("Choice (Type the letter associated with the option): ");
@@ -201,6 +254,10 @@ public class UserRead extends User implements IPassword {
                 bankAccount.displayAccountStatementSearch(inputScanner, userRead);
                 break;
 
+            case "l":
+                bankAccount.displayRecentActivity(inputScanner, userRead);
+                break;
+
             case "w":
                 transaction.displayWithdraw(inputScanner, userRead);
                 break;
@@ -213,6 +270,10 @@ public class UserRead extends User implements IPassword {
                 transaction.displayTransfer(inputScanner, userRead);
                 break;
 
+            case "o":
+                new StandingOrder().display(inputScanner, userRead);
+                break;
+
             case "r":
                 userCreate.displayResetPassword(inputScanner, userRead);
                 break;
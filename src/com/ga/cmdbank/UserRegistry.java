@@ -0,0 +1,459 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Registry of user CPRs over the whole 8-digit CPR space: a memory-mapped bitmap with one bit per possible CPR (12.5 MB),
+ * plus an offset table giving the byte offset of each user's row in users.txt, in CPR order.
+ *
+ * An existence check is one bit test. A user's offset is found by its rank (number of set bits before its bit), counted with
+ * a rank directory of one entry per block of 512 CPRs, so fetching a record is one positional read of users.txt.
+ * Iterating all users walks only the blocks with set bits, in CPR order.
+ *
+ * The bitmap (users.cprmap) and the offset table (users.offsets) are saved next to users.txt. The offset table's header keeps
+ * users.txt's size and modified time, and both are rebuilt in one pass when users.txt was changed other than by appending.
+ *
+ * Each process works on its own copy of the bitmap (a copy-on-write mapping of the saved file), so rows appended by other
+ * terminals are added incrementally and a rebuild never shows other processes a cleared bitmap. The files are saved after a
+ * rebuild or this process's own appends, each written to a temporary file and renamed over the old one, the bitmap first.
+ *
+ * Offsets file structure: magic, dataFileSize, dataFileModified (long), userCount (int), then the offsets (long).
+ */
+public class UserRegistry {
+    static final int cprSpace = 100_000_000; // CPRs are exactly 8 digits
+    static final int bitmapWords = (cprSpace + 63) / 64;
+    static final int blockWords = 8; // Rank directory block of 512 CPRs
+    static final long magic = 0x434D445553455253L; // "CMDUSERS"
+    static final int headerBytes = 3 * Long.BYTES + Integer.BYTES;
+    static final int bitmapBytes = bitmapWords * Long.BYTES;
+
+    final Path dataFilePath;
+    final Path bitmapFilePath;
+    final Path offsetsFilePath;
+    private ByteBuffer bitmap; // This process's copy
+    private int[] blockRanks; // Users before each block, one extra entry for the total
+    private long[] offsets = new long[0];
+    private int userCount = 0;
+    private long dataFileSize = -1;
+    private long dataFileModified = -1;
+    private boolean ownRowsAppended = false; // Since the last save
+    private DataFileWatcher.Subscription subscription;
+
+    /**
+     * @param dataFilePath Path users.txt
+     * @param bitmapFilePath Path CPR bitmap file
+     * @param offsetsFilePath Path Offset table file
+     */
+    UserRegistry(Path dataFilePath, Path bitmapFilePath, Path offsetsFilePath) {
+        this.dataFilePath = dataFilePath;
+        this.bitmapFilePath = bitmapFilePath;
+        this.offsetsFilePath = offsetsFilePath;
+    }
+
+    /**
+     * Check whether a user with this CPR exists. While the registry is up to date this is a file status check and one bit test.
+     * @param cpr int User CPR
+     * @return boolean
+     * @throws IOException Data file reading error while loading or rebuilding the registry.
+     */
+    @SuppressWarnings("try")
+    boolean contains(int cpr) throws IOException {
+        synchronized (this) {
+            if (isFresh()) return isRegistered(cpr);
+        }
+
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) { // Data file lock first, then the registry, as in every method
+            synchronized (this) {
+                ensureFresh();
+
+                return isRegistered(cpr);
+            }
+        }
+    }
+
+    /**
+     * Read a user's row from users.txt.
+     * @param cpr int User CPR
+     * @return String Data row, or null if no such user.
+     * @throws IOException Data file reading error.
+     */
+    @SuppressWarnings("try")
+    String read(int cpr) throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) {
+            synchronized (this) {
+                ensureFresh();
+
+                if (!isRegistered(cpr)) return null;
+
+                long offset = offsets[rank(cpr)];
+
+                return DataFiles.read(dataFilePath, channel -> DataFiles.readRow(channel, offset));
+            }
+        }
+    }
+
+    /**
+     * Call an action for every user CPR, in ascending order, visiting only the bitmap blocks that have users.
+     * @param action IntConsumer Receives each CPR.
+     * @throws IOException Data file reading error while loading or rebuilding the registry.
+     */
+    @SuppressWarnings("try")
+    void forEachCpr(IntConsumer action) throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) {
+            synchronized (this) {
+                ensureFresh();
+
+                for (int block = 0; block < blockRanks.length - 1; block++) {
+                    if (blockRanks[block + 1] == blockRanks[block]) continue; // No users in this block
+
+                    int blockEnd = Math.min(bitmapWords, (block + 1) * blockWords);
+
+                    for (int wordIndex = block * blockWords; wordIndex < blockEnd; wordIndex++) {
+                        long word = getWord(wordIndex);
+
+                        while (word != 0) {
+                            action.accept(wordIndex * 64 + Long.numberOfTrailingZeros(word));
+                            word &= word - 1;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read every user's row, in CPR order, with one positional read per user.
+     * @return List Data rows
+     * @throws IOException Data file reading error.
+     */
+    @SuppressWarnings("try")
+    List<String> readAll() throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) {
+            synchronized (this) {
+                ensureFresh();
+                List<String> rows = new ArrayList<>(userCount);
+
+                return DataFiles.read(dataFilePath, channel -> {
+                    for (int rank = 0; rank < userCount; rank++) {
+                        rows.add(DataFiles.readRow(channel, offsets[rank]));
+                    }
+
+                    return rows;
+                });
+            }
+        }
+    }
+
+    /**
+     * @return int Number of users.
+     * @throws IOException Data file reading error while loading or rebuilding the registry.
+     */
+    @SuppressWarnings("try")
+    int size() throws IOException {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) {
+            synchronized (this) {
+                ensureFresh();
+
+                return userCount;
+            }
+        }
+    }
+
+    /**
+     * Bring the registry up to date with users.txt, for example right after appending a user. Also called by the data file watcher.
+     * Appended rows (from this or another terminal) are added incrementally, other changes rebuild the registry.
+     */
+    @SuppressWarnings("try")
+    void refresh() {
+        try (DataFiles.HeldLock usersLock = DataFiles.lockForReading(dataFilePath)) {
+            synchronized (this) {
+                ensureFresh();
+            }
+
+        } catch (IOException e) {
+            synchronized (this) {
+                dataFileSize = -1; // Forces a reload on next use
+            }
+        }
+    }
+
+    /**
+     * Tell the registry users.txt was rewritten by the app (password reset), so the row offsets are rebuilt on next use.
+     */
+    synchronized void dataFileRewritten() {
+        dataFileSize = -1;
+    }
+
+    private boolean isFresh() throws IOException {
+        if (bitmap == null || dataFileSize < 0) return false;
+
+        BasicFileAttributes attributes = Files.readAttributes(dataFilePath, BasicFileAttributes.class); // One stat call, no file read
+
+        return attributes.size() == dataFileSize && attributes.lastModifiedTime().toMillis() == dataFileModified;
+    }
+
+    private boolean isRegistered(int cpr) {
+        return cpr >= 0 && cpr < cprSpace && isSet(cpr);
+    }
+
+    /**
+     * Load the saved registry, catch up with the rows appended since, or rebuild it if users.txt changed otherwise.
+     * Called holding users.txt's lock and the registry's.
+     * @throws IOException Data file reading or registry file writing error.
+     */
+    private void ensureFresh() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataFilePath, BasicFileAttributes.class); // One stat call, no file read
+
+        if (bitmap != null && dataFileSize >= 0) {
+            if (attributes.size() == dataFileSize && attributes.lastModifiedTime().toMillis() == dataFileModified) return;
+
+            if (attributes.size() > dataFileSize && subscription.poll() && dataFileSize >= 0) { // Rows were appended, rowAppended added them
+                dataFileSize = subscription.getOffset();
+                dataFileModified = Files.getLastModifiedTime(dataFilePath).toMillis();
+
+                if (ownRowsAppended) save(); // The terminal that appended saves, the others keep their copies in memory
+
+                return;
+            }
+        }
+
+        if (dataFileSize == -1 && load(attributes)) {
+            follow();
+            return;
+        }
+
+        if (bitmap == null) bitmap = ByteBuffer.allocateDirect(bitmapBytes); // Nothing saved to start from
+
+        rebuild();
+        follow();
+    }
+
+    /**
+     * Add a row appended to users.txt, by this or another terminal. Called while polling the subscription.
+     * A row that doesn't fit (bad CPR, CPR already registered) makes the registry rebuild instead.
+     * @param row String Appended row
+     * @param offset long Byte offset of the row
+     * @param ownProcess boolean True if this process appended the row, which makes it save the registry.
+     */
+    private void rowAppended(String row, long offset, boolean ownProcess) {
+        byte[] rowBytes = row.getBytes(StandardCharsets.UTF_8);
+        int cpr = parseCpr(rowBytes, 0, rowBytes.length);
+
+        if (dataFileSize < 0 || cpr < 0 || isSet(cpr)) {
+            dataFileSize = -1;
+            return;
+        }
+
+        int rank = rank(cpr);
+        ownRowsAppended |= ownProcess;
+
+        if (userCount == offsets.length) offsets = Arrays.copyOf(offsets, Math.max(16, userCount * 2));
+
+        System.arraycopy(offsets, rank, offsets, rank + 1, userCount - rank);
+        offsets[rank] = offset;
+        userCount++;
+        setBit(cpr);
+
+        for (int block = (cpr >>> 6) / blockWords + 1; block < blockRanks.length; block++) {
+            blockRanks[block]++;
+        }
+    }
+
+    /**
+     * Follow appends to users.txt from the registry's current version on.
+     */
+    private void follow() {
+        if (subscription == null) {
+            subscription = DataFileWatcher.get().subscribe(dataFilePath, dataFileSize, this::rowAppended, this::refresh);
+
+        } else {
+            subscription.reset(dataFileSize);
+        }
+    }
+
+    /**
+     * Read the offset table and map the bitmap, if they were saved for this version of users.txt.
+     * The bitmap is saved before the offset table, so a table saved for this version comes with this version's bitmap.
+     * @param attributes BasicFileAttributes users.txt attributes
+     * @return boolean True if loaded.
+     * @throws IOException Registry file reading error.
+     */
+    private boolean load(BasicFileAttributes attributes) throws IOException {
+        if (!Files.exists(offsetsFilePath)) return false;
+
+        ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(offsetsFilePath));
+
+        if (saved.remaining() < headerBytes || saved.getLong() != magic
+                || saved.getLong() != attributes.size()
+                || saved.getLong() != attributes.lastModifiedTime().toMillis()) return false;
+
+        int savedUserCount = saved.getInt();
+
+        if (saved.remaining() != savedUserCount * Long.BYTES || !Files.exists(bitmapFilePath) || Files.size(bitmapFilePath) != bitmapBytes) return false;
+
+        mapBitmap();
+        offsets = new long[Math.max(16, savedUserCount)];
+        saved.asLongBuffer().get(offsets, 0, savedUserCount);
+        userCount = savedUserCount;
+        buildBlockRanks();
+
+        if (blockRanks[blockRanks.length - 1] != userCount) return false; // Bitmap doesn't match the table
+
+        dataFileSize = attributes.size();
+        dataFileModified = attributes.lastModifiedTime().toMillis();
+
+        return true;
+    }
+
+    /**
+     * Rebuild the bitmap and offset table from users.txt in one pass and save them.
+     * @throws IOException Data file reading or registry file writing error.
+     */
+    private void rebuild() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(dataFilePath, BasicFileAttributes.class);
+        byte[] data = DataFiles.readAllBytes(dataFilePath);
+
+        for (int wordIndex = 0; wordIndex < bitmapWords; wordIndex++) {
+            bitmap.putLong(wordIndex * Long.BYTES, 0L);
+        }
+
+        long[] cprOffsets = new long[16]; // CPR (27 bits) in the high bits, row offset in the low 36 bits, so sorting orders by CPR
+        int rowCount = 0;
+        int rowStart = 0;
+
+        for (int i = 0; i <= data.length; i++) {
+            if (i < data.length && data[i] != '\n') continue;
+
+            int cpr = parseCpr(data, rowStart, i);
+
+            if (cpr >= 0 && !isSet(cpr)) {
+                if (rowCount == cprOffsets.length) cprOffsets = Arrays.copyOf(cprOffsets, rowCount * 2);
+
+                cprOffsets[rowCount++] = ((long) cpr << 36) | rowStart;
+                setBit(cpr);
+            }
+
+            rowStart = i + 1;
+        }
+
+        Arrays.sort(cprOffsets, 0, rowCount);
+        offsets = new long[Math.max(16, rowCount)];
+
+        for (int rank = 0; rank < rowCount; rank++) {
+            offsets[rank] = cprOffsets[rank] & ((1L << 36) - 1);
+        }
+
+        userCount = rowCount;
+        buildBlockRanks();
+        dataFileSize = data.length;
+        dataFileModified = attributes.lastModifiedTime().toMillis();
+        save();
+    }
+
+    private void mapBitmap() throws IOException {
+        try (FileChannel channel = FileChannel.open(bitmapFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            bitmap = channel.map(FileChannel.MapMode.PRIVATE, 0, bitmapBytes); // Copy on write, the saved file is never changed in place
+        }
+    }
+
+    private void save() throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(headerBytes + userCount * Long.BYTES);
+        content.putLong(magic).putLong(dataFileSize).putLong(dataFileModified).putInt(userCount);
+        content.asLongBuffer().put(offsets, 0, userCount);
+        replace(bitmapFilePath, bitmap.duplicate());
+        replace(offsetsFilePath, content);
+        ownRowsAppended = false;
+    }
+
+    /**
+     * Write a registry file to a temporary file next to it, then rename it over the old one, so processes loading it see either whole file.
+     */
+    private static void replace(Path filePath, ByteBuffer content) throws IOException {
+        Path temporaryPath = Files.createTempFile(filePath.toAbsolutePath().getParent(), filePath.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) channel.write(content);
+            }
+
+            Files.move(temporaryPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryPath);
+            throw e;
+        }
+    }
+
+    private void buildBlockRanks() {
+        int blockCount = (bitmapWords + blockWords - 1) / blockWords;
+        blockRanks = new int[blockCount + 1];
+        int rank = 0;
+
+        for (int block = 0; block < blockCount; block++) {
+            blockRanks[block] = rank;
+            int blockEnd = Math.min(bitmapWords, (block + 1) * blockWords);
+
+            for (int wordIndex = block * blockWords; wordIndex < blockEnd; wordIndex++) {
+                rank += Long.bitCount(getWord(wordIndex));
+            }
+        }
+
+        blockRanks[blockCount] = rank;
+    }
+
+    /**
+     * Number of users with a smaller CPR, which is the CPR's index in the offset table.
+     */
+    private int rank(int cpr) {
+        int wordIndex = cpr >>> 6;
+        int rank = blockRanks[wordIndex / blockWords];
+
+        for (int word = wordIndex - wordIndex % blockWords; word < wordIndex; word++) {
+            rank += Long.bitCount(getWord(word));
+        }
+
+        return rank + Long.bitCount(getWord(wordIndex) & ((1L << (cpr & 63)) - 1));
+    }
+
+    private boolean isSet(int cpr) {
+        return (getWord(cpr >>> 6) & (1L << (cpr & 63))) != 0;
+    }
+
+    private void setBit(int cpr) {
+        int wordIndex = cpr >>> 6;
+        bitmap.putLong(wordIndex * Long.BYTES, getWord(wordIndex) | (1L << (cpr & 63)));
+    }
+
+    private long getWord(int wordIndex) {
+        return bitmap.getLong(wordIndex * Long.BYTES);
+    }
+
+    /**
+     * Parse the 8-digit CPR at the start of a row.
+     * @return int CPR, or -1 if the row doesn't start with one.
+     */
+    private static int parseCpr(byte[] data, int rowStart, int rowEnd) {
+        int cpr = 0;
+        int i = rowStart;
+
+        for (; i < rowEnd && data[i] != ';'; i++) {
+            if (data[i] < '0' || data[i] > '9' || i - rowStart >= 8) return -1;
+
+            cpr = cpr * 10 + (data[i] - '0');
+        }
+
+        return i - rowStart == 8 ? cpr : -1;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of user accounts, as data rows in the users.txt format:
+ * cpr;firstName;lastName;userRole;hashedPassword;passwordSalt
+ */
+public interface UserStore {
+    /**
+     * Check whether a user with this CPR exists.
+     * @param cpr int User CPR
+     * @return boolean
+     * @throws IOException Storage reading error.
+     */
+    boolean exists(int cpr) throws IOException;
+
+    /**
+     * Read a user's data row.
+     * @param cpr int User CPR
+     * @return String Data row, or null if no such user.
+     * @throws IOException Storage reading error.
+     */
+    String read(int cpr) throws IOException;
+
+    /**
+     * Read every user's data row, in CPR order.
+     * @return List Data rows
+     * @throws IOException Storage reading error.
+     */
+    List<String> readAll() throws IOException;
+
+    /**
+     * Add a user, unless a user with the same CPR exists. The check and the add are atomic, also across processes.
+     * @param cpr int User CPR
+     * @param row String Data row
+     * @return boolean True if added, false if the CPR is taken.
+     * @throws IOException Storage writing error.
+     */
+    boolean add(int cpr, String row) throws IOException;
+
+    /**
+     * Replace a user's data row.
+     * @param cpr int User CPR
+     * @param row String New data row
+     * @return boolean True if updated, false if no such user.
+     * @throws IOException Storage writing error.
+     */
+    boolean update(int cpr, String row) throws IOException;
+
+    /**
+     * Version of the stored users, which changes whenever any user is added or changed, also by other processes.
+     * @return long Version, only comparable for equality.
+     * @throws IOException Storage reading error.
+     */
+    long getVersion() throws IOException;
+}
\ No newline at end of file
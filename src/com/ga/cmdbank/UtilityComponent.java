@@ -15,12 +15,12 @@ public class UtilityComponent {
 
     /**
      * Convert local datetime string to local date time
-     * @param datetimeString LocalDateTime string
+     * @param datetimeString LocalDateTime string, or a transaction timestamp in epoch milliseconds.
      * @return LocalDateTime
      */
     public LocalDateTime convertStringToDateTime(String datetimeString) {
         try {
-            return LocalDateTime.parse(datetimeString);
+            return Timestamps.parseDateTime(datetimeString);
 
         } catch (RuntimeException e) {
             throw new DateTimeException("String is not a valid local date time format");        }
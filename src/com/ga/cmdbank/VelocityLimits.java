@@ -0,0 +1,187 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+
+/**
+ * Rolling window (last hour, last 7 days, last 30 days) limits on an account's outgoing money: withdrawals and transfers.
+ *
+ * Each account keeps one SlidingWindowCounter per window, primed once from the transaction history and then
+ * updated by TransactionHistory.recordTransaction, so checking a limit never rescans the history.
+ * Transactions recorded by other terminals sharing the data directory are added as the data file watcher sees them appended.
+ * Window limits per card tier come from the card product registry.
+ */
+public class VelocityLimits {
+    static final int hourlyWindow = 0;
+    static final int weeklyWindow = 1;
+    static final int monthlyWindow = 2;
+    static final String[] windowNames = {"hourly", "7-day", "30-day"};
+    static final int[] windowLimitTypes = {CardProductRegistry.outgoingLimitHourly, CardProductRegistry.outgoingLimitWeekly, CardProductRegistry.outgoingLimitMonthly};
+
+    private static final VelocityLimits velocityLimits = new VelocityLimits();
+
+    private final HashMap<Integer, SlidingWindowCounter[]> accountCounters = new HashMap<>();
+    private final CardLimitEngine cardLimitEngine = new CardLimitEngine();
+    private boolean primed = false;
+    private long primeCutoff = 0; // Epoch milliseconds
+    private DataFileWatcher.Subscription historySubscription;
+
+    /**
+     * Get the shared velocity limits of all accounts.
+     * @return VelocityLimits
+     */
+    static VelocityLimits get() {
+        return velocityLimits;
+    }
+
+    /**
+     * Add a recorded transaction to its account's windows. Only outgoing transactions (withdraw, transfer) count.
+     * Ignored until the counters are primed, priming reads the transaction from the history file instead.
+     * @param accountId int Bank account ID
+     * @param transactionType String Transaction type
+     * @param amount double Amount in USD
+     * @param dateTime LocalDateTime Time of the transaction
+     */
+    synchronized void record(int accountId, String transactionType, double amount, LocalDateTime dateTime) {
+        if (!primed || !isOutgoing(transactionType)) return;
+
+        add(accountId, toEpochSecond(dateTime), toCents(amount));
+    }
+
+    /**
+     * Find the first rolling window limit a new outgoing amount would exceed.
+     * @param account BankAccount Account the money leaves from.
+     * @param amount double New withdraw / transfer amount in USD
+     * @return int Exceeded window (hourlyWindow, weeklyWindow, monthlyWindow), or -1 if within all limits.
+     * @throws IOException Transaction history reading error on first use.
+     */
+    synchronized int getExceededWindow(BankAccount account, double amount) throws IOException {
+        if (!primed) prime();
+
+        long now = toEpochSecond(LocalDateTime.now());
+        long cents = toCents(amount);
+
+        for (int window = 0; window < windowNames.length; window++) {
+            double limit = cardLimitEngine.getLimit(account.cardType, windowLimitTypes[window]);
+
+            if (getWindowTotalCents(account.bankAccountID, window, now) + cents > toCents(limit)) return window;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get an account's outgoing total inside a window, as of now.
+     * @param accountId int Bank account ID
+     * @param window int hourlyWindow, weeklyWindow or monthlyWindow
+     * @return double Total in USD
+     * @throws IOException Transaction history reading error on first use.
+     */
+    synchronized double getWindowTotal(int accountId, int window) throws IOException {
+        if (!primed) prime();
+
+        return getWindowTotalCents(accountId, window, toEpochSecond(LocalDateTime.now())) / 100.0;
+    }
+
+    /**
+     * Message explaining which rolling window limit an amount exceeds.
+     * @param account BankAccount Account the money leaves from.
+     * @param window int Exceeded window
+     * @return String Error message
+     * @throws IOException Transaction history reading error on first use.
+     */
+    String getExceededMessage(BankAccount account, int window) throws IOException {
+        return "You cannot withdraw or transfer more than your card's " + windowNames[window] + " limit of $"
+                + cardLimitEngine.getLimit(account.cardType, windowLimitTypes[window])
+                + ". Current total withdrawals and transfers for this period is $" + getWindowTotal(account.bankAccountID, window);
+    }
+
+    /**
+     * Load the last 30 days of outgoing transactions from the transaction history, in a single pass,
+     * then follow the transactions other terminals append to it.
+     * @throws IOException Transaction history reading error.
+     */
+    private void prime() throws IOException {
+        accountCounters.clear();
+        TransactionStore transactions = Storage.get().transactions();
+        transactions.awaitPending();
+
+        if (historySubscription == null) {
+            historySubscription = transactions.subscribe(this::historyRowAppended, this::catchUp);
+
+        } else {
+            historySubscription.reset(0);
+        }
+
+        primeCutoff = Timestamps.toEpochMilli(LocalDateTime.now().minusDays(31));
+        historySubscription.poll(); // Reads the whole history
+        primed = true;
+    }
+
+    /**
+     * Add the transactions other terminals appended to the history since the last poll. Called by the data file watcher.
+     */
+    synchronized void catchUp() {
+        if (!primed) return;
+
+        try {
+            if (!historySubscription.poll()) primed = false; // History was rewritten, prime again on next use
+
+        } catch (IOException e) {
+            primed = false;
+        }
+    }
+
+    /**
+     * Count a transaction history row. Once primed, rows this process appended were already counted by record().
+     */
+    private void historyRowAppended(String transaction, long offset, boolean ownProcess) {
+        if (primed && ownProcess) return;
+
+        String[] transactionData = transaction.split(";");
+
+        if (!isOutgoing(transactionData[3])) return;
+
+        long epochMilli = Timestamps.parse(transactionData[2]);
+
+        if (epochMilli < primeCutoff) return;
+
+        add(Integer.parseInt(transactionData[1]), Math.floorDiv(epochMilli, 1_000), toCents(Double.parseDouble(transactionData[4])));
+    }
+
+    private void add(int accountId, long epochSecond, long cents) {
+        SlidingWindowCounter[] counters = accountCounters.get(accountId);
+
+        if (counters == null) {
+            counters = new SlidingWindowCounter[]{
+                    new SlidingWindowCounter(60, 60), // Last hour in 1 minute buckets
+                    new SlidingWindowCounter(168, 3_600), // Last 7 days in 1 hour buckets
+                    new SlidingWindowCounter(30, 86_400) // Last 30 days in 1 day buckets
+            };
+            accountCounters.put(accountId, counters);
+        }
+
+        for (SlidingWindowCounter counter : counters) {
+            counter.add(epochSecond, cents);
+        }
+    }
+
+    private long getWindowTotalCents(int accountId, int window, long epochSecond) {
+        SlidingWindowCounter[] counters = accountCounters.get(accountId);
+
+        return counters == null ? 0 : counters[window].getTotal(epochSecond);
+    }
+
+    private static boolean isOutgoing(String transactionType) {
+        return transactionType.equals("withdraw") || transactionType.equals("transfer");
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return Timestamps.toEpochSecond(dateTime);
+    }
+
+    private static long toCents(double amount) {
+        return Double.isInfinite(amount) ? Long.MAX_VALUE / 2 : Math.round(amount * 100);
+    }
+}
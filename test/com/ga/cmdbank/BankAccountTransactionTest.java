@@ -0,0 +1,79 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BankAccountTransactionTest {
+
+    BankAccountTransaction transaction = new BankAccountTransaction();
+    int accountId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        AccountStore accounts = SharedTestData.storage().accounts();
+        accountId = accounts.getLastAccountId() + 1;
+        accounts.add(accountId, accountId + ";44444444;checking;510000001;DebitMastercard;100.0;0");
+    }
+
+    @Test
+    void decidesOverdraftsFromTheStoredBalance() throws IOException {
+        BankAccount firstTerminal = transaction.getAccount(accountId);
+        BankAccount secondTerminal = transaction.getAccount(accountId); // Read before the first terminal's withdrawal
+
+        assertTrue(transaction.withdraw(firstTerminal, 80.0));
+        assertTrue(transaction.withdraw(secondTerminal, 80.0));
+
+        assertEquals(-95.0, secondTerminal.balance); // 20 - 80 - overdraft fee
+        assertEquals(1, secondTerminal.overdraftCount);
+        assertStored(-95.0, 1);
+
+        BankAccount stale = transaction.getAccount(accountId);
+        assertTrue(transaction.withdraw(transaction.getAccount(accountId), 10.0));
+        assertStored(-230.0, 2); // Already negative: capped withdrawal and fee
+
+        assertThrows(IOException.class, () -> transaction.withdraw(stale, 10.0)); // Its count of 1 is outdated, the stored count is at the cap
+        assertStored(-230.0, 2);
+    }
+
+    @Test
+    void resetsOnlyTheStoredOverdraftCount() throws IOException {
+        BankAccount stale = transaction.getAccount(accountId);
+        BankAccount other = transaction.getAccount(accountId);
+        transaction.withdraw(transaction.getAccount(accountId), 150.0);
+
+        assertStored(-85.0, 1);
+        assertTrue(transaction.deposit(stale, 50.0)); // Still negative, the count stays
+        assertStored(-35.0, 1);
+        assertThrows(IOException.class, () -> transaction.transfer(other, transaction.getAccount(100005), 50.0)); // Its balance of 100 is outdated
+        assertTrue(transaction.transfer(transaction.getAccount(100005), stale, 40.0));
+        assertStored(5.0, 0);
+    }
+
+    @Test
+    void allowsTransfersUpToTheDailyTransferLimits() throws IOException {
+        SharedTestData.storage().accounts().update(accountId, row -> transaction.getUpdatedAccountRow(row, 50000.0, 0));
+        BankAccount account = transaction.getAccount(accountId);
+        BankAccount ownAccount = transaction.getAccount(100005);
+        BankAccount otherAccount = transaction.getAccount(100001);
+
+        transaction.checkTransferLimits(account, ownAccount, 20000.0); // Within the hourly cap too
+        transaction.checkTransferLimits(account, otherAccount, 10000.0);
+        assertThrows(IOException.class, () -> transaction.checkTransferLimits(account, otherAccount, 10000.01));
+
+        transaction.checkWithdrawLimits(account, 5000.0);
+        assertTrue(transaction.transfer(account, ownAccount, 20000.0));
+        new TransactionHistory(account.userCPR, accountId, "transfer", 20000.0, ownAccount.bankAccountID, true, account.balance).recordTransaction();
+        assertThrows(IOException.class, () -> transaction.checkWithdrawLimits(account, 0.01)); // Transfers and withdrawals share the hourly cap
+    }
+
+    private void assertStored(double balance, int overdraftCount) throws IOException {
+        BankAccount stored = transaction.getAccount(accountId);
+
+        assertEquals(balance, stored.balance);
+        assertEquals(overdraftCount, stored.overdraftCount);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+
+        for (int cpr = 10_000_000; cpr < 10_010_000; cpr++) filter.add(cpr);
+
+        for (int cpr = 10_000_000; cpr < 10_010_000; cpr++) {
+            assertTrue(filter.mightContain(cpr), "Added CPR " + cpr + " must be found");
+        }
+    }
+
+    @Test
+    void falsePositiveRateNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+
+        for (int cpr = 10_000_000; cpr < 10_010_000; cpr++) filter.add(cpr);
+
+        int falsePositives = 0;
+
+        for (int cpr = 20_000_000; cpr < 20_100_000; cpr++) {
+            if (filter.mightContain(cpr)) falsePositives++;
+        }
+
+        assertTrue(falsePositives < 2_000, falsePositives + " false positives out of 100000");
+    }
+
+    @Test
+    void addReportsNewBits() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        assertTrue(filter.add(12345678));
+        assertFalse(filter.add(12345678));
+    }
+}
@@ -0,0 +1,99 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.spi.ToolProvider;
+import java.util.stream.Stream;
+
+/**
+ * Wall time of command mode processes, from starting the JVM to its exit: help (startup alone), a balance command
+ * (startup, login and one operation) and a batch of balance commands after one login, each without a class data
+ * sharing archive, with the JDK's default archive of its own classes, and with an AppCDS archive of the application,
+ * as scripts/cmdbank.sh runs it. Commands run on a copy of the data directory.
+ *
+ * Run from the project directory: java com.ga.cmdbank.CommandModeBenchmark [runs] [user] [account]
+ * The password is taken from CMDBANK_PASSWORD, Ring627 by default.
+ */
+class CommandModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String user = args.length > 1 ? args[1] : "33333333";
+        String account = args.length > 2 ? args[2] : "100001";
+        String password = System.getenv().getOrDefault(CommandMode.passwordVariable, "Ring627");
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Path directory = Files.createTempDirectory("cmdbank-command");
+        Path jar = directory.resolve("cmdbank.jar");
+        Path archive = directory.resolve("cmdbank.jsa");
+        Path batch = directory.resolve("batch.txt");
+        copyDataDirectory(directory.resolve(Storage.defaultDataDirectory));
+        Files.write(batch, Collections.nCopies(100, "balance --account " + account));
+
+        Path classes = Paths.get(CommandMode.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ToolProvider.findFirst("jar").orElseThrow().run(System.out, System.err, "--create", "--file", jar.toString(), "-C", classes.toString(), ".");
+
+        List<String> balance = List.of("balance", "--user", user, "--account", account);
+        run(directory, password, null, List.of(java, "-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=off", "-Xlog:cds+dynamic=off", "-cp", jar.toString(), "com.ga.cmdbank.Main"), balance);
+
+        String[][] modes = {{"no archive", "-Xshare:off"}, {"JDK archive", "-Xshare:auto"}, {"AppCDS archive", "-XX:SharedArchiveFile=" + archive}};
+
+        for (String[] mode : modes) {
+            List<String> command = List.of(java, mode[1], "-cp", jar.toString(), "com.ga.cmdbank.Main");
+            System.out.println(mode[0] + ", median of " + runs + " runs:");
+            measure("help", runs, directory, password, null, command, List.of("help"));
+            measure("balance", runs, directory, password, null, command, balance);
+            measure("batch of 100 balances", runs, directory, password, batch, command, List.of("batch", "--user", user));
+        }
+
+        deleteDirectory(directory);
+    }
+
+    private static void measure(String name, int runs, Path directory, String password, Path input, List<String> command, List<String> args) throws IOException, InterruptedException {
+        long[] elapsedNanos = new long[runs];
+
+        for (int run = 0; run < runs; run++) elapsedNanos[run] = run(directory, password, input, command, args);
+
+        Arrays.sort(elapsedNanos);
+        System.out.printf("  %-24s %,8.1f ms%n", name, elapsedNanos[runs / 2] / 1e6);
+    }
+
+    private static long run(Path directory, String password, Path input, List<String> command, List<String> args) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(command);
+        arguments.addAll(args);
+        ProcessBuilder builder = new ProcessBuilder(arguments).directory(directory.toFile()).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put(CommandMode.passwordVariable, password);
+
+        if (input != null) builder.redirectInput(input.toFile());
+
+        long startTime = System.nanoTime();
+        int status = builder.start().waitFor();
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        if (status != CommandMode.exitSucceeded) throw new IOException(String.join(" ", args) + " exited with " + status + ".");
+
+        return elapsedNanos;
+    }
+
+    private static void copyDataDirectory(Path copy) throws IOException {
+        Files.createDirectories(copy);
+
+        try (Stream<Path> files = Files.list(Paths.get(Storage.defaultDataDirectory))) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandModeTest {
+
+    @Test
+    void parsesOptions() {
+        Map<String, String> options = CommandMode.parseOptions(new String[]{"transfer", "--user", "33333333", "--account", "100001", "--to", "100002", "--amount", "12.5"});
+
+        assertEquals(Map.of("user", "33333333", "account", "100001", "to", "100002", "amount", "12.5"), options);
+        assertEquals("2025-03", CommandMode.parseOptions(new String[]{"archive", "--user", "33333333", "--month", "2025-03"}).get("month"));
+    }
+
+    @Test
+    void rejectsInvalidCommands() {
+        String[][] invalid = {
+                {"close", "--user", "33333333"},
+                {"balance", "--user", "33333333", "--account"},
+                {"balance", "--user", "33333333", "--acount", "100001"},
+                {"balance", "--user", "33333333"},
+                {"deposit", "--user", "33333333", "--account", "100001", "--amount", "-5"},
+                {"deposit", "--user", "33333333", "--account", "100001", "--amount", "NaN"},
+                {"balance", "--user", "33333333", "--account", "1000O1"},
+                {"statements", "--user", "33333333", "--month", "2025-13"}};
+
+        for (String[] args : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> CommandMode.parseOptions(args), String.join(" ", args));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataFileWatcherTest {
+
+    Path filePath;
+    List<String> rows = new ArrayList<>(); // Row, offset and whether this process appended it
+    DataFileWatcher.Subscription subscription;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        filePath = Files.createTempDirectory("data_file_watcher").resolve("transaction_history.txt");
+        Files.createFile(filePath);
+        subscription = DataFileWatcher.get().subscribe(filePath, 0, (row, offset, ownProcess) -> rows.add(row + "@" + offset + (ownProcess ? " own" : "")), () -> {});
+    }
+
+    @Test
+    void holdsBackAPartialLastRow() throws IOException {
+        Files.writeString(filePath, "first\nsec", StandardOpenOption.APPEND); // Another terminal still writing its row
+
+        assertTrue(subscription.poll());
+        assertEquals(List.of("first@0"), rows);
+        assertEquals(6, subscription.getOffset());
+
+        Files.writeString(filePath, "ond\r\nthird\n", StandardOpenOption.APPEND);
+
+        assertTrue(subscription.poll());
+        assertEquals(List.of("first@0", "second@6", "third@14"), rows);
+        assertTrue(subscription.poll()); // Nothing new
+        assertEquals(3, rows.size());
+
+        Files.writeString(filePath, "x\n"); // Rewritten shorter
+
+        assertFalse(subscription.poll());
+    }
+
+    @Test
+    void flagsRowsAppendedByThisProcess() throws IOException {
+        DataFiles.append(filePath, "own");
+        Files.writeString(filePath, "other\n", StandardOpenOption.APPEND);
+        DataFiles.append(filePath, ("own2" + System.lineSeparator() + "own3" + System.lineSeparator()).getBytes(), false);
+
+        assertTrue(subscription.poll());
+        int ownEnd = ("own" + System.lineSeparator()).length();
+        assertEquals(List.of("own@0 own", "other@" + ownEnd, "own2@" + (ownEnd + 6) + " own", "own3@" + (ownEnd + 6 + ownEnd + 1) + " own"), rows);
+    }
+
+    @Test
+    void countsOwnOutgoingTransactionsOnce() throws IOException {
+        TransactionStore transactions = SharedTestData.storage().transactions();
+        VelocityLimits limits = new VelocityLimits();
+        int accountId = 987_654;
+
+        assertEquals(0.0, limits.getWindowTotal(accountId, VelocityLimits.hourlyWindow)); // Primed and following the history
+
+        TransactionHistory withdrawal = new TransactionHistory(44444444, accountId, "withdraw", 25.0, 0.0);
+        transactions.append(withdrawal);
+        transactions.awaitPending();
+        limits.record(accountId, "withdraw", 25.0, withdrawal.dateTime); // As recordTransaction does
+        limits.catchUp();
+
+        assertEquals(25.0, limits.getWindowTotal(accountId, VelocityLimits.hourlyWindow));
+
+        Files.writeString(Storage.getDataDirectory().resolve("transaction_history.txt"), "44444444;" + accountId + ";" + System.currentTimeMillis() + ";withdraw;10.0;0;false;0.0" + System.lineSeparator(),
+                StandardOpenOption.APPEND); // Another terminal's row
+        limits.catchUp();
+
+        assertEquals(35.0, limits.getWindowTotal(accountId, VelocityLimits.hourlyWindow));
+    }
+}
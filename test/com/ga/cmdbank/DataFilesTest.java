@@ -0,0 +1,73 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataFilesTest {
+
+    Path filePath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        filePath = Files.createTempDirectory("data_files").resolve("accounts.txt");
+        DataFiles.write(filePath, List.of("a"));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void reusesTheHeldChannelInNestedLocks() throws Exception {
+        FileChannel heldChannel;
+
+        try (DataFiles.HeldLock lock = DataFiles.lockForUpdate(filePath)) {
+            heldChannel = DataFiles.read(filePath, channel -> channel);
+
+            try (DataFiles.HeldLock nestedLock = DataFiles.lockForReading(filePath)) {
+                assertTrue(DataFiles.update(filePath, channel -> channel) == heldChannel);
+            }
+
+            assertTrue(heldChannel.isOpen()); // Closing the nested lock keeps the outer one
+
+            DataFiles.append(filePath, "b");
+            DataFiles.write(filePath, List.of("a", "b", "c"));
+
+            assertEquals(List.of("a", "b", "c"), DataFiles.readAllLines(filePath));
+            assertTrue(DataFiles.read(filePath, channel -> channel) == heldChannel);
+        }
+
+        assertFalse(heldChannel.isOpen());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void makesOtherThreadsWaitForTheLock() throws Exception {
+        CompletableFuture<Long> append;
+
+        try (DataFiles.HeldLock lock = DataFiles.lockForUpdate(filePath)) {
+            append = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return DataFiles.append(filePath, "b");
+
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            assertThrows(TimeoutException.class, () -> append.get(200, TimeUnit.MILLISECONDS));
+            DataFiles.write(filePath, List.of("a", "c"));
+        }
+
+        assertEquals((long) ("a" + System.lineSeparator() + "c" + System.lineSeparator()).length(), (long) append.get(5, TimeUnit.SECONDS)); // Appended after the rewrite
+        assertEquals(List.of("a", "c", "b"), DataFiles.readAllLines(filePath));
+    }
+}
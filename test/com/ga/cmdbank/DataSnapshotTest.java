@@ -0,0 +1,106 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSnapshotTest {
+
+    Path directory;
+    StorageEngine storage;
+    DataSnapshot dataSnapshot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("data_snapshot");
+        Files.write(directory.resolve("accounts.txt"), List.of(
+                "100001;44444444;checking;510000001;DebitMastercard;500.0;0",
+                "100002;44444444;savings;510000002;DebitMastercard;20.0;1;2025-01-01;0",
+                "100003;55555555;checking;510000003;DebitMastercard;100.0;0"));
+        Files.write(directory.resolve("users.txt"), List.of("44444444;Ann;Lee;customer;hash", "55555555;Bo;Kim;customer;hash"));
+        Files.createFile(directory.resolve("transaction_history.txt"));
+        storage = Storage.open(Storage.defaultEngine, directory);
+        dataSnapshot = new DataSnapshot(storage, directory);
+        record(100001, "deposit", 50.0, 550.0);
+    }
+
+    @Test
+    void restoresTheLiveBalancesFromTheSnapshotAndTheHistory() throws IOException {
+        DataSnapshot.Snapshot snapshot = dataSnapshot.take();
+
+        assertEquals(1, snapshot.historyRows);
+        assertTrue(Files.exists(snapshot.directory.resolve(DataSnapshot.manifestFileName)));
+
+        record(100001, "withdraw", 600.0, -85.0); // Overdrawn, fee included
+        transfer(100003, 100002, 30.0, 70.0);
+        record(100002, "interest", 0.01, 50.01);
+        record(100001, "fee", 5.0, -90.0);
+        List<String> live = storage.accounts().readAll();
+
+        assertEquals("100001;44444444;checking;510000001;DebitMastercard;-90.0;1", live.get(0));
+
+        Files.write(directory.resolve("accounts.txt"), List.of("100001;44444444;checking;510000001;DebitMastercard;0.0;0")); // Lost since the snapshot
+        DataSnapshot.Restore restore = dataSnapshot.restore(snapshot.name);
+
+        assertFalse(restore.historyRestored);
+        assertEquals(4, restore.replayedRows);
+        assertEquals(0, restore.appliedRows);
+        assertEquals(List.of(
+                "100001;44444444;checking;510000001;DebitMastercard;-90.0;1",
+                "100002;44444444;savings;510000002;DebitMastercard;50.01;0;" + Timestamps.toDateTime(System.currentTimeMillis()).toLocalDate() + ";0",
+                "100003;55555555;checking;510000003;DebitMastercard;70.0;0"), storage.accounts().readAll());
+        assertTrue(Files.readString(directory.resolve("overdrafts.txt")).startsWith("100001;"));
+        assertTrue(storage.transactions().audit(TransactionChain.allBlocks, null).passed());
+    }
+
+    @Test
+    void skipsRowsWrittenAfterTheirBalances() throws IOException {
+        storage.accounts().update(100003, row -> row.replace(";100.0;", ";60.0;")); // Transfer written, its row not yet
+        storage.accounts().update(100001, row -> row.replace(";550.0;", ";590.0;"));
+        DataSnapshot.Snapshot snapshot = dataSnapshot.take();
+        storage.transactions().append(new TransactionHistory(55555555, 100003, "transfer", 40.0, 100001, false, 60.0));
+        storage.transactions().awaitPending();
+        record(100003, "deposit", 15.0, 75.0);
+
+        DataSnapshot.Restore restore = dataSnapshot.restore(snapshot.name);
+
+        assertEquals(1, restore.appliedRows);
+        assertEquals(1, restore.replayedRows);
+        assertEquals("100001;44444444;checking;510000001;DebitMastercard;590.0;0", storage.accounts().readAll().get(0));
+        assertEquals("100003;55555555;checking;510000003;DebitMastercard;75.0;0", storage.accounts().readAll().get(2));
+    }
+
+    /**
+     * Write an operation's balance and its history row, as the terminals do.
+     */
+    private void record(int accountId, String type, double amount, double balance) throws IOException {
+        storage.accounts().update(accountId, row -> {
+            String[] rowData = row.split(";");
+            int overdraftCount = Integer.parseInt(rowData[6]);
+
+            if (type.equals("withdraw") && Double.parseDouble(rowData[5]) < amount) overdraftCount++;
+            if (type.equals("deposit") && balance >= 0) overdraftCount = 0;
+
+            return new BankAccountTransaction().getUpdatedAccountRow(row, balance, overdraftCount);
+        });
+        storage.transactions().append(new TransactionHistory(accountId == 100003 ? 55555555 : 44444444, accountId, type, amount, balance));
+        storage.transactions().awaitPending();
+    }
+
+    private void transfer(int accountId, int toAccountId, double amount, double balance) throws IOException {
+        storage.accounts().update(accountId, row -> row.replace(row.split(";")[5], String.valueOf(balance)));
+        storage.accounts().update(toAccountId, row -> {
+            double toBalance = Double.parseDouble(row.split(";")[5]) + amount;
+
+            return new BankAccountTransaction().getUpdatedAccountRow(row, toBalance, toBalance >= 0 ? 0 : Integer.parseInt(row.split(";")[6]));
+        });
+        storage.transactions().append(new TransactionHistory(55555555, accountId, "transfer", amount, toAccountId, false, balance));
+        storage.transactions().awaitPending();
+    }
+}
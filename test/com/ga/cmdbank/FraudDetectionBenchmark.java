@@ -0,0 +1,73 @@
+package com.ga.cmdbank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replay benchmark of the fraud detection pipeline: replays the transaction history (repeated and spread over
+ * many accounts) through the default rules and reports the throughput, both inline and through the async queue.
+ *
+ * Run from the project directory: java com.ga.cmdbank.FraudDetectionBenchmark [transactionCount]
+ */
+class FraudDetectionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactionCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<TransactionHistory> replay = loadReplay(transactionCount);
+        System.out.println("Replaying " + replay.size() + " transactions through " + FraudRules.getDefaults().size() + " rules");
+
+        for (int round = 1; round <= 3; round++) { // First rounds warm up the JIT
+            AtomicLong alerts = new AtomicLong();
+            FraudDetectionPipeline inline = new FraudDetectionPipeline(FraudRules.getDefaults(), alert -> alerts.incrementAndGet(), 1);
+            long startTime = System.nanoTime();
+
+            for (TransactionHistory transaction : replay) inline.process(transaction);
+
+            report("Round " + round + " inline", replay.size(), System.nanoTime() - startTime, alerts.get());
+
+            FraudDetectionPipeline async = new FraudDetectionPipeline(FraudRules.getDefaults(), alert -> {}, FraudDetectionPipeline.queueCapacity);
+            async.start();
+            long submitNanos = 0;
+            startTime = System.nanoTime();
+
+            for (TransactionHistory transaction : replay) {
+                long submitStart = System.nanoTime();
+
+                while (async.getQueueSize() == FraudDetectionPipeline.queueCapacity) Thread.onSpinWait(); // Replay waits for room instead of dropping
+
+                async.submit(transaction); // Only producer, so the room is still there
+
+                submitNanos += System.nanoTime() - submitStart;
+            }
+
+            while (async.getProcessed() < replay.size()) Thread.onSpinWait();
+
+            report("Round " + round + " async ", replay.size(), System.nanoTime() - startTime, async.getAlerts());
+            System.out.println("    caller side: " + submitNanos / replay.size() + " ns per transaction handed over, " + async.getDropped() + " dropped");
+        }
+    }
+
+    /**
+     * Build the replay from transaction_history.txt, each pass over the history moved to another set of account IDs.
+     */
+    private static List<TransactionHistory> loadReplay(int transactionCount) throws Exception {
+        List<String> history = new TransactionHistory().getTransactionHistory();
+        List<TransactionHistory> replay = new ArrayList<>(transactionCount);
+
+        for (int i = 0; i < transactionCount; i++) {
+            TransactionHistory transaction = TransactionHistory.fromRecord(history.get(i % history.size()));
+            int accountOffset = (i / history.size()) % 10_000 * 1_000;
+            transaction.accountId += accountOffset;
+            if (transaction.transferToAccountId != 0) transaction.transferToAccountId += accountOffset;
+
+            replay.add(transaction);
+        }
+
+        return replay;
+    }
+
+    private static void report(String label, int transactions, long elapsedNanos, long alerts) {
+        System.out.printf("%s: %,.0f transactions/s (%d ms, %,d alerts)%n", label, transactions / (elapsedNanos / 1e9), elapsedNanos / 1_000_000, alerts);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FraudDetectionPipelineTest {
+
+    List<String> alerts;
+    FraudDetectionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        alerts = new ArrayList<>();
+        pipeline = new FraudDetectionPipeline(FraudRules.getDefaults(), alerts::add, 10);
+    }
+
+    @Test
+    void rapidRepeatWithdrawals() {
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-01T10:00:00;withdraw;20.0;0;false;0"));
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-01T10:00:30;withdraw;20.0;0;false;0"));
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-01T10:01:00;withdraw;20.0;0;false;0"));
+        assertEquals(0, alerts.size());
+
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-01T10:01:30;withdraw;20.0;0;false;0"));
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).contains(";rapidRepeatWithdrawals;"));
+    }
+
+    @Test
+    void newRecipientTransfer() {
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-01T10:00:00;transfer;5000.0;200;false;0"));
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-02T10:00:00;transfer;5000.0;200;false;0"));
+
+        assertEquals(1, alerts.size(), "Only the first transfer to account 200 is new");
+        assertTrue(alerts.get(0).contains(";newRecipientTransfer;"));
+    }
+
+    @Test
+    void amountSpike() {
+        for (int day = 1; day <= 5; day++) {
+            pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-0" + day + "T10:00:00;deposit;100.0;0;false;0"));
+        }
+
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-06T10:00:00;deposit;400.0;0;false;0"));
+        assertEquals(0, alerts.size());
+
+        pipeline.process(TransactionHistory.fromRecord("1;100;2025-01-07T10:00:00;deposit;5000.0;0;false;0"));
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).contains(";amountSpike;"));
+        assertEquals(7, pipeline.getProcessed());
+    }
+
+    @Test
+    void dropsTransactionsWhenTheQueueIsFull() {
+        TransactionHistory transaction = TransactionHistory.fromRecord("1;100;2025-01-01T10:00:00;deposit;100.0;0;false;0");
+
+        for (int i = 0; i < 10; i++) assertTrue(pipeline.submit(transaction)); // Not started, nothing is taken from the queue
+
+        assertFalse(pipeline.submit(transaction));
+        assertEquals(1, pipeline.getDropped());
+    }
+}
@@ -0,0 +1,94 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterestAccrualBatchTest {
+
+    static final LocalDate yesterday = LocalDate.now().minusDays(1);
+
+    Path directory;
+    StorageEngine storage;
+    InterestAccrualBatch batch;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("interest_accrual");
+        Files.write(directory.resolve("accounts.txt"), List.of(
+                "100001;44444444;checking;510000001;DebitMastercard;5000.0;0",
+                "100002;44444444;savings;510000002;DebitMastercard;1000.0;0;" + yesterday.minusDays(3) + ";0",
+                "100003;55555555;savings;510000003;DebitMastercard;-50.0;1;" + yesterday.minusDays(3) + ";0",
+                "100004;55555555;savings;510000004;DebitMastercard;20000.0;0"));
+        Files.createFile(directory.resolve("transaction_history.txt"));
+        storage = Storage.open(Storage.defaultEngine, directory);
+        batch = new InterestAccrualBatch(storage, directory);
+    }
+
+    @Test
+    void carriesFractionsOfCentsIntoTheNextDay() {
+        InterestAccrualBatch.Accrual accrual = InterestAccrualBatch.accrueAccount("1;2;savings;3;DebitMastercard;1000.0;0;2025-01-01;0", LocalDate.of(2026, 1, 1), Map.of());
+        long compounded = Math.round(1000 * (Math.pow(1 + InterestAccrualBatch.annualRateBasisPoints / 10_000.0 / 365, 365) - 1) * 100);
+
+        assertEquals(365, accrual.interestRows.size());
+        assertTrue(Math.abs(compounded - accrual.interestCents) <= 1, compounded + " cents expected, " + accrual.interestCents + " accrued");
+        assertTrue(accrual.row.startsWith("1;2;savings;3;DebitMastercard;" + (100_000 + accrual.interestCents) / 100.0 + ";0;2026-01-01;"));
+    }
+
+    @Test
+    void creditsSavingsAccountsOnce() throws IOException {
+        InterestAccrualBatch.Result first = batch.accrue(yesterday);
+        List<String> accounts = storage.accounts().readAll();
+        List<String> history = storage.transactions().readAll();
+
+        assertEquals(2, first.accountsCredited); // 100002 for 3 days, 100004 since yesterday, not the checking or overdrawn account
+        assertEquals("100001;44444444;checking;510000001;DebitMastercard;5000.0;0", accounts.get(0));
+        assertTrue(accounts.get(2).startsWith("100003;55555555;savings;510000003;DebitMastercard;-50.0;1;" + yesterday + ";"));
+        assertEquals(4, history.size());
+        assertEquals(first.interestCents, getInterestCents(history));
+
+        InterestAccrualBatch.Result second = batch.accrue(yesterday);
+
+        assertEquals(0, second.accountsCredited);
+        assertEquals(accounts, storage.accounts().readAll());
+        assertEquals(history, storage.transactions().readAll());
+    }
+
+    @Test
+    void creditsRowsOfAnInterruptedRunWithoutAppendingThemAgain() throws IOException {
+        List<TransactionHistory> appended = new ArrayList<>();
+
+        for (String row : storage.accounts().readAll()) {
+            if (row.contains(";savings;")) appended.addAll(InterestAccrualBatch.accrueAccount(row, yesterday, Map.of()).interestRows);
+        }
+
+        storage.transactions().appendAll(appended.subList(0, 2)); // Crashed after the history write, before the balances were written
+        Files.write(directory.resolve("interest_runs.txt"), List.of(yesterday + ";started"));
+        List<String> history = storage.transactions().readAll();
+
+        InterestAccrualBatch.Result result = batch.accrue(yesterday);
+
+        assertEquals(appended.size(), storage.transactions().readAll().size());
+        assertEquals(history, storage.transactions().readAll().subList(0, 2));
+        assertEquals(getInterestCents(storage.transactions().readAll()), result.interestCents);
+        assertEquals(List.of(yesterday + ";started", yesterday + ";started", yesterday + ";completed"), Files.readAllLines(directory.resolve("interest_runs.txt")));
+        assertEquals(0, batch.accrue(yesterday).accountsCredited);
+    }
+
+    private static long getInterestCents(List<String> history) {
+        long cents = 0;
+
+        for (String transaction : history) cents += Math.round(Double.parseDouble(transaction.split(";")[4]) * 100);
+
+        return cents;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OverdraftSweepBatchTest {
+
+    static final LocalDate today = LocalDate.now();
+
+    Path directory;
+    StorageEngine storage;
+    OverdraftSweepBatch batch;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("overdraft_sweep");
+        Files.write(directory.resolve("accounts.txt"), List.of(
+                "100001;44444444;checking;510000001;DebitMastercard;5000.0;0",
+                "100002;44444444;savings;510000002;DebitMastercard;-40.0;1",
+                "100003;55555555;checking;510000003;DebitMastercard;-135.0;2",
+                "100004;55555555;savings;510000004;DebitMastercard;-10.0;1",
+                "100005;66666666;checking;510000005;DebitMastercard;20.0;2"));
+        Files.write(directory.resolve("overdrafts.txt"), List.of(
+                "100002;" + today.minusDays(OverdraftSweepBatch.graceDays) + ";;0",
+                "100003;" + today.minusDays(30) + ";" + today.minusDays(1) + ";" + (OverdraftSweepBatch.feeCapCents - 100)));
+        Files.createFile(directory.resolve("transaction_history.txt"));
+        storage = Storage.open(Storage.defaultEngine, directory);
+        batch = new OverdraftSweepBatch(storage, directory);
+    }
+
+    @Test
+    void chargesFeesAfterTheGraceDaysOnceADay() throws IOException {
+        OverdraftSweepBatch.Result first = batch.sweep(today);
+        List<String> accounts = storage.accounts().readAll();
+        List<String> history = storage.transactions().readAll();
+
+        assertEquals(3, first.negative);
+        assertEquals(1, first.deactivated);
+        assertEquals(1, first.reactivated);
+        assertEquals(2, first.feesCharged); // 100002 past its grace days, 100003 up to the fee cap, not 100004 negative since today
+        assertEquals(OverdraftSweepBatch.dailyFeeCents + 100, first.feeCents);
+        assertEquals("100002;44444444;savings;510000002;DebitMastercard;" + (-4_000 - OverdraftSweepBatch.dailyFeeCents) / 100.0 + ";1", accounts.get(1));
+        assertEquals("100003;55555555;checking;510000003;DebitMastercard;-136.0;2", accounts.get(2));
+        assertEquals("100004;55555555;savings;510000004;DebitMastercard;-10.0;1", accounts.get(3));
+        assertEquals("100005;66666666;checking;510000005;DebitMastercard;20.0;0", accounts.get(4));
+        assertEquals(2, history.size());
+        assertTrue(history.stream().allMatch(transaction -> transaction.split(";")[3].equals("fee")));
+        assertTrue(Files.readString(first.report).contains("100004     | 55555555  |       -10.00 | 1          | negative    | " + today));
+
+        OverdraftSweepBatch.Result second = batch.sweep(today);
+
+        assertEquals(0, second.feesCharged);
+        assertEquals(accounts, storage.accounts().readAll());
+        assertEquals(history, storage.transactions().readAll());
+        assertEquals(List.of(
+                "100002;" + today.minusDays(OverdraftSweepBatch.graceDays) + ";" + today + ";" + OverdraftSweepBatch.dailyFeeCents,
+                "100003;" + today.minusDays(30) + ";" + today + ";" + OverdraftSweepBatch.feeCapCents,
+                "100004;" + today + ";;0"), Files.readAllLines(directory.resolve("overdrafts.txt")));
+    }
+
+    @Test
+    void forgetsOverdraftsBroughtBackToPositive() throws IOException {
+        storage.accounts().update(100002, row -> row.replace(";-40.0;1", ";10.0;0"));
+
+        batch.sweep(today);
+
+        assertFalse(Files.readString(directory.resolve("overdrafts.txt")).contains("100002;"));
+        assertEquals("100002;44444444;savings;510000002;DebitMastercard;10.0;0", storage.accounts().readAll().get(1));
+    }
+}
@@ -0,0 +1,377 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of concurrent sessions on a generated dataset: teller clients log in once as bankers and serve random
+ * customers' accounts, ATM clients run short customer sessions (a login, then one to four operations on the
+ * customer's own accounts). Each client is a thread driving the same UserRead login and BankAccountTransaction limit
+ * checks, deposits, withdrawals and transfers as the menus, with a random think time between operations.
+ *
+ * Reports throughput and latency percentiles of each operation, refusals (limits, overdrafts) and errors, and checks
+ * that the stored balances add up to the opening balances plus what the clients deposited and withdrew.
+ *
+ * Run from the project directory:
+ * java com.ga.cmdbank.SessionLoadBenchmark [tellers] [atms] [seconds] [thinkMillis] [customers] [tellerMix] [atmMix]
+ * A mix is operation=weight pairs of login, balance, deposit, withdraw and transfer, for example deposit=40,withdraw=30,transfer=20,balance=10
+ */
+class SessionLoadBenchmark {
+    static final String defaultTellerMix = "deposit=35,withdraw=25,transfer=25,balance=15";
+    static final String defaultAtmMix = "withdraw=50,balance=35,deposit=10,transfer=5";
+    static final List<String> operationNames = List.of("login", "balance", "deposit", "withdraw", "transfer");
+    static final String password = "LoadTest1";
+    static final double openingBalance = 50_000.0;
+    static final int historyRowsPerAccount = 20;
+    static final int firstBankerCpr = 20_000_000;
+    static final int firstCustomerCpr = 30_000_000;
+    static final int firstAccountId = 500_001;
+    static final String[] cardTypes = {"DebitMastercard", "DebitMastercardTitanium", "DebitMastercardPlatinum"};
+
+    /**
+     * Latency and outcome counts of one operation, shared by all clients.
+     */
+    static class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder refused = new LongAdder();
+        final LongAdder failed = new LongAdder();
+    }
+
+    /**
+     * A limit or balance check turned the operation down, as it would a customer at the counter.
+     */
+    @SuppressWarnings("serial")
+    static class RefusedException extends Exception {
+        RefusedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Operations of a client, drawn by weight.
+     */
+    static class Mix {
+        final String[] names;
+        final int[] cumulativeWeights;
+
+        Mix(String mix) {
+            String[] pairs = mix.split(",");
+            names = new String[pairs.length];
+            cumulativeWeights = new int[pairs.length];
+            int total = 0;
+
+            for (int i = 0; i < pairs.length; i++) {
+                String[] pair = pairs[i].strip().split("=");
+
+                if (pair.length != 2 || !operationNames.contains(pair[0])) throw new IllegalArgumentException("Invalid mix entry " + pairs[i] + ", expected one of " + operationNames + "=weight.");
+
+                names[i] = pair[0];
+                total += Integer.parseInt(pair[1]);
+                cumulativeWeights[i] = total;
+            }
+
+            if (total <= 0) throw new IllegalArgumentException("The mix " + mix + " has no weight.");
+        }
+
+        String next(Random random) {
+            int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+
+            while (draw >= cumulativeWeights[i]) i++;
+
+            return names[i];
+        }
+    }
+
+    final Map<String, Operation> operations = new LinkedHashMap<>();
+    final Map<String, LongAdder> errorMessages = new ConcurrentHashMap<>();
+    final DoubleAdder deposited = new DoubleAdder();
+    final DoubleAdder withdrawn = new DoubleAdder(); // Including overdraft fees
+    final int customers;
+    final long thinkMillis;
+    volatile long endNanos;
+
+    SessionLoadBenchmark(int customers, long thinkMillis) {
+        this.customers = customers;
+        this.thinkMillis = thinkMillis;
+
+        for (String name : operationNames) operations.put(name, new Operation());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tellers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int atms = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        int customers = args.length > 4 ? Integer.parseInt(args[4]) : 2_000;
+        Mix tellerMix = new Mix(args.length > 5 ? args[5] : defaultTellerMix);
+        Mix atmMix = new Mix(args.length > 6 ? args[6] : defaultAtmMix);
+
+        Path dataDirectory = Files.createTempDirectory("cmdbank-load");
+        System.out.println("Generating " + customers + " customers with " + 2 * customers + " accounts in " + dataDirectory);
+        generateDataset(dataDirectory, Math.max(tellers, 1), customers);
+        System.setProperty("cmdbank.dataDirectory", dataDirectory.toString()); // Before Storage is opened
+
+        SessionLoadBenchmark benchmark = new SessionLoadBenchmark(customers, thinkMillis);
+        double openingTotal = benchmark.sumOfBalances();
+        List<Thread> clients = new ArrayList<>();
+
+        for (int i = 0; i < tellers + atms; i++) {
+            int client = i;
+            clients.add(new Thread(() -> {
+                if (client < tellers) benchmark.runTeller(client, tellerMix);
+                else benchmark.runAtm(client, atmMix);
+            }, (client < tellers ? "teller-" : "atm-") + client));
+        }
+
+        System.out.println(tellers + " tellers and " + atms + " ATMs for " + seconds + " s, think time " + thinkMillis + " ms");
+        long startTime = System.nanoTime();
+        benchmark.endNanos = startTime + seconds * 1_000_000_000L;
+        clients.forEach(Thread::start);
+
+        for (Thread client : clients) client.join();
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        new TransactionHistory().awaitPendingRecords();
+        benchmark.report(elapsedNanos);
+        benchmark.checkBalances(openingTotal);
+    }
+
+    /**
+     * Teller: logs in once as a banker and serves random customers' accounts until the end of the run.
+     */
+    void runTeller(int client, Mix mix) {
+        Random random = new Random(client);
+        UserRead banker = login(firstBankerCpr + client);
+
+        while (banker != null && System.nanoTime() < endNanos) {
+            String name = mix.next(random);
+
+            if (name.equals("login")) banker = login(firstBankerCpr + client);
+            else perform(name, banker, getAccountId(random.nextInt(customers), random.nextInt(2)), random);
+
+            think(random);
+        }
+    }
+
+    /**
+     * ATM: sessions of a random customer, a login, then one to four operations on the customer's accounts.
+     */
+    void runAtm(int client, Mix mix) {
+        Random random = new Random(client);
+
+        while (System.nanoTime() < endNanos) {
+            int customer = random.nextInt(customers);
+            UserRead user = login(firstCustomerCpr + customer);
+            think(random);
+
+            for (int i = random.nextInt(4); user != null && i >= 0 && System.nanoTime() < endNanos; i--) {
+                String name = mix.next(random);
+
+                if (!name.equals("login")) perform(name, user, getAccountId(customer, random.nextInt(2)), random);
+
+                think(random);
+            }
+        }
+    }
+
+    private UserRead login(int cpr) {
+        Operation operation = operations.get("login");
+        long startTime = System.nanoTime();
+
+        try {
+            UserRead user = new UserRead().login(cpr, password);
+            operation.latency.record(System.nanoTime() - startTime);
+
+            return user;
+        } catch (Exception e) {
+            operation.latency.record(System.nanoTime() - startTime);
+            fail(operation, "login", e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Run an operation the way its menu does: account lookup and authorization, limit checks, the balance update and
+     * the transaction record.
+     */
+    void perform(String name, UserRead user, int accountId, Random random) {
+        Operation operation = operations.get(name);
+        BankAccountTransaction transaction = new BankAccountTransaction();
+        long startTime = System.nanoTime();
+
+        try {
+            BankAccount account = transaction.getAccount(accountId);
+
+            if (!user.userRole.equals("banker") && account.userCPR != user.cpr) throw new IOException("Customer " + user.cpr + " was given account " + accountId + " of " + account.userCPR + ".");
+
+            switch (name) {
+                case "deposit" -> {
+                    double amount = 20 + random.nextInt(480);
+                    refuseIfThrows(() -> transaction.checkDepositLimit(account, amount));
+
+                    if (!transaction.deposit(account, amount)) throw new IOException("Account " + accountId + " was not updated.");
+
+                    deposited.add(amount);
+                    new TransactionHistory(user.cpr, accountId, "deposit", amount, account.balance).recordTransaction();
+                }
+                case "withdraw" -> {
+                    double amount = 20 + random.nextInt(280);
+
+                    if (account.overdraftCount >= transaction.overdraftCountCap) throw new RefusedException("Overdrawn");
+
+                    refuseIfThrows(() -> transaction.checkWithdrawLimits(account, amount));
+                    double balanceBefore = account.balance;
+
+                    if (!transaction.withdraw(account, amount)) throw new IOException("Account " + accountId + " was not updated.");
+
+                    withdrawn.add(balanceBefore - account.balance);
+                    new TransactionHistory(user.cpr, accountId, "withdraw", amount, account.balance).recordTransaction();
+                }
+                case "transfer" -> {
+                    double amount = 20 + random.nextInt(480);
+                    int toCustomer = random.nextInt(4) == 0 ? (account.userCPR - firstCustomerCpr) : random.nextInt(customers); // A quarter to the customer's own account
+                    int toAccountId = getAccountId(toCustomer, accountId == getAccountId(toCustomer, 0) ? 1 : 0);
+                    BankAccount transferAccount = transaction.getAccount(toAccountId);
+
+                    if (account.balance < amount) throw new RefusedException("Balance");
+
+                    refuseIfThrows(() -> transaction.checkTransferLimits(account, transferAccount, amount));
+
+                    if (!transaction.transfer(account, transferAccount, amount)) throw new IOException("Accounts " + accountId + " and " + toAccountId + " were not updated.");
+
+                    new TransactionHistory(user.cpr, accountId, "transfer", amount, toAccountId, account.userCPR == transferAccount.userCPR, account.balance).recordTransaction();
+                }
+            }
+
+            operation.latency.record(System.nanoTime() - startTime);
+        } catch (RefusedException e) {
+            operation.latency.record(System.nanoTime() - startTime);
+            operation.refused.increment();
+        } catch (Exception e) {
+            operation.latency.record(System.nanoTime() - startTime);
+            fail(operation, name, e);
+        }
+    }
+
+    interface Check {
+        void run() throws IOException;
+    }
+
+    private static void refuseIfThrows(Check check) throws RefusedException {
+        try {
+            check.run();
+        } catch (IOException e) {
+            throw new RefusedException(e.getMessage());
+        }
+    }
+
+    private void fail(Operation operation, String name, Exception e) {
+        operation.failed.increment();
+        errorMessages.computeIfAbsent(name + ": " + e, message -> new LongAdder()).increment();
+    }
+
+    private void think(Random random) {
+        if (thinkMillis <= 0) return;
+
+        try {
+            Thread.sleep((long) (-Math.log(1 - random.nextDouble()) * thinkMillis)); // Exponential, mean thinkMillis
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.printf("%-10s %10s %10s %9s %9s %9s %9s %9s %8s%n", "operation", "count", "per s", "p50 ms", "p99 ms", "p999 ms", "max ms", "refused", "errors");
+
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            total += latency.getCount();
+
+            if (latency.getCount() == 0) continue;
+
+            System.out.printf("%-10s %,10d %,10.1f %9.2f %9.2f %9.2f %9.2f %8.2f%% %7.2f%%%n", entry.getKey(), latency.getCount(), latency.getCount() / seconds,
+                    latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6, latency.getMaxNanos() / 1e6,
+                    100.0 * entry.getValue().refused.sum() / latency.getCount(), 100.0 * entry.getValue().failed.sum() / latency.getCount());
+        }
+
+        System.out.printf("Total %,d operations in %.1f s, %,.1f per second%n", total, seconds, total / seconds);
+        errorMessages.forEach((message, count) -> System.out.println("  " + count.sum() + " x " + message));
+    }
+
+    /**
+     * Lost updates show up as stored balances that don't match the money the clients moved in and out.
+     */
+    private void checkBalances(double openingTotal) throws IOException {
+        double expected = openingTotal + deposited.sum() - withdrawn.sum();
+        double stored = sumOfBalances();
+        System.out.printf("Balances: expected $%,.2f, stored $%,.2f%s%n", expected, stored, Math.abs(expected - stored) < 0.01 ? "" : ", OFF BY $" + String.format("%,.2f", stored - expected));
+    }
+
+    private double sumOfBalances() throws IOException {
+        double sum = 0;
+
+        for (String row : Storage.get().accounts().readAll()) sum += Double.parseDouble(row.split(";")[5]);
+
+        return sum;
+    }
+
+    static int getAccountId(int customer, int account) {
+        return firstAccountId + 2 * customer + account;
+    }
+
+    /**
+     * Write users (bankers for the tellers, customers with a checking and a savings account each) and a month of
+     * transaction history, so the limit checks have history to read. All users share one password hash, hashing
+     * each one would take 100,000 PBKDF2 iterations per user.
+     */
+    static void generateDataset(Path dataDirectory, int bankers, int customers) throws Exception {
+        Random random = new Random(42);
+        byte[] salt = IPassword.generateSalt();
+        String credentials = IPassword.hashPassword(password, salt) + ";" + IPassword.base64Salt(salt) + ";";
+        List<String> users = new ArrayList<>();
+        List<String> accounts = new ArrayList<>();
+        List<String> history = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+
+        for (int i = 0; i < bankers; i++) users.add((firstBankerCpr + i) + ";teller;" + i + ";banker;" + credentials);
+
+        for (int i = 0; i < customers; i++) {
+            int cpr = firstCustomerCpr + i;
+            users.add(cpr + ";customer;" + i + ";customer;" + credentials);
+            String cardType = cardTypes[i % cardTypes.length];
+            accounts.add(getAccountId(i, 0) + ";" + cpr + ";checking;" + (600_000_000 + 2 * i) + ";" + cardType + ";" + openingBalance + ";0");
+            accounts.add(getAccountId(i, 1) + ";" + cpr + ";savings;" + (600_000_001 + 2 * i) + ";" + cardType + ";" + openingBalance + ";0");
+        }
+
+        for (int row = 0; row < historyRowsPerAccount * 2 * customers; row++) {
+            LocalDateTime dateTime = start.plusSeconds(30L * 86_400 * row / (historyRowsPerAccount * 2L * customers));
+            int customer = random.nextInt(customers);
+            String type = random.nextBoolean() ? "deposit" : "withdraw";
+            history.add((firstCustomerCpr + customer) + ";" + getAccountId(customer, random.nextInt(2)) + ";" + Timestamps.toEpochMilli(dateTime) + ";" + type + ";" + (10 + random.nextInt(200)) + ".0;0;false;" + openingBalance);
+        }
+
+        Files.write(dataDirectory.resolve("users.txt"), users);
+        Files.write(dataDirectory.resolve("accounts.txt"), accounts);
+        Files.write(dataDirectory.resolve("transaction_history.txt"), history);
+
+        for (String file : List.of("card_products.txt", "system.txt")) {
+            Files.copy(Paths.get(Storage.defaultDataDirectory, file), dataDirectory.resolve(file));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Temporary copy of the data directory for tests of classes that read and write through the shared storage engine
+ * (Storage.get()), so running them leaves the repository's data files alone. Made once per test run, before the engine is opened.
+ */
+final class SharedTestData {
+    private static Path directory;
+
+    private SharedTestData() {}
+
+    /**
+     * Get the shared storage engine, opened on a copy of the data directory on first use.
+     * @return StorageEngine Storage.get()
+     * @throws IOException Data files copying error.
+     */
+    static synchronized StorageEngine storage() throws IOException {
+        if (directory == null) {
+            Path copy = Files.createTempDirectory("cmdbank-test-data");
+
+            try (Stream<Path> files = Files.list(Storage.getDataDirectory())) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) Files.copy(file, copy.resolve(file.getFileName()));
+            }
+
+            System.setProperty("cmdbank.dataDirectory", copy.toString()); // Before the shared engine is opened
+            directory = copy;
+        }
+
+        StorageEngine storage = Storage.get();
+
+        if (!(storage instanceof TextFileStorage textStorage) || !textStorage.accounts.filePath.startsWith(directory))
+            throw new IllegalStateException("The shared storage engine was opened on the repository's data directory before the tests' copy.");
+
+        return storage;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterTest {
+
+    SlidingWindowCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        counter = new SlidingWindowCounter(60, 60); // Last hour in 1 minute buckets
+    }
+
+    @Test
+    void getTotal() {
+        assertEquals(0, counter.getTotal(1_000_000));
+
+        counter.add(1_000_000, 500);
+        counter.add(1_000_030, 250);
+
+        assertEquals(750, counter.getTotal(1_000_030));
+    }
+
+    @Test
+    void expiresBucketsOutsideWindow() {
+        counter.add(0, 100);
+        counter.add(1_800, 200); // 30 minutes later
+
+        assertEquals(300, counter.getTotal(3_599), "Both amounts are within the hour");
+        assertEquals(200, counter.getTotal(3_600), "First amount slid out of the window");
+        assertEquals(0, counter.getTotal(5_400), "Second amount slid out of the window");
+    }
+
+    @Test
+    void expiresWholeWindowAfterLongGap() {
+        counter.add(0, 100);
+
+        assertEquals(0, counter.getTotal(86_400));
+
+        counter.add(86_400, 50);
+        assertEquals(50, counter.getTotal(86_400));
+    }
+
+    @Test
+    void ignoresAmountsOlderThanWindow() {
+        counter.add(10_000, 100);
+        counter.add(0, 999);
+
+        assertEquals(100, counter.getTotal(10_000));
+    }
+}
@@ -0,0 +1,95 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Cost of the standing order scheduler with many orders, on a generated standing_orders.txt in a temporary data
+ * directory: loading the orders into the timing wheel, the heap the wheel takes, and the minutes while no order is
+ * due, compared with finding the due orders by reading and checking every order each minute.
+ * Orders first run within the next 30 days, never in the first idle minutes measured, so no transfer is made.
+ *
+ * Run from the project directory: java com.ga.cmdbank.StandingOrderBenchmark [orders] [idleMinutes]
+ */
+class StandingOrderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int idleMinutes = args.length > 1 ? Integer.parseInt(args[1]) : 1_440;
+        Path dataDirectory = Files.createTempDirectory("cmdbank-standing-orders");
+        System.setProperty("cmdbank.dataDirectory", dataDirectory.toString()); // Before the shared storage engine is opened
+        LocalDateTime start = LocalDateTime.now().withSecond(0).withNano(0);
+        long startMillis = Timestamps.toEpochMilli(start);
+        writeOrders(dataDirectory.resolve("standing_orders.txt"), orderCount, start.plusMinutes(idleMinutes + 1));
+
+        StandingOrderScheduler scheduler = new StandingOrderScheduler(dataDirectory);
+        long heapBefore = getUsedHeap();
+        long startTime = System.nanoTime();
+        scheduler.runDue(startMillis);
+        System.out.printf("%,d orders loaded into the wheel in %,.0f ms, %,.1f MB of heap%n", scheduler.getScheduledCount(), (System.nanoTime() - startTime) / 1e6, (getUsedHeap() - heapBefore) / 1e6);
+
+        startTime = System.nanoTime();
+
+        for (int minute = 1; minute <= idleMinutes; minute++) {
+            StandingOrderScheduler.Result result = scheduler.runDue(startMillis + minute * StandingOrderScheduler.tickMillis);
+
+            if (result.transferred + result.refused > 0) throw new IllegalStateException("An order ran in idle minute " + minute + ".");
+        }
+
+        System.out.printf("%,d idle minutes: %,.3f ms a minute%n", idleMinutes, (System.nanoTime() - startTime) / 1e6 / idleMinutes);
+
+        int scans = 5;
+        startTime = System.nanoTime();
+
+        for (int minute = 1; minute <= scans; minute++) {
+            long nowMillis = startMillis + minute * StandingOrderScheduler.tickMillis;
+            int due = 0;
+
+            for (String row : Storage.get().standingOrders().readAll()) {
+                if (Timestamps.toEpochMilli(StandingOrder.fromRow(row).getNextRun()) <= nowMillis) due++;
+            }
+
+            if (due > 0) throw new IllegalStateException(due + " orders due in scanned minute " + minute + ".");
+        }
+
+        System.out.printf("Scanning every order instead: %,.3f ms a minute%n", (System.nanoTime() - startTime) / 1e6 / scans);
+
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+
+        Files.delete(dataDirectory);
+    }
+
+    private static void writeOrders(Path filePath, int orderCount, LocalDateTime firstRunFrom) throws IOException {
+        Random random = new Random(42);
+        List<String> frequencies = StandingOrder.frequencies;
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(filePath))) {
+            for (int orderId = 1; orderId <= orderCount; orderId++) {
+                StandingOrder order = new StandingOrder();
+                order.orderId = orderId;
+                order.userCPR = 30_000_000 + random.nextInt(100_000);
+                order.fromAccountId = 500_001 + random.nextInt(300_000);
+                order.toAccountId = 500_001 + random.nextInt(300_000);
+                order.amount = 1 + random.nextInt(500);
+                order.frequency = frequencies.get(random.nextInt(frequencies.size()));
+                order.firstRun = firstRunFrom.plusMinutes(random.nextInt(30 * 1_440));
+                writer.println(order.toRow());
+            }
+        }
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,127 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StandingOrderSchedulerTest {
+
+    BankAccountTransaction transaction = new BankAccountTransaction();
+    StandingOrderStore orders;
+    Path runsDirectory;
+    int accountId;
+    LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageEngine storage = SharedTestData.storage();
+        AccountStore accounts = storage.accounts();
+        orders = storage.standingOrders();
+        accountId = accounts.getLastAccountId() + 1;
+        accounts.add(accountId, accountId + ";44444444;checking;510000001;DebitMastercard;1000.0;0");
+        runsDirectory = Files.createTempDirectory("standing_orders");
+    }
+
+    @Test
+    void catchesUpMissedRuns() throws IOException {
+        StandingOrder order = newOrder(now.minusDays(3)); // Runs 3 days ago, 2 days ago, yesterday and now
+        orders.add(order.toRow());
+        StandingOrderScheduler scheduler = new StandingOrderScheduler(runsDirectory);
+
+        StandingOrderScheduler.Result result = scheduler.runDue(millis(now));
+
+        assertEquals(4, result.transferred);
+        assertEquals(0, result.refused);
+        assertEquals(960.0, transaction.getAccount(accountId).balance);
+        assertEquals(4, getStored(order.orderId).runCount);
+        assertEquals(4, Files.readAllLines(scheduler.runsFilePath).size());
+        assertEquals(0, scheduler.runDue(millis(now.plusMinutes(1))).transferred); // Next run is tomorrow
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void skipsAnOrderAnotherTerminalRan() throws Exception {
+        StandingOrder order = newOrder(now);
+        orders.add(order.toRow());
+        StandingOrderScheduler terminal = new StandingOrderScheduler(runsDirectory);
+        StandingOrderScheduler otherTerminal = new StandingOrderScheduler(runsDirectory);
+        terminal.runDue(millis(now.minusMinutes(1))); // Both wheels loaded, nothing due yet
+        otherTerminal.runDue(millis(now.minusMinutes(1)));
+        StandingOrderScheduler.Result[] result = new StandingOrderScheduler.Result[1];
+        Thread terminalThread;
+
+        try (StoreLock ordersLock = orders.lockForUpdate()) {
+            terminalThread = new Thread(() -> {
+                try {
+                    result[0] = terminal.runDue(millis(now)); // Takes the run from its wheel, then waits for the lock
+
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            terminalThread.start();
+
+            while (terminalThread.getState() != Thread.State.WAITING && terminalThread.isAlive()) Thread.sleep(1);
+
+            assertEquals(1, otherTerminal.runDue(millis(now)).transferred);
+        }
+
+        terminalThread.join(5_000);
+
+        assertEquals(0, result[0].transferred); // The stored run count is past the run it took
+        assertEquals(990.0, transaction.getAccount(accountId).balance);
+        assertEquals(1, getStored(order.orderId).runCount);
+        assertEquals(1, Files.readAllLines(otherTerminal.runsFilePath).size());
+    }
+
+    @Test
+    void doesNotRunCancelledOrders() throws IOException {
+        StandingOrderScheduler scheduler = new StandingOrderScheduler(runsDirectory);
+        scheduler.runDue(millis(now.minusMinutes(1)));
+        StandingOrder order = newOrder(now);
+        int scheduled = scheduler.getScheduledCount();
+        scheduler.add(order);
+
+        assertEquals(scheduled + 1, scheduler.getScheduledCount()); // Straight to the wheel
+
+        scheduler.cancel(order.orderId);
+
+        assertEquals(0, scheduler.runDue(millis(now)).transferred);
+        assertEquals(1000.0, transaction.getAccount(accountId).balance);
+        assertNull(getStored(order.orderId));
+        assertThrows(IOException.class, () -> scheduler.cancel(order.orderId));
+    }
+
+    private StandingOrder newOrder(LocalDateTime firstRun) {
+        StandingOrder order = new StandingOrder();
+        order.orderId = accountId;
+        order.userCPR = 44444444;
+        order.fromAccountId = accountId;
+        order.toAccountId = 100005;
+        order.amount = 10.0;
+        order.frequency = "daily";
+        order.firstRun = firstRun;
+
+        return order;
+    }
+
+    private StandingOrder getStored(int orderId) throws IOException {
+        for (String row : orders.readAll()) {
+            StandingOrder order = StandingOrder.fromRow(row);
+
+            if (order.orderId == orderId) return order;
+        }
+
+        return null;
+    }
+
+    private static long millis(LocalDateTime dateTime) {
+        return Timestamps.toEpochMilli(dateTime);
+    }
+}
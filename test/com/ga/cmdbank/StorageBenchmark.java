@@ -0,0 +1,84 @@
+package com.ga.cmdbank;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The same storage workload run against one or more storage engines, each on its own copy of the data directory:
+ * user lookups (found and missing), account existence checks, balance updates, transaction appends, ID sequence
+ * increments and a full history read.
+ *
+ * Run from the project directory: java com.ga.cmdbank.StorageBenchmark [operations] [engine...]
+ * Engines are "text" (the default) or StorageEngine class names, as for -Dcmdbank.storage.
+ */
+class StorageBenchmark {
+
+    interface Operation {
+        void run(StorageEngine engine, int i) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        String[] engines = args.length > 1 ? java.util.Arrays.copyOfRange(args, 1, args.length) : new String[]{Storage.defaultEngine};
+
+        for (String engineName : engines) {
+            for (int run = 0; run < 2; run++) { // First run warms up the JIT
+                Path dataDirectory = copyDataDirectory();
+                StorageEngine engine = Storage.open(engineName, dataDirectory);
+                List<String> users = engine.users().readAll();
+                List<String> accounts = engine.accounts().readAll();
+                TransactionHistory transaction = new TransactionHistory(44444444, 100001, "deposit", 1.0, 1_000.0);
+
+                System.out.println(engineName + (run == 0 ? " (warm-up)" : "") + ", " + users.size() + " users, " + accounts.size() + " accounts:");
+                measure("user read", operations * 10, engine, (storage, i) -> storage.users().read(getId(users.get(i % users.size()))));
+                measure("missing user check", operations * 10, engine, (storage, i) -> storage.users().exists(99_000_000 + i));
+                measure("account check", operations * 10, engine, (storage, i) -> storage.accounts().exists(getId(accounts.get(i % accounts.size()))));
+                measure("balance update", operations, engine, (storage, i) -> storage.accounts().update(getId(accounts.get(i % accounts.size())), row -> row));
+                measure("transaction append", operations, engine, (storage, i) -> storage.transactions().append(transaction));
+                measure("sequence increment", operations, engine, (storage, i) -> storage.sequences().next("benchmark", 1));
+                measure("history read", 20, engine, (storage, i) -> storage.transactions().readAll());
+
+                engine.transactions().awaitPending();
+                deleteDirectory(dataDirectory);
+            }
+        }
+    }
+
+    private static void measure(String name, int operations, StorageEngine engine, Operation operation) throws IOException {
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < operations; i++) operation.run(engine, i);
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        System.out.printf("  %-20s %,12.0f ops/s %,10.1f microseconds/op%n", name, operations / (elapsedNanos / 1e9), elapsedNanos / 1e3 / operations);
+    }
+
+    private static int getId(String row) {
+        return Integer.parseInt(row, 0, row.indexOf(';'), 10);
+    }
+
+    private static Path copyDataDirectory() throws IOException {
+        Path source = Paths.get(Storage.defaultDataDirectory);
+        Path copy = Files.createTempDirectory("cmdbank-storage");
+
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+
+        return copy;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+
+        Files.delete(directory);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextAccountStoreTest {
+
+    TextAccountStore terminal;
+    TextAccountStore otherTerminal; // Same data directory, as another process would open it
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path directory = Files.createTempDirectory("account_store");
+        Files.write(directory.resolve("accounts.txt"), List.of("100001;44444444;checking;510000001;DebitMastercard;100.0;0"));
+        terminal = new TextAccountStore(directory);
+        otherTerminal = new TextAccountStore(directory);
+    }
+
+    @Test
+    void seesAccountsAnotherTerminalAddedBeforeItsOwnUpdate() throws IOException {
+        assertFalse(terminal.exists(100002)); // Filter loaded
+
+        otherTerminal.add(100002, "100002;55555555;checking;510000002;DebitMastercard;0.0;0");
+        terminal.update(100001, row -> row.replace(";100.0;", ";90.0;"));
+
+        assertTrue(terminal.exists(100002));
+    }
+
+    @Test
+    void seesAccountsAnotherTerminalAddedBeforeItsOwnAdd() throws IOException {
+        assertFalse(terminal.exists(100002));
+
+        otherTerminal.add(100002, "100002;55555555;checking;510000002;DebitMastercard;0.0;0");
+        terminal.add(100003, "100003;44444444;savings;510000003;DebitMastercard;0.0;0;2025-01-01;0");
+
+        assertTrue(terminal.exists(100002));
+        assertTrue(terminal.exists(100003));
+        assertFalse(terminal.exists(100004));
+    }
+}
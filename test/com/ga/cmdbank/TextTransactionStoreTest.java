@@ -0,0 +1,144 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextTransactionStoreTest {
+
+    Path directory;
+    TextTransactionStore store;
+    Random random = new Random(13);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("transaction_store");
+        store = new TextTransactionStore(directory);
+    }
+
+    @Test
+    void readsRecentTransactionsFromTheEnd() throws IOException {
+        List<String> rows = createRows(LocalDateTime.of(2025, 3, 1, 0, 0), 2_000);
+        rows.add("44444444;100003;" + Timestamps.toEpochMilli(LocalDateTime.of(2025, 4, 1, 0, 0)) + ";transfer;1.0;" + "9".repeat(300) + ";false;1.0"); // Longer than a block
+        DataFiles.write(store.filePath, rows);
+
+        for (int blockBytes : new int[]{7, 100, 4096, TextTransactionStore.recentBlockBytes}) {
+            for (int accountId = 100000; accountId <= 100005; accountId++) { // 100000 has no transactions
+                for (int count : new int[]{1, 5, 1_000}) {
+                    assertEquals(expectedRecent(rows, accountId, count), store.readRecent(accountId, count, blockBytes), accountId + " last " + count + ", blocks of " + blockBytes);
+                }
+            }
+        }
+    }
+
+    @Test
+    void skipsPartialLastRow() throws IOException {
+        List<String> rows = createRows(LocalDateTime.of(2025, 3, 1, 0, 0), 50);
+        DataFiles.write(store.filePath, rows);
+        Files.writeString(store.filePath, "44444444;100001;1741000000000;dep", StandardOpenOption.APPEND);
+
+        assertEquals(expectedRecent(rows, 100001, 3), store.readRecent(100001, 3, 16));
+    }
+
+    @Test
+    void continuesIntoArchivedMonths() throws IOException {
+        List<String> rows = createRows(LocalDateTime.of(2025, 3, 1, 0, 0), 300);
+        rows.addAll(createRows(LocalDateTime.of(2025, 4, 1, 0, 0), 30));
+        DataFiles.write(store.filePath, rows);
+        store.archive(YearMonth.of(2025, 3));
+
+        assertEquals(expectedRecent(rows, 100002, 40), store.readRecent(100002, 40));
+        assertEquals(expectedRecent(rows, 100002, 1_000), store.readRecent(100002, 1_000));
+    }
+
+    @Test
+    void findsRowsAppendedPastTheSizeBeforeArchiving() throws IOException {
+        List<String> rows = createRows(LocalDateTime.of(2025, 1, 1, 0, 0), 20);
+        rows.addAll(createRows(LocalDateTime.of(2025, 2, 1, 0, 0), 20));
+        DataFiles.write(store.filePath, rows);
+        assertFalse(store.readAccountRange(100002, LocalDateTime.MIN, LocalDateTime.MAX).isEmpty()); // Indexed before the archive
+        assertEquals(20, store.archive(YearMonth.of(2025, 1)));
+
+        List<String> appended = createRows(LocalDateTime.of(2025, 3, 1, 0, 0), 30); // More bytes than the archive removed
+        for (String row : appended) DataFiles.append(store.filePath, row);
+        rows.addAll(appended);
+
+        for (int accountId = 100001; accountId <= 100005; accountId++) {
+            List<String> expected = new ArrayList<>(expectedRecent(rows, accountId, rows.size()));
+            Collections.reverse(expected);
+
+            assertEquals(expected, store.readAccountRange(accountId, LocalDateTime.MIN, LocalDateTime.MAX), "Account " + accountId);
+        }
+    }
+
+    @Test
+    void pagesThroughArchivedAndLiveTransactions() throws IOException {
+        List<String> rows = createRows(LocalDateTime.of(2025, 2, 1, 0, 0), 2_000); // Into March
+        rows.addAll(createRows(LocalDateTime.of(2025, 4, 1, 0, 0), 200));
+        DataFiles.write(store.filePath, rows);
+        assertTrue(store.archive(YearMonth.of(2025, 2)) > 0);
+        assertTrue(store.archive(YearMonth.of(2025, 3)) > 0);
+        List<String> expected = store.readAccountRange(100004, LocalDateTime.MIN, LocalDateTime.MAX);
+        TransactionCursor cursor = store.openAccountCursor(100004, 7);
+        List<String> forward = new ArrayList<>();
+
+        assertTrue(cursor.previous().isEmpty());
+
+        for (List<String> page = cursor.next(); !page.isEmpty(); page = cursor.next()) forward.addAll(page);
+
+        List<String> backward = new ArrayList<>(expected.subList(expected.size() - (expected.size() - 1) % 7 - 1, expected.size())); // The last page stays current
+
+        for (List<String> page = cursor.previous(); !page.isEmpty(); page = cursor.previous()) backward.addAll(0, page);
+
+        assertEquals(expected, forward);
+        assertEquals(expected, backward);
+
+        for (String transaction : List.of(expected.get(0), expected.get(30), expected.get(expected.size() - 1))) {
+            LocalDateTime dateTime = Timestamps.parseDateTime(transaction.split(";")[2]).withNano(0);
+            List<String> page = cursor.seek(dateTime);
+            int from = expected.indexOf(page.get(0));
+
+            assertEquals(expected.subList(from, Math.min(from + 7, expected.size())), page);
+            assertTrue(Timestamps.parse(page.get(0).split(";")[2]) >= Timestamps.toEpochMilli(dateTime));
+            assertTrue(from == 0 || Timestamps.parse(expected.get(from - 1).split(";")[2]) < Timestamps.toEpochMilli(dateTime));
+            assertEquals(expected.subList(Math.max(0, from - 7), from), from == 0 ? List.of() : cursor.previous());
+        }
+
+        assertTrue(cursor.seek(LocalDateTime.of(2030, 1, 1, 0, 0)).isEmpty());
+    }
+
+    private List<String> createRows(LocalDateTime start, int count) {
+        List<String> rows = new ArrayList<>();
+        LocalDateTime dateTime = start;
+
+        for (int i = 0; i < count; i++) {
+            dateTime = dateTime.plusMinutes(1 + random.nextInt(60));
+            String timestamp = i % 3 == 0 ? dateTime.toString() : String.valueOf(Timestamps.toEpochMilli(dateTime)); // Older ISO rows and epoch rows
+            rows.add((10_000_000 + i) + ";" + (100001 + random.nextInt(5)) + ";" + timestamp + ";deposit;" + (1 + random.nextInt(500)) + ".0;0;false;5.0");
+        }
+
+        return rows;
+    }
+
+    private static List<String> expectedRecent(List<String> rows, int accountId, int count) {
+        List<String> recent = new ArrayList<>();
+
+        for (int i = rows.size() - 1; i >= 0 && recent.size() < count; i--) {
+            if (rows.get(i).split(";")[1].equals(String.valueOf(accountId))) recent.add(rows.get(i));
+        }
+
+        return recent;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ga.cmdbank;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * Parse throughput of transaction timestamps: LocalDateTime.parse of ISO timestamps (how rows were filtered before),
+ * the hand-written ISO parser for older rows, and epoch millisecond timestamps.
+ *
+ * Run: java com.ga.cmdbank.TimestampParseBenchmark [timestamps]
+ */
+class TimestampParseBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(5);
+        String[] isoTimestamps = new String[count];
+        String[] epochTimestamps = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            LocalDateTime dateTime = LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(random.nextInt(63_000_000)).withNano(random.nextInt(10_000_000) * 100);
+            isoTimestamps[i] = dateTime.toString();
+            epochTimestamps[i] = String.valueOf(Timestamps.toEpochMilli(dateTime));
+        }
+
+        for (int run = 0; run < 3; run++) { // First runs warm up the JIT
+            System.out.println(run < 2 ? "Warm-up:" : "Timestamps parsed:");
+            measure("LocalDateTime.parse", isoTimestamps, text -> Timestamps.toEpochMilli(LocalDateTime.parse(text)));
+            measure("ISO parser", isoTimestamps, Timestamps::parse);
+            measure("epoch milliseconds", epochTimestamps, Timestamps::parse);
+        }
+    }
+
+    private static void measure(String name, String[] timestamps, ToLongFunction<String> parser) {
+        long checksum = 0;
+        long startTime = System.nanoTime();
+
+        for (String timestamp : timestamps) checksum += parser.applyAsLong(timestamp);
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        System.out.printf("  %-20s %,14.0f per second %,8.1f ns each (checksum %d)%n", name, timestamps.length / (elapsedNanos / 1e9), (double) elapsedNanos / timestamps.length, checksum % 1_000);
+    }
+}
@@ -0,0 +1,49 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimestampsTest {
+
+    @Test
+    void parsesIsoLikeLocalDateTime() {
+        Random random = new Random(3);
+        LocalDateTime start = LocalDateTime.of(1999, 1, 1, 0, 0);
+
+        for (int i = 0; i < 20_000; i++) {
+            LocalDateTime dateTime = start.plusSeconds(random.nextInt(1_000_000_000)).withNano(random.nextInt(1_000_000_000));
+            String iso = switch (i % 4) { // LocalDateTime.toString drops zero seconds and trailing fraction digits
+                case 0 -> dateTime.withSecond(0).withNano(0).toString();
+                case 1 -> dateTime.withNano(0).toString();
+                case 2 -> dateTime.withNano(dateTime.getNano() / 1_000_000 * 1_000_000).toString();
+                default -> dateTime.toString();
+            };
+
+            assertEquals(LocalDateTime.parse(iso), Timestamps.parseDateTime(iso), iso);
+            assertEquals(Timestamps.toEpochMilli(LocalDateTime.parse(iso)), Timestamps.parse(iso), iso);
+        }
+    }
+
+    @Test
+    void parsesEpochMilliseconds() {
+        LocalDateTime dateTime = LocalDateTime.of(2025, 12, 11, 14, 57, 27, 442_000_000);
+        String stored = String.valueOf(Timestamps.toEpochMilli(dateTime));
+
+        assertEquals(Timestamps.toEpochMilli(dateTime), Timestamps.parse(stored));
+        assertEquals(dateTime, Timestamps.parseDateTime(stored));
+        assertFalse(Timestamps.isIso(stored));
+        assertTrue(Timestamps.isIso(dateTime.toString()));
+    }
+
+    @Test
+    void rejectsOtherText() {
+        for (String text : new String[]{"", "abc", "2024-13-01T00:00", "2023-02-29T10:00", "2024-01-01 10:00", "2024-01-01T10:00:5", "2024-01-01T10:00:00.", "12e4"}) {
+            assertThrows(DateTimeParseException.class, () -> Timestamps.parse(text), text);
+        }
+    }
+}
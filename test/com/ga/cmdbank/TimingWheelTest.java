@@ -0,0 +1,54 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void handsBackItemsOnceDueAcrossLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 3, 0);
+        Random random = new Random(42);
+        List<Long> dueTimes = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            long dueTime = random.nextInt(600_000); // Beyond the 64^3 ticks of the levels, into the overflow list
+            dueTimes.add(dueTime);
+            wheel.add(dueTime, dueTime);
+        }
+
+        List<Long> handedBack = new ArrayList<>();
+
+        for (long now = 0; now <= 600_000; now += 1 + random.nextInt(5_000)) {
+            for (long dueTime : wheel.advance(now)) {
+                assertTrue(dueTime <= now, dueTime + " handed back at " + now);
+                assertTrue(dueTime > now - 5_001, dueTime + " handed back late at " + now);
+                handedBack.add(dueTime);
+            }
+        }
+
+        handedBack.addAll(wheel.advance(600_000));
+        handedBack.sort(null);
+        dueTimes.sort(null);
+
+        assertEquals(dueTimes, handedBack);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void handsBackOverdueItemsOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(60_000, 4, 600_000);
+        wheel.add(0, "missed");
+        wheel.add(600_001, "next minute");
+
+        assertEquals(List.of("missed"), wheel.advance(600_000));
+        assertEquals(List.of(), wheel.advance(659_999));
+        assertEquals(List.of("next minute"), wheel.advance(660_000));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionArchiveTest {
+
+    static final YearMonth month = YearMonth.of(2025, 3);
+
+    Path directory;
+    Random random = new Random(11);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("transaction_archive");
+    }
+
+    @Test
+    void readsBackMonthInRecordingOrder() throws IOException {
+        List<String> rows = createRows(month, 5_000, 200);
+        rows.add("44444444;100001;2025-03-31T23:59:59.000000001;deposit;0.125;0;false;-10.001"); // Not whole cents
+        Path segment = directory.resolve("transactions-2025-03.col");
+        TransactionArchive.write(segment, month, rows);
+
+        TransactionArchive archive = new TransactionArchive(segment);
+
+        assertEquals(month, archive.month);
+        assertEquals(rows, archive.readAll());
+    }
+
+    @Test
+    void readsOneAccountInTimeOrder() throws IOException {
+        List<String> rows = createRows(month, 2_000, 50);
+        Path segment = directory.resolve("transactions-2025-03.col");
+        TransactionArchive.write(segment, month, rows);
+
+        List<String> expected = new ArrayList<>();
+
+        for (String row : rows) {
+            if (row.split(";")[1].equals("100007")) expected.add(row);
+        }
+
+        expected.sort((a, b) -> Long.compare(Timestamps.parse(a.split(";")[2]), Timestamps.parse(b.split(";")[2])));
+
+        assertEquals(expected, new TransactionArchive(segment).readAccount(100007));
+        assertTrue(new TransactionArchive(segment).readAccount(999999).isEmpty());
+    }
+
+    @Test
+    void isAtLeastFiveTimesSmaller() throws IOException {
+        List<String> rows = createRows(month, 50_000, 500);
+        Path text = directory.resolve("transaction_history.txt");
+        Path segment = directory.resolve("transactions-2025-03.col");
+        DataFiles.write(text, rows);
+        TransactionArchive.write(segment, month, rows);
+
+        assertTrue(Files.size(text) >= 5 * Files.size(segment), Files.size(text) + " bytes archived to " + Files.size(segment));
+    }
+
+    @Test
+    void storeReadsArchivedMonths() throws IOException {
+        TextTransactionStore store = new TextTransactionStore(directory);
+        List<String> rows = createRows(month, 300, 5);
+        rows.addAll(createRows(month.plusMonths(1), 300, 5));
+        DataFiles.write(store.filePath, rows);
+        List<String> accountRows = store.readAccountRange(100002, LocalDateTime.MIN, LocalDateTime.MAX);
+        List<String> rangeRows = store.readAccountRange(100002, LocalDateTime.of(2025, 3, 20, 0, 0), LocalDateTime.of(2025, 4, 10, 0, 0));
+
+        assertEquals(300, store.archive(month));
+        assertEquals(0, store.archive(month));
+        assertEquals(300, DataFiles.readAllLines(store.filePath).size());
+        assertEquals(rows, store.readAll());
+        assertEquals(accountRows, store.readAccountRange(100002, LocalDateTime.MIN, LocalDateTime.MAX));
+        assertEquals(rangeRows, store.readAccountRange(100002, LocalDateTime.of(2025, 3, 20, 0, 0), LocalDateTime.of(2025, 4, 10, 0, 0)));
+    }
+
+    /**
+     * Rows like the app records: each account's balance follows its amounts, times in recording order.
+     */
+    private List<String> createRows(YearMonth rowsMonth, int count, int accounts) {
+        List<String> rows = new ArrayList<>();
+        String[] types = {"deposit", "withdraw", "transfer"};
+        long[] balanceCents = new long[accounts];
+        LocalDateTime dateTime = rowsMonth.atDay(1).atStartOfDay();
+        long secondsPerRow = rowsMonth.lengthOfMonth() * 86_400L / (count + 1);
+
+        for (int i = 0; i < count; i++) {
+            int account = random.nextInt(accounts);
+            String type = types[random.nextInt(types.length)];
+            long amountCents = (1 + random.nextInt(2_000)) * (random.nextInt(4) == 0 ? 1 : 100);
+            balanceCents[account] += type.equals("deposit") ? amountCents : -amountCents;
+            dateTime = dateTime.plusSeconds(1 + random.nextInt((int) secondsPerRow)).withNano(random.nextInt(10_000_000) * 100);
+            boolean isTransfer = type.equals("transfer");
+
+            rows.add(TransactionHistory.appendRecord(new StringBuilder(), 10_000_000 + account, 100_001 + account, dateTime, type, amountCents / 100.0,
+                    isTransfer ? 100_001 + random.nextInt(accounts) : 0, isTransfer && random.nextBoolean(), balanceCents[account] / 100.0).toString());
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionChainTest {
+
+    Path historyPath;
+    TransactionChain chain;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        historyPath = Files.createTempDirectory("transaction_chain").resolve("transaction_history.txt");
+        chain = new TransactionChain(historyPath);
+        StringBuilder rows = new StringBuilder();
+
+        for (int i = 0; i < TransactionChain.blockRows * 3 + 10; i++) {
+            rows.append("44444444;100005;").append(1_700_000_000_000L + i).append(";deposit;").append(i % 100 + 1).append(".0;0;false;").append(i).append(".0").append(System.lineSeparator());
+
+            if (i % 500 == 0) {
+                chain.append(rows.toString().getBytes(StandardCharsets.UTF_8), false);
+                rows.setLength(0);
+            }
+        }
+
+        chain.append(rows.toString().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    @Test
+    void provesEveryLeafOfAMerkleTree() {
+        for (int leafCount = 1; leafCount <= 9; leafCount++) {
+            List<byte[]> leaves = new ArrayList<>();
+
+            for (int i = 0; i < leafCount; i++) leaves.add(MerkleTree.hashLeaf(new byte[]{(byte) i}));
+
+            byte[] root = MerkleTree.getRoot(leaves);
+
+            for (int i = 0; i < leafCount; i++) {
+                List<byte[]> proof = MerkleTree.getProof(leaves, i);
+
+                assertTrue(MerkleTree.verifyProof(leaves.get(i), i, leafCount, proof, root));
+                assertFalse(MerkleTree.verifyProof(MerkleTree.hashLeaf(new byte[]{-1}), i, leafCount, proof, root));
+            }
+        }
+    }
+
+    @Test
+    void findsChangedRowsAndRewrittenChains() throws IOException {
+        TransactionChain.Audit first = chain.audit(TransactionChain.newBlocks, null);
+
+        assertEquals(List.of(), first.failures);
+        assertEquals(TransactionChain.blockRows * 3L + 10, first.rowCount);
+        assertEquals(3, first.blockCount);
+        assertEquals(3, first.blocksVerified);
+
+        DataFiles.append(historyPath, "44444444;100005;1800000000000;deposit;5.0;0;false;5.0");
+        TransactionChain.Audit second = chain.audit(TransactionChain.newBlocks, null); // Chains the row appended without its chain update
+
+        assertTrue(second.passed());
+        assertEquals(first.rowCount + 1, second.rowCount);
+        assertEquals(0, second.blocksVerified);
+        assertTrue(chain.audit(1, first.root).passed());
+
+        String history = Files.readString(historyPath);
+        Files.writeString(historyPath, history.replaceFirst(";1700000001500;deposit;1.0;", ";1700000001500;deposit;9.0;"));
+
+        assertTrue(chain.audit(TransactionChain.newBlocks, null).passed()); // Only the blocks since the last audit are re-hashed
+        assertEquals(List.of("Block 1"), chain.audit(TransactionChain.allBlocks, null).failures.stream().map(failure -> failure.substring(0, 7)).toList());
+        assertFalse(chain.audit(1, null).passed());
+
+        Files.delete(chain.headFilePath); // Rewrite the chain to match
+        Files.delete(chain.blocksFilePath);
+        TransactionChain.Audit rewritten = chain.audit(TransactionChain.allBlocks, first.root);
+
+        assertEquals(1, rewritten.failures.size());
+        assertTrue(rewritten.failures.get(0).contains("don't give the given root"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionIndexTest {
+
+    static final LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    Path directory;
+    Path historyFile;
+    Path indexFile;
+    Random random = new Random(7);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("transaction_index");
+        historyFile = directory.resolve("transaction_history.txt");
+        indexFile = directory.resolve("transaction_history.idx");
+        DataFiles.write(historyFile, createRows(3_000));
+    }
+
+    @Test
+    void findsAccountRangesThroughSortedRuns() throws IOException {
+        TransactionIndex index = new TransactionIndex(historyFile, indexFile, 500); // Six sorted runs to merge
+
+        assertEquals(3_000, index.size());
+        assertFindsLikeScan(index);
+    }
+
+    @Test
+    void insertsAppendedRows() throws IOException {
+        TransactionIndex index = new TransactionIndex(historyFile, indexFile, 500);
+        index.size();
+
+        for (String row : createRows(2_000)) DataFiles.append(historyFile, row); // Splits leaves and internal pages
+
+        assertEquals(5_000, index.size());
+        assertFindsLikeScan(index);
+        assertFindsLikeScan(new TransactionIndex(historyFile, indexFile, 500));
+    }
+
+    @Test
+    void rebuildsAfterHistoryRewrite() throws IOException {
+        TransactionIndex index = new TransactionIndex(historyFile, indexFile, 500);
+        index.size();
+        DataFiles.write(historyFile, createRows(100));
+
+        assertEquals(100, index.size());
+        assertFindsLikeScan(index);
+    }
+
+    @Test
+    void skipsPartialLastRow() throws IOException {
+        TransactionIndex index = new TransactionIndex(historyFile, indexFile, 500);
+        Files.writeString(historyFile, "44444444;100001;2024-01-01T10:00", java.nio.file.StandardOpenOption.APPEND);
+
+        assertEquals(3_000, index.size());
+
+        Files.writeString(historyFile, ";deposit;5.0;0;false;5.0\n", java.nio.file.StandardOpenOption.APPEND);
+
+        assertEquals(3_001, index.size());
+    }
+
+    @Test
+    void pagesForwardAndBackwardBySeeking() throws IOException {
+        TransactionIndex index = new TransactionIndex(historyFile, indexFile, 500);
+
+        for (String row : createRows(2_000)) DataFiles.append(historyFile, row); // Inserted leaves as well as bulk loaded ones
+
+        for (int accountId = 100000; accountId <= 100021; accountId++) {
+            long[] all = index.find(accountId, 0, 1L << 32);
+            List<Long> forward = new ArrayList<>();
+            long[] page = index.findAfter(accountId, TransactionIndex.toKey(accountId, 0), -1, 37);
+
+            while (page.length > 0) {
+                for (int i = 1; i < page.length; i += 2) forward.add(page[i]);
+
+                page = index.findAfter(accountId, page[page.length - 2], page[page.length - 1], 37);
+            }
+
+            List<Long> backward = new ArrayList<>();
+            page = index.findBefore(accountId, TransactionIndex.toKey(accountId, 1L << 32), -1, 37);
+
+            while (page.length > 0) {
+                for (int i = page.length - 1; i > 0; i -= 2) backward.add(0, page[i]);
+
+                page = index.findBefore(accountId, page[0], page[1], 37);
+            }
+
+            assertEquals(Arrays.stream(all).boxed().toList(), forward);
+            assertEquals(forward, backward);
+        }
+    }
+
+    private List<String> createRows(int count) {
+        List<String> rows = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            LocalDateTime dateTime = start.plusMinutes(random.nextInt(365 * 24 * 60));
+            String timestamp = i % 2 == 0 ? dateTime.toString() : String.valueOf(Timestamps.toEpochMilli(dateTime)); // Older ISO rows and epoch rows
+            rows.add("44444444;" + (100001 + random.nextInt(20)) + ";" + timestamp + ";deposit;5.0;0;false;5.0");
+        }
+
+        return rows;
+    }
+
+    /**
+     * Compare index lookups with a scan of the history, for whole accounts and random ranges.
+     */
+    private void assertFindsLikeScan(TransactionIndex index) throws IOException {
+        List<String> rows = DataFiles.readAllLines(historyFile);
+
+        for (int query = 0; query < 60; query++) {
+            int accountId = 100000 + random.nextInt(22); // Including accounts without transactions
+            LocalDateTime from = query < 20 ? start.minusYears(1) : start.plusDays(random.nextInt(365));
+            LocalDateTime to = query < 20 ? start.plusYears(2) : from.plusDays(random.nextInt(30));
+            List<String> expected = new ArrayList<>();
+
+            for (String row : rows) {
+                String[] data = row.split(";");
+                long epochMilli = Timestamps.parse(data[2]);
+
+                if (Integer.parseInt(data[1]) == accountId && epochMilli >= Timestamps.toEpochMilli(from) && epochMilli < Timestamps.toEpochMilli(to)) expected.add(row);
+            }
+
+            long[] offsets = index.find(accountId, TransactionIndex.toEpochSecond(from), TransactionIndex.toEpochSecond(to));
+            List<String> found = DataFiles.read(historyFile, channel -> {
+                List<String> foundRows = new ArrayList<>();
+
+                for (long offset : offsets) foundRows.add(DataFiles.readRow(channel, offset));
+
+                return foundRows;
+            });
+
+            assertEquals(expected.size(), found.size());
+
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(Timestamps.parse(found.get(i - 1).split(";")[2]) <= Timestamps.parse(found.get(i).split(";")[2]));
+            }
+
+            assertEquals(expected.stream().sorted().toList(), found.stream().sorted().toList());
+        }
+    }
+}
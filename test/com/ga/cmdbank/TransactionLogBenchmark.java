@@ -0,0 +1,67 @@
+package com.ga.cmdbank;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-producer benchmark of the write-behind transaction log: producer threads publish transactions into one
+ * TransactionLogWriter (writing to a temporary file) and the throughput until everything is durable is reported,
+ * along with the bytes the producer threads allocated per publish.
+ *
+ * Run: java com.ga.cmdbank.TransactionLogBenchmark [transactionsPerProducer]
+ */
+class TransactionLogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactionsPerProducer = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int producers : new int[]{1, 1, 2, 4, 8}) { // First run warms up the JIT
+            Path logFile = Files.createTempFile("transaction_log", ".txt");
+            TransactionLogWriter log = new TransactionLogWriter(logFile, TransactionLogWriter.defaultCapacity);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(producers);
+            AtomicLong allocatedBytes = new AtomicLong();
+            Thread[] producerThreads = new Thread[producers];
+
+            for (int p = 0; p < producers; p++) {
+                int accountId = 100_000 + p;
+                producerThreads[p] = new Thread(() -> {
+                    TransactionHistory transaction = new TransactionHistory(44444444, accountId, "deposit", 25.5, 1_000.0);
+
+                    try {
+                        start.await();
+                        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+
+                        for (int i = 0; i < transactionsPerProducer; i++) log.publish(transaction);
+
+                        allocatedBytes.addAndGet(threads.getCurrentThreadAllocatedBytes() - allocatedBefore);
+
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                    } finally {
+                        done.countDown();
+                    }
+                });
+                producerThreads[p].start();
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+            done.await();
+            long publishedNanos = System.nanoTime() - startTime;
+            log.awaitDurable(log.getLastPublished());
+            long durableNanos = System.nanoTime() - startTime;
+            log.close();
+
+            long total = (long) producers * transactionsPerProducer;
+            System.out.printf("%d producer(s): %,.0f published/s, %,.0f durable/s, %.2f bytes allocated per publish, %,d bytes written%n",
+                    producers, total / (publishedNanos / 1e9), total / (durableNanos / 1e9), (double) allocatedBytes.get() / total, Files.size(logFile));
+            Files.delete(logFile);
+        }
+    }
+}
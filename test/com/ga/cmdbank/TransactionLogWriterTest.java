@@ -0,0 +1,144 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionLogWriterTest {
+
+    @Test
+    void writesEachProducersTransactionsInSequenceOrder() throws Exception {
+        Path filePath = Files.createTempDirectory("transaction_log").resolve("transaction_history.txt");
+        TransactionLogWriter log = new TransactionLogWriter(filePath, 16); // Small ring, producers wait for free slots
+        Thread[] producers = new Thread[4];
+
+        for (int p = 0; p < producers.length; p++) {
+            int accountId = 100_001 + p;
+            producers[p] = new Thread(() -> {
+                for (int i = 1; i <= 500; i++) log.publish(new TransactionHistory(44444444, accountId, "deposit", 1.0, i));
+            });
+            producers[p].start();
+        }
+
+        for (Thread producer : producers) producer.join();
+
+        log.awaitDurable(log.getLastPublished());
+        List<String> rows = Files.readAllLines(filePath);
+
+        assertEquals(2_000, rows.size());
+        assertEquals(1_999, log.getDurableSequence());
+
+        for (int p = 0; p < producers.length; p++) {
+            double lastBalance = 0;
+
+            for (String row : rows) {
+                TransactionHistory transaction = TransactionHistory.fromRecord(row);
+
+                if (transaction.accountId != 100_001 + p) continue;
+
+                assertEquals(lastBalance + 1, transaction.postTransactionBalance); // Publish order of each producer
+                lastBalance = transaction.postTransactionBalance;
+            }
+
+            assertEquals(500.0, lastBalance);
+        }
+
+        log.close();
+    }
+
+    @Test
+    void completesDurableFuturesOnceWritten() throws Exception {
+        Path filePath = Files.createTempDirectory("transaction_log").resolve("transaction_history.txt");
+        TransactionLogWriter log = new TransactionLogWriter(filePath, 16);
+
+        long sequence = log.publish(new TransactionHistory(44444444, 100_001, "deposit", 25.0, 25.0));
+        log.whenDurable(sequence).get(5, TimeUnit.SECONDS);
+
+        assertTrue(log.getDurableSequence() >= sequence);
+        assertEquals(1, Files.readAllLines(filePath).size()); // Forced before the future completed
+        assertTrue(log.whenDurable(sequence).isDone());
+
+        log.close();
+    }
+
+    @Test
+    void keepsWaitersWaitingWhileAFailedWriteIsRetried() throws Exception {
+        Path directory = Files.createTempDirectory("transaction_log").resolve("missing");
+        Path filePath = directory.resolve("transaction_history.txt");
+        TransactionLogWriter log = new TransactionLogWriter(filePath, 16);
+
+        long sequence = log.publish(new TransactionHistory(44444444, 100_001, "deposit", 25.0, 25.0));
+        CompletableFuture<Void> durable = log.whenDurable(sequence);
+
+        assertThrows(TimeoutException.class, () -> durable.get(300, TimeUnit.MILLISECONDS)); // Not failed, it may still be written
+
+        Files.createDirectories(directory);
+        durable.get(5, TimeUnit.SECONDS); // Retried, not lost
+        log.awaitDurable(sequence);
+
+        assertEquals(1, Files.readAllLines(filePath).size());
+
+        log.close();
+    }
+
+    @Test
+    void failsWaitersOnlyWhenClosedWhileTheWriteFails() throws Exception {
+        Path filePath = Files.createTempDirectory("transaction_log").resolve("missing").resolve("transaction_history.txt");
+        TransactionLogWriter log = new TransactionLogWriter(filePath, 16);
+
+        long sequence = log.publish(new TransactionHistory(44444444, 100_001, "deposit", 25.0, 25.0));
+        CompletableFuture<Void> durable = log.whenDurable(sequence);
+        log.close(200);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> durable.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IOException);
+        assertThrows(IOException.class, () -> log.awaitDurable(sequence));
+        assertTrue(log.whenDurable(sequence).isCompletedExceptionally());
+        assertFalse(Files.exists(filePath));
+    }
+
+    @Test
+    void writesEveryAcceptedTransactionWhenClosedWhilePublishing() throws Exception {
+        Path filePath = Files.createTempDirectory("transaction_log").resolve("transaction_history.txt");
+        TransactionLogWriter log = new TransactionLogWriter(filePath, 16);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> producers = new ArrayList<>();
+
+        for (int p = 0; p < 4; p++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    while (true) {
+                        log.publish(new TransactionHistory(44444444, 100_001, "deposit", 1.0, 1.0));
+                        accepted.incrementAndGet();
+                    }
+
+                } catch (IllegalStateException e) {
+                    // Closed
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        Thread.sleep(50);
+        log.close();
+
+        for (Thread producer : producers) producer.join(5_000);
+
+        assertTrue(accepted.get() > 0);
+        assertEquals(accepted.get(), Files.readAllLines(filePath).size());
+        assertEquals(accepted.get() - 1, log.getDurableSequence());
+        assertThrows(IllegalStateException.class, () -> log.publish(new TransactionHistory(44444444, 100_001, "deposit", 1.0, 1.0)));
+    }
+}
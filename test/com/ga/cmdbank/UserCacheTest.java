@@ -0,0 +1,89 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    UserCache cache;
+    String[] userData;
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserCache(2);
+        userData = new String[]{"11111111", "fatima", "alansari", "banker", "hash", "salt"};
+    }
+
+    @Test
+    void get() {
+        assertNull(cache.get(11111111), "Uncached user should be a miss");
+
+        cache.put(11111111, userData);
+        assertArrayEquals(userData, cache.get(11111111));
+    }
+
+    @Test
+    void getReturnsCopy() {
+        cache.put(11111111, userData);
+        cache.get(11111111)[1] = "changed";
+
+        assertEquals("fatima", cache.get(11111111)[1], "Changing a returned record should not change the cached record");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        cache.put(11111111, userData);
+        cache.put(22222222, userData);
+        cache.get(11111111); // 22222222 is now the least recently used
+        cache.put(33333333, userData);
+
+        assertNotNull(cache.get(11111111));
+        assertNull(cache.get(22222222), "Least recently used user should be evicted");
+        assertNotNull(cache.get(33333333));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void invalidate() {
+        cache.put(11111111, userData);
+        cache.invalidate(11111111);
+
+        assertNull(cache.get(11111111), "Invalidated user should be a miss");
+    }
+
+    @Test
+    void validateEmptiesTheCacheWhenTheDataFileChanged() {
+        cache.validate(1);
+        cache.put(11111111, userData, 1);
+        cache.validate(1);
+
+        assertNotNull(cache.get(11111111), "Same version should keep the cached user");
+
+        cache.validate(2);
+
+        assertNull(cache.get(11111111), "Changed version should empty the cache");
+    }
+
+    @Test
+    void putIgnoresRecordsReadAtAnotherVersion() {
+        cache.validate(2);
+        cache.put(11111111, userData, 1); // Read before another validate moved the cache on
+
+        assertNull(cache.get(11111111));
+    }
+
+    @Test
+    void getHitRate() {
+        assertEquals(0.0, cache.getHitRate());
+
+        cache.put(11111111, userData);
+        cache.get(11111111);
+        cache.get(22222222);
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate());
+    }
+}
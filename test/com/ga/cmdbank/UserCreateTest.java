@@ -17,7 +17,8 @@ class UserCreateTest {
     byte[] salt;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws IOException {
+        SharedTestData.storage();
         user = new UserCreate();
         salt = new byte[]{1, 2, 3};
         userWithParameters = new UserCreate("11111111", "John", "Doe", "banker", "hashedPassword", salt);
@@ -121,6 +122,21 @@ class UserCreateTest {
         assertNull(user.read(10000000), "Read return should be null");
     }
 
+    @Test
+    void readSeesAPasswordAnotherTerminalReset() throws IOException {
+        String[] cachedUserData = user.read(11111111);
+        UserStore otherTerminal = new TextUserStore(Storage.getDataDirectory()); // Same users.txt, as another process would open it
+        String row = String.join(";", cachedUserData) + ";";
+
+        try {
+            otherTerminal.update(11111111, row.replace(cachedUserData[4], "resetHash"));
+
+            assertEquals("resetHash", user.read(11111111)[4], "Cached password should not outlive another terminal's reset");
+        } finally {
+            otherTerminal.update(11111111, row);
+        }
+    }
+
     @Test
     void generateSalt() {
         byte[] newSalt = IPassword.generateSalt();
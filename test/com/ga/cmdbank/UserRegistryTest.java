@@ -0,0 +1,123 @@
+package com.ga.cmdbank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRegistryTest {
+
+    Path directory;
+    Path usersFile;
+    UserRegistry registry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("user_registry");
+        usersFile = directory.resolve("users.txt");
+        DataFiles.write(usersFile, List.of("44444444;haya;ahmed;customer;hash;salt", "11111111;fatima;alansari;banker;hash;salt"));
+        registry = new UserRegistry(usersFile, directory.resolve("users.cprmap"), directory.resolve("users.offsets"));
+    }
+
+    @Test
+    void containsAndRead() throws IOException {
+        assertTrue(registry.contains(44444444));
+        assertFalse(registry.contains(44444445));
+        assertEquals("11111111;fatima;alansari;banker;hash;salt", registry.read(11111111));
+        assertNull(registry.read(12345678));
+    }
+
+    @Test
+    void addAppendedUser() throws IOException {
+        registry.size(); // Load before the append
+        String row = "22222222;ali;hasan;customer;hash;salt";
+        DataFiles.append(usersFile, row);
+        registry.refresh();
+
+        assertEquals(row, registry.read(22222222));
+        assertEquals("44444444;haya;ahmed;customer;hash;salt", registry.read(44444444));
+        assertEquals(3, registry.size());
+    }
+
+    @Test
+    void iteratesCprsInOrder() throws IOException {
+        List<Integer> cprs = new ArrayList<>();
+        registry.forEachCpr(cprs::add);
+
+        assertEquals(List.of(11111111, 44444444), cprs);
+        assertTrue(registry.readAll().get(0).startsWith("11111111;"));
+    }
+
+    @Test
+    void reloadsSavedRegistry() throws IOException {
+        registry.size();
+        UserRegistry reopened = new UserRegistry(usersFile, directory.resolve("users.cprmap"), directory.resolve("users.offsets"));
+
+        assertEquals("44444444;haya;ahmed;customer;hash;salt", reopened.read(44444444));
+    }
+
+    @Test
+    void rebuildsAfterOutsideEdit() throws IOException {
+        registry.size();
+        DataFiles.write(usersFile, List.of("33333333;zainab;alansari;banker;hash;salt"));
+
+        assertFalse(registry.contains(44444444));
+        assertEquals("33333333;zainab;alansari;banker;hash;salt", registry.read(33333333));
+    }
+
+    @Test
+    void addsUsersAnotherTerminalAppended() throws IOException {
+        UserRegistry otherTerminal = reopen(); // Same files, as another process would open them
+        registry.size();
+        otherTerminal.size();
+        String row = "22222222;ali;hasan;customer;hash;salt";
+        DataFiles.append(usersFile, row);
+        registry.refresh();
+
+        assertEquals(row, otherTerminal.read(22222222));
+        assertEquals(3, otherTerminal.size());
+        assertEquals(3, reopen().size()); // Saved by the terminal that appended
+    }
+
+    @Test
+    void keepsAnotherTerminalsBitmapWhileRebuilding() throws Exception {
+        registry.size(); // Saved
+        UserRegistry otherTerminal = reopen();
+        assertTrue(otherTerminal.contains(44444444));
+        AtomicBoolean rebuilding = new AtomicBoolean(true);
+        AtomicBoolean missed = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            try {
+                while (rebuilding.get()) {
+                    if (!otherTerminal.contains(44444444)) missed.set(true);
+                }
+
+            } catch (IOException e) {
+                missed.set(true);
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 10; i++) {
+            Files.delete(directory.resolve("users.offsets")); // The next registry can't load the saved one, so it rebuilds
+            reopen().size();
+        }
+
+        rebuilding.set(false);
+        reader.join();
+
+        assertFalse(missed.get(), "A rebuild in another terminal should not clear this terminal's bitmap");
+        assertEquals(2, reopen().size());
+    }
+
+    private UserRegistry reopen() {
+        return new UserRegistry(usersFile, directory.resolve("users.cprmap"), directory.resolve("users.offsets"));
+    }
+}